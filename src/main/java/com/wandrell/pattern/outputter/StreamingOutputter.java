@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.outputter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+/**
+ * {@code Outputter} which sends the values returned by an iterator one by one,
+ * delegating each of them to another {@code Outputter}.
+ * <p>
+ * This allows exporting large data sets, such as the entities of a
+ * {@link com.wandrell.pattern.repository.FilteredRepository
+ * FilteredRepository}, without gathering them first. The iterator is consumed
+ * while writing, and the output goes through a buffer of fixed size, so the
+ * memory used does not depend on the number of values:
+ * 
+ * <pre>
+ * outputter.output(repository.getIterator(filter), writer);
+ * </pre>
+ * <p>
+ * The wrapped {@code Outputter} receives a view of the output which can't be
+ * closed, so it can close it after each value, as is expected from it. The
+ * actual output is closed once the iterator is exhausted, or if sending a
+ * value fails.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the values sent by the wrapped outputter
+ */
+public final class StreamingOutputter<V> implements Outputter<Iterator<V>> {
+
+    /**
+     * {@code Writer} which ignores attempts to close it.
+     */
+    private static final class CloseShieldWriter extends FilterWriter {
+
+        /**
+         * Constructs a {@code CloseShieldWriter} wrapping the specified
+         * writer.
+         * 
+         * @param writer
+         *            the writer to protect
+         */
+        public CloseShieldWriter(final Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public final void close() {}
+
+    }
+
+    /**
+     * Default size for the output buffer.
+     */
+    private static final int           DEFAULT_BUFFER = 8192;
+    /**
+     * Size of the output buffer.
+     */
+    private final int                  bufferSize;
+    /**
+     * Outputter for each of the values.
+     */
+    private final Outputter<? super V> outputter;
+
+    /**
+     * Constructs a {@code StreamingOutputter} wrapping the specified outputter
+     * and using the default buffer size.
+     * 
+     * @param valueOutputter
+     *            the outputter for each value
+     */
+    public StreamingOutputter(final Outputter<? super V> valueOutputter) {
+        this(valueOutputter, DEFAULT_BUFFER);
+    }
+
+    /**
+     * Constructs a {@code StreamingOutputter} wrapping the specified outputter
+     * and using a buffer of the specified size.
+     * 
+     * @param valueOutputter
+     *            the outputter for each value
+     * @param size
+     *            size of the output buffer
+     */
+    public StreamingOutputter(final Outputter<? super V> valueOutputter,
+            final int size) {
+        super();
+
+        outputter = checkNotNull(valueOutputter,
+                "Received a null pointer as outputter");
+
+        checkArgument(size > 0, "The buffer size should be positive");
+
+        bufferSize = size;
+    }
+
+    @Override
+    public final void output(final Iterator<V> values,
+            final OutputStream stream) throws Exception {
+        final OutputStream buffered; // Buffer for the values
+
+        checkNotNull(values, "Received a null pointer as values");
+        checkNotNull(stream, "Received a null pointer as stream");
+
+        buffered = new BufferedOutputStream(stream, getBufferSize());
+        try {
+            while (values.hasNext()) {
+                // The shield can't be written after closing it, so each
+                // value receives its own one
+                getOutputter().output(values.next(),
+                        new CloseShieldOutputStream(buffered));
+            }
+        } finally {
+            buffered.close();
+        }
+    }
+
+    @Override
+    public final void output(final Iterator<V> values, final Writer writer)
+            throws Exception {
+        final Writer buffered; // Buffer for the values
+        final Writer shield;   // View for the wrapped outputter
+
+        checkNotNull(values, "Received a null pointer as values");
+        checkNotNull(writer, "Received a null pointer as writer");
+
+        buffered = new BufferedWriter(writer, getBufferSize());
+        shield = new CloseShieldWriter(buffered);
+        try {
+            while (values.hasNext()) {
+                getOutputter().output(values.next(), shield);
+            }
+        } finally {
+            buffered.close();
+        }
+    }
+
+    /**
+     * Returns the size of the output buffer.
+     * 
+     * @return the size of the output buffer
+     */
+    private final int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the outputter for each value.
+     * 
+     * @return the outputter for each value
+     */
+    private final Outputter<? super V> getOutputter() {
+        return outputter;
+    }
+
+}
@@ -42,5 +42,12 @@
  * while the other uses an {@code OutputWriter}. In both cases the received
  * output object is expected to be a single use object, which will be closed,
  * and so can't be reused, after the operation is finished.
+ * <h2>Implementations</h2>
+ * <p>
+ * The {@link com.wandrell.pattern.outputter.StreamingOutputter
+ * StreamingOutputter} sends the values of an iterator one by one through
+ * another {@code Outputter}, closing the output only at the end. Exporting
+ * the results of a repository query this way keeps the memory used constant,
+ * as the entities are neither copied nor gathered before writing them.
  */
 package com.wandrell.pattern.outputter;
@@ -0,0 +1,165 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * Skeletal implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * .
+ * <p>
+ * All the queries are built on top of {@link #getIterator(Object)
+ * getIterator}, which is the only query method implementations are required to
+ * offer. The rest of them just consume that iterator as much as they need, so
+ * for example {@link #getEntity(Object) getEntity} stops at the first entity
+ * found.
+ * <p>
+ * The counts and aggregates also consume the iterator directly, so the
+ * entities are never gathered into a collection.
+ * <p>
+ * In the same way, the batch operations just add, remove or update each of
+ * the entities in turn.
+ * <p>
+ * Implementations are free to override any of these methods when they can
+ * handle them in a better way.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type being used to filter the entities
+ */
+public abstract class AbstractFilteredRepository<V, F>
+        implements FilteredRepository<V, F> {
+
+    /**
+     * Default constructor.
+     */
+    public AbstractFilteredRepository() {
+        super();
+    }
+
+    @Override
+    public void addAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            add(entity);
+        }
+    }
+
+    @Override
+    public Aggregate aggregate(final F filter,
+            final Function<? super V, ? extends Number> attribute) {
+        return Aggregate.of(getIterator(filter), attribute);
+    }
+
+    @Override
+    public long count(final F filter) {
+        final Iterator<V> itr;
+        long count;
+
+        itr = getIterator(filter);
+
+        count = 0;
+        while (itr.hasNext()) {
+            itr.next();
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public boolean exists(final F filter) {
+        return getIterator(filter).hasNext();
+    }
+
+    @Override
+    public Collection<V> getCollection(final F filter) {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        Iterators.addAll(result, getIterator(filter));
+
+        return result;
+    }
+
+    @Override
+    public Collection<V> getCollection(final F filter, final int limit) {
+        return getPage(filter, 0, limit);
+    }
+
+    @Override
+    public V getEntity(final F filter) {
+        return Iterators.getNext(getIterator(filter), null);
+    }
+
+    @Override
+    public Collection<V> getPage(final F filter, final int offset,
+            final int limit) {
+        final Collection<V> result;
+        final Iterator<V> itr;
+
+        checkArgument(offset >= 0, "Received a negative offset");
+        checkArgument(limit >= 0, "Received a negative limit");
+
+        itr = getIterator(filter);
+        Iterators.advance(itr, offset);
+
+        result = new LinkedList<V>();
+        Iterators.addAll(result, Iterators.limit(itr, limit));
+
+        return result;
+    }
+
+    @Override
+    public void removeAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            remove(entity);
+        }
+    }
+
+    @Override
+    public void updateAll(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            update(entity);
+        }
+    }
+
+}
@@ -0,0 +1,548 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Conjunction or disjunction of predicates which reorders them to reduce the
+ * cost of evaluating it.
+ * <p>
+ * Guava's {@code Predicates.and} and {@code Predicates.or} evaluate their
+ * components in the order they were written. This predicate instead keeps
+ * runtime statistics for each component, its selectivity and its cost, and
+ * periodically sorts them so the cheap components which are most likely to
+ * decide the result are evaluated first. For a conjunction these are those
+ * rejecting most entities, and for a disjunction those accepting most of
+ * them.
+ * <p>
+ * The statistics are gathered on a random sample of the evaluations, which
+ * are timed with a {@code Ticker}. Sampled evaluations short-circuit through
+ * the components in the current order like the rest, so each component is
+ * measured on the entities which reach it. A component which has not been
+ * measured yet is ranked as cheap and decisive, so it is soon moved forward
+ * and measured. As the order is adapted while the predicate is used, a
+ * repository reorders it during the first queries it is used on.
+ * <p>
+ * The result is the same as with the Guava predicates, so the components are
+ * expected to be free of side effects. As they may be evaluated in any
+ * order, each component should also be valid for any entity. A component
+ * guarding another, such as a null check before reading a field, should be
+ * joined with it into a single component. The predicate can be applied by
+ * several threads at the same time.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities to check
+ */
+public final class AdaptivePredicate<V> implements Predicate<V> {
+
+    /**
+     * Statistics for a component of the predicate.
+     * 
+     * @param <V>
+     *            the type of the entities to check
+     */
+    private static final class Component<V> {
+
+        /**
+         * Number of sampled evaluations accepting the entity.
+         */
+        private final AtomicLong           accepted    = new AtomicLong();
+        /**
+         * Number of sampled evaluations.
+         */
+        private final AtomicLong           evaluations = new AtomicLong();
+        /**
+         * Total time spent on the sampled evaluations, in nanoseconds.
+         */
+        private final AtomicLong           nanos       = new AtomicLong();
+        /**
+         * Predicate being measured.
+         */
+        private final Predicate<? super V> predicate;
+        /**
+         * Source for the time spent on the evaluations.
+         */
+        private final Ticker               ticker;
+
+        /**
+         * Constructs statistics for the specified predicate.
+         * 
+         * @param component
+         *            the predicate to measure
+         * @param clock
+         *            source for the time spent on the evaluations
+         */
+        public Component(final Predicate<? super V> component,
+                final Ticker clock) {
+            super();
+
+            predicate = component;
+            ticker = clock;
+        }
+
+        /**
+         * Returns the expected cost of evaluating this component before it
+         * decides the result of the whole predicate.
+         * <p>
+         * This is the average cost of an evaluation divided by the chance of
+         * deciding the result, so lower values should be evaluated first.
+         * 
+         * @param conjunction
+         *            {@code true} if the predicate is a conjunction
+         * @return the rank of the component
+         */
+        public final double getRank(final boolean conjunction) {
+            final double count;
+            final double deciding;
+            final double cost;
+
+            count = evaluations.get();
+            if (conjunction) {
+                deciding = count - accepted.get();
+            } else {
+                deciding = accepted.get();
+            }
+            cost = (nanos.get() + 1) / (count + 1);
+
+            // Smoothed to avoid dividing by zero
+            return cost / ((deciding + 1) / (count + 2));
+        }
+
+        /**
+         * Applies the predicate, measuring the evaluation.
+         * 
+         * @param entity
+         *            the entity to check
+         * @return the result of the predicate
+         */
+        public final boolean measure(final V entity) {
+            final long start;
+            final boolean valid;
+
+            start = ticker.read();
+            valid = predicate.apply(entity);
+            nanos.addAndGet(ticker.read() - start);
+
+            evaluations.incrementAndGet();
+            if (valid) {
+                accepted.incrementAndGet();
+            }
+
+            return valid;
+        }
+
+    }
+
+    /**
+     * Default number of sampled evaluations between reorderings.
+     */
+    private static final int DEFAULT_INTERVAL    = 64;
+    /**
+     * Default ratio of evaluations sampled.
+     */
+    private static final int DEFAULT_SAMPLE_RATE = 32;
+
+    /**
+     * Creates a conjunction of the specified predicates.
+     * 
+     * @param <V>
+     *            the type of the entities to check
+     * @param components
+     *            the predicates which should all be valid
+     * @return an adaptive conjunction of the predicates
+     */
+    public static final <V> AdaptivePredicate<V>
+            and(final Collection<? extends Predicate<? super V>> components) {
+        return new AdaptivePredicate<V>(true, components, DEFAULT_SAMPLE_RATE,
+                DEFAULT_INTERVAL, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a conjunction of the specified predicates.
+     * 
+     * @param <V>
+     *            the type of the entities to check
+     * @param components
+     *            the predicates which should all be valid
+     * @return an adaptive conjunction of the predicates
+     */
+    @SafeVarargs
+    public static final <V> AdaptivePredicate<V>
+            and(final Predicate<? super V>... components) {
+        final List<Predicate<? super V>> copied;
+
+        checkNotNull(components, "Received a null pointer as components");
+
+        // Copied here, as passing on the array is not type safe
+        copied = new ArrayList<Predicate<? super V>>(components.length);
+        for (final Predicate<? super V> component : components) {
+            copied.add(component);
+        }
+
+        return AdaptivePredicate.<V> and(copied);
+    }
+
+    /**
+     * Creates a disjunction of the specified predicates.
+     * 
+     * @param <V>
+     *            the type of the entities to check
+     * @param components
+     *            the predicates of which any should be valid
+     * @return an adaptive disjunction of the predicates
+     */
+    public static final <V> AdaptivePredicate<V>
+            or(final Collection<? extends Predicate<? super V>> components) {
+        return new AdaptivePredicate<V>(false, components,
+                DEFAULT_SAMPLE_RATE, DEFAULT_INTERVAL, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a disjunction of the specified predicates.
+     * 
+     * @param <V>
+     *            the type of the entities to check
+     * @param components
+     *            the predicates of which any should be valid
+     * @return an adaptive disjunction of the predicates
+     */
+    @SafeVarargs
+    public static final <V> AdaptivePredicate<V>
+            or(final Predicate<? super V>... components) {
+        final List<Predicate<? super V>> copied;
+
+        checkNotNull(components, "Received a null pointer as components");
+
+        // Copied here, as passing on the array is not type safe
+        copied = new ArrayList<Predicate<? super V>>(components.length);
+        for (final Predicate<? super V> component : components) {
+            copied.add(component);
+        }
+
+        return AdaptivePredicate.<V> or(copied);
+    }
+
+    /**
+     * Components in the order they were received.
+     */
+    private final List<Component<V>>             components;
+    /**
+     * Flag indicating if this is a conjunction or a disjunction.
+     */
+    private final boolean                        conjunction;
+    /**
+     * Number of sampled evaluations between reorderings.
+     */
+    private final int                            interval;
+    /**
+     * Components in the order they are evaluated.
+     */
+    private volatile ImmutableList<Component<V>> order;
+    /**
+     * Predicates in the order they were received.
+     */
+    private final List<Predicate<? super V>>     predicates;
+    /**
+     * Ratio of evaluations sampled, one of each this many.
+     */
+    private final int                            sampleRate;
+    /**
+     * Number of sampled evaluations.
+     */
+    private final AtomicLong                     samples = new AtomicLong();
+
+    /**
+     * Constructs an {@code AdaptivePredicate} with the specified components
+     * and sampling.
+     * <p>
+     * The {@link #and(Collection) and} and {@link #or(Collection) or} methods
+     * should be enough for most cases. This constructor allows controlling
+     * how the statistics are gathered, for example sampling all the
+     * evaluations with a rate of one.
+     * 
+     * @param and
+     *            {@code true} for a conjunction, {@code false} for a
+     *            disjunction
+     * @param joined
+     *            the predicates being joined
+     * @param rate
+     *            one of each this many evaluations will be sampled
+     * @param reorderInterval
+     *            number of sampled evaluations between reorderings
+     * @param clock
+     *            source for the time spent on the sampled evaluations
+     */
+    public AdaptivePredicate(final boolean and,
+            final Collection<? extends Predicate<? super V>> joined,
+            final int rate, final int reorderInterval, final Ticker clock) {
+        super();
+
+        checkNotNull(joined, "Received a null pointer as components");
+        checkNotNull(clock, "Received a null pointer as ticker");
+        checkArgument(rate > 0, "The sample rate should be positive");
+        checkArgument(reorderInterval > 0,
+                "The reorder interval should be positive");
+
+        conjunction = and;
+        sampleRate = rate;
+        interval = reorderInterval;
+        components = new ArrayList<Component<V>>();
+        for (final Predicate<? super V> predicate : joined) {
+            checkNotNull(predicate, "Received a null pointer as component");
+
+            components.add(new Component<V>(predicate, clock));
+        }
+        predicates = Collections
+                .unmodifiableList(new ArrayList<Predicate<? super V>>(joined));
+
+        order = ImmutableList.copyOf(components);
+    }
+
+    @Override
+    public final boolean apply(final V entity) {
+        final boolean valid;
+
+        if (ThreadLocalRandom.current().nextInt(getSampleRate()) == 0) {
+            valid = applySampled(entity);
+        } else {
+            valid = applyOrdered(entity);
+        }
+
+        return valid;
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final AdaptivePredicate<?> other;
+
+        other = (AdaptivePredicate<?>) obj;
+        return (conjunction == other.conjunction)
+                && Objects.equals(predicates, other.predicates);
+    }
+
+    /**
+     * Returns the components of the predicate, in the order they are
+     * currently evaluated.
+     * 
+     * @return the components in evaluation order
+     */
+    public final List<Predicate<? super V>> getComponents() {
+        return getPredicates(getOrder());
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(conjunction, predicates);
+    }
+
+    /**
+     * Indicates if this is a conjunction.
+     * 
+     * @return {@code true} if this is a conjunction, {@code false} if it is
+     *         a disjunction
+     */
+    public final boolean isConjunction() {
+        return conjunction;
+    }
+
+    @Override
+    public final String toString() {
+        final String operation;
+
+        if (conjunction) {
+            operation = "and";
+        } else {
+            operation = "or";
+        }
+
+        return MoreObjects.toStringHelper(this).add("operation", operation)
+                .add("components", getComponents()).toString();
+    }
+
+    /**
+     * Applies the components in the current order, stopping as soon as one
+     * of them decides the result.
+     * 
+     * @param entity
+     *            the entity to check
+     * @return the result of the predicate
+     */
+    private final boolean applyOrdered(final V entity) {
+        final Iterator<Component<V>> itr;
+        boolean valid;
+
+        // A conjunction stops on the first rejection, and a disjunction on
+        // the first acceptance
+        valid = isConjunction();
+        itr = getOrder().iterator();
+        while ((valid == isConjunction()) && itr.hasNext()) {
+            valid = itr.next().predicate.apply(entity);
+        }
+
+        return valid;
+    }
+
+    /**
+     * Applies and measures the components in the current order, stopping as
+     * soon as one of them decides the result, and reorders them if enough
+     * samples were taken since the last time.
+     * 
+     * @param entity
+     *            the entity to check
+     * @return the result of the predicate
+     */
+    private final boolean applySampled(final V entity) {
+        final Iterator<Component<V>> itr;
+        boolean valid;
+
+        valid = isConjunction();
+        itr = getOrder().iterator();
+        while ((valid == isConjunction()) && itr.hasNext()) {
+            valid = itr.next().measure(entity);
+        }
+
+        if ((getSamples().incrementAndGet() % getInterval()) == 0) {
+            reorder();
+        }
+
+        return valid;
+    }
+
+    /**
+     * Returns the number of sampled evaluations between reorderings.
+     * 
+     * @return the reorder interval
+     */
+    private final int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the components in the order they are evaluated.
+     * 
+     * @return the components in evaluation order
+     */
+    private final List<Component<V>> getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the predicates of the specified components.
+     * 
+     * @param source
+     *            the components to read
+     * @return the predicates of the components
+     */
+    private final List<Predicate<? super V>>
+            getPredicates(final List<Component<V>> source) {
+        final List<Predicate<? super V>> predicates;
+
+        predicates = new ArrayList<Predicate<? super V>>();
+        for (final Component<V> component : source) {
+            predicates.add(component.predicate);
+        }
+
+        return Collections.unmodifiableList(predicates);
+    }
+
+    /**
+     * Returns the ratio of evaluations sampled.
+     * 
+     * @return the sample rate
+     */
+    private final int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the number of sampled evaluations.
+     * 
+     * @return the number of samples
+     */
+    private final AtomicLong getSamples() {
+        return samples;
+    }
+
+    /**
+     * Sorts the components by their rank, and publishes the new order.
+     */
+    private final void reorder() {
+        final List<Component<V>> sorted;
+        final Map<Component<V>, Double> ranks;
+
+        sorted = new ArrayList<Component<V>>(components);
+
+        // The ranks are taken once, as the statistics keep changing
+        ranks = new HashMap<Component<V>, Double>();
+        for (final Component<V> component : sorted) {
+            ranks.put(component, component.getRank(isConjunction()));
+        }
+
+        Collections.sort(sorted, new Comparator<Component<V>>() {
+
+            @Override
+            public final int compare(final Component<V> first,
+                    final Component<V> second) {
+                return Double.compare(ranks.get(first), ranks.get(second));
+            }
+
+        });
+
+        order = ImmutableList.copyOf(sorted);
+    }
+
+}
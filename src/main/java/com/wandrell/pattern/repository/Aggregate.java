@@ -0,0 +1,339 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+
+/**
+ * Summary of a numeric attribute over a set of entities.
+ * <p>
+ * It contains the number of values, along with their sum, minimum, maximum
+ * and average, all computed in a single pass over the entities, without
+ * storing them. Entities where the attribute is {@code null} are ignored.
+ * <p>
+ * Integral values, and also {@code BigDecimal} ones, are summed exactly, so
+ * long values beyond the precision of a {@code double} keep adding up
+ * correctly. Any other value is summed as a {@code double}. The exact sum can
+ * be read with {@link #getExactSum() getExactSum}, while {@link #getSum()
+ * getSum} rounds it only once, at the end. The minimum and maximum are always
+ * handled as {@code double}.
+ * <p>
+ * Summaries of separate sets of entities can be joined with
+ * {@link #merge(Aggregate) merge}.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class Aggregate {
+
+    /**
+     * Summary of an empty set of entities.
+     */
+    private static final Aggregate EMPTY = new Aggregate(0, BigDecimal.ZERO, 0,
+                                                 null, null);
+
+    /**
+     * Returns the summary of an empty set of entities.
+     * 
+     * @return an empty summary
+     */
+    public static final Aggregate empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Computes the summary of an attribute over the entities returned by an
+     * iterator.
+     * 
+     * @param <V>
+     *            the type of the entities
+     * @param entities
+     *            the entities to summarize
+     * @param attribute
+     *            the function reading the attribute
+     * @return the summary of the attribute
+     */
+    public static final <V> Aggregate of(final Iterator<? extends V> entities,
+            final Function<? super V, ? extends Number> attribute) {
+        Number value;
+        BigDecimal exact;
+        double current;
+        double max;
+        double min;
+        double inexact;
+        long integral;
+        long next;
+        long count;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        count = 0;
+        exact = BigDecimal.ZERO;
+        integral = 0;
+        inexact = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        while (entities.hasNext()) {
+            value = attribute.apply(entities.next());
+            if (value != null) {
+                current = value.doubleValue();
+                count++;
+                if (isIntegral(value)) {
+                    // Summed as a long, moved into the exact sum on overflow
+                    next = integral + value.longValue();
+                    if (((integral ^ next) & (value.longValue() ^ next)) < 0) {
+                        exact = exact.add(BigDecimal.valueOf(integral));
+                        integral = value.longValue();
+                    } else {
+                        integral = next;
+                    }
+                } else if (value instanceof BigInteger) {
+                    exact = exact.add(new BigDecimal((BigInteger) value));
+                } else if (value instanceof BigDecimal) {
+                    exact = exact.add((BigDecimal) value);
+                } else {
+                    inexact += current;
+                }
+                min = Math.min(min, current);
+                max = Math.max(max, current);
+            }
+        }
+
+        return of(count, exact.add(BigDecimal.valueOf(integral)), inexact, min,
+                max);
+    }
+
+    /**
+     * Creates a summary with the specified values, or the empty one if there
+     * are no values.
+     * 
+     * @param count
+     *            the number of values
+     * @param exact
+     *            the exact sum of the values
+     * @param inexact
+     *            the sum of the values which can't be summed exactly
+     * @param min
+     *            the lowest value
+     * @param max
+     *            the highest value
+     * @return the summary
+     */
+    private static final Aggregate of(final long count,
+            final BigDecimal exact, final double inexact, final double min,
+            final double max) {
+        final Aggregate result;
+
+        if (count == 0) {
+            result = EMPTY;
+        } else {
+            result = new Aggregate(count, exact, inexact, min, max);
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if a value is of an integral type which fits in a
+     * {@code long}.
+     * 
+     * @param value
+     *            the value to check
+     * @return {@code true} if the value is integral, {@code false} otherwise
+     */
+    private static final boolean isIntegral(final Number value) {
+        return value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong
+                || value instanceof AtomicInteger;
+    }
+
+    /**
+     * Number of values.
+     */
+    private final long       count;
+    /**
+     * Exact sum of the values.
+     */
+    private final BigDecimal exact;
+    /**
+     * Sum of the values which can't be summed exactly.
+     */
+    private final double     inexact;
+    /**
+     * Highest value.
+     */
+    private final Double     maximum;
+    /**
+     * Lowest value.
+     */
+    private final Double     minimum;
+
+    /**
+     * Constructs an {@code Aggregate} with the specified values.
+     * 
+     * @param values
+     *            the number of values
+     * @param total
+     *            the exact sum of the values
+     * @param rest
+     *            the sum of the values which can't be summed exactly
+     * @param lowest
+     *            the lowest value, or {@code null} if there are none
+     * @param highest
+     *            the highest value, or {@code null} if there are none
+     */
+    private Aggregate(final long values, final BigDecimal total,
+            final double rest, final Double lowest, final Double highest) {
+        super();
+
+        count = values;
+        exact = total;
+        inexact = rest;
+        minimum = lowest;
+        maximum = highest;
+    }
+
+    /**
+     * Returns the average of the values.
+     * 
+     * @return the average, or {@code null} if there are no values
+     */
+    public final Double getAverage() {
+        final Double average;
+
+        if (count == 0) {
+            average = null;
+        } else {
+            average = getSum() / count;
+        }
+
+        return average;
+    }
+
+    /**
+     * Returns the number of values.
+     * 
+     * @return the number of values
+     */
+    public final long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the exact sum of the values.
+     * <p>
+     * Values which are not integral, nor {@code BigDecimal}, are summed as a
+     * {@code double}, and this sum is added with its exact binary value.
+     * 
+     * @return the exact sum of the values, zero if there are none, or
+     *         {@code null} if the values which are not integral add up to an
+     *         infinite or NaN value
+     */
+    public final BigDecimal getExactSum() {
+        final BigDecimal result;
+
+        if (Double.isNaN(inexact) || Double.isInfinite(inexact)) {
+            result = null;
+        } else {
+            result = exact.add(new BigDecimal(inexact));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the highest value.
+     * 
+     * @return the highest value, or {@code null} if there are no values
+     */
+    public final Double getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the lowest value.
+     * 
+     * @return the lowest value, or {@code null} if there are no values
+     */
+    public final Double getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * Returns the sum of the values.
+     * <p>
+     * The exact sum is rounded once to a {@code double}, so integral values
+     * are not rounded one by one as they are added.
+     * 
+     * @return the sum of the values, zero if there are none
+     */
+    public final double getSum() {
+        return exact.doubleValue() + inexact;
+    }
+
+    /**
+     * Joins this summary with the one of a separate set of entities.
+     * 
+     * @param other
+     *            the summary to join
+     * @return a summary covering both sets of entities
+     */
+    public final Aggregate merge(final Aggregate other) {
+        final Aggregate result;
+
+        checkNotNull(other, "Received a null pointer as aggregate");
+
+        if (other.count == 0) {
+            result = this;
+        } else if (count == 0) {
+            result = other;
+        } else {
+            result = of(count + other.count, exact.add(other.exact),
+                    inexact + other.inexact, Math.min(minimum, other.minimum),
+                    Math.max(maximum, other.maximum));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("count", count)
+                .add("sum", getSum()).add("minimum", minimum)
+                .add("maximum", maximum).add("average", getAverage())
+                .toString();
+    }
+
+}
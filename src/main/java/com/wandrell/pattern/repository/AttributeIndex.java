@@ -0,0 +1,208 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Hash-based {@link com.wandrell.pattern.repository.EntityIndex EntityIndex}
+ * for a single attribute of the entities.
+ * <p>
+ * The attribute is read from each entity through a Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Function.html">
+ * Function</a>, and the entities are grouped by its value. This way equality
+ * lookups don't need to scan the repository, instead they go directly to the
+ * entities having the queried value.
+ * <p>
+ * These lookups are created with the {@link #equalTo(Object) equalTo} and
+ * {@link #in(Object...) in} methods, which return predicates the index knows
+ * how to resolve. If these predicates are used on a repository where the index
+ * is not registered, they will still work, but by checking each entity.
+ * <p>
+ * The attribute is expected to be immutable, as the index won't know about
+ * changes done to the entities outside of the repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class AttributeIndex<V> implements EntityIndex<V> {
+
+    /**
+     * Entities grouped by the attribute value.
+     */
+    private final Multimap<Object, V>    entries;
+    /**
+     * Function which reads the attribute from the entities.
+     */
+    private final Function<? super V, ?> extractor;
+    /**
+     * Name of the index.
+     */
+    private final String                 name;
+
+    /**
+     * Constructs an {@code AttributeIndex} with the specified name and
+     * attribute extractor.
+     * 
+     * @param indexName
+     *            the name of the index
+     * @param attribute
+     *            the function which reads the indexed attribute
+     */
+    public AttributeIndex(final String indexName,
+            final Function<? super V, ?> attribute) {
+        super();
+
+        checkNotNull(indexName, "Received a null pointer as name");
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        name = indexName;
+        extractor = attribute;
+        entries = LinkedHashMultimap.create();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getEntries().put(getExtractor().apply(entity), entity);
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is equal
+     * to the specified value.
+     * 
+     * @param value
+     *            the value to search for
+     * @return a predicate which can be resolved through this index
+     */
+    public final AttributePredicate<V> equalTo(final Object value) {
+        return in(value);
+    }
+
+    @Override
+    public final Iterable<V> find(final Predicate<V> filter) {
+        final Collection<Iterable<V>> groups;
+        final Iterable<V> result;
+
+        if (isResolved(filter)) {
+            groups = new LinkedList<Iterable<V>>();
+            for (final Object value : ((AttributePredicate<V>) filter)
+                    .getValues()) {
+                groups.add(getEntries().get(value));
+            }
+            result = Iterables.concat(groups);
+        } else {
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the function which reads the indexed attribute.
+     * 
+     * @return the function which reads the attribute
+     */
+    public final Function<? super V, ?> getExtractor() {
+        return extractor;
+    }
+
+    /**
+     * Returns the name of the index.
+     * 
+     * @return the name of the index
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is equal
+     * to any of the specified values.
+     * 
+     * @param values
+     *            the values to search for
+     * @return a predicate which can be resolved through this index
+     */
+    public final AttributePredicate<V> in(final Collection<?> values) {
+        checkNotNull(values, "Received a null pointer as values");
+
+        return new AttributePredicate<V>(this,
+                new LinkedHashSet<Object>(values));
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is equal
+     * to any of the specified values.
+     * 
+     * @param values
+     *            the values to search for
+     * @return a predicate which can be resolved through this index
+     */
+    public final AttributePredicate<V> in(final Object... values) {
+        checkNotNull(values, "Received a null pointer as values");
+
+        return in(Arrays.asList(values));
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getEntries().remove(getExtractor().apply(entity), entity);
+    }
+
+    /**
+     * Returns the entities grouped by the attribute value.
+     * 
+     * @return the indexed entities
+     */
+    private final Multimap<Object, V> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Indicates if the filter can be resolved through this index.
+     * 
+     * @param filter
+     *            the filter to check
+     * @return {@code true} if the filter was created by this index,
+     *         {@code false} otherwise
+     */
+    private final boolean isResolved(final Predicate<V> filter) {
+        return (filter instanceof AttributePredicate)
+                && (((AttributePredicate<V>) filter).getIndex() == this);
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+
+/**
+ * Predicate checking the value of an attribute indexed by an
+ * {@link com.wandrell.pattern.repository.AttributeIndex AttributeIndex}.
+ * <p>
+ * It accepts the entities where the attribute is equal to any of a set of
+ * values. When the index which created it is registered on the repository
+ * being queried the matching entities will be acquired through it, otherwise
+ * the predicate is applied to each entity as usual.
+ * <p>
+ * Instances are created through the {@code AttributeIndex} methods.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class AttributePredicate<V> implements Predicate<V> {
+
+    /**
+     * Index which created this predicate.
+     */
+    private final AttributeIndex<V> index;
+    /**
+     * Values accepted for the attribute.
+     */
+    private final Set<Object>       values;
+
+    /**
+     * Constructs an {@code AttributePredicate} for the specified index and
+     * values.
+     * 
+     * @param attributeIndex
+     *            the index which creates the predicate
+     * @param accepted
+     *            the values accepted for the attribute
+     */
+    AttributePredicate(final AttributeIndex<V> attributeIndex,
+            final Set<Object> accepted) {
+        super();
+
+        checkNotNull(attributeIndex, "Received a null pointer as index");
+        checkNotNull(accepted, "Received a null pointer as values");
+
+        index = attributeIndex;
+        values = Collections.unmodifiableSet(accepted);
+    }
+
+    @Override
+    public final boolean apply(final V entity) {
+        return getValues().contains(getIndex().getExtractor().apply(entity));
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final AttributePredicate<?> other;
+
+        other = (AttributePredicate<?>) obj;
+        return (index == other.index) && Objects.equals(values, other.values);
+    }
+
+    /**
+     * Returns the index which created this predicate.
+     * 
+     * @return the index for the attribute
+     */
+    public final AttributeIndex<V> getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the values accepted for the attribute.
+     * 
+     * @return the accepted values
+     */
+    public final Set<Object> getValues() {
+        return values;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(System.identityHashCode(index), values);
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("index", index.getName())
+                .add("values", values).toString();
+    }
+
+}
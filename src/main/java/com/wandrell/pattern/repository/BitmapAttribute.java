@@ -0,0 +1,231 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+
+/**
+ * Attribute indexed by a {@link BitmapIndex}.
+ * <p>
+ * For each value of the attribute a bitmap is kept, marking the entities in
+ * the index having that value. As a bitmap is needed for each value, this is
+ * meant for attributes with few distinct values, such as statuses or types.
+ * <p>
+ * Attributes are created by the index, and serve to create the
+ * {@link BitmapPredicate} instances which the index knows how to resolve.
+ * <p>
+ * The attribute is expected to be immutable, as the index won't know about
+ * changes done to the entities outside of the repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class BitmapAttribute<V> {
+
+    /**
+     * Bitmap of the entities for each value.
+     */
+    private final Map<Object, CompressedBitmap> bitmaps;
+    /**
+     * Reads the attribute from the entities.
+     */
+    private final Function<? super V, ?>        extractor;
+    /**
+     * Index containing the attribute.
+     */
+    private final BitmapIndex<V>                index;
+    /**
+     * Name of the attribute.
+     */
+    private final String                        name;
+
+    /**
+     * Constructs an attribute.
+     * 
+     * @param owner
+     *            index containing the attribute
+     * @param attributeName
+     *            name of the attribute
+     * @param attribute
+     *            reads the attribute from the entities
+     */
+    BitmapAttribute(final BitmapIndex<V> owner, final String attributeName,
+            final Function<? super V, ?> attribute) {
+        super();
+
+        index = owner;
+        name = attributeName;
+        extractor = attribute;
+        bitmaps = new HashMap<Object, CompressedBitmap>();
+    }
+
+    /**
+     * Creates a predicate for the entities with the specified value.
+     * 
+     * @param value
+     *            value to look for
+     * @return a predicate for the value
+     */
+    public final BitmapPredicate<V> equalTo(final Object value) {
+        return in(value);
+    }
+
+    /**
+     * Returns the function reading the attribute from the entities.
+     * 
+     * @return the function for the attribute
+     */
+    public final Function<? super V, ?> getExtractor() {
+        return extractor;
+    }
+
+    /**
+     * Returns the name of the attribute.
+     * 
+     * @return the name of the attribute
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a predicate for the entities with any of the specified values.
+     * 
+     * @param values
+     *            values to look for
+     * @return a predicate for the values
+     */
+    public final BitmapPredicate<V> in(final Collection<?> values) {
+        checkNotNull(values, "Received a null pointer as values");
+
+        return new BitmapPredicate<V>(this, new LinkedHashSet<Object>(values));
+    }
+
+    /**
+     * Creates a predicate for the entities with any of the specified values.
+     * 
+     * @param values
+     *            values to look for
+     * @return a predicate for the values
+     */
+    public final BitmapPredicate<V> in(final Object... values) {
+        checkNotNull(values, "Received a null pointer as values");
+
+        return in(Arrays.asList(values));
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("name", name)
+                .add("values", bitmaps.size()).toString();
+    }
+
+    /**
+     * Marks an entity in the bitmap for its value.
+     * 
+     * @param id
+     *            id of the entity in the index
+     * @param entity
+     *            the entity
+     */
+    final void add(final int id, final V entity) {
+        final Object value;
+        CompressedBitmap bitmap;
+
+        value = extractor.apply(entity);
+        bitmap = bitmaps.get(value);
+        if (bitmap == null) {
+            bitmap = new CompressedBitmap();
+            bitmaps.put(value, bitmap);
+        }
+
+        bitmap.add(id);
+    }
+
+    /**
+     * Returns the bitmap for the entities with any of the specified values.
+     * 
+     * @param values
+     *            values to look for
+     * @return the bitmap for the values
+     */
+    final CompressedBitmap getBitmap(final Set<Object> values) {
+        CompressedBitmap result;
+        CompressedBitmap bitmap;
+
+        result = new CompressedBitmap();
+        for (final Object value : values) {
+            bitmap = bitmaps.get(value);
+            if (bitmap != null) {
+                result = CompressedBitmap.or(result, bitmap);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index containing the attribute.
+     * 
+     * @return the index containing the attribute
+     */
+    final BitmapIndex<V> getIndex() {
+        return index;
+    }
+
+    /**
+     * Unmarks an entity in the bitmap for its value.
+     * 
+     * @param id
+     *            id of the entity in the index
+     * @param entity
+     *            the entity
+     */
+    final void remove(final int id, final V entity) {
+        final Object value;
+        final CompressedBitmap bitmap;
+
+        value = extractor.apply(entity);
+        bitmap = bitmaps.get(value);
+        if (bitmap != null) {
+            bitmap.remove(id);
+            if (bitmap.getCardinality() == 0) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,517 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Arrays;
+
+/**
+ * Container for the lower 16 bits of the values in a {@link CompressedBitmap}
+ * sharing the same upper 16 bits.
+ * <p>
+ * Small containers keep their values in a sorted {@code char} array, which
+ * takes two bytes per value. Once they grow past {@link #ARRAY_LIMIT} values
+ * they switch to a plain bitmap of 65536 bits, which takes a fixed 8 KB, and
+ * they switch back if they shrink again. This way a container never takes
+ * more than 8 KB, no matter how dense or sparse its values are.
+ * <p>
+ * The operations combining containers return new instances, and never modify
+ * those received.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+final class BitmapContainer {
+
+    /**
+     * Maximum number of values kept in array form.
+     */
+    private static final int ARRAY_LIMIT = 4096;
+    /**
+     * Number of words in bitmap form.
+     */
+    private static final int WORDS       = 1024;
+
+    /**
+     * Returns a container with the values in both containers.
+     * 
+     * @param first
+     *            first container
+     * @param second
+     *            second container
+     * @return the intersection of both containers
+     */
+    public static final BitmapContainer and(final BitmapContainer first,
+            final BitmapContainer second) {
+        final BitmapContainer result;
+        final long[] words;
+
+        if ((first.words != null) && (second.words != null)) {
+            words = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                words[i] = first.words[i] & second.words[i];
+            }
+            result = fromWords(words);
+        } else if (first.words == null) {
+            result = filter(first, second, true);
+        } else {
+            result = filter(second, first, true);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a container with the values in the first container but not in
+     * the second.
+     * 
+     * @param first
+     *            first container
+     * @param second
+     *            second container
+     * @return the difference between both containers
+     */
+    public static final BitmapContainer andNot(final BitmapContainer first,
+            final BitmapContainer second) {
+        final BitmapContainer result;
+        final long[] words;
+        char value;
+
+        if (first.words == null) {
+            result = filter(first, second, false);
+        } else {
+            if (second.words == null) {
+                words = first.words.clone();
+                for (int i = 0; i < second.cardinality; i++) {
+                    value = second.array[i];
+                    words[value >>> 6] &= ~(1L << value);
+                }
+            } else {
+                words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = first.words[i] & ~second.words[i];
+                }
+            }
+            result = fromWords(words);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a container with the values in any of the containers.
+     * 
+     * @param first
+     *            first container
+     * @param second
+     *            second container
+     * @return the union of both containers
+     */
+    public static final BitmapContainer or(final BitmapContainer first,
+            final BitmapContainer second) {
+        final BitmapContainer result;
+        final long[] words;
+
+        if ((first.words == null) && (second.words == null)) {
+            result = merge(first, second);
+        } else {
+            words = new long[WORDS];
+            first.setBits(words);
+            second.setBits(words);
+            result = fromWords(words);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a container with the values of the array container which are,
+     * or are not, in the other container.
+     * 
+     * @param source
+     *            array container to filter
+     * @param other
+     *            container to check
+     * @param contained
+     *            {@code true} to keep the values in the other container,
+     *            {@code false} to keep those not in it
+     * @return the filtered container
+     */
+    private static final BitmapContainer filter(final BitmapContainer source,
+            final BitmapContainer other, final boolean contained) {
+        final char[] values;
+        int count;
+
+        values = new char[source.cardinality];
+        count = 0;
+        for (int i = 0; i < source.cardinality; i++) {
+            if (other.contains(source.array[i]) == contained) {
+                values[count] = source.array[i];
+                count++;
+            }
+        }
+
+        return new BitmapContainer(values, count, null);
+    }
+
+    /**
+     * Creates a container from a bitmap, choosing the best form for it.
+     * 
+     * @param words
+     *            the bitmap
+     * @return a container for the bitmap
+     */
+    private static final BitmapContainer fromWords(final long[] words) {
+        final BitmapContainer result;
+        int count;
+
+        count = 0;
+        for (final long word : words) {
+            count += Long.bitCount(word);
+        }
+
+        if (count > ARRAY_LIMIT) {
+            result = new BitmapContainer(null, count, words);
+        } else {
+            result = new BitmapContainer(toArray(words, count), count, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Merges two array containers.
+     * 
+     * @param first
+     *            first container
+     * @param second
+     *            second container
+     * @return the union of both containers
+     */
+    private static final BitmapContainer merge(final BitmapContainer first,
+            final BitmapContainer second) {
+        final BitmapContainer result;
+        final char[] values;
+        final long[] words;
+        int count;
+        int i;
+        int j;
+
+        values = new char[first.cardinality + second.cardinality];
+        count = 0;
+        i = 0;
+        j = 0;
+        while ((i < first.cardinality) || (j < second.cardinality)) {
+            if ((j == second.cardinality) || ((i < first.cardinality)
+                    && (first.array[i] < second.array[j]))) {
+                values[count] = first.array[i];
+                i++;
+            } else if ((i == first.cardinality)
+                    || (second.array[j] < first.array[i])) {
+                values[count] = second.array[j];
+                j++;
+            } else {
+                values[count] = first.array[i];
+                i++;
+                j++;
+            }
+            count++;
+        }
+
+        if (count > ARRAY_LIMIT) {
+            words = new long[WORDS];
+            for (int k = 0; k < count; k++) {
+                words[values[k] >>> 6] |= 1L << values[k];
+            }
+            result = new BitmapContainer(null, count, words);
+        } else {
+            result = new BitmapContainer(values, count, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the values set in a bitmap, in order.
+     * 
+     * @param words
+     *            the bitmap
+     * @param count
+     *            number of values set
+     * @return the values set
+     */
+    private static final char[] toArray(final long[] words, final int count) {
+        final char[] values;
+        long word;
+        int index;
+
+        values = new char[Math.max(count, 4)];
+        index = 0;
+        for (int i = 0; i < WORDS; i++) {
+            word = words[i];
+            while (word != 0) {
+                values[index] = (char) ((i << 6)
+                        + Long.numberOfTrailingZeros(word));
+                index++;
+                // Clears the lowest bit set
+                word &= word - 1;
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Values in array form, or {@code null} if in bitmap form.
+     */
+    private char[] array;
+    /**
+     * Number of values in the container.
+     */
+    private int    cardinality;
+    /**
+     * Values in bitmap form, or {@code null} if in array form.
+     */
+    private long[] words;
+
+    /**
+     * Constructs an empty container.
+     */
+    public BitmapContainer() {
+        this(new char[4], 0, null);
+    }
+
+    /**
+     * Constructs a container with the specified values.
+     * 
+     * @param values
+     *            sorted values, or {@code null} for bitmap form
+     * @param count
+     *            number of values
+     * @param bitmap
+     *            values as a bitmap, or {@code null} for array form
+     */
+    private BitmapContainer(final char[] values, final int count,
+            final long[] bitmap) {
+        super();
+
+        array = values;
+        cardinality = count;
+        words = bitmap;
+    }
+
+    /**
+     * Adds a value to the container.
+     * 
+     * @param value
+     *            the value to add
+     * @return {@code true} if the value was added, {@code false} if it was
+     *         already in the container
+     */
+    public final boolean add(final char value) {
+        final boolean added;
+        final int position;
+        final long[] bitmap;
+
+        if (words != null) {
+            added = (words[value >>> 6] & (1L << value)) == 0;
+            if (added) {
+                words[value >>> 6] |= 1L << value;
+                cardinality++;
+            }
+        } else {
+            position = Arrays.binarySearch(array, 0, cardinality, value);
+            added = position < 0;
+            if (added && (cardinality == ARRAY_LIMIT)) {
+                bitmap = new long[WORDS];
+                setBits(bitmap);
+                bitmap[value >>> 6] |= 1L << value;
+                words = bitmap;
+                array = null;
+                cardinality++;
+            } else if (added) {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.max(4,
+                            Math.min(array.length * 2, ARRAY_LIMIT)));
+                }
+                System.arraycopy(array, -position - 1, array, -position,
+                        cardinality + position + 1);
+                array[-position - 1] = value;
+                cardinality++;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Indicates if the container has the specified value.
+     * 
+     * @param value
+     *            the value to check
+     * @return {@code true} if the value is in the container, {@code false}
+     *         otherwise
+     */
+    public final boolean contains(final char value) {
+        final boolean found;
+
+        if (words != null) {
+            found = (words[value >>> 6] & (1L << value)) != 0;
+        } else {
+            found = Arrays.binarySearch(array, 0, cardinality, value) >= 0;
+        }
+
+        return found;
+    }
+
+    /**
+     * Returns a copy of the container, which can be modified without
+     * affecting this one.
+     * 
+     * @return a copy of the container
+     */
+    public final BitmapContainer copy() {
+        final BitmapContainer result;
+
+        if (words != null) {
+            result = new BitmapContainer(null, cardinality, words.clone());
+        } else {
+            result = new BitmapContainer(array.clone(), cardinality, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of values in the container.
+     * 
+     * @return the number of values
+     */
+    public final int getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Indicates if the container has no values.
+     * 
+     * @return {@code true} if the container is empty, {@code false}
+     *         otherwise
+     */
+    public final boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Returns the lowest value in the container equal to or greater than the
+     * specified one.
+     * 
+     * @param from
+     *            the value to start searching from
+     * @return the next value, or {@code -1} if there is none
+     */
+    public final int next(final int from) {
+        int position;
+        int result;
+        long word;
+
+        result = -1;
+        if (from >= (WORDS << 6)) {
+            // Nothing left
+        } else if (words != null) {
+            position = from >>> 6;
+            word = words[position] & (-1L << from);
+            while ((word == 0) && (position < WORDS - 1)) {
+                position++;
+                word = words[position];
+            }
+            if (word != 0) {
+                result = (position << 6) + Long.numberOfTrailingZeros(word);
+            }
+        } else {
+            position = Arrays.binarySearch(array, 0, cardinality,
+                    (char) from);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            if (position < cardinality) {
+                result = array[position];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes a value from the container.
+     * 
+     * @param value
+     *            the value to remove
+     * @return {@code true} if the value was removed, {@code false} if it was
+     *         not in the container
+     */
+    public final boolean remove(final char value) {
+        final boolean removed;
+        final int position;
+
+        if (words != null) {
+            removed = (words[value >>> 6] & (1L << value)) != 0;
+            if (removed) {
+                words[value >>> 6] &= ~(1L << value);
+                cardinality--;
+                if (cardinality <= ARRAY_LIMIT) {
+                    array = toArray(words, cardinality);
+                    words = null;
+                }
+            }
+        } else {
+            position = Arrays.binarySearch(array, 0, cardinality, value);
+            removed = position >= 0;
+            if (removed) {
+                System.arraycopy(array, position + 1, array, position,
+                        cardinality - position - 1);
+                cardinality--;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Sets the bits for the values of this container into a bitmap.
+     * 
+     * @param bitmap
+     *            the bitmap to modify
+     */
+    private final void setBits(final long[] bitmap) {
+        if (words != null) {
+            for (int i = 0; i < WORDS; i++) {
+                bitmap[i] |= words[i];
+            }
+        } else {
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Bitmap-based {@link com.wandrell.pattern.repository.EntityIndex EntityIndex}
+ * for attributes with few distinct values.
+ * <p>
+ * Each entity in the index receives a numeric id, and for each value of the
+ * indexed attributes a compressed bitmap is kept, marking the ids of the
+ * entities with that value. The bitmaps follow the design of Roaring bitmaps,
+ * so they stay small both when few and when most of the entities have a
+ * value.
+ * <p>
+ * Attributes are registered with {@link #addAttribute(String, Function)
+ * addAttribute}, and create {@link BitmapPredicate} instances. These can be
+ * combined with {@code and}, {@code or} and {@code not}, and the index
+ * resolves the whole combination by combining bitmaps, before any entity is
+ * touched. Only the entities in the final bitmap are returned as candidates.
+ * <p>
+ * All the attributes of an index share the same ids, so they can be combined
+ * freely with each other, but not with those of other indexes.
+ * <p>
+ * The attributes are expected to be immutable, as the index won't know about
+ * changes done to the entities outside of the repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class BitmapIndex<V> implements EntityIndex<V> {
+
+    /**
+     * Bitmap of all the ids in use.
+     */
+    private final CompressedBitmap               all;
+    /**
+     * Attributes indexed.
+     */
+    private final Collection<BitmapAttribute<V>> attributes;
+    /**
+     * Entities indexed, stored at the position of their id.
+     */
+    private Object[]                             entities;
+    /**
+     * Ids released by removed entities, to be reused.
+     */
+    private int[]                                freeIds;
+    /**
+     * Number of released ids.
+     */
+    private int                                  freeCount;
+    /**
+     * Id for each entity.
+     */
+    private final Map<V, Integer>                ids;
+    /**
+     * Lowest id never used.
+     */
+    private int                                  nextId;
+
+    /**
+     * Constructs an empty {@code BitmapIndex}.
+     */
+    public BitmapIndex() {
+        super();
+
+        all = new CompressedBitmap();
+        attributes = new ArrayList<BitmapAttribute<V>>();
+        entities = new Object[16];
+        freeIds = new int[16];
+        ids = new HashMap<V, Integer>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final int id;
+
+        if (!ids.containsKey(entity)) {
+            id = allocateId();
+            ids.put(entity, id);
+            entities[id] = entity;
+            all.add(id);
+
+            for (final BitmapAttribute<V> attribute : attributes) {
+                attribute.add(id, entity);
+            }
+        }
+    }
+
+    /**
+     * Registers a new attribute.
+     * <p>
+     * The entities already in the index are added to the bitmaps of the
+     * attribute.
+     * 
+     * @param name
+     *            name of the attribute
+     * @param extractor
+     *            reads the attribute from the entities
+     * @return the new attribute
+     */
+    @SuppressWarnings("unchecked")
+    public final BitmapAttribute<V> addAttribute(final String name,
+            final Function<? super V, ?> extractor) {
+        final BitmapAttribute<V> attribute;
+
+        checkNotNull(name, "Received a null pointer as name");
+        checkNotNull(extractor, "Received a null pointer as extractor");
+
+        attribute = new BitmapAttribute<V>(this, name, extractor);
+        for (final Integer id : ids.values()) {
+            attribute.add(id, (V) entities[id]);
+        }
+
+        attributes.add(attribute);
+
+        return attribute;
+    }
+
+    @Override
+    public final Iterable<V> find(final Predicate<V> filter) {
+        final CompressedBitmap matches;
+        final Iterable<V> result;
+
+        if ((filter instanceof BitmapPredicate)
+                && (((BitmapPredicate<V>) filter).getIndex() == this)) {
+            matches = ((BitmapPredicate<V>) filter).evaluate(all);
+            result = new Iterable<V>() {
+
+                @Override
+                public final Iterator<V> iterator() {
+                    return getIterator(matches);
+                }
+
+            };
+        } else {
+            result = null;
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void remove(final V entity) {
+        final Integer id;
+        final V stored;
+
+        id = ids.remove(entity);
+        if (id != null) {
+            stored = (V) entities[id];
+            for (final BitmapAttribute<V> attribute : attributes) {
+                attribute.remove(id, stored);
+            }
+
+            all.remove(id);
+            entities[id] = null;
+            releaseId(id);
+        }
+    }
+
+    /**
+     * Returns an id for a new entity.
+     * <p>
+     * Released ids are reused first, to keep the bitmaps dense.
+     * 
+     * @return an unused id
+     */
+    private final int allocateId() {
+        final int id;
+
+        if (freeCount > 0) {
+            freeCount--;
+            id = freeIds[freeCount];
+        } else {
+            id = nextId;
+            nextId++;
+            if (id == entities.length) {
+                entities = Arrays.copyOf(entities, entities.length * 2);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns an iterator over the entities with the ids in the bitmap.
+     * 
+     * @param matches
+     *            ids of the entities to return
+     * @return an iterator over the entities
+     */
+    private final Iterator<V>
+            getIterator(final CompressedBitmap matches) {
+        return new AbstractIterator<V>() {
+
+            /**
+             * Id from which to search the next match.
+             */
+            private int from = 0;
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected final V computeNext() {
+                final int id;
+                final V result;
+
+                id = matches.next(from);
+                if (id < 0) {
+                    result = endOfData();
+                } else {
+                    result = (V) entities[id];
+                    from = id + 1;
+                }
+
+                return result;
+            }
+
+        };
+    }
+
+    /**
+     * Releases the id of a removed entity, so it can be reused.
+     * 
+     * @param id
+     *            the released id
+     */
+    private final void releaseId(final int id) {
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+
+        freeIds[freeCount] = id;
+        freeCount++;
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Predicate checking attributes indexed by a {@link BitmapIndex}.
+ * <p>
+ * The simplest predicates accept the entities where an attribute has any of a
+ * set of values, and are created through the {@link BitmapAttribute} methods.
+ * These can then be combined with {@link #and(BitmapPredicate) and},
+ * {@link #or(BitmapPredicate) or} and {@link #not() not}, as long as all of
+ * them come from the same index.
+ * <p>
+ * When the index is registered on the repository being queried, the whole
+ * combination is resolved by combining the bitmaps of each attribute value,
+ * and only the entities in the resulting bitmap are checked. Otherwise the
+ * predicate is applied to each entity as usual.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class BitmapPredicate<V> implements Predicate<V> {
+
+    /**
+     * Types of predicate.
+     * 
+     * @author Bernardo Martínez Garrido
+     */
+    private enum Operation {
+
+        /**
+         * Accepts entities accepted by all the children.
+         */
+        AND,
+        /**
+         * Accepts entities with any of the values.
+         */
+        IN,
+        /**
+         * Accepts entities not accepted by the child.
+         */
+        NOT,
+        /**
+         * Accepts entities accepted by any of the children.
+         */
+        OR
+
+    }
+
+    /**
+     * Attribute to check, only for {@code IN}.
+     */
+    private final BitmapAttribute<V>       attribute;
+    /**
+     * Combined predicates, for the rest of operations.
+     */
+    private final List<BitmapPredicate<V>> children;
+    /**
+     * Index containing the attributes checked.
+     */
+    private final BitmapIndex<V>           index;
+    /**
+     * Type of predicate.
+     */
+    private final Operation                operation;
+    /**
+     * Values accepted, only for {@code IN}.
+     */
+    private final Set<Object>              values;
+
+    /**
+     * Constructs a predicate accepting the entities where the attribute has
+     * any of the values.
+     * 
+     * @param attr
+     *            attribute to check
+     * @param accepted
+     *            values accepted
+     */
+    BitmapPredicate(final BitmapAttribute<V> attr,
+            final Set<Object> accepted) {
+        super();
+
+        operation = Operation.IN;
+        index = attr.getIndex();
+        attribute = attr;
+        values = Collections.unmodifiableSet(accepted);
+        children = ImmutableList.of();
+    }
+
+    /**
+     * Constructs a predicate combining others.
+     * 
+     * @param op
+     *            type of combination
+     * @param combined
+     *            predicates combined
+     */
+    private BitmapPredicate(final Operation op,
+            final List<BitmapPredicate<V>> combined) {
+        super();
+
+        operation = op;
+        index = combined.get(0).getIndex();
+        attribute = null;
+        values = Collections.emptySet();
+        children = combined;
+    }
+
+    /**
+     * Combines this predicate with another, returning a predicate accepting
+     * only the entities accepted by both.
+     * 
+     * @param other
+     *            the predicate to combine with
+     * @return a predicate accepting the entities accepted by both
+     */
+    public final BitmapPredicate<V> and(final BitmapPredicate<V> other) {
+        return combine(Operation.AND, other);
+    }
+
+    @Override
+    public final boolean apply(final V entity) {
+        final boolean result;
+        boolean valid;
+
+        if (operation == Operation.IN) {
+            result = values.contains(attribute.getExtractor().apply(entity));
+        } else if (operation == Operation.NOT) {
+            result = !children.get(0).apply(entity);
+        } else if (operation == Operation.AND) {
+            valid = true;
+            for (final BitmapPredicate<V> child : children) {
+                valid = valid && child.apply(entity);
+            }
+            result = valid;
+        } else {
+            valid = false;
+            for (final BitmapPredicate<V> child : children) {
+                valid = valid || child.apply(entity);
+            }
+            result = valid;
+        }
+
+        return result;
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final BitmapPredicate<?> other;
+
+        other = (BitmapPredicate<?>) obj;
+        return (operation == other.operation)
+                && (attribute == other.attribute)
+                && Objects.equals(values, other.values)
+                && Objects.equals(children, other.children);
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(operation, System.identityHashCode(attribute),
+                values, children);
+    }
+
+    /**
+     * Returns a predicate accepting the entities not accepted by this one.
+     * 
+     * @return the negation of this predicate
+     */
+    public final BitmapPredicate<V> not() {
+        return new BitmapPredicate<V>(Operation.NOT,
+                ImmutableList.of(this));
+    }
+
+    /**
+     * Combines this predicate with another, returning a predicate accepting
+     * the entities accepted by any of them.
+     * 
+     * @param other
+     *            the predicate to combine with
+     * @return a predicate accepting the entities accepted by any
+     */
+    public final BitmapPredicate<V> or(final BitmapPredicate<V> other) {
+        return combine(Operation.OR, other);
+    }
+
+    @Override
+    public final String toString() {
+        final String result;
+
+        if (operation == Operation.IN) {
+            result = MoreObjects.toStringHelper(this)
+                    .add("attribute", attribute.getName())
+                    .add("values", values).toString();
+        } else {
+            result = MoreObjects.toStringHelper(this)
+                    .add("operation", operation).add("children", children)
+                    .toString();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the bitmap of the entities accepted by this predicate.
+     * 
+     * @param all
+     *            bitmap of all the entities in the index
+     * @return the bitmap of the accepted entities
+     */
+    final CompressedBitmap evaluate(final CompressedBitmap all) {
+        CompressedBitmap result;
+
+        if (operation == Operation.IN) {
+            result = attribute.getBitmap(values);
+        } else if (operation == Operation.NOT) {
+            result = CompressedBitmap.andNot(all,
+                    children.get(0).evaluate(all));
+        } else {
+            result = children.get(0).evaluate(all);
+            for (final BitmapPredicate<V> child : children.subList(1,
+                    children.size())) {
+                if (operation == Operation.AND) {
+                    result = CompressedBitmap.and(result, child.evaluate(all));
+                } else {
+                    result = CompressedBitmap.or(result, child.evaluate(all));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index containing the attributes checked.
+     * 
+     * @return the index for the predicate
+     */
+    final BitmapIndex<V> getIndex() {
+        return index;
+    }
+
+    /**
+     * Combines this predicate with another.
+     * <p>
+     * If this predicate is already of the same type, the other is added to
+     * its children, so chains of the same operation are kept flat.
+     * 
+     * @param op
+     *            type of combination
+     * @param other
+     *            the predicate to combine with
+     * @return the combined predicate
+     */
+    private final BitmapPredicate<V> combine(final Operation op,
+            final BitmapPredicate<V> other) {
+        final List<BitmapPredicate<V>> combined;
+
+        checkNotNull(other, "Received a null pointer as predicate");
+        checkArgument(other.getIndex() == getIndex(),
+                "The predicates belong to different indexes");
+
+        if (operation == op) {
+            combined = ImmutableList.<BitmapPredicate<V>> builder()
+                    .addAll(children).add(other).build();
+        } else {
+            combined = ImmutableList.of(this, other);
+        }
+
+        return new BitmapPredicate<V>(op, combined);
+    }
+
+}
@@ -0,0 +1,479 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Decorator for a
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * which caches the results of its queries.
+ * <p>
+ * The results of {@link #getCollection(Object) getCollection} and
+ * {@link #getEntity(Object) getEntity} are stored for each filter, so asking
+ * again with an equal filter won't query the wrapped repository. For this the
+ * filters should implement {@code equals} and {@code hashCode}.
+ * <p>
+ * The number of results kept is bounded. Once the limit is reached the least
+ * recently used ones are evicted. Optionally, results may also expire after
+ * some time.
+ * <p>
+ * Any change made through the decorator invalidates all the cached results.
+ * Queries running while a change is made won't cache stale results, as each
+ * result is stamped with the version of the repository it was read from.
+ * Changes made directly on the wrapped repository can't be detected, so they
+ * should be avoided.
+ * <p>
+ * Collections returned from the cache are unmodifiable, and shared by all the
+ * callers using the same filter.
+ * <p>
+ * The rest of queries, which return partial or lazy results, are always
+ * delegated to the wrapped repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type being used to filter the entities
+ */
+public final class CachedRepository<V, F> implements FilteredRepository<V, F> {
+
+    /**
+     * Result stored in the cache, along the version of the repository it was
+     * read from.
+     * 
+     * @author Bernardo Martínez Garrido
+     * @param <R>
+     *            the type of the result
+     */
+    private static final class CachedResult<R> {
+
+        /**
+         * The result.
+         */
+        private final R    result;
+        /**
+         * Version of the repository when the result was read.
+         */
+        private final long version;
+
+        /**
+         * Constructs a cached result.
+         * 
+         * @param value
+         *            the result
+         * @param versionRead
+         *            version of the repository when the result was read
+         */
+        public CachedResult(final R value, final long versionRead) {
+            super();
+
+            result = value;
+            version = versionRead;
+        }
+
+        /**
+         * Returns the result.
+         * 
+         * @return the result
+         */
+        public final R getResult() {
+            return result;
+        }
+
+        /**
+         * Returns the version of the repository when the result was read.
+         * 
+         * @return the version of the repository
+         */
+        public final long getVersion() {
+            return version;
+        }
+
+    }
+
+    /**
+     * Creates a cache for the results.
+     * <p>
+     * If no time unit is received the results won't expire.
+     * 
+     * @param maximumSize
+     *            maximum number of results in the cache
+     * @param duration
+     *            time after which a result expires
+     * @param unit
+     *            unit for the duration
+     * @param listener
+     *            listener for removed results
+     * @param <K>
+     *            the type of the keys
+     * @param <R>
+     *            the type of the results
+     * @return a new cache
+     */
+    private static final <K, R> Cache<K, R> newCache(final long maximumSize,
+            final long duration, final TimeUnit unit,
+            final RemovalListener<Object, Object> listener) {
+        final CacheBuilder<Object, Object> builder;
+
+        builder = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .removalListener(listener);
+
+        if (unit != null) {
+            builder.expireAfterWrite(duration, unit);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Cached results for {@code getCollection}.
+     */
+    private final Cache<F, CachedResult<Collection<V>>> collections;
+    /**
+     * Cached results for {@code getEntity}.
+     */
+    private final Cache<F, CachedResult<Optional<V>>>   entities;
+    /**
+     * Number of results evicted from the cache.
+     */
+    private final AtomicLong                            evictions;
+    /**
+     * Number of queries answered from the cache.
+     */
+    private final AtomicLong                            hits;
+    /**
+     * Number of queries sent to the wrapped repository.
+     */
+    private final AtomicLong                            misses;
+    /**
+     * The wrapped repository.
+     */
+    private final FilteredRepository<V, F>              repository;
+    /**
+     * Version of the repository, increased with each change.
+     */
+    private final AtomicLong                            version;
+
+    /**
+     * Constructs a {@code CachedRepository} wrapping the specified
+     * repository.
+     * <p>
+     * Results will be kept until they are evicted or invalidated.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param maximumSize
+     *            maximum number of results cached for each type of query
+     */
+    public CachedRepository(final FilteredRepository<V, F> wrapped,
+            final long maximumSize) {
+        this(wrapped, maximumSize, 0, null);
+    }
+
+    /**
+     * Constructs a {@code CachedRepository} wrapping the specified
+     * repository, where results expire after some time.
+     * <p>
+     * This is useful when the wrapped repository may change without the
+     * decorator knowing, as it sets a limit on how old a result can be.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param maximumSize
+     *            maximum number of results cached for each type of query
+     * @param duration
+     *            time after which a result expires
+     * @param unit
+     *            unit for the duration
+     */
+    public CachedRepository(final FilteredRepository<V, F> wrapped,
+            final long maximumSize, final long duration,
+            final TimeUnit unit) {
+        super();
+
+        final RemovalListener<Object, Object> listener; // Counts evictions
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+        checkArgument(maximumSize >= 0,
+                "The maximum size can't be a negative value");
+        checkArgument(duration >= 0,
+                "The duration can't be a negative value");
+
+        repository = wrapped;
+
+        evictions = new AtomicLong();
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        version = new AtomicLong();
+
+        listener = new RemovalListener<Object, Object>() {
+
+            @Override
+            public final void onRemoval(
+                    final RemovalNotification<Object, Object> notification) {
+                if (notification.wasEvicted()) {
+                    getEvictions().incrementAndGet();
+                }
+            }
+
+        };
+
+        collections = newCache(maximumSize, duration, unit, listener);
+        entities = newCache(maximumSize, duration, unit, listener);
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getRepository().add(entity);
+
+        invalidate();
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        getRepository().addAll(entities);
+
+        invalidate();
+    }
+
+    @Override
+    public final Aggregate aggregate(final F filter,
+            final Function<? super V, ? extends Number> attribute) {
+        return getRepository().aggregate(filter, attribute);
+    }
+
+    @Override
+    public final long count(final F filter) {
+        return getRepository().count(filter);
+    }
+
+    @Override
+    public final boolean exists(final F filter) {
+        return getRepository().exists(filter);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return getRepository().getAll();
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        final CachedResult<Collection<V>> cached;
+        final Collection<V> result;
+        final long read;     // Version when reading
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        read = getVersion().get();
+        cached = getCollections().getIfPresent(filter);
+        if ((cached != null) && (cached.getVersion() == read)) {
+            getHits().incrementAndGet();
+            result = cached.getResult();
+        } else {
+            getMisses().incrementAndGet();
+            result = Collections.unmodifiableCollection(
+                    new ArrayList<V>(getRepository().getCollection(filter)));
+            getCollections().put(filter,
+                    new CachedResult<Collection<V>>(result, read));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter,
+            final int limit) {
+        return getRepository().getCollection(filter, limit);
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        final CachedResult<Optional<V>> cached;
+        final Optional<V> result;
+        final long read;     // Version when reading
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        read = getVersion().get();
+        cached = getEntities().getIfPresent(filter);
+        if ((cached != null) && (cached.getVersion() == read)) {
+            getHits().incrementAndGet();
+            result = cached.getResult();
+        } else {
+            getMisses().incrementAndGet();
+            result = Optional.fromNullable(getRepository().getEntity(filter));
+            getEntities().put(filter,
+                    new CachedResult<Optional<V>>(result, read));
+        }
+
+        return result.orNull();
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final F filter) {
+        return getRepository().getIterator(filter);
+    }
+
+    @Override
+    public final Collection<V> getPage(final F filter, final int offset,
+            final int limit) {
+        return getRepository().getPage(filter, offset, limit);
+    }
+
+    /**
+     * Returns the statistics for the cache.
+     * <p>
+     * These contain the number of hits, misses and evictions since the
+     * repository was created.
+     * 
+     * @return the statistics for the cache
+     */
+    public final CacheStats getStats() {
+        return new CacheStats(getHits().get(), getMisses().get(), 0, 0, 0,
+                getEvictions().get());
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getRepository().remove(entity);
+
+        invalidate();
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        getRepository().removeAll(entities);
+
+        invalidate();
+    }
+
+    @Override
+    public final void update(final V entity) {
+        getRepository().update(entity);
+
+        invalidate();
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        getRepository().updateAll(entities);
+
+        invalidate();
+    }
+
+    /**
+     * Returns the cached results for {@code getCollection}.
+     * 
+     * @return the cached results for {@code getCollection}
+     */
+    private final Cache<F, CachedResult<Collection<V>>> getCollections() {
+        return collections;
+    }
+
+    /**
+     * Returns the cached results for {@code getEntity}.
+     * 
+     * @return the cached results for {@code getEntity}
+     */
+    private final Cache<F, CachedResult<Optional<V>>> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns the number of results evicted from the cache.
+     * 
+     * @return the number of evicted results
+     */
+    private final AtomicLong getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     * 
+     * @return the number of hits
+     */
+    private final AtomicLong getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries sent to the wrapped repository.
+     * 
+     * @return the number of misses
+     */
+    private final AtomicLong getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, F> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Returns the version of the repository.
+     * 
+     * @return the version of the repository
+     */
+    private final AtomicLong getVersion() {
+        return version;
+    }
+
+    /**
+     * Invalidates all the cached results.
+     * <p>
+     * This should be called after the wrapped repository has been changed.
+     */
+    private final void invalidate() {
+        getVersion().incrementAndGet();
+
+        getCollections().invalidateAll();
+        getEntities().invalidateAll();
+    }
+
+}
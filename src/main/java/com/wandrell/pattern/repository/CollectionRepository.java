@@ -24,12 +24,25 @@
 
 package com.wandrell.pattern.repository;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
 
 /**
  * Collection-based implementation of
@@ -44,18 +57,89 @@ import com.google.common.base.Predicate;
  * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
  * Predicate</a> class. All the entities validating the predicate being used as
  * filter will be returned.
+ * <p>
+ * By default the entities are kept in a {@code Collection}, where adding,
+ * removing and updating will cost as much as that collection requires. For
+ * example, on a {@code LinkedList} updating an entity takes several linear
+ * scans.
+ * <p>
+ * If instead the repository is created with a {@code Map}, this will be used as
+ * an equality-based hash index, where each entity is mapped to itself. Then
+ * adding, removing and updating take constant time, and the repository will
+ * behave like a set, ignoring entities equal to one already stored. Using a
+ * {@code LinkedHashMap} keeps the insertion order, which is not changed by
+ * updates.
+ * <p>
+ * Additionally, {@link com.wandrell.pattern.repository.EntityIndex
+ * EntityIndex} instances can be registered on the repository. These are kept
+ * updated while the entities are added, removed or updated, and are used to
+ * find the entities for the filters they support without scanning all the
+ * data.
+ * <p>
+ * Indexes keep a single entry for equal entities. So while there are indexes
+ * registered a repository which is not hashed also groups the stored entities
+ * by equality, and each candidate found through an index is replaced by all
+ * the stored entities equal to it. This way a query answered by an index
+ * returns the same entities as a scan.
+ * <p>
+ * Queries are run sequentially by default, but they can be run in parallel by
+ * setting a {@code ForkJoinPool} with
+ * {@link #setParallelScan(ForkJoinPool, int, boolean) setParallelScan}. Then
+ * {@link #getCollection(Predicate) getCollection} splits the data into chunks,
+ * which are filtered by the pool, and merges the results. This is worth it only
+ * for expensive filters or big repositories, and so there is a threshold below
+ * which the scan is still sequential. The data should not be modified while
+ * such a scan is running.
+ * <p>
+ * The iterators returned by {@link #getIterator(Predicate) getIterator} go
+ * directly through the stored data, and so the repository should not be
+ * modified while they are being used.
  * 
  * @author Bernardo Martínez Garrido
  * @param <V>
  *            the type stored on the repository
  */
 public final class CollectionRepository<V>
-        implements FilteredRepository<V, Predicate<V>> {
+        extends AbstractFilteredRepository<V, Predicate<V>> {
 
+    /**
+     * Stored entities grouped by equality, in the order they are stored.
+     * <p>
+     * This is kept only while the repository is not hashed and there are
+     * indexes registered, to find all the entities equal to an index entry.
+     */
+    private final ListMultimap<V, V>         copies;
     /**
      * The entities stored in the repository.
      */
-    private final Collection<V> data;
+    private final Collection<V>              data;
+    /**
+     * Equality-based index for the entities, mapping each of them to itself.
+     * <p>
+     * When this is used the entities are stored as its values, and so it will
+     * be backing the data collection.
+     * <p>
+     * If the repository is not hashed this will be {@code null}.
+     */
+    private final Map<V, V>                  hashIndex;
+    /**
+     * Indexes registered on the repository.
+     */
+    private final Collection<EntityIndex<V>> indexes;
+    /**
+     * Flag indicating if the parallel scans keep the encounter order.
+     */
+    private boolean                          scanOrdered;
+    /**
+     * Pool for parallel scans.
+     * <p>
+     * If this is {@code null} the scans are sequential.
+     */
+    private ForkJoinPool                     scanPool;
+    /**
+     * Maximum number of entities scanned by a single parallel task.
+     */
+    private int                              scanThreshold;
 
     /**
      * Constructs a {@code CollectionRepository} using a {@code LinkedList} as
@@ -77,12 +161,83 @@ public final class CollectionRepository<V>
 
         checkNotNull(collection, "Received a null pointer as collection");
 
-        this.data = collection;
+        data = collection;
+        hashIndex = null;
+        indexes = new LinkedList<EntityIndex<V>>();
+        copies = ArrayListMultimap.create();
+    }
+
+    /**
+     * Constructs a hashed {@code CollectionRepository} backed by the specified
+     * {@code Map}.
+     * <p>
+     * This map will be used as an index, where each entity is mapped to itself,
+     * and so it is expected to be empty. Its values will be the stored data.
+     * <p>
+     * The map's iteration order will be the repository's order, so a
+     * {@code LinkedHashMap} should be used if insertion order is to be kept.
+     * 
+     * @param map
+     *            the map which will index the data
+     */
+    public CollectionRepository(final Map<V, V> map) {
+        super();
+
+        checkNotNull(map, "Received a null pointer as map");
+
+        hashIndex = map;
+        data = map.values();
+        indexes = new LinkedList<EntityIndex<V>>();
+        copies = ArrayListMultimap.create();
     }
 
     @Override
     public final void add(final V entity) {
-        getData().add(entity);
+        final boolean added;
+
+        if (isHashed()) {
+            added = !getHashIndex().containsKey(entity);
+            if (added) {
+                getHashIndex().put(entity, entity);
+            }
+        } else {
+            added = getData().add(entity);
+        }
+
+        if (added) {
+            if (isTracked()) {
+                getCopies().put(entity, entity);
+            }
+
+            for (final EntityIndex<V> index : getIndexes()) {
+                index.add(entity);
+            }
+        }
+    }
+
+    /**
+     * Registers an index on the repository.
+     * <p>
+     * All the entities already stored will be added to it, and from then on
+     * the repository will keep it updated.
+     * 
+     * @param index
+     *            the index to register
+     */
+    public final void addIndex(final EntityIndex<V> index) {
+        checkNotNull(index, "Received a null pointer as index");
+
+        for (final V entity : getData()) {
+            index.add(entity);
+        }
+
+        if ((!isHashed()) && getIndexes().isEmpty()) {
+            for (final V entity : getData()) {
+                getCopies().put(entity, entity);
+            }
+        }
+
+        getIndexes().add(index);
     }
 
     @Override
@@ -92,12 +247,27 @@ public final class CollectionRepository<V>
 
     @Override
     public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Iterable<V> candidates;
+        final Collection<V> sized;
         final Collection<V> result;
 
-        result = new LinkedList<V>();
-        for (final V entity : getData()) {
-            if (filter.apply(entity)) {
-                result.add(entity);
+        candidates = getCandidates(filter);
+
+        if (scanPool == null) {
+            result = scan(candidates, filter);
+        } else {
+            if (candidates instanceof Collection) {
+                sized = (Collection<V>) candidates;
+            } else {
+                // Index results with no known size are gathered first
+                sized = Lists.newArrayList(candidates);
+            }
+
+            if (isParallel(sized)) {
+                result = ParallelScanTask.scan(scanPool, sized.toArray(),
+                        filter, scanThreshold, scanOrdered);
+            } else {
+                result = scan(sized, filter);
             }
         }
 
@@ -105,34 +275,268 @@ public final class CollectionRepository<V>
     }
 
     @Override
-    public final V getEntity(final Predicate<V> filter) {
-        final Collection<V> entities;
-        final V entity;
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
 
-        entities = getCollection(filter);
+        return Iterators.filter(getCandidates(filter).iterator(), filter);
+    }
 
-        if (entities.isEmpty()) {
-            entity = null;
+    @Override
+    public final void remove(final V entity) {
+        final V removed;
+
+        if (isHashed()) {
+            removed = getHashIndex().remove(entity);
+        } else if (getIndexes().isEmpty()) {
+            getData().remove(entity);
+            removed = null;
         } else {
-            entity = entities.iterator().next();
+            removed = removeStored(entity);
+            if (removed != null) {
+                untrack(removed);
+            }
         }
 
-        return entity;
+        // Equal entities share the index entry
+        if ((removed != null)
+                && (isHashed() || !getCopies().containsKey(removed))) {
+            for (final EntityIndex<V> index : getIndexes()) {
+                index.remove(removed);
+            }
+        }
     }
 
+    /**
+     * Removes all the entities from the repository.
+     * <p>
+     * If the repository is not hashed this takes a single pass over the
+     * stored entities, where each entity received removes the first equal one
+     * found.
+     * 
+     * @param entities
+     *            the entities to remove
+     */
     @Override
-    public final void remove(final V entity) {
-        getData().remove(entity);
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Multiset<Object> pending; // Entities still to remove
+        final Collection<V> removed;    // Stored entities removed
+        final Iterator<V> itr;
+        V stored;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        if (isHashed()) {
+            super.removeAll(entities);
+        } else {
+            pending = HashMultiset.<Object> create(entities);
+            removed = new LinkedList<V>();
+
+            itr = getData().iterator();
+            while ((!pending.isEmpty()) && (itr.hasNext())) {
+                stored = itr.next();
+                if (pending.remove(stored)) {
+                    itr.remove();
+                    removed.add(stored);
+                }
+            }
+
+            removeFromIndexes(removed);
+        }
+    }
+
+    /**
+     * Unregisters an index from the repository.
+     * <p>
+     * The index won't be updated or used anymore.
+     * 
+     * @param index
+     *            the index to unregister
+     */
+    public final void removeIndex(final EntityIndex<V> index) {
+        getIndexes().remove(index);
+
+        if (getIndexes().isEmpty()) {
+            getCopies().clear();
+        }
+    }
+
+    /**
+     * Makes the {@link #getCollection(Predicate) getCollection} scans run in
+     * parallel on the specified pool.
+     * <p>
+     * The data will be divided into chunks no bigger than the threshold, each
+     * of them scanned by its own task. Scans over fewer entities than the
+     * threshold will still be sequential.
+     * <p>
+     * If the order is not kept, the entities will be returned in the order the
+     * tasks find them, which saves merging the chunks results in order.
+     * 
+     * @param pool
+     *            the pool where the scans will run
+     * @param threshold
+     *            maximum number of entities scanned by a single task
+     * @param ordered
+     *            flag indicating if the encounter order should be kept
+     */
+    public final void setParallelScan(final ForkJoinPool pool,
+            final int threshold, final boolean ordered) {
+        checkNotNull(pool, "Received a null pointer as pool");
+        checkArgument(threshold > 0, "The threshold should be positive");
+
+        scanPool = pool;
+        scanThreshold = threshold;
+        scanOrdered = ordered;
+    }
+
+    /**
+     * Makes the {@link #getCollection(Predicate) getCollection} scans run
+     * sequentially.
+     * <p>
+     * This is the default behaviour.
+     */
+    public final void setSequentialScan() {
+        scanPool = null;
     }
 
     @Override
     public final void update(final V entity) {
-        if (getData().contains(entity)) {
+        final V previous;
+
+        if (isHashed()) {
+            previous = getHashIndex().get(entity);
+            // The stored key is kept, so the entity does not change position
+            if (previous != null) {
+                getHashIndex().put(entity, entity);
+
+                for (final EntityIndex<V> index : getIndexes()) {
+                    index.remove(previous);
+                    index.add(entity);
+                }
+            }
+        } else if (getData().contains(entity)) {
             remove(entity);
             add(entity);
         }
     }
 
+    /**
+     * Updates all the entities on the repository.
+     * <p>
+     * If the repository is not hashed this takes a single pass over the
+     * stored entities, where each entity received replaces the first equal
+     * one found. As with {@link #update(Object) update}, the updated entities
+     * are moved to the end, in the order they were received. If several of
+     * the entities received are equal, only the last one is kept.
+     * 
+     * @param entities
+     *            the entities to update
+     */
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final Map<V, V> pending;     // Entities to update
+        final Collection<V> found;   // Stored entities to be replaced
+        final Collection<V> removed; // Stored entities removed
+        final Iterator<V> itr;
+        V stored;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        if (isHashed()) {
+            super.updateAll(entities);
+        } else {
+            pending = new LinkedHashMap<V, V>();
+            for (final V entity : entities) {
+                pending.put(entity, entity);
+            }
+
+            found = new HashSet<V>();
+            removed = new LinkedList<V>();
+
+            itr = getData().iterator();
+            while ((found.size() < pending.size()) && (itr.hasNext())) {
+                stored = itr.next();
+                if (pending.containsKey(stored) && found.add(stored)) {
+                    itr.remove();
+                    removed.add(stored);
+                }
+            }
+
+            removeFromIndexes(removed);
+
+            for (final V entity : pending.values()) {
+                if (found.contains(entity)) {
+                    add(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entities which may validate the filter.
+     * <p>
+     * The first index able to resolve the filter will be used. If there is no
+     * such index, then all the entities will be returned.
+     * <p>
+     * If the repository is not hashed, each candidate found through an index
+     * is replaced by all the stored entities equal to it.
+     * 
+     * @param filter
+     *            the filter to resolve
+     * @return the candidates for the filter
+     */
+    private final Iterable<V> getCandidates(final Predicate<V> filter) {
+        final Iterator<EntityIndex<V>> itr;
+        Iterable<V> candidates;
+
+        candidates = null;
+        itr = getIndexes().iterator();
+        while ((candidates == null) && (itr.hasNext())) {
+            candidates = itr.next().find(filter);
+        }
+
+        if (candidates == null) {
+            candidates = getData();
+        } else if (!isHashed()) {
+            candidates = getCopies(candidates);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Returns the stored entities grouped by equality.
+     * 
+     * @return the stored entities grouped by equality
+     */
+    private final ListMultimap<V, V> getCopies() {
+        return copies;
+    }
+
+    /**
+     * Returns all the stored entities equal to the specified candidates.
+     * <p>
+     * Each group of equal entities is returned only once, even if several
+     * candidates are equal to it.
+     * 
+     * @param candidates
+     *            the candidates found through an index
+     * @return the stored entities equal to the candidates
+     */
+    private final Collection<V> getCopies(final Iterable<V> candidates) {
+        final Collection<V> found;  // Candidates already expanded
+        final Collection<V> stored; // Stored entities
+
+        found = new HashSet<V>();
+        stored = new LinkedList<V>();
+        for (final V candidate : candidates) {
+            if (found.add(candidate)) {
+                stored.addAll(getCopies().get(candidate));
+            }
+        }
+
+        return stored;
+    }
+
     /**
      * Returns the entities being stored.
      * 
@@ -142,4 +546,159 @@ public final class CollectionRepository<V>
         return data;
     }
 
+    /**
+     * Returns the equality-based index for the entities.
+     * <p>
+     * This will be {@code null} if the repository is not hashed.
+     * 
+     * @return the index for the entities
+     */
+    private final Map<V, V> getHashIndex() {
+        return hashIndex;
+    }
+
+    /**
+     * Returns the indexes registered on the repository.
+     * 
+     * @return the registered indexes
+     */
+    private final Collection<EntityIndex<V>> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Indicates if the scan over the specified candidates should be run in
+     * parallel.
+     * 
+     * @param candidates
+     *            the entities to scan
+     * @return {@code true} if the scan should be parallel, {@code false}
+     *         otherwise
+     */
+    private final boolean isParallel(final Collection<V> candidates) {
+        return candidates.size() > scanThreshold;
+    }
+
+    /**
+     * Indicates if the stored entities are being grouped by equality.
+     * 
+     * @return {@code true} if the entities are grouped, {@code false}
+     *         otherwise
+     */
+    private final boolean isTracked() {
+        return (!isHashed()) && (!getIndexes().isEmpty());
+    }
+
+    /**
+     * Indicates if the entities are stored in an equality-based hash index.
+     * 
+     * @return {@code true} if the repository is hashed, {@code false}
+     *         otherwise
+     */
+    private final boolean isHashed() {
+        return hashIndex != null;
+    }
+
+    /**
+     * Removes from the indexes the specified entities, which were just
+     * removed from the stored data.
+     * <p>
+     * As equal entities share the index entry, those which still have an
+     * equal entity stored are kept in the indexes.
+     * 
+     * @param removed
+     *            the entities removed
+     */
+    private final void removeFromIndexes(final Collection<V> removed) {
+        if ((!getIndexes().isEmpty()) && (!removed.isEmpty())) {
+            for (final V entity : removed) {
+                untrack(entity);
+            }
+
+            for (final V entity : removed) {
+                if (!getCopies().containsKey(entity)) {
+                    for (final EntityIndex<V> index : getIndexes()) {
+                        index.remove(entity);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the first stored entity equal to the received one, and returns
+     * it.
+     * <p>
+     * This is needed by the indexes, which should receive the instance which
+     * was actually stored.
+     * 
+     * @param entity
+     *            the entity to remove
+     * @return the removed entity, or {@code null} if none was found
+     */
+    private final V removeStored(final V entity) {
+        final Iterator<V> itr;
+        V removed;
+        V stored;
+
+        removed = null;
+        itr = getData().iterator();
+        while ((removed == null) && (itr.hasNext())) {
+            stored = itr.next();
+            if (Objects.equals(stored, entity)) {
+                itr.remove();
+                removed = stored;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes a stored entity from the entities grouped by equality.
+     * <p>
+     * The same instance which was stored is removed, and not just an equal
+     * one.
+     * 
+     * @param stored
+     *            the stored entity which was removed
+     */
+    private final void untrack(final V stored) {
+        final Iterator<V> itr;
+        boolean found;
+
+        found = false;
+        itr = getCopies().get(stored).iterator();
+        while ((!found) && (itr.hasNext())) {
+            if (itr.next() == stored) {
+                itr.remove();
+                found = true;
+            }
+        }
+    }
+
+    /**
+     * Scans the candidates sequentially, returning those which validate the
+     * filter.
+     * 
+     * @param candidates
+     *            the entities to scan
+     * @param filter
+     *            the filter which the entities should validate
+     * @return the entities validating the filter
+     */
+    private final Collection<V> scan(final Iterable<V> candidates,
+            final Predicate<V> filter) {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (final V entity : candidates) {
+            if (filter.apply(entity)) {
+                result.add(entity);
+            }
+        }
+
+        return result;
+    }
+
 }
@@ -0,0 +1,218 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Longs;
+
+/**
+ * Predicate checking the values of one or more columns of a
+ * {@link com.wandrell.pattern.repository.ColumnarRepository
+ * ColumnarRepository}.
+ * <p>
+ * It is made of a sequence of ranges, one for each column checked, and
+ * accepts the entities where all the columns have a value inside their
+ * ranges. Ranges are combined with {@link #and(ColumnPredicate) and}.
+ * <p>
+ * When it is used to query the repository containing the columns, it is
+ * resolved by scanning the columns, otherwise the attributes are read from
+ * each entity as usual.
+ * <p>
+ * Instances are created through the {@code LongColumn} methods.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ColumnPredicate<V> implements Predicate<V> {
+
+    /**
+     * Columns being checked.
+     */
+    private final List<LongColumn<V>> columns;
+    /**
+     * Highest value accepted for each column.
+     */
+    private final long[]              maximums;
+    /**
+     * Lowest value accepted for each column.
+     */
+    private final long[]              minimums;
+
+    /**
+     * Constructs a {@code ColumnPredicate} for a range on a single column.
+     * 
+     * @param column
+     *            the column to check
+     * @param minimum
+     *            lowest value accepted
+     * @param maximum
+     *            highest value accepted
+     */
+    ColumnPredicate(final LongColumn<V> column, final long minimum,
+            final long maximum) {
+        this(ImmutableList.of(column), new long[] { minimum },
+                new long[] { maximum });
+    }
+
+    /**
+     * Constructs a {@code ColumnPredicate} for the specified ranges.
+     * 
+     * @param cols
+     *            the columns to check
+     * @param mins
+     *            lowest value accepted for each column
+     * @param maxs
+     *            highest value accepted for each column
+     */
+    private ColumnPredicate(final List<LongColumn<V>> cols,
+            final long[] mins, final long[] maxs) {
+        super();
+
+        columns = cols;
+        minimums = mins;
+        maximums = maxs;
+    }
+
+    /**
+     * Combines this predicate with another, returning a predicate accepting
+     * only the entities accepted by both.
+     * <p>
+     * Both predicates should check columns from the same repository.
+     * 
+     * @param other
+     *            the predicate to combine with
+     * @return a predicate checking the ranges of both
+     */
+    public final ColumnPredicate<V> and(final ColumnPredicate<V> other) {
+        checkNotNull(other, "Received a null pointer as predicate");
+        checkArgument(other.getRepository() == getRepository(),
+                "The predicates belong to different repositories");
+
+        return new ColumnPredicate<V>(
+                ImmutableList.<LongColumn<V>> builder().addAll(columns)
+                        .addAll(other.columns).build(),
+                Longs.concat(minimums, other.minimums),
+                Longs.concat(maximums, other.maximums));
+    }
+
+    @Override
+    public final boolean apply(final V entity) {
+        boolean valid;
+        long value;
+        int i;
+
+        valid = true;
+        i = 0;
+        while ((valid) && (i < columns.size())) {
+            value = columns.get(i).getAttribute().getValue(entity);
+            valid = (value >= minimums[i]) && (value <= maximums[i]);
+            i++;
+        }
+
+        return valid;
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final ColumnPredicate<?> other;
+
+        other = (ColumnPredicate<?>) obj;
+        return columns.equals(other.columns)
+                && Arrays.equals(minimums, other.minimums)
+                && Arrays.equals(maximums, other.maximums);
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(columns, Arrays.hashCode(minimums),
+                Arrays.hashCode(maximums));
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("columns", columns)
+                .add("minimums", Arrays.toString(minimums))
+                .add("maximums", Arrays.toString(maximums)).toString();
+    }
+
+    /**
+     * Returns the columns being checked.
+     * 
+     * @return the columns being checked
+     */
+    final List<LongColumn<V>> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the highest value accepted for each column.
+     * 
+     * @return the highest value for each column
+     */
+    final long[] getMaximums() {
+        return maximums;
+    }
+
+    /**
+     * Returns the lowest value accepted for each column.
+     * 
+     * @return the lowest value for each column
+     */
+    final long[] getMinimums() {
+        return minimums;
+    }
+
+    /**
+     * Returns the repository containing the columns.
+     * 
+     * @return the repository containing the columns
+     */
+    final ColumnarRepository<V> getRepository() {
+        return columns.get(0).getRepository();
+    }
+
+}
@@ -0,0 +1,392 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * Columnar implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * .
+ * <p>
+ * Besides the entities, which are kept in an array of rows, the repository
+ * stores some of their attributes in columns. Each column is a {@code long}
+ * array, parallel to the rows, and is declared with
+ * {@link #addColumn(String, LongAttribute) addColumn}.
+ * <p>
+ * Filtering through the {@link ColumnPredicate} instances created by these
+ * columns doesn't touch the entities. Instead the columns are scanned in
+ * tight loops over their arrays, which are contiguous in memory and don't
+ * require calling the predicate for each entity. Only the rows matching all
+ * the ranges are then read to return their entities. When a predicate
+ * checks several columns, the first one selects the candidate rows, and each
+ * of the rest only checks the rows still selected.
+ * <p>
+ * Any other predicate is applied to each entity, as usual.
+ * <p>
+ * Entities are unique by equality, and there is no guarantee about their
+ * order, as removing an entity moves the last row into its place.
+ * <p>
+ * This repository is not thread safe, and should not be modified while
+ * iterating over a query result.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ColumnarRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Default initial capacity for the rows.
+     */
+    private static final int          DEFAULT_CAPACITY = 16;
+    /**
+     * Columns declared on the repository.
+     */
+    private final List<LongColumn<V>> columns;
+    /**
+     * Values of the columns, one array for each column.
+     */
+    private long[][]                  columnValues;
+    /**
+     * Row of each entity.
+     */
+    private final Map<V, Integer>     positions;
+    /**
+     * Entities stored, one for each row.
+     */
+    private Object[]                  rows;
+    /**
+     * Number of rows used.
+     */
+    private int                       size;
+
+    /**
+     * Constructs an empty {@code ColumnarRepository}.
+     */
+    public ColumnarRepository() {
+        super();
+
+        columns = new ArrayList<LongColumn<V>>();
+        columnValues = new long[0][];
+        positions = new HashMap<V, Integer>();
+        rows = new Object[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        if (!positions.containsKey(entity)) {
+            if (size == rows.length) {
+                grow();
+            }
+
+            rows[size] = entity;
+            store(entity, size);
+            positions.put(entity, size);
+            size++;
+        }
+    }
+
+    /**
+     * Declares a new column.
+     * <p>
+     * The column is filled with the values of the entities already stored,
+     * and will be kept updated from then on.
+     * 
+     * @param name
+     *            name of the column
+     * @param attribute
+     *            reads the value of the column from the entities
+     * @return the new column
+     */
+    public final LongColumn<V> addColumn(final String name,
+            final LongAttribute<? super V> attribute) {
+        final LongColumn<V> column;
+        final long[] values;
+
+        checkNotNull(name, "Received a null pointer as name");
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        column = new LongColumn<V>(this, name, attribute, columns.size());
+
+        values = new long[rows.length];
+        for (int row = 0; row < size; row++) {
+            values[row] = attribute.getValue(getRow(row));
+        }
+
+        columnValues = Arrays.copyOf(columnValues, columnValues.length + 1);
+        columnValues[columnValues.length - 1] = values;
+        columns.add(column);
+
+        return column;
+    }
+
+    @Override
+    public final long count(final Predicate<V> filter) {
+        final long count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        if (isColumnar(filter)) {
+            // The selected rows are counted without reading the entities
+            count = select((ColumnPredicate<V>) filter).length;
+        } else {
+            count = super.count(filter);
+        }
+
+        return count;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new ArrayList<V>(size);
+        for (int row = 0; row < size; row++) {
+            result.add(getRow(row));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        final Collection<V> result;
+
+        if (isColumnar(filter)) {
+            result = new ArrayList<V>();
+            for (final int row : select((ColumnPredicate<V>) filter)) {
+                result.add(getRow(row));
+            }
+        } else {
+            result = super.getCollection(filter);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        final Iterator<V> result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        if (isColumnar(filter)) {
+            result = iterator(select((ColumnPredicate<V>) filter));
+        } else {
+            result = Iterators.filter(iterator(null), filter);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final Integer row;
+        final int last;
+
+        row = positions.remove(entity);
+        if (row != null) {
+            last = size - 1;
+            if (row != last) {
+                // The last row takes the place of the removed one
+                rows[row] = rows[last];
+                for (final long[] values : columnValues) {
+                    values[row] = values[last];
+                }
+                positions.put(getRow(row), row);
+            }
+
+            rows[last] = null;
+            size--;
+        }
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final Integer row;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        row = positions.get(entity);
+        if (row != null) {
+            rows[row] = entity;
+            store(entity, row);
+        }
+    }
+
+    /**
+     * Returns the entity in a row.
+     * 
+     * @param row
+     *            the row to read
+     * @return the entity in the row
+     */
+    @SuppressWarnings("unchecked")
+    private final V getRow(final int row) {
+        return (V) rows[row];
+    }
+
+    /**
+     * Doubles the capacity of the rows and columns.
+     */
+    private final void grow() {
+        rows = Arrays.copyOf(rows, rows.length * 2);
+        for (int i = 0; i < columnValues.length; i++) {
+            columnValues[i] = Arrays.copyOf(columnValues[i], rows.length);
+        }
+    }
+
+    /**
+     * Indicates if the filter can be resolved through the columns.
+     * 
+     * @param filter
+     *            the filter to check
+     * @return {@code true} if the filter is resolved through the columns,
+     *         {@code false} otherwise
+     */
+    private final boolean isColumnar(final Predicate<V> filter) {
+        return (filter instanceof ColumnPredicate)
+                && (((ColumnPredicate<V>) filter).getRepository() == this);
+    }
+
+    /**
+     * Returns an iterator over the entities in the specified rows.
+     * 
+     * @param selected
+     *            the rows to iterate, or {@code null} for all of them
+     * @return an iterator over the entities in the rows
+     */
+    private final Iterator<V> iterator(final int[] selected) {
+        return new AbstractIterator<V>() {
+
+            /**
+             * Next position to return.
+             */
+            private int next = 0;
+
+            @Override
+            protected final V computeNext() {
+                final V result;
+
+                if ((selected == null) && (next < size)) {
+                    result = getRow(next);
+                } else if ((selected != null) && (next < selected.length)) {
+                    result = getRow(selected[next]);
+                } else {
+                    result = endOfData();
+                }
+                next++;
+
+                return result;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the rows with values inside all the ranges of the predicate.
+     * 
+     * @param filter
+     *            the predicate with the ranges
+     * @return the matching rows, in order
+     */
+    private final int[] select(final ColumnPredicate<V> filter) {
+        final long[] maximums;
+        final long[] minimums;
+        final int[] selected; // Rows selected
+        long[] values;        // Values of the current column
+        long limit;           // Width of the current range
+        long min;             // Lowest value of the current range
+        int count;            // Number of rows selected
+        int kept;             // Rows kept by the current range
+        int row;
+
+        minimums = filter.getMinimums();
+        maximums = filter.getMaximums();
+
+        selected = new int[size];
+        count = size;
+        for (row = 0; row < size; row++) {
+            selected[row] = row;
+        }
+
+        for (int i = 0; i < minimums.length; i++) {
+            values = columnValues[filter.getColumns().get(i).getPosition()];
+            min = minimums[i];
+            if (min > maximums[i]) {
+                // Empty range
+                count = 0;
+            }
+
+            // Shifting by the minimum and flipping the sign bit turns the
+            // range check into a single unsigned comparison
+            limit = (maximums[i] - min) ^ Long.MIN_VALUE;
+
+            kept = 0;
+            for (int j = 0; j < count; j++) {
+                row = selected[j];
+                selected[kept] = row;
+                if (((values[row] - min) ^ Long.MIN_VALUE) <= limit) {
+                    kept++;
+                }
+            }
+            count = kept;
+        }
+
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Stores the column values of an entity in a row.
+     * 
+     * @param entity
+     *            the entity to read
+     * @param row
+     *            the row for the entity
+     */
+    private final void store(final V entity, final int row) {
+        for (int i = 0; i < columnValues.length; i++) {
+            columnValues[i][row] = columns.get(i).getAttribute()
+                    .getValue(entity);
+        }
+    }
+
+}
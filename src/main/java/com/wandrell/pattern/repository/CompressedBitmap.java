@@ -0,0 +1,335 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative {@code int} values, following the design of
+ * Roaring bitmaps.
+ * <p>
+ * Values are split by their upper 16 bits into chunks, and each chunk stores
+ * its lower 16 bits in a {@link BitmapContainer}, which switches between a
+ * sorted array and a plain bitmap depending on how many values it has. The
+ * containers are kept sorted by their upper bits, and only those with values
+ * exist.
+ * <p>
+ * This keeps sparse sets small, while dense sets are combined a word at a
+ * time. The operations combining bitmaps work container by container, and
+ * return new instances, never modifying those received. Containers taken
+ * unchanged from an input are copied, so later changes to the inputs don't
+ * reach the result.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+final class CompressedBitmap {
+
+    /**
+     * Returns a bitmap with the values in both bitmaps.
+     * 
+     * @param first
+     *            first bitmap
+     * @param second
+     *            second bitmap
+     * @return the intersection of both bitmaps
+     */
+    public static final CompressedBitmap and(final CompressedBitmap first,
+            final CompressedBitmap second) {
+        final CompressedBitmap result;
+        BitmapContainer container;
+        int i;
+        int j;
+
+        result = new CompressedBitmap();
+        i = 0;
+        j = 0;
+        while ((i < first.size) && (j < second.size)) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                container = BitmapContainer.and(first.containers[i],
+                        second.containers[j]);
+                result.append(first.keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a bitmap with the values in the first bitmap but not in the
+     * second.
+     * 
+     * @param first
+     *            first bitmap
+     * @param second
+     *            second bitmap
+     * @return the difference between both bitmaps
+     */
+    public static final CompressedBitmap andNot(final CompressedBitmap first,
+            final CompressedBitmap second) {
+        final CompressedBitmap result;
+        BitmapContainer container;
+        int i;
+        int j;
+
+        result = new CompressedBitmap();
+        i = 0;
+        j = 0;
+        while (i < first.size) {
+            if ((j == second.size) || (first.keys[i] < second.keys[j])) {
+                result.append(first.keys[i], first.containers[i].copy());
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                container = BitmapContainer.andNot(first.containers[i],
+                        second.containers[j]);
+                result.append(first.keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a bitmap with the values in any of the bitmaps.
+     * 
+     * @param first
+     *            first bitmap
+     * @param second
+     *            second bitmap
+     * @return the union of both bitmaps
+     */
+    public static final CompressedBitmap or(final CompressedBitmap first,
+            final CompressedBitmap second) {
+        final CompressedBitmap result;
+        BitmapContainer container;
+        int i;
+        int j;
+
+        result = new CompressedBitmap();
+        i = 0;
+        j = 0;
+        while ((i < first.size) || (j < second.size)) {
+            if ((j == second.size)
+                    || ((i < first.size) && (first.keys[i] < second.keys[j]))) {
+                result.append(first.keys[i], first.containers[i].copy());
+                i++;
+            } else if ((i == first.size) || (first.keys[i] > second.keys[j])) {
+                result.append(second.keys[j], second.containers[j].copy());
+                j++;
+            } else {
+                container = BitmapContainer.or(first.containers[i],
+                        second.containers[j]);
+                result.append(first.keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Containers for each chunk of values.
+     */
+    private BitmapContainer[] containers;
+    /**
+     * Upper 16 bits of the values in each container.
+     */
+    private char[]            keys;
+    /**
+     * Number of containers.
+     */
+    private int               size;
+
+    /**
+     * Constructs an empty bitmap.
+     */
+    public CompressedBitmap() {
+        super();
+
+        containers = new BitmapContainer[4];
+        keys = new char[4];
+        size = 0;
+    }
+
+    /**
+     * Adds a value to the bitmap.
+     * 
+     * @param value
+     *            the value to add, which should not be negative
+     */
+    public final void add(final int value) {
+        final char key;
+        int position;
+
+        key = (char) (value >>> 16);
+        position = Arrays.binarySearch(keys, 0, size, key);
+        if (position < 0) {
+            position = -position - 1;
+            insert(position, key, new BitmapContainer());
+        }
+
+        containers[position].add((char) value);
+    }
+
+    /**
+     * Indicates if the bitmap has the specified value.
+     * 
+     * @param value
+     *            the value to check
+     * @return {@code true} if the value is in the bitmap, {@code false}
+     *         otherwise
+     */
+    public final boolean contains(final int value) {
+        final int position;
+
+        position = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+
+        return (position >= 0) && containers[position].contains((char) value);
+    }
+
+    /**
+     * Returns the number of values in the bitmap.
+     * 
+     * @return the number of values
+     */
+    public final int getCardinality() {
+        int count;
+
+        count = 0;
+        for (int i = 0; i < size; i++) {
+            count += containers[i].getCardinality();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the lowest value in the bitmap equal to or greater than the
+     * specified one.
+     * 
+     * @param from
+     *            the value to start searching from
+     * @return the next value, or {@code -1} if there is none
+     */
+    public final int next(final int from) {
+        int position;
+        int result;
+        int low;
+
+        position = Arrays.binarySearch(keys, 0, size, (char) (from >>> 16));
+        if (position < 0) {
+            position = -position - 1;
+            low = 0;
+        } else {
+            low = from & 0xFFFF;
+        }
+
+        result = -1;
+        while ((result < 0) && (position < size)) {
+            result = containers[position].next(low);
+            if (result >= 0) {
+                result |= keys[position] << 16;
+            }
+            low = 0;
+            position++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes a value from the bitmap.
+     * 
+     * @param value
+     *            the value to remove
+     */
+    public final void remove(final int value) {
+        final int position;
+
+        position = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if ((position >= 0) && containers[position].remove((char) value)
+                && containers[position].isEmpty()) {
+            System.arraycopy(keys, position + 1, keys, position,
+                    size - position - 1);
+            System.arraycopy(containers, position + 1, containers, position,
+                    size - position - 1);
+            size--;
+            containers[size] = null;
+        }
+    }
+
+    /**
+     * Appends a container after the existing ones.
+     * <p>
+     * Empty containers are ignored.
+     * 
+     * @param key
+     *            upper bits for the container, greater than any stored
+     * @param container
+     *            the container to append
+     */
+    private final void append(final char key,
+            final BitmapContainer container) {
+        if (!container.isEmpty()) {
+            insert(size, key, container);
+        }
+    }
+
+    /**
+     * Inserts a container.
+     * 
+     * @param position
+     *            position for the container
+     * @param key
+     *            upper bits for the container
+     * @param container
+     *            the container to insert
+     */
+    private final void insert(final int position, final char key,
+            final BitmapContainer container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(containers, position, containers, position + 1,
+                size - position);
+        keys[position] = key;
+        containers[position] = container;
+        size++;
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+
+/**
+ * Thread safe implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * .
+ * <p>
+ * The entities are stored in a {@code ConcurrentMap}, where each of them is
+ * mapped to itself. This way any number of threads can query the repository
+ * while others modify it, without any of them having to wait for a global
+ * lock.
+ * <p>
+ * Operations on a single entity are atomic. Adding an entity only stores it if
+ * there is no equal one, updating replaces the stored entity only if it
+ * exists, and removing takes it out of the repository. In none of these cases
+ * another thread will be able to see an intermediate state, for example
+ * updating won't make the entity disappear for a moment.
+ * <p>
+ * Queries are weakly consistent. They will reflect the state of the repository
+ * at some point at or after they started, and may or may not see changes made
+ * while they run, but they will never fail due to concurrent modifications.
+ * <p>
+ * Like with any hashed collection, the entities are considered unique by
+ * equality, and there is no guarantee about their order.
+ * <p>
+ * The filters are instances of the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
+ * Predicate</a> class. All the entities validating the predicate being used as
+ * filter will be returned.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ConcurrentRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * The entities stored in the repository, mapped to themselves.
+     */
+    private final ConcurrentMap<V, V> data;
+
+    /**
+     * Constructs a {@code ConcurrentRepository} using a
+     * {@code ConcurrentHashMap} with the default settings.
+     */
+    public ConcurrentRepository() {
+        this(new ConcurrentHashMap<V, V>());
+    }
+
+    /**
+     * Constructs a {@code ConcurrentRepository} with the specified
+     * {@code ConcurrentMap}.
+     * <p>
+     * This map is expected to be empty. Each entity will be mapped to itself.
+     * 
+     * @param map
+     *            the map where the entities will be stored
+     */
+    public ConcurrentRepository(final ConcurrentMap<V, V> map) {
+        super();
+
+        checkNotNull(map, "Received a null pointer as map");
+
+        data = map;
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getData().putIfAbsent(entity, entity);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new ArrayList<V>(getData().values());
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(getData().values().iterator(), filter);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getData().remove(entity);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        // Atomic, the entity is never missing while being replaced
+        getData().replace(entity, entity);
+    }
+
+    /**
+     * Returns the entities being stored.
+     * 
+     * @return the entities being stored.
+     */
+    private final ConcurrentMap<V, V> getData() {
+        return data;
+    }
+
+}
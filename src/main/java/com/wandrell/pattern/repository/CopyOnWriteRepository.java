@@ -0,0 +1,263 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Multiset;
+
+/**
+ * Copy-on-write implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * .
+ * <p>
+ * The entities are kept in an immutable snapshot. Each time the repository is
+ * modified a new snapshot is created with the changes, and then published,
+ * taking the place of the previous one.
+ * <p>
+ * This makes writing expensive, as each write copies all the data, but reading
+ * becomes cheap. Queries just iterate over the current snapshot, without
+ * copying it or taking any lock, and {@link #getAll() getAll} returns that same
+ * snapshot. So this is meant for cases where the repository is read much more
+ * often than it is modified. When several entities are modified together the
+ * batch operations should be used, as they copy the data only once.
+ * <p>
+ * As the snapshots are immutable, the collection returned by {@code getAll}
+ * can't be modified, and it won't reflect changes made after it was acquired.
+ * The same happens with the iterators returned by {@link #getIterator(Predicate)
+ * getIterator}, which will go through the snapshot current when they were
+ * created.
+ * <p>
+ * The repository is thread safe. Writes are serialized, while reads never
+ * block and always see a complete snapshot.
+ * <p>
+ * The filters are instances of the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
+ * Predicate</a> class. All the entities validating the predicate being used as
+ * filter will be returned.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class CopyOnWriteRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Lock for the writing operations.
+     */
+    private final Object     lock = new Object();
+    /**
+     * The current snapshot of the entities.
+     */
+    private volatile List<V> snapshot;
+
+    /**
+     * Constructs an empty {@code CopyOnWriteRepository}.
+     */
+    public CopyOnWriteRepository() {
+        this(Collections.<V> emptyList());
+    }
+
+    /**
+     * Constructs a {@code CopyOnWriteRepository} containing the specified
+     * entities.
+     * 
+     * @param entities
+     *            the initial entities
+     */
+    public CopyOnWriteRepository(final Collection<V> entities) {
+        super();
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        snapshot = Collections.unmodifiableList(new ArrayList<V>(entities));
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final List<V> data;
+
+        synchronized (lock) {
+            data = new ArrayList<V>(snapshot.size() + 1);
+            data.addAll(snapshot);
+            data.add(entity);
+
+            publish(data);
+        }
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        final List<V> data;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            data = new ArrayList<V>(snapshot.size() + entities.size());
+            data.addAll(snapshot);
+            data.addAll(entities);
+
+            publish(data);
+        }
+    }
+
+    /**
+     * Returns the current snapshot of the entities.
+     * <p>
+     * This is not a copy, but the snapshot itself, and so can't be modified.
+     * 
+     * @return all the entities contained in the repository
+     */
+    @Override
+    public final Collection<V> getAll() {
+        return snapshot;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(snapshot.iterator(), filter);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final List<V> data;
+        final int position;
+
+        synchronized (lock) {
+            position = snapshot.indexOf(entity);
+            if (position >= 0) {
+                data = new ArrayList<V>(snapshot);
+                data.remove(position);
+
+                publish(data);
+            }
+        }
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Multiset<Object> pending; // Entities still to remove
+        final List<V> data;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        pending = HashMultiset.<Object> create(entities);
+
+        synchronized (lock) {
+            data = new ArrayList<V>(snapshot.size());
+            for (final V stored : snapshot) {
+                // Each entity removes only the first equal one stored
+                if (!pending.remove(stored)) {
+                    data.add(stored);
+                }
+            }
+
+            if (data.size() < snapshot.size()) {
+                publish(data);
+            }
+        }
+    }
+
+    /**
+     * Updates an entity on the repository.
+     * <p>
+     * The updated entity keeps the position of the one it replaces.
+     * 
+     * @param entity
+     *            the entity to update.
+     */
+    @Override
+    public final void update(final V entity) {
+        final List<V> data;
+        final int position;
+
+        synchronized (lock) {
+            position = snapshot.indexOf(entity);
+            if (position >= 0) {
+                data = new ArrayList<V>(snapshot);
+                data.set(position, entity);
+
+                publish(data);
+            }
+        }
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final Map<V, V> pending; // Entities still to update
+        final List<V> data;
+        boolean updated;         // Flag marking any entity was updated
+        V replacement;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        pending = new HashMap<V, V>();
+        for (final V entity : entities) {
+            pending.put(entity, entity);
+        }
+
+        synchronized (lock) {
+            updated = false;
+            data = new ArrayList<V>(snapshot);
+            for (int i = 0; i < data.size(); i++) {
+                // Each entity replaces only the first equal one stored
+                replacement = pending.remove(data.get(i));
+                if (replacement != null) {
+                    data.set(i, replacement);
+                    updated = true;
+                }
+            }
+
+            if (updated) {
+                publish(data);
+            }
+        }
+    }
+
+    /**
+     * Publishes the received data as the new snapshot.
+     * 
+     * @param data
+     *            the data for the new snapshot
+     */
+    private final void publish(final List<V> data) {
+        snapshot = Collections.unmodifiableList(data);
+    }
+
+}
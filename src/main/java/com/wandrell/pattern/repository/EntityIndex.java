@@ -0,0 +1,89 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Index for the entities stored in a
+ * {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}.
+ * <p>
+ * An index is registered on a repository, which will keep it updated, telling
+ * it about every entity added or removed. In exchange, when the repository is
+ * queried, it will ask its indexes for the entities which may validate the
+ * filter, and then scan only those instead of all the stored data.
+ * <p>
+ * Each index decides which filters it can handle. Usually these will be
+ * predicates created by the index itself, which know how to be resolved
+ * through it. For any other filter the index just gives no answer, and the
+ * repository falls back to scanning all the entities.
+ * <p>
+ * The repository may store entities equal to each other, but indexes are
+ * allowed to keep only one of them. Repositories take care of this by
+ * removing an entity from the indexes only after all the equal entities have
+ * been removed, and by returning all the stored entities equal to each
+ * candidate found.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public interface EntityIndex<V> {
+
+    /**
+     * Adds an entity to the index.
+     * 
+     * @param entity
+     *            the entity to index
+     */
+    public void add(final V entity);
+
+    /**
+     * Returns the entities which may validate the specified filter.
+     * <p>
+     * These are candidates, which the repository will still check against the
+     * filter, so they may include entities not validating it. But no entity
+     * validating the filter should be left out.
+     * <p>
+     * If the filter can't be resolved through this index then {@code null} is
+     * returned.
+     * 
+     * @param filter
+     *            the filter to resolve
+     * @return the candidates for the filter, or {@code null} if the filter is
+     *         not supported
+     */
+    public Iterable<V> find(final Predicate<V> filter);
+
+    /**
+     * Removes an entity from the index.
+     * 
+     * @param entity
+     *            the entity to remove
+     */
+    public void remove(final V entity);
+
+}
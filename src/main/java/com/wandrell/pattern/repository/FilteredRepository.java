@@ -25,6 +25,9 @@
 package com.wandrell.pattern.repository;
 
 import java.util.Collection;
+import java.util.Iterator;
+
+import com.google.common.base.Function;
 
 /**
  * Extension of {@link com.wandrell.pattern.repository.Repository Repository}
@@ -48,6 +51,46 @@ import java.util.Collection;
  */
 public interface FilteredRepository<V, F> extends Repository<V> {
 
+    /**
+     * Summarizes a numeric attribute of the entities validating the filter.
+     * <p>
+     * The summary is computed while the entities are queried, so they are
+     * never gathered into a collection.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to summarize
+     * @param attribute
+     *            the function reading the attribute from the entities
+     * @return the summary of the attribute
+     */
+    public Aggregate aggregate(final F filter,
+            final Function<? super V, ? extends Number> attribute);
+
+    /**
+     * Counts the entities validating the filter.
+     * <p>
+     * This returns the same number as the size of the collection returned by
+     * {@link #getCollection(Object) getCollection}, but the entities are not
+     * gathered into a collection.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to count
+     * @return the number of entities validating the filter
+     */
+    public long count(final F filter);
+
+    /**
+     * Indicates if any entity validates the filter.
+     * <p>
+     * The query stops as soon as a matching entity is found.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to look for
+     * @return {@code true} if any entity validates the filter, {@code false}
+     *         otherwise
+     */
+    public boolean exists(final F filter);
+
     /**
      * Queries the entities in the repository and returns a subset of them.
      * <p>
@@ -64,6 +107,23 @@ public interface FilteredRepository<V, F> extends Repository<V> {
      */
     public Collection<V> getCollection(final F filter);
 
+    /**
+     * Queries the entities in the repository and returns a subset of them,
+     * containing no more than the specified number of entities.
+     * <p>
+     * This works the same as {@link #getCollection(Object) getCollection},
+     * but only the first matches, up to the limit, will be returned. So the
+     * query can stop as soon as enough entities have been found.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param limit
+     *            the maximum number of entities to return
+     * @return the filtered subset of entities, with no more entities than the
+     *         limit
+     */
+    public Collection<V> getCollection(final F filter, final int limit);
+
     /**
      * Queries the entities in the repository and returns only one.
      * <p>
@@ -87,4 +147,45 @@ public interface FilteredRepository<V, F> extends Repository<V> {
      */
     public V getEntity(final F filter);
 
+    /**
+     * Queries the entities in the repository and returns an iterator over
+     * them.
+     * <p>
+     * Unlike {@link #getCollection(Object) getCollection}, the entities are
+     * not gathered beforehand. Instead they are searched for while the
+     * iterator is consumed, so the memory used won't depend on the number of
+     * entities found.
+     * <p>
+     * The iterator does not support removing entities. Whether it reflects
+     * changes made to the repository while it is used depends on the
+     * implementation.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @return an iterator over the filtered entities
+     */
+    public Iterator<V> getIterator(final F filter);
+
+    /**
+     * Queries the entities in the repository and returns a page of them.
+     * <p>
+     * The page is a subset of the entities returned by
+     * {@link #getCollection(Object) getCollection}, where the first entities,
+     * up to the offset, are skipped, and then no more entities than the limit
+     * are returned.
+     * <p>
+     * Only the entities in the page are gathered, so its size is the only
+     * thing affecting the memory used.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @param offset
+     *            number of entities to skip
+     * @param limit
+     *            the maximum number of entities to return
+     * @return the page of filtered entities
+     */
+    public Collection<V> getPage(final F filter, final int offset,
+            final int limit);
+
 }
@@ -0,0 +1,219 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Immutable and canonical implementation of {@link QueryData}.
+ * <p>
+ * The parameters are copied into a map sorted by key, so two instances with
+ * the same query and parameters are equal, no matter the order in which the
+ * parameters were added. As with {@link DefaultQueryData}, the parameter
+ * values may be {@code null}, but not the keys. The hash code is computed
+ * only once, when the instance is created.
+ * <p>
+ * This makes it a good choice for keys, such as those used to cache the
+ * results of queries.
+ * <p>
+ * As the data can't be changed, all the methods meant to edit the parameters
+ * will throw an {@code UnsupportedOperationException}.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public final class ImmutableQueryData implements QueryData {
+
+    /**
+     * Returns an {@code ImmutableQueryData} with the same data as the one
+     * received.
+     * <p>
+     * If the data is already an {@code ImmutableQueryData} it is returned
+     * as it is, otherwise a copy is created.
+     * 
+     * @param data
+     *            the data to copy
+     * @return an immutable copy of the data
+     */
+    public static final ImmutableQueryData copyOf(final QueryData data) {
+        final ImmutableQueryData result;
+
+        checkNotNull(data, "Received a null pointer as data");
+
+        if (data instanceof ImmutableQueryData) {
+            result = (ImmutableQueryData) data;
+        } else {
+            result = new ImmutableQueryData(data.getQuery(),
+                    data.getParameters());
+        }
+
+        return result;
+    }
+
+    /**
+     * Precomputed hash code.
+     */
+    private final int                       hash;
+    /**
+     * Parameters for the query, sorted by key.
+     */
+    private final SortedMap<String, Object> params;
+    /**
+     * The string for the query.
+     */
+    private final String                    queryStr;
+
+    /**
+     * Constructs an {@code ImmutableQueryData} with no parameters.
+     * 
+     * @param query
+     *            the query string
+     */
+    public ImmutableQueryData(final String query) {
+        this(query, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * Constructs an {@code ImmutableQueryData} with the specified query's
+     * data.
+     * <p>
+     * The parameters are copied, so later changes to the received map won't
+     * affect this instance.
+     * 
+     * @param query
+     *            the query string
+     * @param parameters
+     *            the query's parameters, which may have {@code null} values
+     */
+    public ImmutableQueryData(final String query,
+            final Map<String, Object> parameters) {
+        super();
+
+        checkNotNull(query, "Received a null pointer as query");
+        checkNotNull(parameters, "Received a null pointer as parameters");
+        for (final String key : parameters.keySet()) {
+            checkNotNull(key, "Received a null pointer as parameter key");
+        }
+
+        queryStr = query;
+        params = Collections
+                .unmodifiableSortedMap(new TreeMap<String, Object>(parameters));
+        hash = Objects.hash(queryStr, params);
+    }
+
+    /**
+     * Unsupported operation, as the data is immutable.
+     * 
+     * @param key
+     *            key for the parameter
+     * @param value
+     *            value for the parameter
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public final void addParameter(final String key, final Object value) {
+        throw new UnsupportedOperationException(
+                "The query data can't be modified");
+    }
+
+    /**
+     * Unsupported operation, as the data is immutable.
+     * 
+     * @param parameters
+     *            {@code Map} with all the parameter pairs
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public final void addParameters(final Map<String, Object> parameters) {
+        throw new UnsupportedOperationException(
+                "The query data can't be modified");
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        final ImmutableQueryData other;
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        other = (ImmutableQueryData) obj;
+        return (hash == other.hash) && queryStr.equals(other.queryStr)
+                && params.equals(other.params);
+    }
+
+    @Override
+    public final SortedMap<String, Object> getParameters() {
+        return params;
+    }
+
+    @Override
+    public final String getQuery() {
+        return queryStr;
+    }
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Unsupported operation, as the data is immutable.
+     * 
+     * @param key
+     *            the key for the parameter to remove
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public final void removeParameter(final String key) {
+        throw new UnsupportedOperationException(
+                "The query data can't be modified");
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("query", queryStr)
+                .add("parameters", params).toString();
+    }
+
+}
@@ -0,0 +1,939 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.wandrell.pattern.parser.Parser;
+
+/**
+ * Persistent implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * , backed by an append-only log.
+ * <p>
+ * Each change made to the repository is appended as a record to a log file,
+ * which is forced to disk before the operation returns. Every record carries
+ * a checksum, and when the log is replayed it stops at the first damaged
+ * record, such as one torn by a crash, discarding it and everything after
+ * it. An append which fails is also removed from the log. The entities are
+ * transformed to bytes, and back, with a pair of
+ * {@link com.wandrell.pattern.parser.Parser Parser} instances.
+ * <p>
+ * As the log grows it is compacted in the background. A new log is started,
+ * and the entities stored at that moment are written into a snapshot file,
+ * after which the older files are deleted. The directory itself is forced to
+ * disk before deleting them, so the new snapshot is never lost along with the
+ * older logs. When the repository is opened again
+ * it maps the latest complete snapshot into memory, and then replays only the
+ * logs written after it.
+ * <p>
+ * The files are kept in a directory, which should be used only by this
+ * repository. Snapshots are named {@code snapshot-N.dat} and logs
+ * {@code log-N.dat}, where the snapshot for a generation contains the entities
+ * stored before the log for that same generation started.
+ * <p>
+ * While the files are the persistent copy of the data, queries are answered
+ * from memory. Like with a hashed
+ * {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}, entities are unique by equality and kept in insertion
+ * order.
+ * <p>
+ * Writes are serialized with the background compaction, but otherwise the
+ * repository is not thread safe. It should be closed once it is not needed, to
+ * release the files and stop the compaction thread.
+ * <p>
+ * Errors while accessing the files are thrown wrapped into a
+ * {@code RuntimeException}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class LogFileRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>>
+        implements Closeable {
+
+    /**
+     * Default size in bytes for the log before it is compacted.
+     */
+    private static final long   DEFAULT_THRESHOLD = 64L << 20;
+    /**
+     * Extension for the data files.
+     */
+    private static final String EXTENSION         = ".dat";
+    /**
+     * Size of the header before each log record, with its type, length and
+     * checksum.
+     */
+    private static final int    HEADER            = 9;
+    /**
+     * Size of the length stored before each entity.
+     */
+    private static final int    LENGTH            = 4;
+    /**
+     * Prefix for the log files.
+     */
+    private static final String LOG               = "log-";
+    /**
+     * The logger used for logging compaction errors.
+     */
+    private static final Logger LOGGER            = LoggerFactory
+            .getLogger(LogFileRepository.class);
+    /**
+     * Log record type for added entities.
+     */
+    private static final byte   RECORD_ADD        = 1;
+    /**
+     * Log record type for removed entities.
+     */
+    private static final byte   RECORD_REMOVE     = 3;
+    /**
+     * Log record type for updated entities.
+     */
+    private static final byte   RECORD_UPDATE     = 2;
+    /**
+     * Prefix for the snapshot files.
+     */
+    private static final String SNAPSHOT          = "snapshot-";
+    /**
+     * Extension for the snapshot files while they are being written.
+     */
+    private static final String TEMPORAL          = ".tmp";
+
+    /**
+     * Returns the logger being used to log compaction errors.
+     * 
+     * @return the logger being used
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Flag indicating if a compaction is running or scheduled.
+     */
+    private final AtomicBoolean         compacting;
+    /**
+     * Executor running the compactions.
+     */
+    private final ExecutorService       compactor;
+    /**
+     * The entities stored in the repository, mapped to themselves.
+     */
+    private final Map<V, V>             data;
+    /**
+     * Parser reading the entities from their bytes.
+     */
+    private final Parser<ByteBuffer, V> decoder;
+    /**
+     * Directory containing the files.
+     */
+    private final Path                  directory;
+    /**
+     * Parser transforming the entities into bytes.
+     */
+    private final Parser<V, byte[]>     encoder;
+    /**
+     * Current generation, to which the open log belongs.
+     */
+    private long                        generation;
+    /**
+     * Lock for the writing operations.
+     */
+    private final Object                lock;
+    /**
+     * Channel for the current log.
+     */
+    private FileChannel                 log;
+    /**
+     * Size in bytes the log should reach before being compacted.
+     */
+    private final long                  threshold;
+
+    /**
+     * Constructs a {@code LogFileRepository} stored in the specified
+     * directory, which compacts the log once it reaches 64 megabytes.
+     * <p>
+     * If the directory contains files from a previous repository, these will
+     * be loaded.
+     * 
+     * @param path
+     *            the directory containing the files
+     * @param entityEncoder
+     *            parser transforming the entities into bytes
+     * @param entityDecoder
+     *            parser reading the entities from their bytes
+     */
+    public LogFileRepository(final Path path,
+            final Parser<V, byte[]> entityEncoder,
+            final Parser<ByteBuffer, V> entityDecoder) {
+        this(path, entityEncoder, entityDecoder, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a {@code LogFileRepository} stored in the specified
+     * directory, which compacts the log once it reaches the specified size.
+     * <p>
+     * If the directory contains files from a previous repository, these will
+     * be loaded.
+     * 
+     * @param path
+     *            the directory containing the files
+     * @param entityEncoder
+     *            parser transforming the entities into bytes
+     * @param entityDecoder
+     *            parser reading the entities from their bytes
+     * @param logBytes
+     *            size in bytes the log should reach before being compacted
+     */
+    public LogFileRepository(final Path path,
+            final Parser<V, byte[]> entityEncoder,
+            final Parser<ByteBuffer, V> entityDecoder, final long logBytes) {
+        super();
+
+        checkNotNull(path, "Received a null pointer as directory");
+        checkNotNull(entityEncoder, "Received a null pointer as encoder");
+        checkNotNull(entityDecoder, "Received a null pointer as decoder");
+        checkArgument(logBytes > 0, "The log size should be positive");
+
+        directory = path;
+        encoder = entityEncoder;
+        decoder = entityDecoder;
+        threshold = logBytes;
+
+        data = new LinkedHashMap<V, V>();
+        lock = new Object();
+        compacting = new AtomicBoolean(false);
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public final Thread newThread(final Runnable runnable) {
+                final Thread thread;
+
+                thread = new Thread(runnable, "log-compactor");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+
+        });
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (final IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Override
+    public final void add(final V entity) {
+        synchronized (lock) {
+            if (!data.containsKey(entity)) {
+                append(RECORD_ADD, entity);
+                data.put(entity, entity);
+            }
+        }
+    }
+
+    /**
+     * Adds all the entities to the repository.
+     * <p>
+     * All the records are appended to the log and forced to disk at once.
+     * 
+     * @param entities
+     *            the entities to add
+     */
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        final Map<V, V> added; // Entities to add
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            added = new LinkedHashMap<V, V>();
+            for (final V entity : entities) {
+                if ((!data.containsKey(entity))
+                        && (!added.containsKey(entity))) {
+                    added.put(entity, entity);
+                }
+            }
+
+            append(RECORD_ADD, added.values());
+            data.putAll(added);
+        }
+    }
+
+    /**
+     * Closes the repository.
+     * <p>
+     * Any compaction in progress will be allowed to finish, and then the log
+     * is closed.
+     * 
+     * @throws IOException
+     *             if the log can't be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (lock) {
+            log.close();
+        }
+    }
+
+    /**
+     * Compacts the log.
+     * <p>
+     * A new log is started, and the entities currently stored are written
+     * into a snapshot for it. Then the older files are deleted.
+     * <p>
+     * This is done automatically in the background once the log grows enough,
+     * but it can be also be requested at any moment through this method, which
+     * will run it in the calling thread.
+     */
+    public final void compact() {
+        final Collection<V> entities;
+        final long snapshotGeneration;
+
+        try {
+            synchronized (lock) {
+                entities = new ArrayList<V>(data.values());
+
+                log.force(false);
+                log.close();
+
+                generation++;
+                snapshotGeneration = generation;
+                log = openLog(generation);
+            }
+
+            writeSnapshot(entities, snapshotGeneration);
+            deleteBefore(snapshotGeneration);
+        } catch (final IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new LinkedList<V>(data.values());
+    }
+
+    /**
+     * Returns an iterator over the entities validating the filter.
+     * <p>
+     * The iterator goes directly through the stored data, and so the
+     * repository should not be modified while it is being used.
+     * 
+     * @param filter
+     *            the filter which discriminates the entities to be returned
+     * @return an iterator over the filtered entities
+     */
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(data.values().iterator(), filter);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        synchronized (lock) {
+            if (data.containsKey(entity)) {
+                append(RECORD_REMOVE, entity);
+                data.remove(entity);
+            }
+        }
+    }
+
+    /**
+     * Removes all the entities from the repository.
+     * <p>
+     * All the records are appended to the log and forced to disk at once.
+     * 
+     * @param entities
+     *            the entities to remove
+     */
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final Collection<V> removed; // Entities to remove
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            removed = new LinkedHashSet<V>();
+            for (final V entity : entities) {
+                if (data.containsKey(entity)) {
+                    removed.add(entity);
+                }
+            }
+
+            append(RECORD_REMOVE, removed);
+            for (final V entity : removed) {
+                data.remove(entity);
+            }
+        }
+    }
+
+    @Override
+    public final void update(final V entity) {
+        synchronized (lock) {
+            if (data.containsKey(entity)) {
+                append(RECORD_UPDATE, entity);
+                data.put(entity, entity);
+            }
+        }
+    }
+
+    /**
+     * Updates all the entities on the repository.
+     * <p>
+     * All the records are appended to the log and forced to disk at once.
+     * 
+     * @param entities
+     *            the entities to update
+     */
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final Collection<V> updated; // Entities to update
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        synchronized (lock) {
+            updated = new LinkedList<V>();
+            for (final V entity : entities) {
+                if (data.containsKey(entity)) {
+                    updated.add(entity);
+                }
+            }
+
+            append(RECORD_UPDATE, updated);
+            for (final V entity : updated) {
+                data.put(entity, entity);
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the log, and forces it to disk.
+     * <p>
+     * If this makes the log reach the threshold, a compaction is scheduled.
+     * 
+     * @param type
+     *            the record type
+     * @param entity
+     *            the entity for the record
+     */
+    private final void append(final byte type, final V entity) {
+        append(new ByteBuffer[] { encode(type, entity) });
+    }
+
+    /**
+     * Appends a record for each entity to the log, and forces them to disk at
+     * once.
+     * <p>
+     * If there are no entities nothing is written.
+     * 
+     * @param type
+     *            the record type
+     * @param entities
+     *            the entities for the records
+     */
+    private final void append(final byte type,
+            final Collection<V> entities) {
+        final ByteBuffer[] records;
+        int i;
+
+        if (!entities.isEmpty()) {
+            records = new ByteBuffer[entities.size()];
+            i = 0;
+            for (final V entity : entities) {
+                records[i] = encode(type, entity);
+                i++;
+            }
+
+            append(records);
+        }
+    }
+
+    /**
+     * Appends several records to the log, and forces them to disk at once.
+     * <p>
+     * If this makes the log reach the threshold, a compaction is scheduled.
+     * If writing fails, the log is truncated back to its previous size.
+     * 
+     * @param records
+     *            the records to append
+     */
+    private final void append(final ByteBuffer[] records) {
+        final long start; // Log size before appending
+        long pending;     // Bytes still to write
+
+        pending = 0;
+        for (final ByteBuffer record : records) {
+            pending += record.remaining();
+        }
+
+        try {
+            start = log.size();
+            try {
+                while (pending > 0) {
+                    pending -= log.write(records);
+                }
+                log.force(false);
+            } catch (final IOException exception) {
+                // Drops the torn records, so later ones follow the last good
+                // record
+                truncate(start, exception);
+                throw exception;
+            }
+
+            if ((log.size() >= threshold)
+                    && compacting.compareAndSet(false, true)) {
+                compactor.execute(new Runnable() {
+
+                    @Override
+                    public final void run() {
+                        try {
+                            compact();
+                        } catch (final RuntimeException exception) {
+                            getLogger().error(exception.getMessage(),
+                                    exception);
+                        } finally {
+                            compacting.set(false);
+                        }
+                    }
+
+                });
+            }
+        } catch (final IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Computes the checksum for a log record.
+     * 
+     * @param type
+     *            the record type
+     * @param bytes
+     *            the encoded entity
+     * @return the checksum for the record
+     */
+    private final int checksum(final byte type, final byte[] bytes) {
+        final CRC32 crc;
+
+        crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(LENGTH).putInt(bytes.length).array());
+        crc.update(bytes);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Deletes the files older than the specified generation.
+     * 
+     * @param oldest
+     *            the oldest generation to keep
+     * @throws IOException
+     *             if a file can't be deleted
+     */
+    private final void deleteBefore(final long oldest) throws IOException {
+        for (final Long gen : listGenerations(SNAPSHOT)) {
+            if (gen < oldest) {
+                Files.deleteIfExists(getFile(SNAPSHOT, gen));
+            }
+        }
+        for (final Long gen : listGenerations(LOG)) {
+            if (gen < oldest) {
+                Files.deleteIfExists(getFile(LOG, gen));
+            }
+        }
+    }
+
+    /**
+     * Encodes an entity into a log record.
+     * 
+     * @param type
+     *            the record type
+     * @param entity
+     *            the entity for the record
+     * @return the record, ready to be written
+     */
+    private final ByteBuffer encode(final byte type, final V entity) {
+        final byte[] bytes;
+        final ByteBuffer record;
+
+        bytes = encoder.parse(entity);
+
+        record = ByteBuffer.allocate(HEADER + bytes.length);
+        record.put(type);
+        record.putInt(bytes.length);
+        record.putInt(checksum(type, bytes));
+        record.put(bytes);
+        record.flip();
+
+        return record;
+    }
+
+    /**
+     * Returns the path to a file.
+     * 
+     * @param prefix
+     *            the prefix for the file type
+     * @param gen
+     *            the generation of the file
+     * @return the path to the file
+     */
+    private final Path getFile(final String prefix, final long gen) {
+        return directory.resolve(prefix + gen + EXTENSION);
+    }
+
+    /**
+     * Returns the generations for which there are files of the specified
+     * type.
+     * 
+     * @param prefix
+     *            the prefix for the file type
+     * @return the generations found, in ascending order
+     * @throws IOException
+     *             if the directory can't be read
+     */
+    private final TreeSet<Long> listGenerations(final String prefix)
+            throws IOException {
+        final TreeSet<Long> generations;
+        String name;
+
+        generations = new TreeSet<Long>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                prefix + "*" + EXTENSION)) {
+            for (final Path file : files) {
+                name = file.getFileName().toString();
+                generations.add(Long.valueOf(name.substring(prefix.length(),
+                        name.length() - EXTENSION.length())));
+            }
+        }
+
+        return generations;
+    }
+
+    /**
+     * Opens the log for the specified generation, ready to append records.
+     * <p>
+     * The directory is forced to disk, so the log survives a crash if it was
+     * just created.
+     * 
+     * @param gen
+     *            the generation for the log
+     * @return a channel to the log
+     * @throws IOException
+     *             if the log can't be opened
+     */
+    private final FileChannel openLog(final long gen) throws IOException {
+        final FileChannel channel;
+
+        channel = FileChannel.open(getFile(LOG, gen), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+
+        syncDirectory();
+
+        return channel;
+    }
+
+    /**
+     * Loads the data from the directory.
+     * <p>
+     * The latest snapshot is mapped into memory, and then the logs from that
+     * generation onwards are replayed. Files left by unfinished compactions
+     * are ignored and deleted.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    private final void recover() throws IOException {
+        final TreeSet<Long> snapshots;
+        final TreeSet<Long> logs;
+        final long oldest;
+        long valid;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + TEMPORAL)) {
+            for (final Path file : files) {
+                Files.delete(file);
+            }
+        }
+
+        snapshots = listGenerations(SNAPSHOT);
+        if (snapshots.isEmpty()) {
+            oldest = 0;
+        } else {
+            oldest = snapshots.last();
+            readSnapshot(oldest);
+        }
+
+        generation = oldest;
+        logs = listGenerations(LOG);
+        for (final Long gen : logs.tailSet(oldest)) {
+            valid = replay(gen);
+            generation = gen;
+
+            // Drops the records after the first damaged one
+            try (FileChannel channel = FileChannel.open(getFile(LOG, gen),
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+
+        deleteBefore(oldest);
+
+        log = openLog(generation);
+    }
+
+    /**
+     * Maps a file into memory.
+     * 
+     * @param file
+     *            the file to map
+     * @return the contents of the file
+     * @throws IOException
+     *             if the file can't be read
+     */
+    private final MappedByteBuffer map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+    }
+
+    /**
+     * Reads the next entity from a buffer, moving its position past it.
+     * 
+     * @param buffer
+     *            the buffer to read, positioned at the entity
+     * @param length
+     *            the length of the entity
+     * @return the entity read
+     */
+    private final V read(final ByteBuffer buffer, final int length) {
+        final ByteBuffer view;
+
+        view = buffer.duplicate();
+        view.limit(buffer.position() + length);
+        buffer.position(buffer.position() + length);
+
+        return decoder.parse(view);
+    }
+
+    /**
+     * Reads the entities from a snapshot.
+     * 
+     * @param gen
+     *            the generation of the snapshot
+     * @throws IOException
+     *             if the snapshot can't be read
+     */
+    private final void readSnapshot(final long gen) throws IOException {
+        final ByteBuffer buffer;
+        V entity;
+
+        buffer = map(getFile(SNAPSHOT, gen));
+        while (buffer.hasRemaining()) {
+            entity = read(buffer, buffer.getInt());
+            data.put(entity, entity);
+        }
+    }
+
+    /**
+     * Applies the records from a log.
+     * <p>
+     * The log is applied up to the first damaged record, that is one which is
+     * incomplete or doesn't match its checksum. This record, and any after
+     * it, are ignored.
+     * 
+     * @param gen
+     *            the generation of the log
+     * @return the number of bytes in the log taken by valid records
+     * @throws IOException
+     *             if the log can't be read
+     */
+    private final long replay(final long gen) throws IOException {
+        final ByteBuffer buffer;
+        byte[] bytes;
+        byte type;
+        int length;
+        int checksum;
+        V entity;
+        long valid;
+        boolean intact;
+
+        buffer = map(getFile(LOG, gen));
+        valid = 0;
+        intact = true;
+        while (intact && (buffer.remaining() >= HEADER)) {
+            type = buffer.get();
+            length = buffer.getInt();
+            checksum = buffer.getInt();
+            intact = (length >= 0) && (buffer.remaining() >= length);
+
+            if (intact) {
+                bytes = new byte[length];
+                buffer.get(bytes);
+                intact = checksum == checksum(type, bytes);
+
+                if (intact) {
+                    entity = decoder.parse(ByteBuffer.wrap(bytes));
+                    if (type == RECORD_REMOVE) {
+                        data.remove(entity);
+                    } else if ((type == RECORD_ADD)
+                            || data.containsKey(entity)) {
+                        data.put(entity, entity);
+                    }
+                    valid = buffer.position();
+                }
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Forces the directory to disk, so the files created, renamed or deleted
+     * in it survive a crash.
+     * 
+     * @throws IOException
+     *             if the directory can't be forced
+     */
+    private final void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Truncates the log after a failed append.
+     * <p>
+     * Errors while truncating are added to the exception which caused the
+     * failure.
+     * 
+     * @param size
+     *            the size of the log before the append
+     * @param cause
+     *            the exception which made the append fail
+     */
+    private final void truncate(final long size, final IOException cause) {
+        try {
+            log.truncate(size);
+            log.force(false);
+        } catch (final IOException exception) {
+            cause.addSuppressed(exception);
+        }
+    }
+
+    /**
+     * Writes a snapshot with the specified entities.
+     * <p>
+     * The snapshot is written into a temporal file, which is renamed once it
+     * is complete. Then the directory is forced to disk, so the rename is
+     * durable.
+     * 
+     * @param entities
+     *            the entities for the snapshot
+     * @param gen
+     *            the generation of the snapshot
+     * @throws IOException
+     *             if the snapshot can't be written
+     */
+    private final void writeSnapshot(final Collection<V> entities,
+            final long gen) throws IOException {
+        final Path temporal;
+        ByteBuffer record;
+        byte[] bytes;
+
+        temporal = directory.resolve(SNAPSHOT + gen + TEMPORAL);
+        try (FileChannel channel = FileChannel.open(temporal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final V entity : entities) {
+                bytes = encoder.parse(entity);
+
+                record = ByteBuffer.allocate(LENGTH + bytes.length);
+                record.putInt(bytes.length);
+                record.put(bytes);
+                record.flip();
+
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        }
+
+        Files.move(temporal, getFile(SNAPSHOT, gen),
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Column of a {@link ColumnarRepository}, storing a {@code long} attribute of
+ * the entities.
+ * <p>
+ * Columns are created by the repository, and serve to create the
+ * {@link ColumnPredicate} instances which the repository resolves by
+ * scanning the column, instead of the entities.
+ * <p>
+ * All the predicates look for values in a range. If the range is empty, for
+ * example when looking for values lower than the minimum {@code long}, the
+ * predicate won't match any entity.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities
+ */
+public final class LongColumn<V> {
+
+    /**
+     * Reads the attribute from the entities.
+     */
+    private final LongAttribute<? super V> attribute;
+    /**
+     * Name of the column.
+     */
+    private final String                   name;
+    /**
+     * Position of the column in the repository.
+     */
+    private final int                      position;
+    /**
+     * Repository containing the column.
+     */
+    private final ColumnarRepository<V>    repository;
+
+    /**
+     * Constructs a column.
+     * 
+     * @param owner
+     *            repository containing the column
+     * @param columnName
+     *            name of the column
+     * @param attr
+     *            reads the attribute from the entities
+     * @param index
+     *            position of the column in the repository
+     */
+    LongColumn(final ColumnarRepository<V> owner, final String columnName,
+            final LongAttribute<? super V> attr, final int index) {
+        super();
+
+        repository = owner;
+        name = columnName;
+        attribute = attr;
+        position = index;
+    }
+
+    /**
+     * Creates a predicate for the entities with a value in the specified
+     * range, both ends included.
+     * 
+     * @param minimum
+     *            lowest value accepted
+     * @param maximum
+     *            highest value accepted
+     * @return a predicate for the range
+     */
+    public final ColumnPredicate<V> between(final long minimum,
+            final long maximum) {
+        return new ColumnPredicate<V>(this, minimum, maximum);
+    }
+
+    /**
+     * Creates a predicate for the entities with the specified value.
+     * 
+     * @param value
+     *            value to look for
+     * @return a predicate for the value
+     */
+    public final ColumnPredicate<V> equalTo(final long value) {
+        return between(value, value);
+    }
+
+    /**
+     * Returns the attribute stored in the column.
+     * 
+     * @return the attribute stored in the column
+     */
+    public final LongAttribute<? super V> getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Returns the name of the column.
+     * 
+     * @return the name of the column
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a predicate for the entities with a value greater than the
+     * specified one.
+     * 
+     * @param value
+     *            exclusive lower limit
+     * @return a predicate for the values greater than the received one
+     */
+    public final ColumnPredicate<V> greaterThan(final long value) {
+        final ColumnPredicate<V> result;
+
+        if (value == Long.MAX_VALUE) {
+            result = between(1, 0);
+        } else {
+            result = between(value + 1, Long.MAX_VALUE);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a predicate for the entities with a value lower than the
+     * specified one.
+     * 
+     * @param value
+     *            exclusive upper limit
+     * @return a predicate for the values lower than the received one
+     */
+    public final ColumnPredicate<V> lessThan(final long value) {
+        final ColumnPredicate<V> result;
+
+        if (value == Long.MIN_VALUE) {
+            result = between(1, 0);
+        } else {
+            result = between(Long.MIN_VALUE, value - 1);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("name", name).toString();
+    }
+
+    /**
+     * Returns the position of the column in the repository.
+     * 
+     * @return the position of the column
+     */
+    final int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the repository containing the column.
+     * 
+     * @return the repository containing the column
+     */
+    final ColumnarRepository<V> getRepository() {
+        return repository;
+    }
+
+}
@@ -0,0 +1,411 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * Implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * for entities identified by a {@code long} key.
+ * <p>
+ * The entities are stored in a hash table using open addressing, where the
+ * keys are kept in a {@code long} array and the entities in a parallel array.
+ * The keys are read with a {@link LongKeyExtractor}, and are never boxed, so
+ * {@link #get(long) get}, {@link #contains(long) contains} and
+ * {@link #remove(long) remove} find the entity without allocating any object.
+ * <p>
+ * Collisions are solved with linear probing, and removed entities don't leave
+ * tombstones behind, instead the entities following them are shifted back. So
+ * lookups stay fast no matter how many entities have been removed. The table
+ * is kept at most half full, doubling its size when needed.
+ * <p>
+ * Entities are unique by key. Adding an entity with a key already stored does
+ * nothing, while updating replaces the entity with the same key.
+ * <p>
+ * Queries with a filter still scan all the entities, which are returned in
+ * no particular order. The iterators go directly through the table, so the
+ * repository should not be modified while they are being used.
+ * <p>
+ * This repository is not thread safe.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class LongKeyedRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Default initial capacity of the table.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Mixes the bits of a key, so keys following a pattern are spread through
+     * the table.
+     * <p>
+     * This is the finalizer from MurmurHash3.
+     * 
+     * @param key
+     *            the key to mix
+     * @return the mixed key
+     */
+    private static final long mix(final long key) {
+        long hash;
+
+        hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    /**
+     * Entities in the table, {@code null} for empty slots.
+     */
+    private Object[]                  entities;
+    /**
+     * Reads the keys from the entities.
+     */
+    private final LongKeyExtractor<V> extractor;
+    /**
+     * Keys in the table, parallel to the entities.
+     */
+    private long[]                    keys;
+    /**
+     * Mask for turning a hash into a slot.
+     */
+    private int                       mask;
+    /**
+     * Number of entities stored.
+     */
+    private int                       size;
+
+    /**
+     * Constructs a {@code LongKeyedRepository} with the default capacity.
+     * 
+     * @param keyExtractor
+     *            reads the keys from the entities
+     */
+    public LongKeyedRepository(final LongKeyExtractor<V> keyExtractor) {
+        this(keyExtractor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a {@code LongKeyedRepository} able to hold the specified
+     * number of entities before growing.
+     * 
+     * @param keyExtractor
+     *            reads the keys from the entities
+     * @param capacity
+     *            expected number of entities
+     */
+    public LongKeyedRepository(final LongKeyExtractor<V> keyExtractor,
+            final int capacity) {
+        super();
+
+        checkNotNull(keyExtractor, "Received a null pointer as extractor");
+        checkArgument(capacity >= 0, "The capacity can't be negative");
+        checkArgument(capacity <= (1 << 29), "The capacity is too big");
+
+        extractor = keyExtractor;
+
+        allocate(Math.max(DEFAULT_CAPACITY,
+                Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) * 2));
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final long key;
+        final int slot;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        key = extractor.getKey(entity);
+        slot = find(key);
+        if (entities[slot] == null) {
+            if ((size + 1) * 2 > entities.length) {
+                resize(entities.length * 2);
+                insert(key, entity);
+            } else {
+                keys[slot] = key;
+                entities[slot] = entity;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Indicates if there is an entity with the specified key.
+     * 
+     * @param key
+     *            the key to search for
+     * @return {@code true} if the key is stored, {@code false} otherwise
+     */
+    public final boolean contains(final long key) {
+        return entities[find(key)] != null;
+    }
+
+    /**
+     * Returns the entity with the specified key.
+     * 
+     * @param key
+     *            the key to search for
+     * @return the entity with the key, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public final V get(final long key) {
+        return (V) entities[find(key)];
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new ArrayList<V>(size);
+        Iterators.addAll(result, iterator());
+
+        return result;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(iterator(), filter);
+    }
+
+    /**
+     * Removes the entity with the specified key.
+     * 
+     * @param key
+     *            the key of the entity to remove
+     * @return the removed entity, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public final V remove(final long key) {
+        final int slot;
+        final V removed;
+
+        slot = find(key);
+        removed = (V) entities[slot];
+        if (removed != null) {
+            shiftBack(slot);
+            size--;
+        }
+
+        return removed;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        remove(extractor.getKey(entity));
+    }
+
+    /**
+     * Returns the number of entities stored.
+     * 
+     * @return the number of entities stored
+     */
+    public final int size() {
+        return size;
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int slot;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        slot = find(extractor.getKey(entity));
+        if (entities[slot] != null) {
+            entities[slot] = entity;
+        }
+    }
+
+    /**
+     * Creates empty arrays for the table.
+     * 
+     * @param capacity
+     *            number of slots, which should be a power of two
+     */
+    private final void allocate(final int capacity) {
+        keys = new long[capacity];
+        entities = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the slot for the key.
+     * <p>
+     * This is the slot containing the key, or the empty slot where it should
+     * be stored if it is missing.
+     * 
+     * @param key
+     *            the key to search for
+     * @return the slot for the key
+     */
+    private final int find(final long key) {
+        int slot;
+
+        slot = home(key);
+        while ((entities[slot] != null) && (keys[slot] != key)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Returns the slot where the key should be if there were no collisions.
+     * 
+     * @param key
+     *            the key
+     * @return the home slot for the key
+     */
+    private final int home(final long key) {
+        return (int) mix(key) & mask;
+    }
+
+    /**
+     * Stores an entity in the first free slot for its key.
+     * <p>
+     * The key should not be stored already.
+     * 
+     * @param key
+     *            the key of the entity
+     * @param entity
+     *            the entity to store
+     */
+    private final void insert(final long key, final Object entity) {
+        final int slot;
+
+        slot = find(key);
+        keys[slot] = key;
+        entities[slot] = entity;
+    }
+
+    /**
+     * Returns an iterator over all the entities in the table.
+     * 
+     * @return an iterator over all the entities
+     */
+    private final Iterator<V> iterator() {
+        return new AbstractIterator<V>() {
+
+            /**
+             * Next slot to check.
+             */
+            private int next = 0;
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected final V computeNext() {
+                final V result;
+
+                while ((next < entities.length) && (entities[next] == null)) {
+                    next++;
+                }
+
+                if (next < entities.length) {
+                    result = (V) entities[next];
+                    next++;
+                } else {
+                    result = endOfData();
+                }
+
+                return result;
+            }
+
+        };
+    }
+
+    /**
+     * Moves all the entities into a table of the specified size.
+     * 
+     * @param capacity
+     *            new number of slots, which should be a power of two
+     */
+    private final void resize(final int capacity) {
+        final Object[] oldEntities;
+        final long[] oldKeys;
+
+        oldEntities = entities;
+        oldKeys = keys;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldEntities.length; i++) {
+            if (oldEntities[i] != null) {
+                insert(oldKeys[i], oldEntities[i]);
+            }
+        }
+    }
+
+    /**
+     * Empties a slot, shifting back the entities which follow it.
+     * <p>
+     * Each entity in the same run of occupied slots is moved into the gap if
+     * that doesn't place it before its home slot. This way lookups never find
+     * an empty slot before the key they are looking for.
+     * 
+     * @param removed
+     *            the slot to empty
+     */
+    private final void shiftBack(final int removed) {
+        int gap;  // Slot being emptied
+        int slot; // Slot being checked
+
+        gap = removed;
+        slot = (removed + 1) & mask;
+        while (entities[slot] != null) {
+            // The entity can move if the gap is between its home and its slot
+            if (((slot - home(keys[slot])) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                entities[gap] = entities[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        entities[gap] = null;
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Materialized view over the entities of a
+ * {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}.
+ * <p>
+ * The view stores the entities validating a filter. As it is an
+ * {@link com.wandrell.pattern.repository.EntityIndex EntityIndex}, once
+ * registered on a repository it is told about each entity added, updated or
+ * removed, and it checks only that entity against the filter. So the view is
+ * kept up to date incrementally, without rescanning the repository.
+ * <p>
+ * The entities can be read directly from the view with
+ * {@link #getEntities() getEntities}. Additionally, when the repository is
+ * queried with a filter equal to the one of the view, the entities are taken
+ * from it. In both cases the cost depends on the number of entities in the
+ * view, instead of those in the repository.
+ * <p>
+ * Equal entities are kept only once in the view, so {@link #getEntities()
+ * getEntities} and {@link #size() size} count them as a single one. Queries
+ * through the repository still return all the equal entities it stores.
+ * <p>
+ * The filter is expected to depend only on immutable attributes, as the view
+ * won't know about changes done to the entities outside of the repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class MaterializedView<V> implements EntityIndex<V> {
+
+    /**
+     * Entities validating the filter.
+     */
+    private final Set<V>       entities;
+    /**
+     * Filter for the entities in the view.
+     */
+    private final Predicate<V> filter;
+    /**
+     * Name of the view.
+     */
+    private final String       name;
+
+    /**
+     * Constructs a {@code MaterializedView} with the specified name and
+     * filter.
+     * 
+     * @param viewName
+     *            the name of the view
+     * @param viewFilter
+     *            the filter for the entities in the view
+     */
+    public MaterializedView(final String viewName,
+            final Predicate<V> viewFilter) {
+        super();
+
+        checkNotNull(viewName, "Received a null pointer as name");
+        checkNotNull(viewFilter, "Received a null pointer as filter");
+
+        name = viewName;
+        filter = viewFilter;
+        entities = new LinkedHashSet<V>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        if (getFilter().apply(entity)) {
+            getStoredEntities().add(entity);
+        }
+    }
+
+    @Override
+    public final Iterable<V> find(final Predicate<V> query) {
+        final Iterable<V> result;
+
+        if (getFilter().equals(query)) {
+            result = getStoredEntities();
+        } else {
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the entities in the view.
+     * <p>
+     * This is a copy, which won't change with the repository.
+     * 
+     * @return the entities validating the filter
+     */
+    public final Collection<V> getEntities() {
+        return new ArrayList<V>(getStoredEntities());
+    }
+
+    /**
+     * Returns the filter for the entities in the view.
+     * 
+     * @return the filter of the view
+     */
+    public final Predicate<V> getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the name of the view.
+     * 
+     * @return the name of the view
+     */
+    public final String getName() {
+        return name;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getStoredEntities().remove(entity);
+    }
+
+    /**
+     * Returns the number of entities in the view.
+     * 
+     * @return the number of entities validating the filter
+     */
+    public final int size() {
+        return getStoredEntities().size();
+    }
+
+    /**
+     * Returns the entities stored in the view.
+     * 
+     * @return the entities validating the filter
+     */
+    private final Set<V> getStoredEntities() {
+        return entities;
+    }
+
+}
@@ -0,0 +1,661 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * Multi-version {@code FilteredRepository}, where reads work on consistent
+ * snapshots without taking locks.
+ * <p>
+ * Each entity is stored as a chain of versions, from newest to oldest, each
+ * marked with the number of the commit which created it. Writers, which are
+ * serialized, add new versions to the chains, and then publish the commit
+ * number with a single volatile write. Readers take the last published
+ * number, and for each entity read the newest version not newer than it. So a
+ * read sees all the changes of a commit or none of them, and writers never
+ * wait for readers.
+ * <p>
+ * Updates replace the entity in one commit, so a query never finds it
+ * missing halfway through an update. Batch operations are also a single
+ * commit, so their changes become visible at once.
+ * <p>
+ * Readers register the snapshot they are using until they are done. After
+ * each commit the writer drops the versions which no registered snapshot can
+ * see anymore. Iterators are built from a copy of the matching entities, so
+ * they don't keep old versions alive. Counts and aggregates, which don't leak
+ * the entities, instead run directly over the snapshot.
+ * <p>
+ * As with the {@link com.wandrell.pattern.repository.ConcurrentRepository
+ * ConcurrentRepository}, entities are identified through {@code equals}, and
+ * they are returned in no particular order.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class MultiVersionRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Snapshot registered by a reader.
+     */
+    private static final class Snapshot {
+
+        /**
+         * Commit seen by the snapshot.
+         */
+        private final long commit;
+
+        /**
+         * Constructs a snapshot for the specified commit.
+         * 
+         * @param seen
+         *            the commit seen by the snapshot
+         */
+        public Snapshot(final long seen) {
+            super();
+
+            commit = seen;
+        }
+
+    }
+
+    /**
+     * Version of an entity.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     */
+    private static final class Version<V> {
+
+        /**
+         * Commit which created this version.
+         */
+        private final long          commit;
+        /**
+         * Entity in this version, or {@code null} if it was removed.
+         */
+        private final V             entity;
+        /**
+         * Previous version, or {@code null} if there is none or it was
+         * dropped.
+         */
+        private volatile Version<V> previous;
+
+        /**
+         * Constructs a version with the specified data.
+         * 
+         * @param value
+         *            the entity, or {@code null} if it was removed
+         * @param created
+         *            the commit creating the version
+         * @param older
+         *            the previous version
+         */
+        public Version(final V value, final long created,
+                final Version<V> older) {
+            super();
+
+            entity = value;
+            commit = created;
+            previous = older;
+        }
+
+    }
+
+    /**
+     * Last published commit.
+     */
+    private volatile long                      committed;
+    /**
+     * Version chains, keyed by entity.
+     */
+    private final ConcurrentMap<V, Version<V>> data;
+    /**
+     * Entities with versions which may be dropped.
+     */
+    private final Set<V>                       obsolete;
+    /**
+     * Snapshots registered by readers.
+     */
+    private final Set<Snapshot>                readers;
+    /**
+     * Lock serializing the writers.
+     */
+    private final ReentrantLock                writeLock;
+
+    /**
+     * Constructs an empty {@code MultiVersionRepository}.
+     */
+    public MultiVersionRepository() {
+        super();
+
+        data = new ConcurrentHashMap<V, Version<V>>();
+        obsolete = new HashSet<V>();
+        readers = Collections
+                .newSetFromMap(new ConcurrentHashMap<Snapshot, Boolean>());
+        writeLock = new ReentrantLock();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        addAll(Collections.singleton(entity));
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        final long commit;
+
+        checkEntities(entities);
+
+        getWriteLock().lock();
+        try {
+            commit = committed + 1;
+            for (final V entity : entities) {
+                if (!isVisible(entity)) {
+                    write(entity, entity, commit);
+                }
+            }
+            commit(commit);
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final Aggregate aggregate(final Predicate<V> filter,
+            final Function<? super V, ? extends Number> attribute) {
+        final Snapshot snapshot;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        snapshot = open();
+        try {
+            return Aggregate.of(Iterators.filter(entities(snapshot), filter),
+                    attribute);
+        } finally {
+            getReaders().remove(snapshot);
+        }
+    }
+
+    @Override
+    public final long count(final Predicate<V> filter) {
+        final Snapshot snapshot;
+        final Iterator<V> itr;
+        long count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        count = 0;
+        snapshot = open();
+        try {
+            itr = Iterators.filter(entities(snapshot), filter);
+            while (itr.hasNext()) {
+                itr.next();
+                count++;
+            }
+        } finally {
+            getReaders().remove(snapshot);
+        }
+
+        return count;
+    }
+
+    @Override
+    public final boolean exists(final Predicate<V> filter) {
+        final Snapshot snapshot;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        snapshot = open();
+        try {
+            return Iterators.any(entities(snapshot), filter);
+        } finally {
+            getReaders().remove(snapshot);
+        }
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return scan(null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final Collection<V> getCollection(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return scan(filter, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the last published commit.
+     * <p>
+     * This grows with each write done to the repository.
+     * 
+     * @return the current commit number
+     */
+    public final long getCommit() {
+        return committed;
+    }
+
+    @Override
+    public final V getEntity(final Predicate<V> filter) {
+        final Iterator<V> itr;
+        final V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        itr = scan(filter, 0, 1).iterator();
+        if (itr.hasNext()) {
+            entity = itr.next();
+        } else {
+            entity = null;
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        return getCollection(filter).iterator();
+    }
+
+    @Override
+    public final Collection<V> getPage(final Predicate<V> filter,
+            final int offset, final int limit) {
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkArgument(offset >= 0, "Received a negative offset");
+        checkArgument(limit >= 0, "Received a negative limit");
+
+        return scan(filter, offset, limit);
+    }
+
+    /**
+     * Returns the number of versions stored, including those kept for
+     * readers and removed entities.
+     * <p>
+     * Once no reader is working on an old snapshot, the next write drops the
+     * versions it was keeping.
+     * 
+     * @return the number of versions stored
+     */
+    public final int getVersionCount() {
+        int count;
+        Version<V> version;
+
+        count = 0;
+        for (final Version<V> head : getData().values()) {
+            version = head;
+            while (version != null) {
+                count++;
+                version = version.previous;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        removeAll(Collections.singleton(entity));
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final long commit;
+
+        checkEntities(entities);
+
+        getWriteLock().lock();
+        try {
+            commit = committed + 1;
+            for (final V entity : entities) {
+                if (isVisible(entity)) {
+                    write(entity, null, commit);
+                }
+            }
+            commit(commit);
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final void update(final V entity) {
+        updateAll(Collections.singleton(entity));
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final long commit;
+
+        checkEntities(entities);
+
+        getWriteLock().lock();
+        try {
+            commit = committed + 1;
+            for (final V entity : entities) {
+                if (isVisible(entity)) {
+                    write(entity, entity, commit);
+                }
+            }
+            commit(commit);
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    /**
+     * Checks that the entities to write are valid, before any is written.
+     * 
+     * @param entities
+     *            the entities to check
+     */
+    private final void checkEntities(final Collection<? extends V> entities) {
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        for (final V entity : entities) {
+            checkNotNull(entity, "Received a null pointer as entity");
+        }
+    }
+
+    /**
+     * Publishes a commit, and drops the versions no reader can see anymore.
+     * 
+     * @param commit
+     *            the commit to publish
+     */
+    private final void commit(final long commit) {
+        long oldest;
+
+        // Readers registering an older snapshot after this will retry, while
+        // those already registered are found below
+        committed = commit;
+
+        oldest = commit;
+        for (final Snapshot snapshot : getReaders()) {
+            oldest = Math.min(oldest, snapshot.commit);
+        }
+
+        purge(oldest);
+    }
+
+    /**
+     * Returns an iterator over the entities visible in a snapshot.
+     * <p>
+     * The snapshot should stay registered until the iterator is exhausted.
+     * 
+     * @param snapshot
+     *            the snapshot to read
+     * @return an iterator over the entities in the snapshot
+     */
+    private final Iterator<V> entities(final Snapshot snapshot) {
+        final Iterator<Version<V>> chains;
+
+        chains = getData().values().iterator();
+
+        return new AbstractIterator<V>() {
+
+            @Override
+            protected final V computeNext() {
+                V entity;
+
+                entity = null;
+                while ((entity == null) && (chains.hasNext())) {
+                    entity = read(chains.next(), snapshot.commit);
+                }
+
+                if (entity == null) {
+                    entity = endOfData();
+                }
+
+                return entity;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the version chains, keyed by entity.
+     * 
+     * @return the version chains
+     */
+    private final ConcurrentMap<V, Version<V>> getData() {
+        return data;
+    }
+
+    /**
+     * Returns the entities with versions which may be dropped.
+     * 
+     * @return the entities with old versions
+     */
+    private final Set<V> getObsolete() {
+        return obsolete;
+    }
+
+    /**
+     * Returns the snapshots registered by readers.
+     * 
+     * @return the registered snapshots
+     */
+    private final Set<Snapshot> getReaders() {
+        return readers;
+    }
+
+    /**
+     * Returns the lock serializing the writers.
+     * 
+     * @return the write lock
+     */
+    private final ReentrantLock getWriteLock() {
+        return writeLock;
+    }
+
+    /**
+     * Indicates if the entity exists in the last commit.
+     * 
+     * @param entity
+     *            the entity to check
+     * @return {@code true} if the entity exists, {@code false} otherwise
+     */
+    private final boolean isVisible(final V entity) {
+        final Version<V> head;
+
+        head = getData().get(entity);
+
+        return (head != null) && (head.entity != null);
+    }
+
+    /**
+     * Registers a snapshot of the last published commit.
+     * <p>
+     * If a commit was published while the snapshot was being registered, the
+     * writer may have missed it and dropped its versions, so a newer one is
+     * taken.
+     * 
+     * @return the registered snapshot
+     */
+    private final Snapshot open() {
+        Snapshot snapshot;
+
+        snapshot = new Snapshot(committed);
+        getReaders().add(snapshot);
+        while (committed > snapshot.commit) {
+            getReaders().remove(snapshot);
+            snapshot = new Snapshot(committed);
+            getReaders().add(snapshot);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Drops the versions which no snapshot from the specified commit on can
+     * see.
+     * 
+     * @param oldest
+     *            the oldest commit in use
+     */
+    private final void purge(final long oldest) {
+        final Iterator<V> itr;
+        Version<V> head;
+        Version<V> version;
+        V key;
+
+        itr = getObsolete().iterator();
+        while (itr.hasNext()) {
+            key = itr.next();
+            head = getData().get(key);
+
+            // Finds the newest version visible for the oldest snapshot, all
+            // the older ones can be dropped
+            version = head;
+            while ((version != null) && (version.commit > oldest)) {
+                version = version.previous;
+            }
+
+            if ((version == head) && (version.entity == null)) {
+                // Removed for every reader
+                getData().remove(key);
+                itr.remove();
+            } else if (version != null) {
+                version.previous = null;
+                if (version == head) {
+                    itr.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entity as seen by the specified commit.
+     * 
+     * @param head
+     *            the newest version of the entity
+     * @param commit
+     *            the commit being read
+     * @return the entity, or {@code null} if it doesn't exist for the commit
+     */
+    private final V read(final Version<V> head, final long commit) {
+        Version<V> version;
+        final V entity;
+
+        version = head;
+        while ((version != null) && (version.commit > commit)) {
+            version = version.previous;
+        }
+
+        if (version == null) {
+            entity = null;
+        } else {
+            entity = version.entity;
+        }
+
+        return entity;
+    }
+
+    /**
+     * Reads a page of the entities validating the filter, from a consistent
+     * snapshot.
+     * 
+     * @param filter
+     *            the filter to apply, or {@code null} to accept all the
+     *            entities
+     * @param offset
+     *            the number of matching entities to skip
+     * @param limit
+     *            the maximum number of entities to return
+     * @return the entities in the page
+     */
+    private final Collection<V> scan(final Predicate<V> filter,
+            final int offset, final int limit) {
+        final Snapshot snapshot;
+        final Collection<V> result;
+        final Iterator<V> itr;
+        int skipped;
+        V entity;
+
+        result = new LinkedList<V>();
+        skipped = 0;
+        snapshot = open();
+        try {
+            itr = entities(snapshot);
+            while (itr.hasNext() && (result.size() < limit)) {
+                entity = itr.next();
+                if ((filter == null) || filter.apply(entity)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        result.add(entity);
+                    }
+                }
+            }
+        } finally {
+            getReaders().remove(snapshot);
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a new version for an entity.
+     * 
+     * @param key
+     *            the key of the entity
+     * @param entity
+     *            the new entity, or {@code null} if it is removed
+     * @param commit
+     *            the commit creating the version
+     */
+    private final void write(final V key, final V entity, final long commit) {
+        final Version<V> head;
+
+        head = getData().get(key);
+        if (head == null) {
+            getData().put(key, new Version<V>(entity, commit, null));
+        } else {
+            getData().replace(key, new Version<V>(entity, commit, head));
+            getObsolete().add(key);
+        }
+    }
+
+}
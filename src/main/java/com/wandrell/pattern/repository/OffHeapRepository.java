@@ -0,0 +1,457 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.UnmodifiableIterator;
+import com.wandrell.pattern.parser.Parser;
+
+/**
+ * Off-heap implementation of
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * .
+ * <p>
+ * The entities are not kept as objects. Instead they are encoded into bytes,
+ * which are stored in direct {@code ByteBuffer} segments, outside of the heap.
+ * The heap only holds two primitive arrays, with the location and hash code of
+ * each entity, so the garbage collector has very little to track no matter how
+ * many entities are stored.
+ * <p>
+ * How the entities are encoded is decided by two
+ * {@link com.wandrell.pattern.parser.Parser Parser} instances. One transforms
+ * the entities into bytes, and the other reads them back from a buffer, which
+ * will contain only the bytes of that entity, between its position and limit.
+ * <p>
+ * Entities are decoded only when needed, that is when a query checks them
+ * against its filter, or when looking for the entity to remove or update. In
+ * this last case the hash codes are compared first, and only the entities with
+ * the same hash code are decoded and checked for equality.
+ * <p>
+ * Removed and replaced entities leave unused space in the segments. Once this
+ * space is bigger than the one being used, the live entities are copied into
+ * new segments, and the old ones are released.
+ * <p>
+ * The filters are instances of the Guava <a href=
+ * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html">
+ * Predicate</a> class. All the entities validating the predicate being used as
+ * filter will be returned.
+ * <p>
+ * This repository is not thread safe, and it should not be modified while
+ * iterating over it.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class OffHeapRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Default size for the segments, of one megabyte.
+     */
+    private static final int            DEFAULT_SEGMENT = 1 << 20;
+    /**
+     * Size of the header before each record, containing its length.
+     */
+    private static final int            HEADER          = 4;
+    /**
+     * Initial capacity of the rows arrays.
+     */
+    private static final int            INITIAL_ROWS    = 16;
+    /**
+     * Bits used by the offset in an address.
+     */
+    private static final int            OFFSET_BITS     = 32;
+    /**
+     * Mask for the offset in an address.
+     */
+    private static final long           OFFSET_MASK     = 0xFFFFFFFFL;
+    /**
+     * Location of each entity, composed of its segment and offset.
+     */
+    private long[]                      addresses;
+    /**
+     * Parser reading the entities from their bytes.
+     */
+    private final Parser<ByteBuffer, V> decoder;
+    /**
+     * Parser transforming the entities into bytes.
+     */
+    private final Parser<V, byte[]>     encoder;
+    /**
+     * Number of bytes used by removed or replaced entities.
+     */
+    private long                        garbage;
+    /**
+     * Hash code of each entity.
+     */
+    private int[]                       hashes;
+    /**
+     * Number of bytes used by stored entities.
+     */
+    private long                        live;
+    /**
+     * Size for new segments.
+     */
+    private final int                   segmentSize;
+    /**
+     * Segments where the entities are stored.
+     */
+    private List<ByteBuffer>            segments;
+    /**
+     * Number of entities stored.
+     */
+    private int                         size;
+
+    /**
+     * Constructs an {@code OffHeapRepository} with the specified parsers,
+     * using segments of one megabyte.
+     * 
+     * @param entityEncoder
+     *            parser transforming the entities into bytes
+     * @param entityDecoder
+     *            parser reading the entities from their bytes
+     */
+    public OffHeapRepository(final Parser<V, byte[]> entityEncoder,
+            final Parser<ByteBuffer, V> entityDecoder) {
+        this(entityEncoder, entityDecoder, DEFAULT_SEGMENT);
+    }
+
+    /**
+     * Constructs an {@code OffHeapRepository} with the specified parsers and
+     * segments size.
+     * <p>
+     * Entities bigger than the segments will be stored in segments of their
+     * own.
+     * 
+     * @param entityEncoder
+     *            parser transforming the entities into bytes
+     * @param entityDecoder
+     *            parser reading the entities from their bytes
+     * @param segmentBytes
+     *            size in bytes of each segment
+     */
+    public OffHeapRepository(final Parser<V, byte[]> entityEncoder,
+            final Parser<ByteBuffer, V> entityDecoder, final int segmentBytes) {
+        super();
+
+        checkNotNull(entityEncoder, "Received a null pointer as encoder");
+        checkNotNull(entityDecoder, "Received a null pointer as decoder");
+        checkArgument(segmentBytes > HEADER,
+                "The segments should be bigger than the records header");
+
+        encoder = entityEncoder;
+        decoder = entityDecoder;
+        segmentSize = segmentBytes;
+
+        segments = new ArrayList<ByteBuffer>();
+        addresses = new long[INITIAL_ROWS];
+        hashes = new int[INITIAL_ROWS];
+        size = 0;
+        live = 0;
+        garbage = 0;
+    }
+
+    @Override
+    public final void add(final V entity) {
+        if (size == addresses.length) {
+            addresses = Arrays.copyOf(addresses, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        addresses[size] = write(encoder.parse(entity));
+        hashes[size] = Objects.hashCode(entity);
+        size++;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (int i = 0; i < size; i++) {
+            result.add(read(i));
+        }
+
+        return result;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(new UnmodifiableIterator<V>() {
+
+            /**
+             * Next row to read.
+             */
+            private int row = 0;
+
+            @Override
+            public final boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public final V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return read(row++);
+            }
+
+        }, filter);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final int row;
+
+        row = find(entity);
+        if (row >= 0) {
+            release(row);
+
+            // Rows are shifted to keep the order
+            System.arraycopy(addresses, row + 1, addresses, row,
+                    size - row - 1);
+            System.arraycopy(hashes, row + 1, hashes, row, size - row - 1);
+            size--;
+
+            compactIfNeeded();
+        }
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int row;
+        final byte[] bytes;
+        final ByteBuffer segment;
+        final int offset;
+
+        row = find(entity);
+        if (row >= 0) {
+            bytes = encoder.parse(entity);
+            segment = segments.get(getSegment(addresses[row]));
+            offset = getOffset(addresses[row]);
+
+            if (bytes.length <= segment.getInt(offset)) {
+                // Fits in the old record, which is overwritten
+                garbage += segment.getInt(offset) - bytes.length;
+                live -= segment.getInt(offset) - bytes.length;
+                writeRecord(segment, offset, bytes);
+            } else {
+                release(row);
+                addresses[row] = write(bytes);
+            }
+            hashes[row] = Objects.hashCode(entity);
+
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Copies the live records into new segments if the unused space is bigger
+     * than the used one.
+     */
+    private final void compactIfNeeded() {
+        final List<ByteBuffer> old;
+        ByteBuffer segment;
+        int offset;
+        int length;
+        byte[] bytes;
+
+        if ((garbage > live) && (garbage >= segmentSize)) {
+            old = segments;
+            segments = new ArrayList<ByteBuffer>();
+            live = 0;
+            garbage = 0;
+
+            for (int i = 0; i < size; i++) {
+                segment = old.get(getSegment(addresses[i]));
+                offset = getOffset(addresses[i]);
+                length = segment.getInt(offset);
+
+                bytes = new byte[length];
+                segment = segment.duplicate();
+                segment.position(offset + HEADER);
+                segment.get(bytes);
+
+                addresses[i] = write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the row of the first entity equal to the received one.
+     * 
+     * @param entity
+     *            the entity to find
+     * @return the row of the entity, or -1 if it is not stored
+     */
+    private final int find(final V entity) {
+        final int hash;
+        int row;
+
+        hash = Objects.hashCode(entity);
+        row = -1;
+        for (int i = 0; (row < 0) && (i < size); i++) {
+            if ((hashes[i] == hash) && Objects.equals(read(i), entity)) {
+                row = i;
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * Returns the offset part of an address.
+     * 
+     * @param address
+     *            the address
+     * @return the offset of the record inside its segment
+     */
+    private final int getOffset(final long address) {
+        return (int) (address & OFFSET_MASK);
+    }
+
+    /**
+     * Returns the segment part of an address.
+     * 
+     * @param address
+     *            the address
+     * @return the index of the segment containing the record
+     */
+    private final int getSegment(final long address) {
+        return (int) (address >>> OFFSET_BITS);
+    }
+
+    /**
+     * Decodes the entity in the specified row.
+     * 
+     * @param row
+     *            the row to read
+     * @return the entity in that row
+     */
+    private final V read(final int row) {
+        final ByteBuffer buffer;
+        final int offset;
+
+        buffer = segments.get(getSegment(addresses[row])).duplicate();
+        offset = getOffset(addresses[row]);
+
+        buffer.limit(offset + HEADER + buffer.getInt(offset));
+        buffer.position(offset + HEADER);
+
+        return decoder.parse(buffer);
+    }
+
+    /**
+     * Marks the record in the specified row as unused.
+     * 
+     * @param row
+     *            the row with the record to release
+     */
+    private final void release(final int row) {
+        final int length;
+
+        length = segments.get(getSegment(addresses[row]))
+                .getInt(getOffset(addresses[row]));
+
+        live -= length;
+        garbage += length;
+    }
+
+    /**
+     * Appends a record to the last segment, creating a new one if there is no
+     * space left.
+     * 
+     * @param bytes
+     *            the record to store
+     * @return the address of the record
+     */
+    private final long write(final byte[] bytes) {
+        final int required;
+        ByteBuffer segment;
+        final int offset;
+
+        required = bytes.length + HEADER;
+
+        if (segments.isEmpty()) {
+            segment = null;
+        } else {
+            segment = segments.get(segments.size() - 1);
+        }
+
+        if ((segment == null) || (segment.remaining() < required)) {
+            segment = ByteBuffer
+                    .allocateDirect(Math.max(segmentSize, required));
+            segments.add(segment);
+        }
+
+        offset = segment.position();
+        writeRecord(segment, offset, bytes);
+        segment.position(offset + required);
+
+        live += bytes.length;
+
+        return (((long) segments.size() - 1) << OFFSET_BITS) | offset;
+    }
+
+    /**
+     * Writes a record at the specified offset of a segment.
+     * 
+     * @param segment
+     *            the segment where the record is written
+     * @param offset
+     *            the offset for the record
+     * @param bytes
+     *            the record contents
+     */
+    private final void writeRecord(final ByteBuffer segment, final int offset,
+            final byte[] bytes) {
+        final ByteBuffer target;
+
+        target = segment.duplicate();
+        target.position(offset);
+        target.putInt(bytes.length);
+        target.put(bytes);
+    }
+
+}
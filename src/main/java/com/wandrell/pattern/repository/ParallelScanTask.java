@@ -0,0 +1,212 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Fork-join task for scanning an array of entities in parallel.
+ * <p>
+ * The array is divided into chunks, each of them no bigger than a threshold,
+ * and the task keeps splitting itself until it covers a single chunk. Then the
+ * entities in that chunk are checked against the filter.
+ * <p>
+ * The matches are gathered in one of two ways. If the encounter order is to be
+ * kept each chunk stores its matches into its own slot, and the slots are
+ * joined in order once the scan ends. Otherwise all the chunks add their
+ * matches into a single shared collection, as they find them.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+final class ParallelScanTask<V> extends RecursiveAction {
+
+    /**
+     * Serialization ID.
+     */
+    private static final long   serialVersionUID = -2768213413049347720L;
+    /**
+     * Entities to scan.
+     */
+    private final Object[]      entities;
+    /**
+     * Filter which the entities should validate.
+     */
+    private final Predicate<V>  filter;
+    /**
+     * First chunk covered by this task.
+     */
+    private final int           first;
+    /**
+     * Chunk after the last one covered by this task.
+     */
+    private final int           last;
+    /**
+     * Shared collection for the matches, used when the order is not kept.
+     */
+    private final Collection<V> shared;
+    /**
+     * Slots for the matches of each chunk, used when the order is kept.
+     */
+    private final List<List<V>> slots;
+    /**
+     * Maximum size of each chunk.
+     */
+    private final int           threshold;
+
+    /**
+     * Constructs a task covering the specified chunks.
+     * 
+     * @param data
+     *            the entities to scan
+     * @param predicate
+     *            the filter to apply
+     * @param chunkSize
+     *            maximum size of each chunk
+     * @param firstChunk
+     *            first chunk to cover
+     * @param lastChunk
+     *            chunk after the last one to cover
+     * @param chunkSlots
+     *            slots for the matches, or {@code null} if they are shared
+     * @param matches
+     *            shared collection for the matches, or {@code null} if they go
+     *            into slots
+     */
+    private ParallelScanTask(final Object[] data,
+            final Predicate<V> predicate, final int chunkSize,
+            final int firstChunk, final int lastChunk,
+            final List<List<V>> chunkSlots, final Collection<V> matches) {
+        super();
+
+        entities = data;
+        filter = predicate;
+        threshold = chunkSize;
+        first = firstChunk;
+        last = lastChunk;
+        slots = chunkSlots;
+        shared = matches;
+    }
+
+    /**
+     * Scans the entities in parallel, returning those which validate the
+     * filter.
+     * 
+     * @param pool
+     *            the pool where the scan will run
+     * @param data
+     *            the entities to scan
+     * @param filter
+     *            the filter which the entities should validate
+     * @param threshold
+     *            maximum number of entities scanned by a single task
+     * @param ordered
+     *            flag indicating if the encounter order should be kept
+     * @param <V>
+     *            the type stored on the repository
+     * @return the entities validating the filter
+     */
+    static final <V> Collection<V> scan(final ForkJoinPool pool,
+            final Object[] data, final Predicate<V> filter,
+            final int threshold, final boolean ordered) {
+        final int chunks;
+        final List<List<V>> slots;
+        final Collection<V> result;
+
+        chunks = ((data.length + threshold) - 1) / threshold;
+
+        if (data.length == 0) {
+            // There are no chunks to scan
+            result = new LinkedList<V>();
+        } else if (ordered) {
+            slots = new ArrayList<List<V>>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                slots.add(null);
+            }
+
+            pool.invoke(new ParallelScanTask<V>(data, filter, threshold, 0,
+                    chunks, slots, null));
+
+            result = new LinkedList<V>();
+            for (final List<V> slot : slots) {
+                result.addAll(slot);
+            }
+        } else {
+            result = new ConcurrentLinkedQueue<V>();
+
+            pool.invoke(new ParallelScanTask<V>(data, filter, threshold, 0,
+                    chunks, null, result));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected final void compute() {
+        final int middle;
+        final int end;
+        final List<V> matches;
+        final ParallelScanTask<V> left;
+        V entity;
+
+        if ((last - first) > 1) {
+            middle = (first + last) >>> 1;
+
+            left = new ParallelScanTask<V>(entities, filter, threshold, first,
+                    middle, slots, shared);
+            left.fork();
+            new ParallelScanTask<V>(entities, filter, threshold, middle, last,
+                    slots, shared).compute();
+            left.join();
+        } else {
+            end = Math.min(entities.length, (first + 1) * threshold);
+
+            matches = new ArrayList<V>();
+            for (int i = first * threshold; i < end; i++) {
+                entity = (V) entities[i];
+                if (filter.apply(entity)) {
+                    matches.add(entity);
+                }
+            }
+
+            if (slots == null) {
+                shared.addAll(matches);
+            } else {
+                slots.set(first, matches);
+            }
+        }
+    }
+
+}
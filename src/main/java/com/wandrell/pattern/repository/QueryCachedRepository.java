@@ -0,0 +1,184 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Function;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Decorator for a
+ * {@link com.wandrell.pattern.repository.FilteredRepository FilteredRepository}
+ * filtered by {@link QueryData}, which caches the results of its queries.
+ * <p>
+ * Most implementations of {@code QueryData} are mutable, and don't implement
+ * {@code equals} or {@code hashCode}, so they can't be used as keys for a
+ * cache. To solve this each filter is copied into an
+ * {@link ImmutableQueryData}, and it is this copy which is used both as key
+ * and for querying the wrapped repository. This way any two queries with the
+ * same query string and parameters will share the same cached result.
+ * <p>
+ * The actual caching is handled by a {@link CachedRepository}, and so it
+ * behaves the same way. The number of results is bounded, they expire after
+ * some time, and any change made through the decorator invalidates them.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class QueryCachedRepository<V>
+        implements FilteredRepository<V, QueryData> {
+
+    /**
+     * The cache for the wrapped repository.
+     */
+    private final CachedRepository<V, QueryData> cache;
+
+    /**
+     * Constructs a {@code QueryCachedRepository} wrapping the specified
+     * repository.
+     * 
+     * @param wrapped
+     *            the repository to cache
+     * @param maximumSize
+     *            maximum number of results cached for each type of query
+     * @param duration
+     *            time after which a result expires
+     * @param unit
+     *            unit for the duration
+     */
+    public QueryCachedRepository(
+            final FilteredRepository<V, QueryData> wrapped,
+            final long maximumSize, final long duration,
+            final TimeUnit unit) {
+        super();
+
+        cache = new CachedRepository<V, QueryData>(wrapped, maximumSize,
+                duration, unit);
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getCache().add(entity);
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        getCache().addAll(entities);
+    }
+
+    @Override
+    public final Aggregate aggregate(final QueryData filter,
+            final Function<? super V, ? extends Number> attribute) {
+        return getCache().aggregate(filter, attribute);
+    }
+
+    @Override
+    public final long count(final QueryData filter) {
+        return getCache().count(filter);
+    }
+
+    @Override
+    public final boolean exists(final QueryData filter) {
+        return getCache().exists(filter);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return getCache().getAll();
+    }
+
+    @Override
+    public final Collection<V> getCollection(final QueryData filter) {
+        return getCache().getCollection(ImmutableQueryData.copyOf(filter));
+    }
+
+    @Override
+    public final Collection<V> getCollection(final QueryData filter,
+            final int limit) {
+        return getCache().getCollection(filter, limit);
+    }
+
+    @Override
+    public final V getEntity(final QueryData filter) {
+        return getCache().getEntity(ImmutableQueryData.copyOf(filter));
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final QueryData filter) {
+        return getCache().getIterator(filter);
+    }
+
+    @Override
+    public final Collection<V> getPage(final QueryData filter,
+            final int offset, final int limit) {
+        return getCache().getPage(filter, offset, limit);
+    }
+
+    /**
+     * Returns the statistics for the cache.
+     * <p>
+     * These contain the number of hits, misses and evictions since the
+     * repository was created.
+     * 
+     * @return the statistics for the cache
+     */
+    public final CacheStats getStats() {
+        return getCache().getStats();
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getCache().remove(entity);
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        getCache().removeAll(entities);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        getCache().update(entity);
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        getCache().updateAll(entities);
+    }
+
+    /**
+     * Returns the cache for the wrapped repository.
+     * 
+     * @return the cache for the wrapped repository
+     */
+    private final CachedRepository<V, QueryData> getCache() {
+        return cache;
+    }
+
+}
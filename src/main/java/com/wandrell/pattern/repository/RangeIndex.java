@@ -0,0 +1,330 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Range;
+
+/**
+ * Sorted {@link com.wandrell.pattern.repository.EntityIndex EntityIndex} for a
+ * single comparable attribute of the entities.
+ * <p>
+ * The entities are kept in a navigable map, sorted by the value of the
+ * attribute. This way range lookups, such as those for the entities between
+ * two dates, don't need to scan the repository, instead they go directly to
+ * the slice of the map holding the matching entities.
+ * <p>
+ * As the slice is already sorted, the entities are returned ordered by the
+ * attribute, in ascending order by default or in descending order if the
+ * predicate is {@link RangePredicate#descending() reversed}. Entities with
+ * the same value keep the order in which they were indexed. The
+ * {@link #ordered() ordered} method allows iterating the whole repository in
+ * this order.
+ * <p>
+ * The lookups are created with the methods of the index, which return
+ * predicates it knows how to resolve. If these predicates are used on a
+ * repository where the index is not registered, they will still work, but by
+ * checking each entity, and without sorting them.
+ * <p>
+ * Entities where the attribute is {@code null} are not indexed, and never
+ * validate the predicates of the index.
+ * <p>
+ * The attribute is expected to be immutable, as the index won't know about
+ * changes done to the entities outside of the repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <K>
+ *            the type of the indexed attribute
+ */
+public final class RangeIndex<V, K extends Comparable<? super K>>
+        implements EntityIndex<V> {
+
+    /**
+     * Entities sorted by the attribute value.
+     */
+    private final NavigableMap<K, Collection<V>>   entries;
+    /**
+     * Function which reads the attribute from the entities.
+     */
+    private final Function<? super V, ? extends K> extractor;
+    /**
+     * Name of the index.
+     */
+    private final String                           name;
+
+    /**
+     * Constructs a {@code RangeIndex} with the specified name and attribute
+     * extractor.
+     * 
+     * @param indexName
+     *            the name of the index
+     * @param attribute
+     *            the function which reads the indexed attribute
+     */
+    public RangeIndex(final String indexName,
+            final Function<? super V, ? extends K> attribute) {
+        super();
+
+        checkNotNull(indexName, "Received a null pointer as name");
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        name = indexName;
+        extractor = attribute;
+        entries = new TreeMap<K, Collection<V>>();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final K key;
+        Collection<V> group;
+
+        key = getExtractor().apply(entity);
+        if (key != null) {
+            group = getEntries().get(key);
+            if (group == null) {
+                group = new LinkedHashSet<V>();
+                getEntries().put(key, group);
+            }
+
+            group.add(entity);
+        }
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is equal
+     * to or greater than the specified value.
+     * 
+     * @param value
+     *            the lower bound, included
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> atLeast(final K value) {
+        checkNotNull(value, "Received a null pointer as value");
+
+        return within(Range.atLeast(value));
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is equal
+     * to or lower than the specified value.
+     * 
+     * @param value
+     *            the upper bound, included
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> atMost(final K value) {
+        checkNotNull(value, "Received a null pointer as value");
+
+        return within(Range.atMost(value));
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is
+     * between the specified values, both included.
+     * 
+     * @param lower
+     *            the lower bound, included
+     * @param upper
+     *            the upper bound, included
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> between(final K lower, final K upper) {
+        checkNotNull(lower, "Received a null pointer as lower bound");
+        checkNotNull(upper, "Received a null pointer as upper bound");
+        checkArgument(lower.compareTo(upper) <= 0,
+                "The lower bound can't be greater than the upper bound");
+
+        return within(Range.closed(lower, upper));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Iterable<V> find(final Predicate<V> filter) {
+        final RangePredicate<V, K> range;
+        final Iterable<V> result;
+
+        if (isResolved(filter)) {
+            range = (RangePredicate<V, K>) filter;
+            result = Iterables.concat(getSlice(range).values());
+        } else {
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the function which reads the indexed attribute.
+     * 
+     * @return the function which reads the attribute
+     */
+    public final Function<? super V, ? extends K> getExtractor() {
+        return extractor;
+    }
+
+    /**
+     * Returns the name of the index.
+     * 
+     * @return the name of the index
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is
+     * greater than the specified value.
+     * 
+     * @param value
+     *            the lower bound, excluded
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> greaterThan(final K value) {
+        checkNotNull(value, "Received a null pointer as value");
+
+        return within(Range.greaterThan(value));
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is lower
+     * than the specified value.
+     * 
+     * @param value
+     *            the upper bound, excluded
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> lessThan(final K value) {
+        checkNotNull(value, "Received a null pointer as value");
+
+        return within(Range.lessThan(value));
+    }
+
+    /**
+     * Creates a predicate accepting all the entities where the attribute is
+     * not {@code null}.
+     * <p>
+     * When resolved through the index this returns the entities sorted by the
+     * attribute.
+     * 
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> ordered() {
+        return within(Range.<K> all());
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final K key;
+        final Collection<V> group;
+
+        key = getExtractor().apply(entity);
+        if (key != null) {
+            group = getEntries().get(key);
+            if ((group != null) && group.remove(entity) && group.isEmpty()) {
+                getEntries().remove(key);
+            }
+        }
+    }
+
+    /**
+     * Creates a predicate accepting the entities where the attribute is
+     * inside the specified range.
+     * 
+     * @param range
+     *            the range of accepted values
+     * @return a predicate which can be resolved through this index
+     */
+    public final RangePredicate<V, K> within(final Range<K> range) {
+        checkNotNull(range, "Received a null pointer as range");
+
+        return new RangePredicate<V, K>(this, range, false);
+    }
+
+    /**
+     * Returns the entities sorted by the attribute value.
+     * 
+     * @return the indexed entities
+     */
+    private final NavigableMap<K, Collection<V>> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the view of the indexed entities which validate the specified
+     * predicate, sorted in the order it requires.
+     * 
+     * @param filter
+     *            the predicate to resolve
+     * @return the slice of the index matching the predicate
+     */
+    private final NavigableMap<K, Collection<V>>
+            getSlice(final RangePredicate<V, K> filter) {
+        final Range<K> range;
+        NavigableMap<K, Collection<V>> slice;
+
+        range = filter.getRange();
+        slice = getEntries();
+        if (range.hasLowerBound()) {
+            slice = slice.tailMap(range.lowerEndpoint(),
+                    range.lowerBoundType() == BoundType.CLOSED);
+        }
+        if (range.hasUpperBound()) {
+            slice = slice.headMap(range.upperEndpoint(),
+                    range.upperBoundType() == BoundType.CLOSED);
+        }
+        if (filter.isDescending()) {
+            slice = slice.descendingMap();
+        }
+
+        return slice;
+    }
+
+    /**
+     * Indicates if the filter can be resolved through this index.
+     * 
+     * @param filter
+     *            the filter to check
+     * @return {@code true} if the filter was created by this index,
+     *         {@code false} otherwise
+     */
+    private final boolean isResolved(final Predicate<V> filter) {
+        return (filter instanceof RangePredicate)
+                && (((RangePredicate<V, ?>) filter).getIndex() == this);
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Range;
+
+/**
+ * Predicate checking the value of an attribute indexed by a
+ * {@link com.wandrell.pattern.repository.RangeIndex RangeIndex}.
+ * <p>
+ * It accepts the entities where the attribute is inside a range of values.
+ * When the index which created it is registered on the repository being
+ * queried the matching entities will be acquired through it, sorted by the
+ * attribute, otherwise the predicate is applied to each entity as usual.
+ * <p>
+ * Instances are created through the {@code RangeIndex} methods, and return
+ * the entities in ascending order. The {@link #descending() descending}
+ * method gives a copy returning them in descending order.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <K>
+ *            the type of the indexed attribute
+ */
+public final class RangePredicate<V, K extends Comparable<? super K>>
+        implements Predicate<V> {
+
+    /**
+     * Flag indicating if the entities are sorted in descending order.
+     */
+    private final boolean          descending;
+    /**
+     * Index which created this predicate.
+     */
+    private final RangeIndex<V, K> index;
+    /**
+     * Values accepted for the attribute.
+     */
+    private final Range<K>         range;
+
+    /**
+     * Constructs a {@code RangePredicate} for the specified index and range.
+     * 
+     * @param rangeIndex
+     *            the index which creates the predicate
+     * @param accepted
+     *            the values accepted for the attribute
+     * @param reversed
+     *            {@code true} to sort the entities in descending order
+     */
+    RangePredicate(final RangeIndex<V, K> rangeIndex, final Range<K> accepted,
+            final boolean reversed) {
+        super();
+
+        checkNotNull(rangeIndex, "Received a null pointer as index");
+        checkNotNull(accepted, "Received a null pointer as range");
+
+        index = rangeIndex;
+        range = accepted;
+        descending = reversed;
+    }
+
+    @Override
+    public final boolean apply(final V entity) {
+        final K value;
+
+        value = getIndex().getExtractor().apply(entity);
+
+        return (value != null) && getRange().contains(value);
+    }
+
+    /**
+     * Returns a copy of this predicate which sorts the entities in descending
+     * order.
+     * 
+     * @return a predicate accepting the same entities in descending order
+     */
+    public final RangePredicate<V, K> descending() {
+        return new RangePredicate<V, K>(getIndex(), getRange(), true);
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final RangePredicate<?, ?> other;
+
+        other = (RangePredicate<?, ?>) obj;
+        return (index == other.index) && Objects.equals(range, other.range)
+                && (descending == other.descending);
+    }
+
+    /**
+     * Returns the index which created this predicate.
+     * 
+     * @return the index for the attribute
+     */
+    public final RangeIndex<V, K> getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the range of values accepted for the attribute.
+     * 
+     * @return the accepted values
+     */
+    public final Range<K> getRange() {
+        return range;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(System.identityHashCode(index), range, descending);
+    }
+
+    /**
+     * Indicates if the entities are sorted in descending order.
+     * 
+     * @return {@code true} if the entities are sorted in descending order,
+     *         {@code false} if they are sorted in ascending order
+     */
+    public final boolean isDescending() {
+        return descending;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("index", index.getName())
+                .add("range", range).add("descending", descending).toString();
+    }
+
+}
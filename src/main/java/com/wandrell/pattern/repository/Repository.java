@@ -47,6 +47,18 @@ public interface Repository<V> {
      */
     public void add(final V entity);
 
+    /**
+     * Adds all the entities to the repository.
+     * <p>
+     * The result is the same as adding each entity in order, but the
+     * implementation may apply all of them at once, avoiding the cost of
+     * repeating the same work for each entity.
+     * 
+     * @param entities
+     *            the entities to add
+     */
+    public void addAll(final Collection<? extends V> entities);
+
     /**
      * Returns all the entities contained in the repository.
      * 
@@ -62,6 +74,18 @@ public interface Repository<V> {
      */
     public void remove(final V entity);
 
+    /**
+     * Removes all the entities from the repository.
+     * <p>
+     * The result is the same as removing each entity in order, but the
+     * implementation may apply all of them at once, avoiding the cost of
+     * repeating the same work for each entity.
+     * 
+     * @param entities
+     *            the entities to remove
+     */
+    public void removeAll(final Collection<? extends V> entities);
+
     /**
      * Updates an entity on the repository.
      * 
@@ -70,4 +94,16 @@ public interface Repository<V> {
      */
     public void update(final V entity);
 
+    /**
+     * Updates all the entities on the repository.
+     * <p>
+     * The result is the same as updating each entity in order, but the
+     * implementation may apply all of them at once, avoiding the cost of
+     * repeating the same work for each entity.
+     * 
+     * @param entities
+     *            the entities to update
+     */
+    public void updateAll(final Collection<? extends V> entities);
+
 }
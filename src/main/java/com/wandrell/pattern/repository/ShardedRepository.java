@@ -0,0 +1,689 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hashing;
+
+/**
+ * {@code FilteredRepository} which spreads the entities across several inner
+ * repositories, called shards.
+ * <p>
+ * Each entity is stored in a single shard, chosen by hashing a key read from
+ * the entity. So adding, removing or updating an entity only touches the
+ * shard owning it, and each shard is guarded by its own read-write lock,
+ * allowing writes to different shards to run at the same time. The shards
+ * don't need to be thread safe themselves.
+ * <p>
+ * Queries are sent to all the shards, and their results merged, following
+ * the order of the shards. If an {@code ExecutorService} is received the
+ * shards are queried in parallel, otherwise one after the other.
+ * <p>
+ * Pages and single entity queries go through the shards one after the other,
+ * passing down the number of entities still missing, and stopping as soon as
+ * they have enough. The shards before the page offset are only counted.
+ * Iterators also go through the shards one after the other, but as a shard
+ * can't be kept locked while the iterator is used, the matches of each shard
+ * are read at once when the iterator reaches it.
+ * <p>
+ * Counts and aggregates are computed by each shard, in parallel if possible,
+ * and then merged, so no entity leaves its shard.
+ * <p>
+ * The key is expected to be immutable, as an updated entity is looked for
+ * only in the shard its key leads to.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type of the filter used by the repository
+ */
+public final class ShardedRepository<V, F>
+        extends AbstractFilteredRepository<V, F> {
+
+    /**
+     * Executor for querying the shards in parallel.
+     */
+    private final ExecutorService                executor;
+    /**
+     * Function reading the key used for choosing the shard of an entity.
+     */
+    private final Function<? super V, ?>         key;
+    /**
+     * Lock for each shard.
+     */
+    private final List<ReadWriteLock>            locks;
+    /**
+     * Inner repositories storing the entities.
+     */
+    private final List<FilteredRepository<V, F>> shards;
+
+    /**
+     * Constructs a {@code ShardedRepository} with the specified shards, which
+     * are queried one after the other.
+     * 
+     * @param repositories
+     *            the inner repositories storing the entities
+     * @param shardKey
+     *            the function reading the key used for sharding
+     */
+    public ShardedRepository(
+            final List<? extends FilteredRepository<V, F>> repositories,
+            final Function<? super V, ?> shardKey) {
+        this(repositories, shardKey, null);
+    }
+
+    /**
+     * Constructs a {@code ShardedRepository} with the specified shards, which
+     * are queried in parallel through the executor.
+     * <p>
+     * The repository won't shut down the executor.
+     * 
+     * @param repositories
+     *            the inner repositories storing the entities
+     * @param shardKey
+     *            the function reading the key used for sharding
+     * @param service
+     *            the executor for querying the shards, or {@code null} to
+     *            query them one after the other
+     */
+    public ShardedRepository(
+            final List<? extends FilteredRepository<V, F>> repositories,
+            final Function<? super V, ?> shardKey,
+            final ExecutorService service) {
+        super();
+
+        checkNotNull(repositories, "Received a null pointer as shards");
+        checkNotNull(shardKey, "Received a null pointer as key");
+        checkArgument(!repositories.isEmpty(), "Received no shards");
+
+        shards = new ArrayList<FilteredRepository<V, F>>(repositories);
+        key = shardKey;
+        executor = service;
+
+        locks = new ArrayList<ReadWriteLock>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            checkNotNull(shards.get(i), "Received a null pointer as shard");
+
+            locks.add(new ReentrantReadWriteLock());
+        }
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final int shard;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        shard = getShard(entity);
+        getLocks().get(shard).writeLock().lock();
+        try {
+            getShards().get(shard).add(entity);
+        } finally {
+            getLocks().get(shard).writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        final List<List<V>> groups;
+
+        groups = group(entities);
+        for (int i = 0; i < groups.size(); i++) {
+            if (!groups.get(i).isEmpty()) {
+                getLocks().get(i).writeLock().lock();
+                try {
+                    getShards().get(i).addAll(groups.get(i));
+                } finally {
+                    getLocks().get(i).writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public final Aggregate aggregate(final F filter,
+            final Function<? super V, ? extends Number> attribute) {
+        Aggregate result;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkNotNull(attribute, "Received a null pointer as attribute");
+
+        result = Aggregate.empty();
+        for (final Aggregate partial : collect(
+                new Function<FilteredRepository<V, F>, Aggregate>() {
+
+                    @Override
+                    public final Aggregate
+                            apply(final FilteredRepository<V, F> shard) {
+                        return shard.aggregate(filter, attribute);
+                    }
+
+                })) {
+            result = result.merge(partial);
+        }
+
+        return result;
+    }
+
+    @Override
+    public final long count(final F filter) {
+        long count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        count = 0;
+        for (final Long partial : collect(
+                new Function<FilteredRepository<V, F>, Long>() {
+
+                    @Override
+                    public final Long
+                            apply(final FilteredRepository<V, F> shard) {
+                        return shard.count(filter);
+                    }
+
+                })) {
+            count += partial;
+        }
+
+        return count;
+    }
+
+    @Override
+    public final boolean exists(final F filter) {
+        final Function<FilteredRepository<V, F>, Boolean> query;
+        int shard;
+        boolean found;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        query = new Function<FilteredRepository<V, F>, Boolean>() {
+
+            @Override
+            public final Boolean apply(final FilteredRepository<V, F> shard) {
+                return shard.exists(filter);
+            }
+
+        };
+
+        // The shards are checked in turn, stopping at the first match
+        shard = 0;
+        found = false;
+        while ((!found) && (shard < getShards().size())) {
+            found = query(shard, query);
+            shard++;
+        }
+
+        return found;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return gather(new Function<FilteredRepository<V, F>, Collection<V>>() {
+
+            @Override
+            public final Collection<V>
+                    apply(final FilteredRepository<V, F> shard) {
+                return shard.getAll();
+            }
+
+        });
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return gather(new Function<FilteredRepository<V, F>, Collection<V>>() {
+
+            @Override
+            public final Collection<V>
+                    apply(final FilteredRepository<V, F> shard) {
+                return shard.getCollection(filter);
+            }
+
+        });
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter, final int limit) {
+        return getPage(filter, 0, limit);
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        final Function<FilteredRepository<V, F>, V> query;
+        int shard;
+        V entity;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        query = new Function<FilteredRepository<V, F>, V>() {
+
+            @Override
+            public final V apply(final FilteredRepository<V, F> shard) {
+                return shard.getEntity(filter);
+            }
+
+        };
+
+        // The shards are checked in turn, stopping at the first match
+        shard = 0;
+        entity = null;
+        while ((entity == null) && (shard < getShards().size())) {
+            entity = query(shard, query);
+            shard++;
+        }
+
+        return entity;
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final F filter) {
+        final Function<FilteredRepository<V, F>, Collection<V>> query;
+        final Iterator<Integer> positions;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        query = new Function<FilteredRepository<V, F>, Collection<V>>() {
+
+            @Override
+            public final Collection<V>
+                    apply(final FilteredRepository<V, F> shard) {
+                return shard.getCollection(filter);
+            }
+
+        };
+        positions = getPositions().iterator();
+
+        // Each shard is queried once the previous ones are exhausted
+        return Iterators.concat(Iterators.transform(positions,
+                new Function<Integer, Iterator<V>>() {
+
+                    @Override
+                    public final Iterator<V> apply(final Integer shard) {
+                        return query(shard, query).iterator();
+                    }
+
+                }));
+    }
+
+    @Override
+    public final Collection<V> getPage(final F filter, final int offset,
+            final int limit) {
+        final Collection<V> result;
+        FilteredRepository<V, F> shard;
+        int position;
+        int skipped;
+        long count;
+
+        checkNotNull(filter, "Received a null pointer as filter");
+        checkArgument(offset >= 0, "Received a negative offset");
+        checkArgument(limit >= 0, "Received a negative limit");
+
+        result = new LinkedList<V>();
+        skipped = offset;
+        position = 0;
+        while ((result.size() < limit) && (position < getShards().size())) {
+            getLocks().get(position).readLock().lock();
+            try {
+                shard = getShards().get(position);
+                if (skipped > 0) {
+                    count = shard.count(filter);
+                } else {
+                    count = 0;
+                }
+
+                if ((skipped > 0) && (count <= skipped)) {
+                    // The whole shard is before the page
+                    skipped -= count;
+                } else {
+                    result.addAll(shard.getPage(filter, skipped,
+                            limit - result.size()));
+                    skipped = 0;
+                }
+            } finally {
+                getLocks().get(position).readLock().unlock();
+            }
+            position++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of shards.
+     * 
+     * @return the number of shards
+     */
+    public final int getShardCount() {
+        return getShards().size();
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        final int shard;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        shard = getShard(entity);
+        getLocks().get(shard).writeLock().lock();
+        try {
+            getShards().get(shard).remove(entity);
+        } finally {
+            getLocks().get(shard).writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        final List<List<V>> groups;
+
+        groups = group(entities);
+        for (int i = 0; i < groups.size(); i++) {
+            if (!groups.get(i).isEmpty()) {
+                getLocks().get(i).writeLock().lock();
+                try {
+                    getShards().get(i).removeAll(groups.get(i));
+                } finally {
+                    getLocks().get(i).writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public final void update(final V entity) {
+        final int shard;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        shard = getShard(entity);
+        getLocks().get(shard).writeLock().lock();
+        try {
+            getShards().get(shard).update(entity);
+        } finally {
+            getLocks().get(shard).writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        final List<List<V>> groups;
+
+        groups = group(entities);
+        for (int i = 0; i < groups.size(); i++) {
+            if (!groups.get(i).isEmpty()) {
+                getLocks().get(i).writeLock().lock();
+                try {
+                    getShards().get(i).updateAll(groups.get(i));
+                } finally {
+                    getLocks().get(i).writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a query on all the shards, and returns the result of each of them
+     * in the order of the shards.
+     * <p>
+     * If there is an executor the shards are queried in parallel.
+     * 
+     * @param <R>
+     *            the type of the results
+     * @param query
+     *            the query to run on each shard
+     * @return the result of each shard
+     */
+    private final <R> List<R> collect(
+            final Function<FilteredRepository<V, F>, R> query) {
+        final List<R> results;
+        final List<Future<R>> futures;
+
+        results = new ArrayList<R>(getShards().size());
+        if (getExecutor() == null) {
+            for (int i = 0; i < getShards().size(); i++) {
+                results.add(query(i, query));
+            }
+        } else {
+            futures = new ArrayList<Future<R>>();
+            for (int i = 0; i < getShards().size(); i++) {
+                futures.add(submit(i, query));
+            }
+
+            for (final Future<R> future : futures) {
+                results.add(getResult(future));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs a query on all the shards, and merges the results in the order of
+     * the shards.
+     * <p>
+     * If there is an executor the shards are queried in parallel.
+     * 
+     * @param query
+     *            the query to run on each shard
+     * @return the merged results
+     */
+    private final Collection<V> gather(
+            final Function<FilteredRepository<V, F>, Collection<V>> query) {
+        final Collection<V> result;
+
+        result = new LinkedList<V>();
+        for (final Collection<V> partial : collect(query)) {
+            result.addAll(partial);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the executor for querying the shards in parallel.
+     * 
+     * @return the executor for the queries, or {@code null} if there is none
+     */
+    private final ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the function reading the key used for sharding.
+     * 
+     * @return the sharding key
+     */
+    private final Function<? super V, ?> getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the lock for each shard.
+     * 
+     * @return the shard locks
+     */
+    private final List<ReadWriteLock> getLocks() {
+        return locks;
+    }
+
+    /**
+     * Returns the positions of all the shards.
+     * 
+     * @return the shard positions
+     */
+    private final List<Integer> getPositions() {
+        final List<Integer> positions;
+
+        positions = new ArrayList<Integer>(getShards().size());
+        for (int i = 0; i < getShards().size(); i++) {
+            positions.add(i);
+        }
+
+        return positions;
+    }
+
+    /**
+     * Waits for the result of a shard query.
+     * <p>
+     * Exceptions thrown by the query are rethrown.
+     * 
+     * @param <R>
+     *            the type of the result
+     * @param future
+     *            the query to wait for
+     * @return the result of the query
+     */
+    private final <R> R getResult(final Future<R> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while querying the shards", e);
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the position of the shard owning the specified entity.
+     * <p>
+     * Consistent hashing is used, so adding a shard would only move the
+     * entities the new one takes.
+     * 
+     * @param entity
+     *            the entity to locate
+     * @return the position of the shard for the entity
+     */
+    private final int getShard(final V entity) {
+        final Object value;
+
+        value = getKey().apply(entity);
+        checkNotNull(value, "Received a null pointer as shard key");
+
+        return Hashing.consistentHash(value.hashCode(), getShards().size());
+    }
+
+    /**
+     * Returns the inner repositories storing the entities.
+     * 
+     * @return the shards
+     */
+    private final List<FilteredRepository<V, F>> getShards() {
+        return shards;
+    }
+
+    /**
+     * Splits the entities into a group for each shard.
+     * 
+     * @param entities
+     *            the entities to split
+     * @return the entities for each shard, in the order of the shards
+     */
+    private final List<List<V>>
+            group(final Collection<? extends V> entities) {
+        final List<List<V>> groups;
+
+        checkNotNull(entities, "Received a null pointer as entities");
+
+        groups = new ArrayList<List<V>>(getShards().size());
+        for (int i = 0; i < getShards().size(); i++) {
+            groups.add(new ArrayList<V>());
+        }
+
+        for (final V entity : entities) {
+            checkNotNull(entity, "Received a null pointer as entity");
+
+            groups.get(getShard(entity)).add(entity);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Runs a query on a shard, holding its read lock.
+     * 
+     * @param <R>
+     *            the type of the result
+     * @param shard
+     *            the position of the shard
+     * @param query
+     *            the query to run
+     * @return the result of the query
+     */
+    private final <R> R query(final int shard,
+            final Function<FilteredRepository<V, F>, R> query) {
+        getLocks().get(shard).readLock().lock();
+        try {
+            return query.apply(getShards().get(shard));
+        } finally {
+            getLocks().get(shard).readLock().unlock();
+        }
+    }
+
+    /**
+     * Submits a query on a shard to the executor.
+     * 
+     * @param <R>
+     *            the type of the result
+     * @param shard
+     *            the position of the shard
+     * @param query
+     *            the query to run
+     * @return the pending result of the query
+     */
+    private final <R> Future<R> submit(final int shard,
+            final Function<FilteredRepository<V, F>, R> query) {
+        return getExecutor().submit(new Callable<R>() {
+
+            @Override
+            public final R call() {
+                return query(shard, query);
+            }
+
+        });
+    }
+
+}
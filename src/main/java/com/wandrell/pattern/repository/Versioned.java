@@ -0,0 +1,97 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Entity stored in a
+ * {@link com.wandrell.pattern.repository.VersionedRepository
+ * VersionedRepository}, along with its version.
+ * <p>
+ * The version grows each time the entity is updated, and is what conditional
+ * updates compare against. Versions are never reused in the same
+ * repository, even for an entity removed and added again. Instances are
+ * immutable, each update stores a new one.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class Versioned<V> {
+
+    /**
+     * Stored entity.
+     */
+    private final V    entity;
+    /**
+     * Version of the entity.
+     */
+    private final long version;
+
+    /**
+     * Constructs a {@code Versioned} with the specified entity and version.
+     * 
+     * @param value
+     *            the entity
+     * @param number
+     *            the version of the entity
+     */
+    Versioned(final V value, final long number) {
+        super();
+
+        checkNotNull(value, "Received a null pointer as entity");
+
+        entity = value;
+        version = number;
+    }
+
+    /**
+     * Returns the stored entity.
+     * 
+     * @return the entity
+     */
+    public final V getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the version of the entity.
+     * 
+     * @return the version
+     */
+    public final long getVersion() {
+        return version;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("entity", entity)
+                .add("version", version).toString();
+    }
+
+}
@@ -0,0 +1,256 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterators;
+
+/**
+ * Thread-safe {@code FilteredRepository} with optimistic, version-checked
+ * updates.
+ * <p>
+ * Each entity is stored with a version, which grows with each update. Besides
+ * the usual operations, which always succeed, the repository offers
+ * {@link #compareAndUpdate(Object, long) compareAndUpdate} and
+ * {@link #compareAndRemove(Object, long) compareAndRemove}. These only change
+ * the entity if its version is still the expected one, and report a conflict
+ * otherwise, so no update is lost to a concurrent writer.
+ * <p>
+ * Versions are taken from a counter shared by the whole repository, so an
+ * entity removed and added again never gets back a version read before its
+ * removal, and a stale conditional write can't succeed on it.
+ * <p>
+ * Writers read the entity and its version with {@link #getVersioned(Object)
+ * getVersioned}, and try to write their change. On a conflict they read the
+ * entity again and retry, without any lock being taken.
+ * <p>
+ * As with the {@link com.wandrell.pattern.repository.ConcurrentRepository
+ * ConcurrentRepository}, entities are identified through {@code equals}, and
+ * they are stored in a concurrent map.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class VersionedRepository<V>
+        extends AbstractFilteredRepository<V, Predicate<V>> {
+
+    /**
+     * Versioned entities, keyed by entity.
+     */
+    private final ConcurrentMap<V, Versioned<V>> data;
+    /**
+     * Function reading the entity of a stored version.
+     */
+    private final Function<Versioned<V>, V>      unwrap;
+    /**
+     * Source of the versions, shared by all the entities.
+     */
+    private final AtomicLong                     versions = new AtomicLong();
+
+    /**
+     * Constructs an empty {@code VersionedRepository}.
+     */
+    public VersionedRepository() {
+        super();
+
+        data = new ConcurrentHashMap<V, Versioned<V>>();
+        unwrap = new Function<Versioned<V>, V>() {
+
+            @Override
+            public final V apply(final Versioned<V> input) {
+                return input.getEntity();
+            }
+
+        };
+    }
+
+    @Override
+    public final void add(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().putIfAbsent(entity, new Versioned<V>(entity, nextVersion()));
+    }
+
+    /**
+     * Removes the entity, if it is still in the expected version.
+     * 
+     * @param entity
+     *            the entity to remove
+     * @param expectedVersion
+     *            the version the stored entity should have
+     * @return {@code true} if the entity was removed, {@code false} if it is
+     *         missing or its version is another
+     */
+    public final boolean compareAndRemove(final V entity,
+            final long expectedVersion) {
+        final Versioned<V> current;
+        final boolean removed;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        current = getData().get(entity);
+        if ((current != null) && (current.getVersion() == expectedVersion)) {
+            // Fails if another writer replaced the version read
+            removed = getData().remove(entity, current);
+        } else {
+            removed = false;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Updates the entity, if it is still in the expected version.
+     * <p>
+     * On success the entity takes a new, greater, version.
+     * 
+     * @param entity
+     *            the new version of the entity
+     * @param expectedVersion
+     *            the version the stored entity should have
+     * @return {@code true} if the entity was updated, {@code false} if it is
+     *         missing or its version is another
+     */
+    public final boolean compareAndUpdate(final V entity,
+            final long expectedVersion) {
+        final Versioned<V> current;
+        final boolean updated;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        current = getData().get(entity);
+        if ((current != null) && (current.getVersion() == expectedVersion)) {
+            // Fails if another writer replaced the version read
+            updated = getData().replace(entity, current,
+                    new Versioned<V>(entity, nextVersion()));
+        } else {
+            updated = false;
+        }
+
+        return updated;
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return new ArrayList<V>(
+                Collections2.transform(getData().values(), getUnwrap()));
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final Predicate<V> filter) {
+        checkNotNull(filter, "Received a null pointer as filter");
+
+        return Iterators.filter(Iterators
+                .transform(getData().values().iterator(), getUnwrap()), filter);
+    }
+
+    /**
+     * Returns the stored version of the entity.
+     * 
+     * @param entity
+     *            the entity to find
+     * @return the entity with its version, or {@code null} if it is not
+     *         stored
+     */
+    public final Versioned<V> getVersioned(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        return getData().get(entity);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        getData().remove(entity);
+    }
+
+    /**
+     * Updates the entity, whatever its version.
+     * <p>
+     * The entity takes a new, greater, version. If the entity is not stored
+     * nothing is done.
+     * 
+     * @param entity
+     *            the new version of the entity
+     */
+    @Override
+    public final void update(final V entity) {
+        Versioned<V> current;
+        boolean updated;
+
+        checkNotNull(entity, "Received a null pointer as entity");
+
+        updated = false;
+        current = getData().get(entity);
+        while ((current != null) && !updated) {
+            updated = getData().replace(entity, current,
+                    new Versioned<V>(entity, nextVersion()));
+            if (!updated) {
+                current = getData().get(entity);
+            }
+        }
+    }
+
+    /**
+     * Returns the versioned entities.
+     * 
+     * @return the stored data
+     */
+    private final ConcurrentMap<V, Versioned<V>> getData() {
+        return data;
+    }
+
+    /**
+     * Returns a version not used before by any entity.
+     * 
+     * @return a new version
+     */
+    private final long nextVersion() {
+        return versions.getAndIncrement();
+    }
+
+    /**
+     * Returns the function reading the entity of a stored version.
+     * 
+     * @return the function unwrapping the entities
+     */
+    private final Function<Versioned<V>, V> getUnwrap() {
+        return unwrap;
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.feed;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Change done to a repository, as published by a
+ * {@link com.wandrell.pattern.repository.feed.ChangeFeedRepository
+ * ChangeFeedRepository}.
+ * <p>
+ * Each event has a sequence number, which grows with each change, so
+ * subscribers can tell the order of the changes and if any was lost.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ChangeEvent<V> {
+
+    /**
+     * Entity which was changed.
+     */
+    private final V          entity;
+    /**
+     * Position of the change in the feed.
+     */
+    private final Long       sequence;
+    /**
+     * Type of change.
+     */
+    private final ChangeType type;
+
+    /**
+     * Constructs a {@code ChangeEvent} with the specified data.
+     * 
+     * @param change
+     *            the type of change
+     * @param changed
+     *            the entity changed
+     * @param position
+     *            the position of the change in the feed
+     */
+    ChangeEvent(final ChangeType change, final V changed,
+            final Long position) {
+        super();
+
+        checkNotNull(change, "Received a null pointer as type");
+        checkNotNull(position, "Received a null pointer as sequence");
+
+        type = change;
+        entity = changed;
+        sequence = position;
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final ChangeEvent<?> other;
+
+        other = (ChangeEvent<?>) obj;
+        return Objects.equals(sequence, other.sequence)
+                && Objects.equals(type, other.type)
+                && Objects.equals(entity, other.entity);
+    }
+
+    /**
+     * Returns the entity which was changed.
+     * <p>
+     * For updates this is the new version of the entity.
+     * 
+     * @return the changed entity
+     */
+    public final V getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the position of the change in the feed.
+     * 
+     * @return the sequence number of the change
+     */
+    public final Long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the type of change.
+     * 
+     * @return the type of change
+     */
+    public final ChangeType getType() {
+        return type;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(sequence, type, entity);
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("sequence", sequence)
+                .add("type", type).add("entity", entity).toString();
+    }
+
+}
@@ -0,0 +1,487 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.feed;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Function;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.wandrell.pattern.repository.Aggregate;
+import com.wandrell.pattern.repository.FilteredRepository;
+
+/**
+ * Decorator for a {@code FilteredRepository} which publishes the changes done
+ * through it.
+ * <p>
+ * Instead of polling the repository to find what changed, consumers can
+ * {@link #subscribe(ChangeListener, int, OverflowPolicy) subscribe} to it,
+ * and they will receive a {@link ChangeEvent} for each entity added, updated
+ * or removed.
+ * <p>
+ * Each subscriber receives the changes in batches, on its own thread, from a
+ * bounded buffer. Writers just leave the changes on these buffers, so a slow
+ * subscriber won't delay them, unless it was subscribed with the
+ * {@link OverflowPolicy#BLOCK BLOCK} policy.
+ * <p>
+ * Writes are serialized, so the changes are published in the order they were
+ * applied to the wrapped repository. Queries are just delegated.
+ * <p>
+ * Only the changes which actually happened are published. Removing or
+ * updating an entity which is not stored sends nothing. To know this, the
+ * feed keeps track of the entities stored through it, starting with those in
+ * the wrapped repository when the feed is created. Adding an entity equal to
+ * one already stored sends a change only if the wrapped repository kept both,
+ * which is found out by comparing its size before and after the write.
+ * <p>
+ * Changes done directly on the wrapped repository are not published, and
+ * will make the feed lose track of the stored entities, so all the writes
+ * should go through the feed.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ * @param <F>
+ *            the type of the filter used by the repository
+ */
+public final class ChangeFeedRepository<V, F>
+        implements FilteredRepository<V, F>, Closeable {
+
+    /**
+     * Wrapped repository.
+     */
+    private final FilteredRepository<V, F>          repository;
+    /**
+     * Sequence number for the next change.
+     */
+    private final AtomicLong                        sequence;
+    /**
+     * Entities stored in the wrapped repository.
+     */
+    private final Multiset<V>                       stored;
+    /**
+     * Active subscriptions.
+     */
+    private final Collection<ChangeSubscription<V>> subscriptions;
+    /**
+     * Number of subscriptions created, used to name their threads.
+     */
+    private final AtomicLong                        subscribed;
+    /**
+     * Lock serializing the writes.
+     */
+    private final ReentrantLock                     writeLock;
+
+    /**
+     * Constructs a {@code ChangeFeedRepository} wrapping the specified
+     * repository.
+     * 
+     * @param wrapped
+     *            the repository to wrap
+     */
+    public ChangeFeedRepository(final FilteredRepository<V, F> wrapped) {
+        super();
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+
+        repository = wrapped;
+        stored = HashMultiset.create(wrapped.getAll());
+        sequence = new AtomicLong();
+        subscribed = new AtomicLong();
+        subscriptions = new CopyOnWriteArrayList<ChangeSubscription<V>>();
+        writeLock = new ReentrantLock();
+    }
+
+    @Override
+    public final void add(final V entity) {
+        final boolean added;
+        final int before;
+
+        getWriteLock().lock();
+        try {
+            if (getStored().contains(entity)) {
+                // Only the repository knows if it keeps equal entities
+                before = getRepository().getAll().size();
+                getRepository().add(entity);
+                added = getRepository().getAll().size() > before;
+            } else {
+                getRepository().add(entity);
+                added = true;
+            }
+
+            if (added) {
+                getStored().add(entity);
+                publish(ChangeType.ADD, Collections.singletonList(entity));
+            }
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        getWriteLock().lock();
+        try {
+            publish(ChangeType.ADD, addStored(entities));
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final Aggregate aggregate(final F filter,
+            final Function<? super V, ? extends Number> attribute) {
+        return getRepository().aggregate(filter, attribute);
+    }
+
+    /**
+     * Closes all the subscriptions.
+     * <p>
+     * The changes already published are still delivered.
+     */
+    @Override
+    public final void close() {
+        for (final ChangeSubscription<V> subscription : getSubscriptions()) {
+            unsubscribe(subscription);
+        }
+    }
+
+    @Override
+    public final long count(final F filter) {
+        return getRepository().count(filter);
+    }
+
+    @Override
+    public final boolean exists(final F filter) {
+        return getRepository().exists(filter);
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return getRepository().getAll();
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter) {
+        return getRepository().getCollection(filter);
+    }
+
+    @Override
+    public final Collection<V> getCollection(final F filter, final int limit) {
+        return getRepository().getCollection(filter, limit);
+    }
+
+    @Override
+    public final V getEntity(final F filter) {
+        return getRepository().getEntity(filter);
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final F filter) {
+        return getRepository().getIterator(filter);
+    }
+
+    @Override
+    public final Collection<V> getPage(final F filter, final int offset,
+            final int limit) {
+        return getRepository().getPage(filter, offset, limit);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getWriteLock().lock();
+        try {
+            getRepository().remove(entity);
+            publish(ChangeType.REMOVE,
+                    removeStored(Collections.singletonList(entity)));
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        getWriteLock().lock();
+        try {
+            getRepository().removeAll(entities);
+            publish(ChangeType.REMOVE, removeStored(entities));
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    /**
+     * Subscribes a listener to the changes done to the repository.
+     * <p>
+     * The listener will receive the changes done from this moment, on its own
+     * thread.
+     * <p>
+     * A listener subscribed with the {@code BLOCK} policy shouldn't write to
+     * this repository, as it may end waiting for itself.
+     * 
+     * @param listener
+     *            the listener receiving the changes
+     * @param capacity
+     *            the maximum number of changes waiting to be delivered
+     * @param policy
+     *            the action to take when the listener falls behind
+     * @return the subscription for the listener
+     */
+    public final ChangeSubscription<V> subscribe(
+            final ChangeListener<V> listener, final int capacity,
+            final OverflowPolicy policy) {
+        final ChangeSubscription<V> subscription;
+
+        subscription = new ChangeSubscription<V>(listener, capacity, policy,
+                "change-feed-" + getSubscribed().incrementAndGet());
+
+        getSubscriptions().add(subscription);
+        subscription.start();
+
+        return subscription;
+    }
+
+    /**
+     * Cancels a subscription.
+     * <p>
+     * The changes already published are still delivered.
+     * 
+     * @param subscription
+     *            the subscription to cancel
+     */
+    public final void unsubscribe(final ChangeSubscription<V> subscription) {
+        checkNotNull(subscription, "Received a null pointer as subscription");
+
+        subscription.close();
+        getSubscriptions().remove(subscription);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        getWriteLock().lock();
+        try {
+            getRepository().update(entity);
+            publish(ChangeType.UPDATE,
+                    filterStored(Collections.singletonList(entity)));
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        getWriteLock().lock();
+        try {
+            getRepository().updateAll(entities);
+            publish(ChangeType.UPDATE, filterStored(entities));
+        } finally {
+            getWriteLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the entities to the wrapped repository, and returns those which
+     * were actually added.
+     * <p>
+     * Entities not stored yet are always added. If any of them is equal to
+     * one already stored, or to another one received, the size of the
+     * repository tells if it kept them all or ignored the repeated ones.
+     * 
+     * @param entities
+     *            the entities to add
+     * @return the entities added
+     */
+    private final Collection<? extends V> addStored(
+            final Collection<? extends V> entities) {
+        final Collection<V> fresh;           // Entities not stored before
+        final Collection<V> seen;            // Entities received so far
+        final Collection<? extends V> added; // Entities kept by the repository
+        final int before;                    // Size before adding
+
+        fresh = new ArrayList<V>(entities.size());
+        seen = new HashSet<V>();
+        for (final V entity : entities) {
+            if (seen.add(entity) && !getStored().contains(entity)) {
+                fresh.add(entity);
+            }
+        }
+
+        if (fresh.size() == entities.size()) {
+            getRepository().addAll(entities);
+            added = entities;
+        } else {
+            before = getRepository().getAll().size();
+            getRepository().addAll(entities);
+            if ((getRepository().getAll().size() - before) == entities
+                    .size()) {
+                added = entities;
+            } else {
+                added = fresh;
+            }
+        }
+
+        getStored().addAll(added);
+
+        return added;
+    }
+
+    /**
+     * Returns the entities which are stored.
+     * 
+     * @param entities
+     *            the entities to check
+     * @return the entities stored
+     */
+    private final Collection<V> filterStored(
+            final Collection<? extends V> entities) {
+        final Collection<V> found;
+
+        found = new ArrayList<V>(entities.size());
+        for (final V entity : entities) {
+            if (getStored().contains(entity)) {
+                found.add(entity);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, F> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Returns the sequence number for the next change.
+     * 
+     * @return the change sequence
+     */
+    private final AtomicLong getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of subscriptions created.
+     * 
+     * @return the number of subscriptions created
+     */
+    private final AtomicLong getSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * Returns the entities stored in the wrapped repository.
+     * 
+     * @return the stored entities
+     */
+    private final Multiset<V> getStored() {
+        return stored;
+    }
+
+    /**
+     * Returns the active subscriptions.
+     * 
+     * @return the active subscriptions
+     */
+    private final Collection<ChangeSubscription<V>> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Returns the lock serializing the writes.
+     * 
+     * @return the write lock
+     */
+    private final ReentrantLock getWriteLock() {
+        return writeLock;
+    }
+
+    /**
+     * Stops tracking the removed entities, and returns those which were
+     * stored.
+     * 
+     * @param entities
+     *            the entities removed
+     * @return the entities which were stored
+     */
+    private final Collection<V> removeStored(
+            final Collection<? extends V> entities) {
+        final Collection<V> removed;
+
+        removed = new ArrayList<V>(entities.size());
+        for (final V entity : entities) {
+            if (getStored().remove(entity)) {
+                removed.add(entity);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Publishes a change for each of the specified entities.
+     * 
+     * @param type
+     *            the type of change
+     * @param entities
+     *            the changed entities
+     */
+    private final void publish(final ChangeType type,
+            final Collection<? extends V> entities) {
+        final List<ChangeEvent<V>> events;
+
+        events = new ArrayList<ChangeEvent<V>>(entities.size());
+        for (final V entity : entities) {
+            events.add(new ChangeEvent<V>(type, entity,
+                    getSequence().incrementAndGet()));
+        }
+
+        for (final ChangeSubscription<V> subscription : getSubscriptions()) {
+            if (subscription.isActive()) {
+                for (final ChangeEvent<V> event : events) {
+                    subscription.offer(event);
+                }
+            } else {
+                getSubscriptions().remove(subscription);
+            }
+        }
+    }
+
+}
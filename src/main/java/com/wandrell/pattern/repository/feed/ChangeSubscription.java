@@ -0,0 +1,474 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.feed;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscription to a
+ * {@link com.wandrell.pattern.repository.feed.ChangeFeedRepository
+ * ChangeFeedRepository}.
+ * <p>
+ * Each subscription has its own bounded ring buffer, where the writers leave
+ * the changes, and its own thread, which takes all the pending changes at
+ * once and hands them to the listener as a single batch. This way a slow
+ * listener only delays its own deliveries.
+ * <p>
+ * When the listener falls behind and the buffer fills up, the
+ * {@link OverflowPolicy} decides what happens to the new changes. Those which
+ * are dropped are counted, and can be queried with {@link #getDropped()
+ * getDropped}.
+ * <p>
+ * With the {@code COALESCE} policy the subscription keeps the position of
+ * the pending change for each entity, so a new change is merged into it in
+ * place. The merged change keeps that position, so a batch may not follow
+ * the order of the sequence numbers.
+ * <p>
+ * Closing the subscription stops it from receiving changes, but those already
+ * in the buffer are still delivered.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class ChangeSubscription<V> implements Closeable {
+
+    /**
+     * The logger used for logging the subscription.
+     */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ChangeSubscription.class);
+
+    /**
+     * Returns the logger used by the subscription.
+     * 
+     * @return the logger used by the subscription
+     */
+    private static final Logger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Merges two consecutive changes to the same entity.
+     * 
+     * @param <V>
+     *            the type stored on the repository
+     * @param previous
+     *            the first change
+     * @param next
+     *            the second change
+     * @return a change with the effect of both, or {@code null} if they
+     *         cancel each other
+     */
+    private static final <V> ChangeEvent<V> merge(
+            final ChangeEvent<V> previous, final ChangeEvent<V> next) {
+        final ChangeEvent<V> merged;
+
+        if (previous.getType() == ChangeType.ADD) {
+            if (next.getType() == ChangeType.REMOVE) {
+                // Added and removed, it never reached the subscriber
+                merged = null;
+            } else {
+                merged = new ChangeEvent<V>(ChangeType.ADD, next.getEntity(),
+                        next.getSequence());
+            }
+        } else if ((previous.getType() == ChangeType.REMOVE)
+                && (next.getType() == ChangeType.ADD)) {
+            // The subscriber still has the entity
+            merged = new ChangeEvent<V>(ChangeType.UPDATE, next.getEntity(),
+                    next.getSequence());
+        } else {
+            merged = next;
+        }
+
+        return merged;
+    }
+
+    /**
+     * Flag indicating if the subscription is receiving changes.
+     */
+    private volatile boolean        active  = true;
+    /**
+     * Ring buffer with the pending changes.
+     */
+    private final Object[]          buffer;
+    /**
+     * Number of changes dropped.
+     */
+    private final AtomicLong        dropped = new AtomicLong();
+    /**
+     * Position of the oldest pending change.
+     */
+    private long                    head;
+    /**
+     * Listener receiving the changes.
+     */
+    private final ChangeListener<V> listener;
+    /**
+     * Lock guarding the buffer.
+     */
+    private final ReentrantLock     lock    = new ReentrantLock();
+    /**
+     * Signals that there are changes to deliver.
+     */
+    private final Condition         notEmpty;
+    /**
+     * Signals that there is space in the buffer.
+     */
+    private final Condition         notFull;
+    /**
+     * Action to take when the buffer is full.
+     */
+    private final OverflowPolicy    policy;
+    /**
+     * Position of the pending change for each entity, used to coalesce.
+     */
+    private final Map<V, Long>      slots   = new HashMap<V, Long>();
+    /**
+     * Position after the newest pending change.
+     */
+    private long                    tail;
+    /**
+     * Thread delivering the changes.
+     */
+    private final Thread            worker;
+
+    /**
+     * Constructs a {@code ChangeSubscription} with the specified listener and
+     * buffer.
+     * 
+     * @param receiver
+     *            the listener receiving the changes
+     * @param capacity
+     *            the size of the buffer
+     * @param overflow
+     *            the action to take when the buffer is full
+     * @param name
+     *            the name of the delivery thread
+     */
+    ChangeSubscription(final ChangeListener<V> receiver,
+            final int capacity, final OverflowPolicy overflow,
+            final String name) {
+        super();
+
+        checkNotNull(receiver, "Received a null pointer as listener");
+        checkNotNull(overflow, "Received a null pointer as policy");
+        checkNotNull(name, "Received a null pointer as name");
+        checkArgument(capacity > 0, "The capacity should be positive");
+
+        listener = receiver;
+        buffer = new Object[capacity];
+        policy = overflow;
+
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+
+        worker = new Thread(new Runnable() {
+
+            @Override
+            public final void run() {
+                deliver();
+            }
+
+        }, name);
+        worker.setDaemon(true);
+    }
+
+    @Override
+    public final void close() {
+        getLock().lock();
+        try {
+            active = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of changes dropped because the buffer was full.
+     * 
+     * @return the number of changes dropped
+     */
+    public final long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of changes waiting to be delivered.
+     * 
+     * @return the number of pending changes
+     */
+    public final int getPending() {
+        getLock().lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the action taken when the buffer is full.
+     * 
+     * @return the overflow policy
+     */
+    public final OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Indicates if the subscription is receiving changes.
+     * 
+     * @return {@code true} if the subscription is receiving changes,
+     *         {@code false} if it was closed
+     */
+    public final boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Leaves a change in the buffer, to be delivered.
+     * <p>
+     * If the buffer is full the overflow policy is applied. With the
+     * {@code BLOCK} policy this waits for space, unless the thread is
+     * interrupted, in which case the change is dropped.
+     * 
+     * @param event
+     *            the change to deliver
+     */
+    final void offer(final ChangeEvent<V> event) {
+        getLock().lock();
+        try {
+            if (isFull() && (getPolicy() == OverflowPolicy.BLOCK)) {
+                awaitSpace();
+            }
+
+            if (isActive()) {
+                if (!isFull()) {
+                    push(event);
+                } else if (getPolicy() == OverflowPolicy.COALESCE) {
+                    coalesce(event);
+                } else {
+                    dropped.incrementAndGet();
+                }
+            }
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    /**
+     * Starts the delivery thread.
+     */
+    final void start() {
+        worker.start();
+    }
+
+    /**
+     * Waits for changes and takes all the pending ones.
+     * <p>
+     * An empty batch is returned only once the subscription is closed and all
+     * the changes were delivered.
+     * 
+     * @return the pending changes
+     */
+    private final List<ChangeEvent<V>> awaitBatch() {
+        getLock().lock();
+        try {
+            while ((tail == head) && isActive()) {
+                notEmpty.awaitUninterruptibly();
+            }
+
+            return take();
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until there is space in the buffer, the subscription is closed or
+     * the thread is interrupted.
+     */
+    private final void awaitSpace() {
+        boolean interrupted;
+
+        interrupted = false;
+        while (isFull() && isActive() && !interrupted) {
+            try {
+                notFull.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * Merges the new change into the pending change for the same entity. If
+     * there is none, the new change is dropped.
+     * 
+     * @param event
+     *            the new change
+     */
+    @SuppressWarnings("unchecked")
+    private final void coalesce(final ChangeEvent<V> event) {
+        final Long position;
+        final int slot;
+        final ChangeEvent<V> merged;
+
+        position = slots.get(event.getEntity());
+        if (position == null) {
+            // Nothing to merge with, so the new change is dropped
+            dropped.incrementAndGet();
+        } else {
+            slot = (int) (position % buffer.length);
+            merged = merge((ChangeEvent<V>) buffer[slot], event);
+            if (merged == null) {
+                slots.remove(event.getEntity());
+                discard(position);
+            } else {
+                buffer[slot] = merged;
+            }
+        }
+    }
+
+    /**
+     * Delivers the changes to the listener until the subscription is closed
+     * and the buffer is empty.
+     */
+    private final void deliver() {
+        List<ChangeEvent<V>> batch;
+
+        batch = awaitBatch();
+        while (!batch.isEmpty()) {
+            try {
+                listener.onChanges(batch);
+            } catch (final RuntimeException exception) {
+                getLogger().error(exception.getMessage(), exception);
+            }
+
+            batch = awaitBatch();
+        }
+    }
+
+    /**
+     * Removes a pending change, moving the newer ones back to fill its
+     * position.
+     * 
+     * @param position
+     *            position of the change to remove
+     */
+    @SuppressWarnings("unchecked")
+    private final void discard(final long position) {
+        ChangeEvent<V> next;
+        long current;
+
+        current = position;
+        while ((current + 1) < tail) {
+            next = (ChangeEvent<V>) buffer[(int) ((current + 1)
+                    % buffer.length)];
+            buffer[(int) (current % buffer.length)] = next;
+            slots.put(next.getEntity(), current);
+            current++;
+        }
+
+        tail--;
+        buffer[(int) (tail % buffer.length)] = null;
+    }
+
+    /**
+     * Returns the lock guarding the buffer.
+     * 
+     * @return the lock for the buffer
+     */
+    private final ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Indicates if the buffer is full.
+     * 
+     * @return {@code true} if the buffer is full, {@code false} otherwise
+     */
+    private final boolean isFull() {
+        return (tail - head) == buffer.length;
+    }
+
+    /**
+     * Adds a change to the end of the buffer.
+     * 
+     * @param event
+     *            the change to add
+     */
+    private final void push(final ChangeEvent<V> event) {
+        buffer[(int) (tail % buffer.length)] = event;
+        if (getPolicy() == OverflowPolicy.COALESCE) {
+            slots.put(event.getEntity(), tail);
+        }
+        tail++;
+
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes all the pending changes from the buffer.
+     * 
+     * @return the pending changes, from oldest to newest
+     */
+    @SuppressWarnings("unchecked")
+    private final List<ChangeEvent<V>> take() {
+        final List<ChangeEvent<V>> changes;
+        int position;
+
+        changes = new ArrayList<ChangeEvent<V>>((int) (tail - head));
+        while (head < tail) {
+            position = (int) (head % buffer.length);
+            changes.add((ChangeEvent<V>) buffer[position]);
+            buffer[position] = null;
+            head++;
+        }
+        slots.clear();
+
+        notFull.signalAll();
+
+        return changes;
+    }
+
+}
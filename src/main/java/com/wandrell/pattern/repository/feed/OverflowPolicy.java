@@ -0,0 +1,51 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.feed;
+
+/**
+ * Enumeration of the actions taken when a subscriber to a change feed falls
+ * behind, and its buffer is full.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The writer waits until the subscriber frees space in its buffer.
+     * <p>
+     * This is the only policy where a slow subscriber slows down the writers,
+     * in exchange of never missing a change.
+     */
+    BLOCK, /**
+            * The new change is merged with the pending change for the same
+            * entity, keeping only their final effect. If there is none the new
+            * change is dropped.
+            */
+    COALESCE, /**
+               * The new change is dropped.
+               */
+    DROP
+
+}
@@ -0,0 +1,39 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+/**
+ * Provides a change feed for repositories.
+ * <p>
+ * The {@link com.wandrell.pattern.repository.feed.ChangeFeedRepository
+ * ChangeFeedRepository} wraps a repository, and publishes each change done
+ * through it as a {@link com.wandrell.pattern.repository.feed.ChangeEvent
+ * ChangeEvent}. Consumers subscribe a
+ * {@link com.wandrell.pattern.repository.feed.ChangeListener ChangeListener},
+ * which receives these changes in batches on its own thread.
+ * <p>
+ * Each {@link com.wandrell.pattern.repository.feed.ChangeSubscription
+ * ChangeSubscription} buffers the changes in a bounded ring buffer, and the
+ * {@link com.wandrell.pattern.repository.feed.OverflowPolicy OverflowPolicy}
+ * chosen for it decides what to do when the subscriber falls behind.
+ */
+package com.wandrell.pattern.repository.feed;
@@ -52,6 +52,11 @@
  * stores data for generating queries similar to the SQL ones.
  * <h2>Implementations</h2>
  * <p>
+ * New implementations can extend
+ * {@link com.wandrell.pattern.repository.AbstractFilteredRepository
+ * AbstractFilteredRepository}, which builds all the queries on top of a lazy
+ * iterator over the filtered entities.
+ * <p>
  * A basic implementation of the {@code FilteredRepository},
  * {@link com.wandrell.pattern.repository.CollectionRepository
  * CollectionRepository}, offers a simple and fast way of creating the simplest
@@ -62,8 +67,92 @@
  * "http://docs.guava-libraries.googlecode.com/git/javadoc/com/google/common/base/Predicate.html"
  * >Predicate</a> which the entities to be returned should validate.
  * <p>
+ * When reads are much more common than writes, the
+ * {@link com.wandrell.pattern.repository.CopyOnWriteRepository
+ * CopyOnWriteRepository} can be used instead. It keeps the entities in an
+ * immutable snapshot, which is replaced on each write, so queries never copy
+ * the data or take locks.
+ * <p>
+ * For repositories shared between threads there is the
+ * {@link com.wandrell.pattern.repository.ConcurrentRepository
+ * ConcurrentRepository}, which stores the entities in a concurrent map, so
+ * readers and writers don't block each other.
+ * <p>
+ * If queries should also see a consistent state, the
+ * {@link com.wandrell.pattern.repository.MultiVersionRepository
+ * MultiVersionRepository} keeps several versions of each entity, so each read
+ * works on a snapshot of the last commit without taking locks.
+ * <p>
+ * To avoid lost updates without locks, the
+ * {@link com.wandrell.pattern.repository.VersionedRepository
+ * VersionedRepository} stores a version with each entity, and only accepts
+ * conditional updates made over the current version.
+ * <p>
+ * To spread the entities across several repositories there is the
+ * {@link com.wandrell.pattern.repository.ShardedRepository ShardedRepository},
+ * which sends each write to the shard owning the entity, and queries all the
+ * shards, in parallel if possible, merging their results.
+ * <p>
+ * Entities identified by a {@code long} can be stored in a
+ * {@link com.wandrell.pattern.repository.LongKeyedRepository
+ * LongKeyedRepository}, which finds them by key without boxing it.
+ * <p>
+ * Large numbers of entities can be kept out of the heap with the
+ * {@link com.wandrell.pattern.repository.OffHeapRepository OffHeapRepository},
+ * which encodes them into direct buffers through a pair of {@code Parser}
+ * instances, and decodes them only when a query needs to check them.
+ * <p>
+ * The {@link com.wandrell.pattern.repository.ColumnarRepository
+ * ColumnarRepository} stores attributes of the entities in primitive columns,
+ * so filters on them are resolved by scanning arrays instead of entities.
+ * <p>
+ * For attributes with few distinct values, a
+ * {@link com.wandrell.pattern.repository.BitmapIndex BitmapIndex} can be
+ * registered on a {@code CollectionRepository}. Combinations of its
+ * predicates are resolved by combining compressed bitmaps, so only the
+ * matching entities are read.
+ * <p>
+ * Range filters can be resolved through a
+ * {@link com.wandrell.pattern.repository.RangeIndex RangeIndex}, which keeps
+ * the entities sorted by an attribute and returns just the matching slice,
+ * in ascending or descending order.
+ * <p>
+ * Filters queried repeatedly can be registered as a
+ * {@link com.wandrell.pattern.repository.MaterializedView MaterializedView},
+ * which keeps the matching entities up to date on each change, so reading
+ * them doesn't require scanning the repository.
+ * <p>
+ * Besides returning entities, a {@code FilteredRepository} can count them,
+ * check if any exists, or summarize a numeric attribute into an
+ * {@link com.wandrell.pattern.repository.Aggregate Aggregate}. These queries
+ * consume the same iterators as the rest, so they take advantage of the
+ * indexes, but without gathering the entities into a collection.
+ * <p>
+ * Compound filters can be built with
+ * {@link com.wandrell.pattern.repository.AdaptivePredicate AdaptivePredicate},
+ * which measures the selectivity and cost of each condition while the
+ * repository is queried, and reorders them so the cheapest and most decisive
+ * ones are evaluated first.
+ * <p>
+ * When the entities should survive a restart, the
+ * {@link com.wandrell.pattern.repository.LogFileRepository LogFileRepository}
+ * writes each change to an append-only log, which is periodically compacted
+ * into a snapshot.
+ * <p>
+ * Any {@code FilteredRepository} can be wrapped by a
+ * {@link com.wandrell.pattern.repository.CachedRepository CachedRepository},
+ * which caches the results of repeated queries until the data is changed.
+ * Or by a
+ * {@link com.wandrell.pattern.repository.feed.ChangeFeedRepository
+ * ChangeFeedRepository}, which publishes the changes done to it to the
+ * subscribed listeners.
+ * <p>
  * Additionally, there is a default implementation of {@code QueryData},
  * {@link com.wandrell.pattern.repository.DefaultQueryData DefaultQueryData},
- * which just serves to ease using said interface.
+ * which just serves to ease using said interface, and an immutable one,
+ * {@link com.wandrell.pattern.repository.ImmutableQueryData
+ * ImmutableQueryData}, which can be used as a key. This is what the
+ * {@link com.wandrell.pattern.repository.QueryCachedRepository
+ * QueryCachedRepository} does to cache the results of queries.
  */
 package com.wandrell.pattern.repository;
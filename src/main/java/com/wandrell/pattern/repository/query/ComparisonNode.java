@@ -0,0 +1,108 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+/**
+ * Query node comparing an attribute of the entities with a value.
+ * <p>
+ * The value is either a literal, stored in the node, or a parameter, which is
+ * read when binding the node.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+final class ComparisonNode<V> implements QueryNode<V> {
+
+    /**
+     * Function reading the attribute from the entities.
+     */
+    private final Function<? super V, ?> attribute;
+    /**
+     * Literal value, if there is no parameter.
+     */
+    private final Object                 literal;
+    /**
+     * Operator for the comparison.
+     */
+    private final QueryOperator          operator;
+    /**
+     * Name of the parameter, or {@code null} if a literal is used.
+     */
+    private final String                 parameter;
+
+    /**
+     * Constructs a comparison node.
+     * 
+     * @param extractor
+     *            function reading the attribute from the entities
+     * @param comparison
+     *            operator for the comparison
+     * @param param
+     *            name of the parameter, or {@code null} if a literal is used
+     * @param value
+     *            literal value, ignored if there is a parameter
+     */
+    public ComparisonNode(final Function<? super V, ?> extractor,
+            final QueryOperator comparison, final String param,
+            final Object value) {
+        super();
+
+        attribute = extractor;
+        operator = comparison;
+        parameter = param;
+        literal = value;
+    }
+
+    @Override
+    public final Predicate<V> bind(final Map<String, ?> parameters) {
+        final Object value; // Value to compare with
+
+        if (parameter == null) {
+            value = literal;
+        } else if (parameters.containsKey(parameter)) {
+            value = parameters.get(parameter);
+        } else {
+            throw new IllegalArgumentException(
+                    String.format("Missing value for parameter :%s",
+                            parameter));
+        }
+
+        return new Predicate<V>() {
+
+            @Override
+            public final boolean apply(final V entity) {
+                return operator.apply(attribute.apply(entity), value);
+            }
+
+        };
+    }
+
+}
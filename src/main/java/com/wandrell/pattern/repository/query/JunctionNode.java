@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Query node joining several conditions through {@code AND} or {@code OR}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+final class JunctionNode<V> implements QueryNode<V> {
+
+    /**
+     * Joined conditions.
+     */
+    private final List<QueryNode<V>> children;
+    /**
+     * Flag indicating if all the conditions should hold, or just one.
+     */
+    private final boolean            conjunction;
+
+    /**
+     * Constructs a junction node.
+     * 
+     * @param all
+     *            {@code true} for an {@code AND}, {@code false} for an
+     *            {@code OR}
+     * @param nodes
+     *            conditions to join
+     */
+    public JunctionNode(final boolean all,
+            final Collection<QueryNode<V>> nodes) {
+        super();
+
+        conjunction = all;
+        children = ImmutableList.copyOf(nodes);
+    }
+
+    @Override
+    public final Predicate<V> bind(final Map<String, ?> parameters) {
+        final List<Predicate<V>> predicates; // Bound children
+        final Predicate<V> result;
+
+        predicates = new ArrayList<Predicate<V>>(children.size());
+        for (final QueryNode<V> child : children) {
+            predicates.add(child.bind(parameters));
+        }
+
+        if (conjunction) {
+            result = Predicates.and(predicates);
+        } else {
+            result = Predicates.or(predicates);
+        }
+
+        return result;
+    }
+
+}
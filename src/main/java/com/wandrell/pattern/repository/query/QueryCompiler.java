@@ -0,0 +1,345 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.wandrell.pattern.parser.Parser;
+
+/**
+ * Compiles query strings into {@link QueryPlan} instances.
+ * <p>
+ * The queries are made of comparisons between attributes of the entities and
+ * values, joined through {@code AND}, {@code OR} and {@code NOT}, and grouped
+ * with parenthesis. For example:
+ * 
+ * <pre>
+ * name = :name AND (age &gt;= 18 OR NOT status = 'minor')
+ * </pre>
+ * <p>
+ * Attributes are identified by name, and should be registered in the compiler
+ * along a function which reads them from the entities.
+ * <p>
+ * The values may be literals, or named parameters, prefixed by a colon. The
+ * literals supported are numbers, strings between single quotes, and the
+ * keywords {@code TRUE}, {@code FALSE} and {@code NULL}. Keywords are case
+ * insensitive.
+ * <p>
+ * The supported operators are {@code =}, {@code !=}, {@code <}, {@code <=},
+ * {@code >} and {@code >=}. {@code NOT} has the highest precedence, followed
+ * by {@code AND} and then {@code OR}.
+ * <p>
+ * Any syntax error, or unknown attribute, will cause an
+ * {@code IllegalArgumentException}.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+public final class QueryCompiler<V> implements Parser<String, QueryPlan<V>> {
+
+    /**
+     * Functions for reading the attributes, mapped to their names.
+     */
+    private final Map<String, Function<? super V, ?>> attributes;
+
+    /**
+     * Constructs a {@code QueryCompiler} with the specified attributes.
+     * 
+     * @param attrs
+     *            functions for reading the attributes, mapped to their names
+     */
+    public QueryCompiler(final Map<String, Function<? super V, ?>> attrs) {
+        super();
+
+        checkNotNull(attrs, "Received a null pointer as attributes");
+
+        attributes = ImmutableMap.copyOf(attrs);
+    }
+
+    @Override
+    public final QueryPlan<V> parse(final String input) {
+        final Collection<String> parameters; // Parameters found
+        final QueryTokenizer tokenizer;      // Tokens in the query
+        final QueryNode<V> root;             // Compiled query
+
+        checkNotNull(input, "Received a null pointer as query");
+
+        tokenizer = new QueryTokenizer(input);
+        parameters = new LinkedHashSet<String>();
+
+        root = parseDisjunction(tokenizer, parameters);
+        expect(tokenizer, QueryToken.Type.END);
+
+        return new QueryPlan<V>(input, root, parameters);
+    }
+
+    /**
+     * Consumes the next token, which should be of the specified type.
+     * 
+     * @param tokenizer
+     *            tokens in the query
+     * @param type
+     *            expected type
+     * @return the token consumed
+     */
+    private final QueryToken expect(final QueryTokenizer tokenizer,
+            final QueryToken.Type type) {
+        final QueryToken token;
+
+        token = tokenizer.next();
+        if (token.getType() != type) {
+            throw unexpected(token);
+        }
+
+        return token;
+    }
+
+    /**
+     * Parses a comparison between an attribute and a value.
+     * 
+     * @param tokenizer
+     *            tokens in the query
+     * @param parameters
+     *            parameters found in the query
+     * @return the compiled comparison
+     */
+    private final QueryNode<V> parseComparison(
+            final QueryTokenizer tokenizer,
+            final Collection<String> parameters) {
+        final Function<? super V, ?> attribute; // Attribute to compare
+        final QueryOperator operator;           // Comparison operator
+        final QueryToken name;                  // Attribute token
+        final QueryToken symbol;                // Operator token
+        final QueryToken value;                 // Value token
+        final QueryNode<V> result;
+
+        name = expect(tokenizer, QueryToken.Type.IDENTIFIER);
+        attribute = attributes.get(name.getText());
+        if (attribute == null) {
+            throw new IllegalArgumentException(
+                    String.format("Unknown attribute %s at position %d",
+                            name.getText(), name.getPosition()));
+        }
+
+        symbol = expect(tokenizer, QueryToken.Type.OPERATOR);
+        operator = QueryOperator.fromSymbol(symbol.getText());
+        if (operator == null) {
+            throw unexpected(symbol);
+        }
+
+        value = tokenizer.next();
+        if (value.getType() == QueryToken.Type.PARAMETER) {
+            parameters.add(value.getText());
+            result = new ComparisonNode<V>(attribute, operator,
+                    value.getText(), null);
+        } else {
+            result = new ComparisonNode<V>(attribute, operator, null,
+                    parseLiteral(value));
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a sequence of conditions joined by {@code AND}.
+     * 
+     * @param tokenizer
+     *            tokens in the query
+     * @param parameters
+     *            parameters found in the query
+     * @return the compiled conditions
+     */
+    private final QueryNode<V> parseConjunction(
+            final QueryTokenizer tokenizer,
+            final Collection<String> parameters) {
+        final Collection<QueryNode<V>> nodes; // Joined conditions
+        final QueryNode<V> result;
+
+        nodes = new LinkedList<QueryNode<V>>();
+        nodes.add(parseNegation(tokenizer, parameters));
+        while (tokenizer.peek().isKeyword("AND")) {
+            tokenizer.next();
+            nodes.add(parseNegation(tokenizer, parameters));
+        }
+
+        if (nodes.size() == 1) {
+            result = nodes.iterator().next();
+        } else {
+            result = new JunctionNode<V>(true, nodes);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a sequence of conditions joined by {@code OR}.
+     * 
+     * @param tokenizer
+     *            tokens in the query
+     * @param parameters
+     *            parameters found in the query
+     * @return the compiled conditions
+     */
+    private final QueryNode<V> parseDisjunction(
+            final QueryTokenizer tokenizer,
+            final Collection<String> parameters) {
+        final Collection<QueryNode<V>> nodes; // Joined conditions
+        final QueryNode<V> result;
+
+        nodes = new LinkedList<QueryNode<V>>();
+        nodes.add(parseConjunction(tokenizer, parameters));
+        while (tokenizer.peek().isKeyword("OR")) {
+            tokenizer.next();
+            nodes.add(parseConjunction(tokenizer, parameters));
+        }
+
+        if (nodes.size() == 1) {
+            result = nodes.iterator().next();
+        } else {
+            result = new JunctionNode<V>(false, nodes);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a literal value.
+     * 
+     * @param token
+     *            token for the literal
+     * @return the value of the literal
+     */
+    private final Object parseLiteral(final QueryToken token) {
+        final Object result;
+
+        if (token.getType() == QueryToken.Type.STRING) {
+            result = token.getText();
+        } else if (token.getType() == QueryToken.Type.NUMBER) {
+            if (token.getText().contains(".")) {
+                result = parseNumber(token, true);
+            } else {
+                result = parseNumber(token, false);
+            }
+        } else if (token.isKeyword("TRUE")) {
+            result = true;
+        } else if (token.isKeyword("FALSE")) {
+            result = false;
+        } else if (token.isKeyword("NULL")) {
+            result = null;
+        } else {
+            throw unexpected(token);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a condition, which may be negated by {@code NOT}.
+     * 
+     * @param tokenizer
+     *            tokens in the query
+     * @param parameters
+     *            parameters found in the query
+     * @return the compiled condition
+     */
+    private final QueryNode<V> parseNegation(final QueryTokenizer tokenizer,
+            final Collection<String> parameters) {
+        final QueryNode<V> result;
+
+        if (tokenizer.peek().isKeyword("NOT")) {
+            tokenizer.next();
+            result = new NegationNode<V>(parseNegation(tokenizer, parameters));
+        } else if (tokenizer.peek().getType() == QueryToken.Type.OPEN) {
+            tokenizer.next();
+            result = parseDisjunction(tokenizer, parameters);
+            expect(tokenizer, QueryToken.Type.CLOSE);
+        } else {
+            result = parseComparison(tokenizer, parameters);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a numeric literal.
+     * 
+     * @param token
+     *            token for the number
+     * @param decimal
+     *            flag indicating if the number has decimals
+     * @return the number
+     */
+    private final Number parseNumber(final QueryToken token,
+            final boolean decimal) {
+        final Number result;
+
+        try {
+            if (decimal) {
+                result = Double.valueOf(token.getText());
+            } else {
+                result = Long.valueOf(token.getText());
+            }
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid number %s at position %d",
+                            token.getText(), token.getPosition()),
+                    e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the exception for an unexpected token.
+     * 
+     * @param token
+     *            the unexpected token
+     * @return the exception for the token
+     */
+    private final IllegalArgumentException unexpected(
+            final QueryToken token) {
+        final IllegalArgumentException result;
+
+        if (token.getType() == QueryToken.Type.END) {
+            result = new IllegalArgumentException(
+                    "Unexpected end of the query");
+        } else {
+            result = new IllegalArgumentException(
+                    String.format("Unexpected token %s at position %d",
+                            token.getText(), token.getPosition()));
+        }
+
+        return result;
+    }
+
+}
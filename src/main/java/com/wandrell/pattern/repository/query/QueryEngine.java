@@ -0,0 +1,184 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.QueryData;
+
+/**
+ * Executes {@link QueryData} against repositories filtered by predicates, such
+ * as the {@link com.wandrell.pattern.repository.CollectionRepository
+ * CollectionRepository}.
+ * <p>
+ * The query string is compiled into a {@link QueryPlan}, to which the
+ * parameters are then bound, creating a predicate for the entities. This
+ * predicate is used to query the repository.
+ * <p>
+ * Compiled plans are kept in a cache, bounded by size, so repeating a query,
+ * even with different parameters, won't parse it again. If several threads
+ * ask for the same query at once, it is compiled only by one of them while
+ * the rest wait for its plan.
+ * <p>
+ * The engine is thread safe, as long as the compiler is.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+public final class QueryEngine<V> {
+
+    /**
+     * Compiler for the queries.
+     */
+    private final Parser<String, QueryPlan<V>> compiler;
+    /**
+     * Compiled plans, mapped to their queries.
+     */
+    private final Cache<String, QueryPlan<V>>  plans;
+
+    /**
+     * Constructs a {@code QueryEngine} with the specified compiler.
+     * 
+     * @param queryCompiler
+     *            compiler for the queries
+     * @param maximumPlans
+     *            maximum number of plans to cache
+     */
+    public QueryEngine(final Parser<String, QueryPlan<V>> queryCompiler,
+            final long maximumPlans) {
+        super();
+
+        checkNotNull(queryCompiler, "Received a null pointer as compiler");
+        checkArgument(maximumPlans >= 0,
+                "The maximum number of plans can't be a negative value");
+
+        compiler = queryCompiler;
+        plans = CacheBuilder.newBuilder().maximumSize(maximumPlans)
+                .recordStats().build();
+    }
+
+    /**
+     * Executes the query against the specified repository.
+     * 
+     * @param repository
+     *            repository to query
+     * @param query
+     *            query to execute
+     * @return the entities matching the query
+     */
+    public final Collection<V> execute(
+            final FilteredRepository<V, Predicate<V>> repository,
+            final QueryData query) {
+        checkNotNull(repository, "Received a null pointer as repository");
+
+        return repository.getCollection(getPredicate(query));
+    }
+
+    /**
+     * Returns the plan for the specified query string.
+     * <p>
+     * If the query was compiled before the cached plan is returned, otherwise
+     * it is compiled and stored in the cache.
+     * <p>
+     * Exceptions thrown by the compiler are rethrown.
+     * 
+     * @param query
+     *            the query string
+     * @return the plan for the query
+     */
+    public final QueryPlan<V> getPlan(final String query) {
+        checkNotNull(query, "Received a null pointer as query");
+
+        try {
+            return getPlans().get(query, new Callable<QueryPlan<V>>() {
+
+                @Override
+                public final QueryPlan<V> call() {
+                    return getCompiler().parse(query);
+                }
+
+            });
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the predicate for the entities matching the query.
+     * 
+     * @param query
+     *            the query data
+     * @return a predicate for the query
+     */
+    public final Predicate<V> getPredicate(final QueryData query) {
+        checkNotNull(query, "Received a null pointer as query");
+
+        return getPlan(query.getQuery()).bind(query.getParameters());
+    }
+
+    /**
+     * Returns the statistics for the plans cache.
+     * 
+     * @return the statistics for the plans cache
+     */
+    public final CacheStats getStats() {
+        return getPlans().stats();
+    }
+
+    /**
+     * Returns the compiler for the queries.
+     * 
+     * @return the compiler for the queries
+     */
+    private final Parser<String, QueryPlan<V>> getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Returns the cached plans.
+     * 
+     * @return the cached plans
+     */
+    private final Cache<String, QueryPlan<V>> getPlans() {
+        return plans;
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+/**
+ * Comparison operators supported by the queries.
+ * <p>
+ * Numbers are compared by their value, no matter their class, so an
+ * {@code Integer} attribute can be compared with a {@code Long} literal.
+ * Other values are compared through {@code equals} for equality, and through
+ * {@code Comparable} for ordering.
+ * <p>
+ * A {@code null} value is only equal to another {@code null}, and can't be
+ * ordered, so ordering comparisons with it are always false.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+enum QueryOperator {
+
+    /**
+     * Equality, {@code =}.
+     */
+    EQUAL("=") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison == 0;
+        }
+    },
+    /**
+     * Greater than, {@code >}.
+     */
+    GREATER(">") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison > 0;
+        }
+    },
+    /**
+     * Greater than or equal, {@code >=}.
+     */
+    GREATER_OR_EQUAL(">=") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison >= 0;
+        }
+    },
+    /**
+     * Less than, {@code <}.
+     */
+    LESS("<") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison < 0;
+        }
+    },
+    /**
+     * Less than or equal, {@code <=}.
+     */
+    LESS_OR_EQUAL("<=") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison <= 0;
+        }
+    },
+    /**
+     * Inequality, {@code !=}.
+     */
+    NOT_EQUAL("!=") {
+        @Override
+        protected final boolean matches(final int comparison) {
+            return comparison != 0;
+        }
+    };
+
+    /**
+     * Returns the operator for the specified symbol.
+     * 
+     * @param symbol
+     *            the symbol for the operator
+     * @return the operator for the symbol, or {@code null} if there is none
+     */
+    public static final QueryOperator fromSymbol(final String symbol) {
+        QueryOperator result;
+
+        result = null;
+        for (final QueryOperator operator : values()) {
+            if (operator.getSymbol().equals(symbol)) {
+                result = operator;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if a number is of an integral type.
+     * 
+     * @param value
+     *            the number to check
+     * @return {@code true} if the number is integral, {@code false} otherwise
+     */
+    private static final boolean isIntegral(final Number value) {
+        return (value instanceof Long) || (value instanceof Integer)
+                || (value instanceof Short) || (value instanceof Byte);
+    }
+
+    /**
+     * Symbol for the operator.
+     */
+    private final String symbol;
+
+    /**
+     * Constructs an operator.
+     * 
+     * @param text
+     *            symbol for the operator
+     */
+    private QueryOperator(final String text) {
+        symbol = text;
+    }
+
+    /**
+     * Applies the operator to the received values.
+     * 
+     * @param left
+     *            value on the left side of the operator
+     * @param right
+     *            value on the right side of the operator
+     * @return {@code true} if the comparison holds, {@code false} otherwise
+     * @throws IllegalArgumentException
+     *             if the values should be ordered but are not comparable
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public final boolean apply(final Object left, final Object right) {
+        final boolean result;
+
+        if ((left == null) || (right == null)) {
+            if (this == EQUAL) {
+                result = (left == right);
+            } else if (this == NOT_EQUAL) {
+                result = (left != right);
+            } else {
+                result = false;
+            }
+        } else if ((left instanceof Number) && (right instanceof Number)) {
+            result = matches(compare((Number) left, (Number) right));
+        } else if ((this == EQUAL) || (this == NOT_EQUAL)) {
+            result = (left.equals(right) == (this == EQUAL));
+        } else if (left instanceof Comparable) {
+            result = matches(((Comparable) left).compareTo(right));
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Values of type %s can't be ordered",
+                    left.getClass().getName()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the symbol for the operator.
+     * 
+     * @return the symbol for the operator
+     */
+    public final String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Compares two numbers by their value.
+     * 
+     * @param left
+     *            first number to compare
+     * @param right
+     *            second number to compare
+     * @return the result of comparing both numbers
+     */
+    private final int compare(final Number left, final Number right) {
+        final int result;
+
+        if (isIntegral(left) && isIntegral(right)) {
+            result = Long.compare(left.longValue(), right.longValue());
+        } else {
+            result = Double.compare(left.doubleValue(), right.doubleValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if the result of comparing two values satisfies the operator.
+     * 
+     * @param comparison
+     *            result of comparing the values
+     * @return {@code true} if the operator is satisfied, {@code false}
+     *         otherwise
+     */
+    protected abstract boolean matches(final int comparison);
+
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Compiled query, ready to be executed.
+ * <p>
+ * Plans are created by the {@link QueryCompiler}, and don't depend on the
+ * values of the query parameters. So a single plan can be reused for any
+ * number of executions, binding the parameters each time into a
+ * {@code Predicate}.
+ * <p>
+ * Plans are immutable, and so can be shared between threads.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type of the entities being queried
+ */
+public final class QueryPlan<V> {
+
+    /**
+     * Names of the parameters used in the query.
+     */
+    private final Set<String>  parameters;
+    /**
+     * The query which was compiled.
+     */
+    private final String       query;
+    /**
+     * Root of the compiled query.
+     */
+    private final QueryNode<V> root;
+
+    /**
+     * Constructs a plan.
+     * 
+     * @param text
+     *            the query which was compiled
+     * @param node
+     *            root of the compiled query
+     * @param params
+     *            names of the parameters used in the query
+     */
+    QueryPlan(final String text, final QueryNode<V> node,
+            final Collection<String> params) {
+        super();
+
+        query = text;
+        root = node;
+        parameters = ImmutableSet.copyOf(params);
+    }
+
+    /**
+     * Binds the parameters to the plan, returning a predicate for the
+     * entities matching the query.
+     * <p>
+     * The map should contain a value for each of the query parameters. Any
+     * additional value is ignored.
+     * 
+     * @param values
+     *            values for the query parameters
+     * @return a predicate for the entities matching the query
+     * @throws IllegalArgumentException
+     *             if a parameter is missing
+     */
+    public final Predicate<V> bind(final Map<String, ?> values) {
+        checkNotNull(values, "Received a null pointer as values");
+
+        return root.bind(values);
+    }
+
+    /**
+     * Returns the names of the parameters used in the query.
+     * 
+     * @return the names of the query parameters
+     */
+    public final Set<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the query which was compiled.
+     * 
+     * @return the query which was compiled
+     */
+    public final String getQuery() {
+        return query;
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("query", query)
+                .add("parameters", parameters).toString();
+    }
+
+}
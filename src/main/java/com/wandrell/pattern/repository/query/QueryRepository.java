@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.Aggregate;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.QueryData;
+
+/**
+ * Adapter allowing a repository filtered by predicates to be filtered through
+ * {@link QueryData}.
+ * <p>
+ * Each query is turned into a predicate by a {@link QueryEngine}, and then
+ * sent to the wrapped repository.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @param <V>
+ *            the type stored on the repository
+ */
+public final class QueryRepository<V>
+        implements FilteredRepository<V, QueryData> {
+
+    /**
+     * Engine for turning queries into predicates.
+     */
+    private final QueryEngine<V>                      engine;
+    /**
+     * The wrapped repository.
+     */
+    private final FilteredRepository<V, Predicate<V>> repository;
+
+    /**
+     * Constructs a {@code QueryRepository} wrapping the specified repository.
+     * 
+     * @param wrapped
+     *            the repository to query
+     * @param queryEngine
+     *            engine for turning queries into predicates
+     */
+    public QueryRepository(final FilteredRepository<V, Predicate<V>> wrapped,
+            final QueryEngine<V> queryEngine) {
+        super();
+
+        checkNotNull(wrapped, "Received a null pointer as repository");
+        checkNotNull(queryEngine, "Received a null pointer as engine");
+
+        repository = wrapped;
+        engine = queryEngine;
+    }
+
+    @Override
+    public final void add(final V entity) {
+        getRepository().add(entity);
+    }
+
+    @Override
+    public final void addAll(final Collection<? extends V> entities) {
+        getRepository().addAll(entities);
+    }
+
+    @Override
+    public final Aggregate aggregate(final QueryData filter,
+            final Function<? super V, ? extends Number> attribute) {
+        return getRepository().aggregate(getPredicate(filter), attribute);
+    }
+
+    @Override
+    public final long count(final QueryData filter) {
+        return getRepository().count(getPredicate(filter));
+    }
+
+    @Override
+    public final boolean exists(final QueryData filter) {
+        return getRepository().exists(getPredicate(filter));
+    }
+
+    @Override
+    public final Collection<V> getAll() {
+        return getRepository().getAll();
+    }
+
+    @Override
+    public final Collection<V> getCollection(final QueryData filter) {
+        return getRepository().getCollection(getPredicate(filter));
+    }
+
+    @Override
+    public final Collection<V> getCollection(final QueryData filter,
+            final int limit) {
+        return getRepository().getCollection(getPredicate(filter), limit);
+    }
+
+    @Override
+    public final V getEntity(final QueryData filter) {
+        return getRepository().getEntity(getPredicate(filter));
+    }
+
+    @Override
+    public final Iterator<V> getIterator(final QueryData filter) {
+        return getRepository().getIterator(getPredicate(filter));
+    }
+
+    @Override
+    public final Collection<V> getPage(final QueryData filter,
+            final int offset, final int limit) {
+        return getRepository().getPage(getPredicate(filter), offset, limit);
+    }
+
+    @Override
+    public final void remove(final V entity) {
+        getRepository().remove(entity);
+    }
+
+    @Override
+    public final void removeAll(final Collection<? extends V> entities) {
+        getRepository().removeAll(entities);
+    }
+
+    @Override
+    public final void update(final V entity) {
+        getRepository().update(entity);
+    }
+
+    @Override
+    public final void updateAll(final Collection<? extends V> entities) {
+        getRepository().updateAll(entities);
+    }
+
+    /**
+     * Returns the predicate for the query.
+     * 
+     * @param filter
+     *            the query
+     * @return the predicate for the query
+     */
+    private final Predicate<V> getPredicate(final QueryData filter) {
+        return engine.getPredicate(filter);
+    }
+
+    /**
+     * Returns the wrapped repository.
+     * 
+     * @return the wrapped repository
+     */
+    private final FilteredRepository<V, Predicate<V>> getRepository() {
+        return repository;
+    }
+
+}
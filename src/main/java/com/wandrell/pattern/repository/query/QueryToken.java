@@ -0,0 +1,160 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Token read from a query string.
+ * <p>
+ * It contains the type of the token, the text it represents, already
+ * unquoted if needed, and its position in the query string.
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+final class QueryToken {
+
+    /**
+     * Types of token.
+     * 
+     * @author Bernardo Martínez Garrido
+     */
+    enum Type {
+
+        /**
+         * Closing parenthesis.
+         */
+        CLOSE,
+        /**
+         * End of the query.
+         */
+        END,
+        /**
+         * Name, either of an attribute or a keyword.
+         */
+        IDENTIFIER,
+        /**
+         * Numeric literal.
+         */
+        NUMBER,
+        /**
+         * Opening parenthesis.
+         */
+        OPEN,
+        /**
+         * Comparison operator.
+         */
+        OPERATOR,
+        /**
+         * Named parameter, its text is the name without the colon.
+         */
+        PARAMETER,
+        /**
+         * String literal, its text is the string without quotes.
+         */
+        STRING
+
+    }
+
+    /**
+     * Position of the token in the query.
+     */
+    private final int    position;
+    /**
+     * Text of the token.
+     */
+    private final String text;
+    /**
+     * Type of the token.
+     */
+    private final Type   type;
+
+    /**
+     * Constructs a token.
+     * 
+     * @param tokenType
+     *            type of the token
+     * @param value
+     *            text of the token
+     * @param index
+     *            position of the token in the query
+     */
+    public QueryToken(final Type tokenType, final String value,
+            final int index) {
+        super();
+
+        type = tokenType;
+        text = value;
+        position = index;
+    }
+
+    /**
+     * Returns the position of the token in the query.
+     * 
+     * @return the position of the token
+     */
+    public final int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the text of the token.
+     * 
+     * @return the text of the token
+     */
+    public final String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the type of the token.
+     * 
+     * @return the type of the token
+     */
+    public final Type getType() {
+        return type;
+    }
+
+    /**
+     * Indicates if this token is the specified keyword.
+     * <p>
+     * Keywords are identifiers, and are compared ignoring case.
+     * 
+     * @param keyword
+     *            the keyword to check
+     * @return {@code true} if the token is the keyword, {@code false}
+     *         otherwise
+     */
+    public final boolean isKeyword(final String keyword) {
+        return (type == Type.IDENTIFIER) && text.equalsIgnoreCase(keyword);
+    }
+
+    @Override
+    public final String toString() {
+        return MoreObjects.toStringHelper(this).add("type", type)
+                .add("text", text).add("position", position).toString();
+    }
+
+}
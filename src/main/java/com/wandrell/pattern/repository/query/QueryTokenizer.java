@@ -0,0 +1,250 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.repository.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a query string into {@link QueryToken} instances.
+ * <p>
+ * The whole query is read when the tokenizer is created, and then the tokens
+ * are consumed in order. After the last token an {@code END} one is always
+ * returned.
+ * <p>
+ * The tokens recognized are:
+ * <ul>
+ * <li>Identifiers, made of letters, digits, underscores and dots, and starting
+ * with a letter or underscore</li>
+ * <li>Parameters, which are identifiers prefixed by a colon</li>
+ * <li>Numbers, optionally negative and with decimals</li>
+ * <li>Strings, between single quotes, where two consecutive quotes stand for a
+ * single one</li>
+ * <li>The operators {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >}
+ * and {@code >=}</li>
+ * <li>Parenthesis</li>
+ * </ul>
+ * 
+ * @author Bernardo Martínez Garrido
+ */
+final class QueryTokenizer {
+
+    /**
+     * Index of the next token to return.
+     */
+    private int                    next = 0;
+    /**
+     * The query being read.
+     */
+    private final String           query;
+    /**
+     * Tokens read from the query.
+     */
+    private final List<QueryToken> tokens;
+
+    /**
+     * Constructs a tokenizer for the specified query.
+     * 
+     * @param text
+     *            the query to read
+     * @throws IllegalArgumentException
+     *             if the query contains an invalid token
+     */
+    public QueryTokenizer(final String text) {
+        super();
+
+        query = text;
+        tokens = new ArrayList<QueryToken>();
+
+        tokenize();
+    }
+
+    /**
+     * Returns the next token, and consumes it.
+     * 
+     * @return the next token
+     */
+    public final QueryToken next() {
+        final QueryToken token;
+
+        token = peek();
+        if (next < tokens.size() - 1) {
+            next++;
+        }
+
+        return token;
+    }
+
+    /**
+     * Returns the next token, without consuming it.
+     * 
+     * @return the next token
+     */
+    public final QueryToken peek() {
+        return tokens.get(next);
+    }
+
+    /**
+     * Reads the characters starting at the specified position while they can
+     * be part of an identifier.
+     * 
+     * @param start
+     *            position to start reading
+     * @return position after the last character read
+     */
+    private final int readIdentifier(final int start) {
+        int pos;
+
+        pos = start;
+        while ((pos < query.length())
+                && (Character.isLetterOrDigit(query.charAt(pos))
+                        || (query.charAt(pos) == '_')
+                        || (query.charAt(pos) == '.'))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Reads the characters starting at the specified position while they can
+     * be part of a number.
+     * 
+     * @param start
+     *            position to start reading
+     * @return position after the last character read
+     */
+    private final int readNumber(final int start) {
+        int pos;
+
+        pos = start + 1;
+        while ((pos < query.length()) && (Character.isDigit(query.charAt(pos))
+                || (query.charAt(pos) == '.'))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Reads a string literal starting at the specified position, which should
+     * be the opening quote, and stores its token.
+     * 
+     * @param start
+     *            position of the opening quote
+     * @return position after the closing quote
+     */
+    private final int readString(final int start) {
+        final StringBuilder value; // Unquoted string
+        boolean closed;            // Flag marking the string was closed
+        int pos;
+
+        value = new StringBuilder();
+        closed = false;
+        pos = start + 1;
+        while ((!closed) && (pos < query.length())) {
+            if (query.charAt(pos) != '\'') {
+                value.append(query.charAt(pos));
+                pos++;
+            } else if ((pos + 1 < query.length())
+                    && (query.charAt(pos + 1) == '\'')) {
+                // Escaped quote
+                value.append('\'');
+                pos += 2;
+            } else {
+                closed = true;
+                pos++;
+            }
+        }
+
+        if (!closed) {
+            throw new IllegalArgumentException(String.format(
+                    "Unterminated string at position %d", start));
+        }
+
+        tokens.add(new QueryToken(QueryToken.Type.STRING, value.toString(),
+                start));
+
+        return pos;
+    }
+
+    /**
+     * Reads all the tokens in the query.
+     */
+    private final void tokenize() {
+        char current; // Current character
+        int end;      // Position after the current token
+        int pos;      // Current position
+
+        pos = 0;
+        while (pos < query.length()) {
+            current = query.charAt(pos);
+            end = pos + 1;
+            if (Character.isWhitespace(current)) {
+                // Ignored
+            } else if (current == '(') {
+                tokens.add(new QueryToken(QueryToken.Type.OPEN, "(", pos));
+            } else if (current == ')') {
+                tokens.add(new QueryToken(QueryToken.Type.CLOSE, ")", pos));
+            } else if (current == '\'') {
+                end = readString(pos);
+            } else if (current == ':') {
+                end = readIdentifier(pos + 1);
+                if (end == pos + 1) {
+                    throw new IllegalArgumentException(String.format(
+                            "Missing parameter name at position %d", pos));
+                }
+                tokens.add(new QueryToken(QueryToken.Type.PARAMETER,
+                        query.substring(pos + 1, end), pos));
+            } else if (Character.isDigit(current) || ((current == '-')
+                    && (pos + 1 < query.length())
+                    && Character.isDigit(query.charAt(pos + 1)))) {
+                end = readNumber(pos);
+                tokens.add(new QueryToken(QueryToken.Type.NUMBER,
+                        query.substring(pos, end), pos));
+            } else if (Character.isLetter(current) || (current == '_')) {
+                end = readIdentifier(pos);
+                tokens.add(new QueryToken(QueryToken.Type.IDENTIFIER,
+                        query.substring(pos, end), pos));
+            } else if ((current == '=') || (current == '<')
+                    || (current == '>') || (current == '!')) {
+                if ((end < query.length()) && (query.charAt(end) == '=')
+                        && (current != '=')) {
+                    end++;
+                }
+                tokens.add(new QueryToken(QueryToken.Type.OPERATOR,
+                        query.substring(pos, end), pos));
+            } else {
+                throw new IllegalArgumentException(String.format(
+                        "Unexpected character '%s' at position %d", current,
+                        pos));
+            }
+            pos = end;
+        }
+
+        tokens.add(new QueryToken(QueryToken.Type.END, "", pos));
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+/**
+ * Provides a query engine for in-memory repositories.
+ * <p>
+ * The {@link com.wandrell.pattern.repository.query.QueryCompiler
+ * QueryCompiler} turns query strings, such as those in a
+ * {@link com.wandrell.pattern.repository.QueryData QueryData}, into reusable
+ * {@link com.wandrell.pattern.repository.query.QueryPlan QueryPlan} instances.
+ * Binding the parameters to a plan creates a predicate, which can filter any
+ * repository working with predicates.
+ * <p>
+ * The {@link com.wandrell.pattern.repository.query.QueryEngine QueryEngine}
+ * handles all this, keeping the compiled plans in a cache, while the
+ * {@link com.wandrell.pattern.repository.query.QueryRepository
+ * QueryRepository} adapts a repository filtered by predicates into one
+ * filtered by {@code QueryData}.
+ */
+package com.wandrell.pattern.repository.query;
@@ -0,0 +1,274 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.outputter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.wandrell.pattern.outputter.Outputter;
+import com.wandrell.pattern.outputter.StreamingOutputter;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link StreamingOutputter}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>All the values are written in order to a writer, which is closed
+ * once</li>
+ * <li>All the values are written in order to a stream</li>
+ * <li>An empty iterator writes nothing and closes the output</li>
+ * <li>The output is closed when sending a value fails</li>
+ * <li>The output is written while the values are iterated</li>
+ * <li>The entities of a repository query can be written</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see StreamingOutputter
+ */
+public final class TestStreamingOutputter {
+
+    /**
+     * Writer which counts the times it is closed.
+     */
+    private final class CountingWriter extends FilterWriter {
+
+        /**
+         * Times the writer was closed.
+         */
+        private Integer closed = 0;
+
+        /**
+         * Constructs a writer wrapping the specified one.
+         * 
+         * @param writer
+         *            the writer to wrap
+         */
+        public CountingWriter(final Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public final void close() throws IOException {
+            closed++;
+            super.close();
+        }
+
+        /**
+         * Returns the times the writer was closed.
+         * 
+         * @return the times the writer was closed
+         */
+        public final Integer getClosed() {
+            return closed;
+        }
+
+    }
+
+    /**
+     * The outputter being tested.
+     */
+    private StreamingOutputter<String> outputter;
+    /**
+     * Target of the output.
+     */
+    private StringWriter               target;
+    /**
+     * Writer wrapping the target.
+     */
+    private CountingWriter             writer;
+
+    /**
+     * Default constructor.
+     */
+    public TestStreamingOutputter() {
+        super();
+    }
+
+    /**
+     * Creates the outputter being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        outputter = new StreamingOutputter<String>(new Outputter<String>() {
+
+            @Override
+            public final void output(final String value,
+                    final OutputStream stream) throws Exception {
+                stream.write((value + "\n").getBytes(StandardCharsets.UTF_8));
+                stream.close();
+            }
+
+            @Override
+            public final void output(final String value, final Writer output)
+                    throws Exception {
+                if ("fail".equals(value)) {
+                    throw new IllegalStateException("Failed value");
+                }
+
+                output.write(value + "\n");
+                output.close();
+            }
+
+        }, 4);
+
+        target = new StringWriter();
+        writer = new CountingWriter(target);
+    }
+
+    /**
+     * Tests that an empty iterator writes nothing and closes the output.
+     */
+    @Test
+    public final void testOutput_Empty() throws Exception {
+        outputter.output(Collections.<String> emptyIterator(), writer);
+
+        Assert.assertEquals(target.toString(), "");
+        Assert.assertEquals(writer.getClosed(), (Integer) 1);
+    }
+
+    /**
+     * Tests that the output is closed when sending a value fails.
+     */
+    @Test
+    public final void testOutput_Failure_Closed() throws Exception {
+        try {
+            outputter.output(Arrays.asList("a", "fail", "b").iterator(),
+                    writer);
+            Assert.fail("Expected an exception");
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(target.toString(), "a\n");
+        Assert.assertEquals(writer.getClosed(), (Integer) 1);
+    }
+
+    /**
+     * Tests that the entities of a repository query can be written.
+     */
+    @Test
+    public final void testOutput_Repository() throws Exception {
+        final CollectionRepository<String> repository; // Exported repository
+
+        repository = new CollectionRepository<String>();
+        repository.addAll(Arrays.asList("a", "bb", "c", "dd"));
+
+        outputter.output(repository.getIterator(new Predicate<String>() {
+
+            @Override
+            public final boolean apply(final String input) {
+                return input.length() == 1;
+            }
+
+        }), writer);
+
+        Assert.assertEquals(target.toString(), "a\nc\n");
+    }
+
+    /**
+     * Tests that all the values are written in order to a stream.
+     */
+    @Test
+    public final void testOutput_Stream() throws Exception {
+        final ByteArrayOutputStream stream; // Target stream
+
+        stream = new ByteArrayOutputStream();
+
+        outputter.output(Arrays.asList("a", "b", "c").iterator(), stream);
+
+        Assert.assertEquals(new String(stream.toByteArray(),
+                StandardCharsets.UTF_8), "a\nb\nc\n");
+    }
+
+    /**
+     * Tests that the output is written while the values are iterated.
+     */
+    @Test
+    public final void testOutput_Streamed() throws Exception {
+        final List<Integer> written;   // Output size before each value
+        final Iterator<String> values; // Values to send
+
+        written = new ArrayList<Integer>();
+        values = new AbstractIterator<String>() {
+
+            /**
+             * Number of values returned.
+             */
+            private Integer count = 0;
+
+            @Override
+            protected final String computeNext() {
+                final String value;
+
+                written.add(target.getBuffer().length());
+                if (count < 100) {
+                    value = "value";
+                } else {
+                    value = endOfData();
+                }
+                count++;
+
+                return value;
+            }
+
+        };
+
+        outputter.output(values, writer);
+
+        // The buffer holds at most four characters
+        Assert.assertTrue(written.get(50) >= (50 * 6) - 4);
+        Assert.assertEquals(target.getBuffer().length(), 100 * 6);
+    }
+
+    /**
+     * Tests that all the values are written in order to a writer, and the
+     * output is closed once.
+     */
+    @Test
+    public final void testOutput_Writer() throws Exception {
+        outputter.output(Arrays.asList("a", "b", "c").iterator(), writer);
+
+        Assert.assertEquals(target.toString(), "a\nb\nc\n");
+        Assert.assertEquals(writer.getClosed(), (Integer) 1);
+    }
+
+}
@@ -0,0 +1,365 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Ticker;
+import com.wandrell.pattern.repository.AdaptivePredicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link AdaptivePredicate}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Conjunctions return the same entities as the Guava ones</li>
+ * <li>Disjunctions return the same entities as the Guava ones</li>
+ * <li>Conjunctions evaluate first the component rejecting most entities</li>
+ * <li>Disjunctions evaluate first the component accepting most entities</li>
+ * <li>Cheap components are evaluated before expensive ones</li>
+ * <li>Reordering reduces the evaluations of the other components</li>
+ * <li>Empty conjunctions accept all entities</li>
+ * <li>Empty disjunctions reject all entities</li>
+ * <li>Sampled evaluations stop at the first deciding component</li>
+ * </ol>
+ * <p>
+ * The ordering tests sample all the evaluations, and take the cost from a
+ * ticker advanced by the components, so they do not depend on randomness or
+ * on timing.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see AdaptivePredicate
+ */
+public final class TestAdaptivePredicate {
+
+    /**
+     * Ticker advanced manually by the components.
+     */
+    private static final class ManualTicker extends Ticker {
+
+        /**
+         * Current time.
+         */
+        private long time = 0;
+
+        /**
+         * Default constructor.
+         */
+        public ManualTicker() {
+            super();
+        }
+
+        /**
+         * Advances the time.
+         * 
+         * @param nanos
+         *            time to advance
+         */
+        public final void advance(final long nanos) {
+            time += nanos;
+        }
+
+        @Override
+        public final long read() {
+            return time;
+        }
+
+    }
+
+    /**
+     * Number of entities in the repository.
+     */
+    private static final Integer ENTITIES = 20000;
+
+    /**
+     * Number of sampled evaluations between reorderings.
+     */
+    private static final Integer INTERVAL = 64;
+
+    /**
+     * Predicate accepting almost all the entities.
+     */
+    private Predicate<Integer>            broad;
+    /**
+     * Counts the times the broad predicate is applied.
+     */
+    private Integer                       broadCalls;
+    /**
+     * The repository being queried.
+     */
+    private CollectionRepository<Integer> repository;
+    /**
+     * Predicate accepting few entities.
+     */
+    private Predicate<Integer>            selective;
+    /**
+     * Ticker used as cost source.
+     */
+    private ManualTicker                  ticker;
+
+    /**
+     * Default constructor.
+     */
+    public TestAdaptivePredicate() {
+        super();
+    }
+
+    /**
+     * Creates the repository and predicates before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        broadCalls = 0;
+        ticker = new ManualTicker();
+
+        repository = new CollectionRepository<Integer>();
+        for (Integer i = 0; i < ENTITIES; i++) {
+            repository.add(i);
+        }
+
+        broad = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                broadCalls++;
+                ticker.advance(1);
+                return (input % 100) != 1;
+            }
+
+            @Override
+            public final String toString() {
+                return "broad";
+            }
+
+        };
+        selective = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                ticker.advance(1);
+                return (input % 100) == 0;
+            }
+
+            @Override
+            public final String toString() {
+                return "selective";
+            }
+
+        };
+    }
+
+    /**
+     * Tests that conjunctions return the same entities as the Guava ones.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testAnd_SameResult() {
+        final Collection<Integer> expected; // Guava result
+
+        expected = repository.getCollection(Predicates.and(broad, selective));
+
+        Assert.assertEquals(repository
+                .getCollection(AdaptivePredicate.and(broad, selective)),
+                expected);
+    }
+
+    /**
+     * Tests that conjunctions evaluate first the component rejecting most
+     * entities.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testAnd_SelectiveFirst() {
+        final AdaptivePredicate<Integer> filter; // Tested predicate
+
+        filter = sampled(true, Arrays.asList(broad, selective));
+
+        repository.getCollection(filter);
+
+        Assert.assertEquals(filter.getComponents().get(0), selective);
+    }
+
+    /**
+     * Tests that reordering reduces the evaluations of the other components.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testAnd_Reordered_FewerEvaluations() {
+        final AdaptivePredicate<Integer> filter; // Tested predicate
+
+        filter = sampled(true, Arrays.asList(broad, selective));
+
+        repository.getCollection(filter);
+        broadCalls = 0;
+        repository.getCollection(filter);
+
+        // Only entities accepted by the selective predicate
+        Assert.assertEquals(broadCalls, (Integer) (ENTITIES / 100));
+    }
+
+    /**
+     * Tests that cheap components are evaluated before expensive ones.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testAnd_CheapFirst() {
+        final Predicate<Integer> cheap;          // Cheap predicate
+        final Predicate<Integer> expensive;      // Expensive predicate
+        final AdaptivePredicate<Integer> filter; // Tested predicate
+
+        cheap = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                ticker.advance(1);
+                return (input % 2) == 0;
+            }
+
+        };
+        expensive = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                ticker.advance(1000);
+                return (input % 3) == 0;
+            }
+
+        };
+
+        filter = sampled(true, Arrays.asList(expensive, cheap));
+
+        repository.getCollection(filter);
+
+        Assert.assertEquals(filter.getComponents().get(0), cheap);
+    }
+
+    /**
+     * Tests that empty conjunctions accept all entities.
+     */
+    @Test
+    public final void testAnd_Empty_AcceptsAll() {
+        final Collection<Predicate<Integer>> none; // No components
+
+        none = Collections.emptyList();
+
+        Assert.assertTrue(AdaptivePredicate.and(none).apply(1));
+    }
+
+    /**
+     * Tests that disjunctions evaluate first the component accepting most
+     * entities.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testOr_BroadFirst() {
+        final AdaptivePredicate<Integer> filter; // Tested predicate
+
+        filter = sampled(false, Arrays.asList(selective, broad));
+
+        repository.getCollection(filter);
+
+        Assert.assertEquals(filter.getComponents().get(0), broad);
+    }
+
+    /**
+     * Tests that empty disjunctions reject all entities.
+     */
+    @Test
+    public final void testOr_Empty_RejectsAll() {
+        final Collection<Predicate<Integer>> none; // No components
+
+        none = Collections.emptyList();
+
+        Assert.assertFalse(AdaptivePredicate.or(none).apply(1));
+    }
+
+    /**
+     * Tests that sampled evaluations stop at the first deciding component, so
+     * a component may guard the following ones.
+     */
+    @Test
+    public final void testAnd_Sampled_ShortCircuits() {
+        final Predicate<Integer> positive;       // Fails for null
+        final AdaptivePredicate<Integer> filter; // Tested predicate
+
+        positive = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                return input > 0;
+            }
+
+        };
+
+        filter = sampled(true, Arrays.<Predicate<? super Integer>> asList(
+                Predicates.notNull(), positive));
+
+        Assert.assertFalse(filter.apply(null));
+    }
+
+    /**
+     * Tests that disjunctions return the same entities as the Guava ones.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public final void testOr_SameResult() {
+        final Collection<Integer> expected; // Guava result
+
+        expected = repository.getCollection(Predicates.or(selective, broad));
+
+        Assert.assertEquals(repository
+                .getCollection(AdaptivePredicate.or(selective, broad)),
+                expected);
+    }
+
+    /**
+     * Creates a predicate sampling all the evaluations, and taking the cost
+     * from the test ticker.
+     * 
+     * @param conjunction
+     *            {@code true} for a conjunction, {@code false} for a
+     *            disjunction
+     * @param components
+     *            the predicates being joined
+     * @return the adaptive predicate
+     */
+    private final AdaptivePredicate<Integer> sampled(
+            final boolean conjunction,
+            final List<? extends Predicate<? super Integer>> components) {
+        return new AdaptivePredicate<Integer>(conjunction, components, 1,
+                INTERVAL, ticker);
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.repository.AttributeIndex;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link CollectionRepository} using an {@link AttributeIndex}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Equality lookups return the matching entities</li>
+ * <li>Lookups return all the equal entities stored</li>
+ * <li>Lookups for several values return the matching entities</li>
+ * <li>Lookups only check the indexed entities</li>
+ * <li>The index is kept updated when removing entities</li>
+ * <li>The index is kept updated when updating entities</li>
+ * <li>The index is kept updated when updating entities on a hashed
+ * repository</li>
+ * <li>Entities stored before registering the index are indexed</li>
+ * <li>Predicates still work on repositories without the index</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see AttributeIndex
+ */
+public final class TestAttributeIndexCollectionRepository {
+
+    /**
+     * Counts the times the indexed attribute is read.
+     */
+    private Integer                         calls;
+    /**
+     * The index being tested.
+     */
+    private AttributeIndex<TestClass>       index;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and classified by a category.
+     */
+    private final class TestClass {
+
+        /**
+         * Category of the class, which will be indexed.
+         */
+        private final String category;
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String name;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param category
+         *            the category
+         */
+        public TestClass(final String name, final String category) {
+            super();
+
+            this.name = name;
+            this.category = category;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the category of the class.
+         * 
+         * @return the category
+         */
+        public final String getCategory() {
+            return category;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("category", category).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestAttributeIndexCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and index being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+
+        repository = new CollectionRepository<TestClass>();
+        index = new AttributeIndex<TestClass>("category",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        calls++;
+                        return input.getCategory();
+                    }
+
+                });
+
+        repository.addIndex(index);
+
+        repository.add(new TestClass("a", "x"));
+        repository.add(new TestClass("b", "y"));
+        repository.add(new TestClass("c", "x"));
+        repository.add(new TestClass("d", "z"));
+    }
+
+    /**
+     * Tests that equality lookups return the matching entities.
+     */
+    @Test
+    public final void testEqualTo_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(index.equalTo("x"));
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(entities.contains(new TestClass("a", "x")));
+        Assert.assertTrue(entities.contains(new TestClass("c", "x")));
+    }
+
+    /**
+     * Tests that lookups return all the equal entities stored.
+     */
+    @Test
+    public final void testEqualTo_Duplicates_AllReturned() {
+        repository.add(new TestClass("a", "x"));
+
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 3);
+        Assert.assertEquals(repository.count(index.equalTo("x")), 3);
+
+        repository.remove(new TestClass("a", "x"));
+
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 2);
+    }
+
+    /**
+     * Tests that lookups only check the indexed entities.
+     */
+    @Test
+    public final void testEqualTo_OnlyCandidatesChecked() {
+        calls = 0;
+
+        repository.getCollection(index.equalTo("x"));
+
+        Assert.assertEquals(calls, (Integer) 2);
+    }
+
+    /**
+     * Tests that entities stored before registering the index are indexed.
+     */
+    @Test
+    public final void testAddIndex_Existing_Indexed() {
+        final AttributeIndex<TestClass> late; // Index added after the data
+
+        late = new AttributeIndex<TestClass>("category",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getCategory();
+                    }
+
+                });
+
+        repository.addIndex(late);
+
+        Assert.assertEquals(repository.getCollection(late.equalTo("x")).size(),
+                2);
+    }
+
+    /**
+     * Tests that lookups for several values return the matching entities.
+     */
+    @Test
+    public final void testIn_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(index.in("y", "z"));
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(entities.contains(new TestClass("b", "y")));
+        Assert.assertTrue(entities.contains(new TestClass("d", "z")));
+    }
+
+    /**
+     * Tests that predicates still work on repositories without the index.
+     */
+    @Test
+    public final void testNotRegistered_Filters() {
+        final CollectionRepository<TestClass> other; // Repository without index
+
+        other = new CollectionRepository<TestClass>();
+        other.add(new TestClass("a", "x"));
+        other.add(new TestClass("b", "y"));
+
+        Assert.assertEquals(other.getCollection(index.equalTo("x")).size(), 1);
+    }
+
+    /**
+     * Tests that the index is kept updated when removing entities.
+     */
+    @Test
+    public final void testRemove_IndexUpdated() {
+        repository.remove(new TestClass("a", "x"));
+
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 1);
+    }
+
+    /**
+     * Tests that the index is kept updated when updating entities.
+     */
+    @Test
+    public final void testUpdate_IndexUpdated() {
+        repository.update(new TestClass("a", "y"));
+
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 1);
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("y")).size(), 2);
+    }
+
+    /**
+     * Tests that the index is kept updated when updating entities on a hashed
+     * repository.
+     */
+    @Test
+    public final void testUpdate_Hashed_IndexUpdated() {
+        final AttributeIndex<TestClass> hashedIndex; // Index for the hashed
+                                                     // repository
+
+        hashedIndex = new AttributeIndex<TestClass>("category",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getCategory();
+                    }
+
+                });
+
+        repository = new CollectionRepository<TestClass>(
+                new LinkedHashMap<TestClass, TestClass>());
+        repository.addIndex(hashedIndex);
+        repository.add(new TestClass("e", "x"));
+
+        repository.update(new TestClass("e", "w"));
+
+        Assert.assertTrue(
+                repository.getCollection(hashedIndex.equalTo("x")).isEmpty());
+        Assert.assertTrue(repository.getCollection(hashedIndex.equalTo("w"))
+                .contains(new TestClass("e", "w")));
+    }
+
+}
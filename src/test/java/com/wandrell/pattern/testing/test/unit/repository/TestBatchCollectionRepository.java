@@ -0,0 +1,295 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.repository.AttributeIndex;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for the batch operations of {@link CollectionRepository}, using
+ * an {@link AttributeIndex} to check it is kept updated.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Adding a batch adds and indexes all the entities</li>
+ * <li>Removing a batch removes all the entities from the data and index</li>
+ * <li>Removing a batch removes a single copy for each entity</li>
+ * <li>Updating a batch replaces the entities and moves them to the end</li>
+ * <li>Updating a batch ignores entities not stored</li>
+ * <li>Updating a batch on a hashed repository keeps the positions</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CollectionRepository
+ */
+public final class TestBatchCollectionRepository {
+
+    /**
+     * The index for the repository.
+     */
+    private AttributeIndex<TestClass>       index;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and classified by a category.
+     */
+    private final class TestClass {
+
+        /**
+         * Category of the class, which will be indexed.
+         */
+        private final String category;
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String name;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param category
+         *            the category
+         */
+        public TestClass(final String name, final String category) {
+            super();
+
+            this.name = name;
+            this.category = category;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the category of the class.
+         * 
+         * @return the category
+         */
+        public final String getCategory() {
+            return category;
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("category", category).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestBatchCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and index being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new CollectionRepository<TestClass>();
+        index = newIndex();
+
+        repository.addIndex(index);
+
+        repository.addAll(Arrays.asList(new TestClass("a", "x"),
+                new TestClass("b", "y"), new TestClass("c", "x"),
+                new TestClass("d", "z")));
+    }
+
+    /**
+     * Tests that adding a batch adds and indexes all the entities.
+     */
+    @Test
+    public final void testAddAll_Indexed() {
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 2);
+    }
+
+    /**
+     * Tests that removing a batch removes a single copy for each entity.
+     */
+    @Test
+    public final void testRemoveAll_Duplicated_SingleCopyRemoved() {
+        repository.add(new TestClass("a", "x"));
+
+        repository.removeAll(Arrays.asList(new TestClass("a", "x")));
+
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 2);
+    }
+
+    /**
+     * Tests that removing a batch removes all the entities from the data and
+     * index.
+     */
+    @Test
+    public final void testRemoveAll_Removed() {
+        repository.removeAll(Arrays.asList(new TestClass("a", "x"),
+                new TestClass("d", "z"), new TestClass("e", "z")));
+
+        Assert.assertEquals(repository.getAll().size(), 2);
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 1);
+        Assert.assertTrue(
+                repository.getCollection(index.equalTo("z")).isEmpty());
+    }
+
+    /**
+     * Tests that updating a batch on a hashed repository keeps the positions.
+     */
+    @Test
+    public final void testUpdateAll_Hashed_PositionKept() {
+        repository = new CollectionRepository<TestClass>(
+                new LinkedHashMap<TestClass, TestClass>());
+        index = newIndex();
+        repository.addIndex(index);
+        repository.addAll(Arrays.asList(new TestClass("a", "x"),
+                new TestClass("b", "y")));
+
+        repository.updateAll(Arrays.asList(new TestClass("a", "w")));
+
+        assertNames("a", "b");
+        Assert.assertTrue(
+                repository.getCollection(index.equalTo("x")).isEmpty());
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("w")).size(), 1);
+    }
+
+    /**
+     * Tests that updating a batch ignores entities not stored.
+     */
+    @Test
+    public final void testUpdateAll_NotExisting_Ignored() {
+        repository.updateAll(Arrays.asList(new TestClass("e", "x")));
+
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("x")).size(), 2);
+    }
+
+    /**
+     * Tests that updating a batch replaces the entities and moves them to the
+     * end.
+     */
+    @Test
+    public final void testUpdateAll_Replaced() {
+        repository.updateAll(Arrays.asList(new TestClass("c", "w"),
+                new TestClass("a", "w")));
+
+        assertNames("b", "d", "c", "a");
+        Assert.assertTrue(
+                repository.getCollection(index.equalTo("x")).isEmpty());
+        Assert.assertEquals(
+                repository.getCollection(index.equalTo("w")).size(), 2);
+    }
+
+    /**
+     * Checks that the repository contains entities with the specified names,
+     * in order.
+     * 
+     * @param names
+     *            the expected names
+     */
+    private final void assertNames(final String... names) {
+        final Iterator<TestClass> entities; // All the entities
+
+        Assert.assertEquals(repository.getAll().size(), names.length);
+
+        entities = repository.getAll().iterator();
+        for (final String name : names) {
+            Assert.assertEquals(entities.next().getName(), name);
+        }
+    }
+
+    /**
+     * Creates an index for the category.
+     * 
+     * @return an index for the category
+     */
+    private final AttributeIndex<TestClass> newIndex() {
+        return new AttributeIndex<TestClass>("category",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getCategory();
+                    }
+
+                });
+    }
+
+}
@@ -0,0 +1,383 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.repository.BitmapAttribute;
+import com.wandrell.pattern.repository.BitmapIndex;
+import com.wandrell.pattern.repository.BitmapPredicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link CollectionRepository} using a {@link BitmapIndex}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Equality lookups return the matching entities</li>
+ * <li>Lookups return all the equal entities stored</li>
+ * <li>Conjunctions return the matching entities</li>
+ * <li>Disjunctions return the matching entities</li>
+ * <li>Negations return the matching entities</li>
+ * <li>Lookups only check the candidate entities</li>
+ * <li>The index is kept updated when removing entities</li>
+ * <li>The index is kept updated when updating entities</li>
+ * <li>Attributes added after the data index the existing entities</li>
+ * <li>Lookups on large repositories match a full scan</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see BitmapIndex
+ */
+public final class TestBitmapIndexCollectionRepository {
+
+    /**
+     * Counts the times the status attribute is read.
+     */
+    private Integer                         calls;
+    /**
+     * The index being tested.
+     */
+    private BitmapIndex<TestClass>          index;
+    /**
+     * Region attribute.
+     */
+    private BitmapAttribute<TestClass>      region;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+    /**
+     * Status attribute.
+     */
+    private BitmapAttribute<TestClass>      status;
+
+    /**
+     * Test class, identified by its name and classified by status and region.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String name;
+        /**
+         * Region of the class, which will be indexed.
+         */
+        private final String region;
+        /**
+         * Status of the class, which will be indexed.
+         */
+        private final String status;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param status
+         *            the status
+         * @param region
+         *            the region
+         */
+        public TestClass(final String name, final String status,
+                final String region) {
+            super();
+
+            this.name = name;
+            this.status = status;
+            this.region = region;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the region of the class.
+         * 
+         * @return the region
+         */
+        public final String getRegion() {
+            return region;
+        }
+
+        /**
+         * Returns the status of the class.
+         * 
+         * @return the status
+         */
+        public final String getStatus() {
+            return status;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("status", status).add("region", region).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestBitmapIndexCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and index being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+
+        repository = new CollectionRepository<TestClass>();
+        index = new BitmapIndex<TestClass>();
+        status = index.addAttribute("status",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        calls++;
+                        return input.getStatus();
+                    }
+
+                });
+        region = index.addAttribute("region",
+                new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getRegion();
+                    }
+
+                });
+
+        repository.addIndex(index);
+
+        repository.add(new TestClass("a", "active", "north"));
+        repository.add(new TestClass("b", "inactive", "north"));
+        repository.add(new TestClass("c", "active", "south"));
+        repository.add(new TestClass("d", "pending", "south"));
+    }
+
+    /**
+     * Tests that attributes added after the data index the existing entities.
+     */
+    @Test
+    public final void testAddAttribute_Existing_Indexed() {
+        final BitmapAttribute<TestClass> name; // Attribute added after the data
+
+        name = index.addAttribute("name", new Function<TestClass, Boolean>() {
+
+            @Override
+            public final Boolean apply(final TestClass input) {
+                return input.getStatus().equals(input.getRegion());
+            }
+
+        });
+
+        Assert.assertEquals(
+                repository.getCollection(name.equalTo(false)).size(), 4);
+    }
+
+    /**
+     * Tests that lookups return all the equal entities stored.
+     */
+    @Test
+    public final void testEqualTo_Duplicates_AllReturned() {
+        repository.add(new TestClass("a", "active", "north"));
+
+        Assert.assertEquals(
+                repository.getCollection(status.equalTo("active")).size(), 3);
+        Assert.assertEquals(repository.count(status.equalTo("active")), 3);
+    }
+
+    /**
+     * Tests that conjunctions return the matching entities.
+     */
+    @Test
+    public final void testAnd_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(
+                status.equalTo("active").and(region.equalTo("south")));
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(
+                entities.contains(new TestClass("c", "active", "south")));
+    }
+
+    /**
+     * Tests that equality lookups return the matching entities.
+     */
+    @Test
+    public final void testEqualTo_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(status.equalTo("active"));
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(
+                entities.contains(new TestClass("a", "active", "north")));
+        Assert.assertTrue(
+                entities.contains(new TestClass("c", "active", "south")));
+    }
+
+    /**
+     * Tests that lookups only check the candidate entities.
+     */
+    @Test
+    public final void testEqualTo_OnlyCandidatesChecked() {
+        calls = 0;
+
+        repository.getCollection(
+                status.equalTo("active").and(region.equalTo("south")));
+
+        Assert.assertEquals(calls, (Integer) 1);
+    }
+
+    /**
+     * Tests that lookups on large repositories match a full scan.
+     * <p>
+     * This uses enough entities to switch the bitmaps between their sparse
+     * and dense representations.
+     */
+    @Test
+    public final void testLarge_MatchesScan() {
+        final BitmapPredicate<TestClass> filter; // Tested filter
+        final Set<TestClass> expected;           // Expected entities
+        TestClass entity;                        // Generated entity
+
+        for (Integer i = 0; i < 20000; i++) {
+            entity = new TestClass("e" + i, "s" + (i % 3), "r" + (i % 7));
+            repository.add(entity);
+        }
+        for (Integer i = 0; i < 20000; i += 2) {
+            repository.remove(new TestClass("e" + i, "", ""));
+        }
+
+        filter = status.in("s0", "s1").and(region.equalTo("r2").not());
+
+        expected = new HashSet<TestClass>();
+        for (final TestClass stored : repository.getAll()) {
+            if (filter.apply(stored)) {
+                expected.add(stored);
+            }
+        }
+
+        Assert.assertEquals(
+                new HashSet<TestClass>(repository.getCollection(filter)),
+                expected);
+    }
+
+    /**
+     * Tests that negations return the matching entities.
+     */
+    @Test
+    public final void testNot_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(status.equalTo("active").not());
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(
+                entities.contains(new TestClass("b", "inactive", "north")));
+        Assert.assertTrue(
+                entities.contains(new TestClass("d", "pending", "south")));
+    }
+
+    /**
+     * Tests that disjunctions return the matching entities.
+     */
+    @Test
+    public final void testOr_Filters() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(
+                status.equalTo("pending").or(region.equalTo("north")));
+
+        Assert.assertEquals(entities.size(), 3);
+        Assert.assertFalse(
+                entities.contains(new TestClass("c", "active", "south")));
+    }
+
+    /**
+     * Tests that the index is kept updated when removing entities.
+     */
+    @Test
+    public final void testRemove_IndexUpdated() {
+        repository.remove(new TestClass("a", "active", "north"));
+
+        Assert.assertEquals(
+                repository.getCollection(status.equalTo("active")).size(), 1);
+    }
+
+    /**
+     * Tests that the index is kept updated when updating entities.
+     */
+    @Test
+    public final void testUpdate_IndexUpdated() {
+        repository.update(new TestClass("a", "pending", "north"));
+
+        Assert.assertEquals(
+                repository.getCollection(status.equalTo("active")).size(), 1);
+        Assert.assertEquals(
+                repository.getCollection(status.equalTo("pending")).size(), 2);
+    }
+
+}
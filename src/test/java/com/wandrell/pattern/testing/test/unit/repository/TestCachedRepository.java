@@ -0,0 +1,191 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.wandrell.pattern.repository.CachedRepository;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link CachedRepository}. For this test the repository will
+ * contain {@code String} entities.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Repeating a query returns the cached result</li>
+ * <li>Queries not finding an entity are cached too</li>
+ * <li>Adding an entity invalidates the cached results</li>
+ * <li>Removing an entity invalidates the cached results</li>
+ * <li>Updating an entity invalidates the cached results</li>
+ * <li>Results are evicted once the cache is full</li>
+ * <li>Cached collections can't be modified</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CachedRepository
+ */
+public final class TestCachedRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private CachedRepository<String, Predicate<String>> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestCachedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        final CollectionRepository<String> wrapped; // Cached repository
+
+        wrapped = new CollectionRepository<String>(new LinkedList<String>());
+
+        wrapped.add("a");
+        wrapped.add("b");
+        wrapped.add("c");
+
+        repository = new CachedRepository<String, Predicate<String>>(wrapped,
+                2);
+    }
+
+    /**
+     * Tests that adding an entity invalidates the cached results.
+     */
+    @Test
+    public final void testAdd_Invalidates() {
+        final Predicate<String> filter; // Filter for the query
+
+        filter = Predicates.in(Arrays.asList("b", "d"));
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 1);
+
+        repository.add("d");
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 2);
+        Assert.assertEquals(repository.getStats().hitCount(), 0);
+        Assert.assertEquals(repository.getStats().missCount(), 2);
+    }
+
+    /**
+     * Tests that repeating a query returns the cached result.
+     */
+    @Test
+    public final void testGetCollection_Repeated_Cached() {
+        final Predicate<String> filter; // Filter for the query
+        final Collection<String> first; // First result
+
+        filter = Predicates.equalTo("b");
+
+        first = repository.getCollection(filter);
+
+        Assert.assertSame(repository.getCollection(filter), first);
+        Assert.assertSame(repository.getCollection(Predicates.equalTo("b")),
+                first);
+        Assert.assertEquals(repository.getStats().hitCount(), 2);
+        Assert.assertEquals(repository.getStats().missCount(), 1);
+    }
+
+    /**
+     * Tests that cached collections can't be modified.
+     */
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public final void testGetCollection_Remove_Unsupported() {
+        repository.getCollection(Predicates.equalTo("b")).clear();
+    }
+
+    /**
+     * Tests that queries not finding an entity are cached too.
+     */
+    @Test
+    public final void testGetEntity_NotExisting_Cached() {
+        Assert.assertNull(repository.getEntity(Predicates.equalTo("z")));
+        Assert.assertNull(repository.getEntity(Predicates.equalTo("z")));
+
+        Assert.assertEquals(repository.getStats().hitCount(), 1);
+        Assert.assertEquals(repository.getStats().missCount(), 1);
+    }
+
+    /**
+     * Tests that results are evicted once the cache is full.
+     */
+    @Test
+    public final void testGetEntity_Full_Evicts() {
+        repository.getEntity(Predicates.equalTo("a"));
+        repository.getEntity(Predicates.equalTo("b"));
+        repository.getEntity(Predicates.equalTo("c"));
+
+        Assert.assertEquals(repository.getStats().evictionCount(), 1);
+    }
+
+    /**
+     * Tests that removing an entity invalidates the cached results.
+     */
+    @Test
+    public final void testRemove_Invalidates() {
+        final Predicate<String> filter; // Filter for the query
+
+        filter = Predicates.equalTo("b");
+
+        Assert.assertEquals(repository.getEntity(filter), "b");
+
+        repository.remove("b");
+
+        Assert.assertNull(repository.getEntity(filter));
+    }
+
+    /**
+     * Tests that updating an entity invalidates the cached results.
+     */
+    @Test
+    public final void testUpdate_Invalidates() {
+        final Predicate<String> filter; // Filter for the query
+
+        filter = Predicates.equalTo("b");
+
+        repository.getCollection(filter);
+        repository.update("b");
+        repository.getCollection(filter);
+
+        Assert.assertEquals(repository.getStats().hitCount(), 0);
+        Assert.assertEquals(repository.getStats().missCount(), 2);
+    }
+
+}
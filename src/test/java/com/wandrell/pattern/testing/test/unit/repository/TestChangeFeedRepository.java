@@ -0,0 +1,595 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.feed.ChangeEvent;
+import com.wandrell.pattern.repository.feed.ChangeFeedRepository;
+import com.wandrell.pattern.repository.feed.ChangeListener;
+import com.wandrell.pattern.repository.feed.ChangeSubscription;
+import com.wandrell.pattern.repository.feed.ChangeType;
+import com.wandrell.pattern.repository.feed.OverflowPolicy;
+
+/**
+ * Unit tests for {@link ChangeFeedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Changes are delivered in order, with growing sequence numbers</li>
+ * <li>Batch operations publish a change for each entity</li>
+ * <li>A slow subscriber with the drop policy doesn't block writers</li>
+ * <li>The coalesce policy merges the changes to the same entity</li>
+ * <li>The coalesce policy frees the space of changes cancelling out</li>
+ * <li>The block policy makes writers wait for the subscriber</li>
+ * <li>Cancelled subscriptions don't receive new changes</li>
+ * <li>Errors on a listener don't stop the deliveries</li>
+ * <li>Writes which change nothing publish nothing</li>
+ * <li>Repeated entities are published only if the repository keeps them</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ChangeFeedRepository
+ */
+public final class TestChangeFeedRepository {
+
+    /**
+     * Maximum time to wait for deliveries, in seconds.
+     */
+    private static final Integer TIMEOUT = 5;
+
+    /**
+     * Latch holding the blocking listener.
+     */
+    private CountDownLatch                                        gate;
+    /**
+     * Changes received by the listener.
+     */
+    private List<ChangeEvent<TestClass>>                          received;
+    /**
+     * The repository being tested.
+     */
+    private ChangeFeedRepository<TestClass, Predicate<TestClass>> repository;
+
+    /**
+     * Test class, identified by its name and with a version.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Version of the class.
+         */
+        private final Integer version;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param version
+         *            the version
+         */
+        public TestClass(final String name, final Integer version) {
+            super();
+
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the version of the class.
+         * 
+         * @return the version
+         */
+        public final Integer getVersion() {
+            return version;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("version", version).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestChangeFeedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        gate = new CountDownLatch(1);
+        received = Collections
+                .synchronizedList(new ArrayList<ChangeEvent<TestClass>>());
+        repository = new ChangeFeedRepository<TestClass, Predicate<TestClass>>(
+                new CollectionRepository<TestClass>());
+    }
+
+    /**
+     * Closes the repository after each test.
+     */
+    @AfterMethod
+    public final void release() {
+        gate.countDown();
+        repository.close();
+    }
+
+    /**
+     * Tests that batch operations publish a change for each entity.
+     */
+    @Test
+    public final void testAddAll_ChangePerEntity() throws InterruptedException {
+        repository.subscribe(getCollector(), 16, OverflowPolicy.DROP);
+
+        repository.addAll(Arrays.asList(new TestClass("a", 1),
+                new TestClass("b", 1), new TestClass("c", 1)));
+
+        awaitReceived(3);
+
+        Assert.assertEquals(received.size(), 3);
+        for (final ChangeEvent<TestClass> event : received) {
+            Assert.assertEquals(event.getType(), ChangeType.ADD);
+        }
+    }
+
+    /**
+     * Tests that the block policy makes writers wait for the subscriber.
+     */
+    @Test
+    public final void testBlock_WriterWaits() throws InterruptedException {
+        final Thread writer; // Thread writing to the repository
+
+        repository.subscribe(getBlockingCollector(), 1, OverflowPolicy.BLOCK);
+
+        writer = new Thread(new Runnable() {
+
+            @Override
+            public final void run() {
+                for (Integer i = 0; i < 5; i++) {
+                    repository.add(new TestClass("e" + i, 1));
+                }
+            }
+
+        });
+        writer.start();
+
+        writer.join(200);
+        Assert.assertTrue(writer.isAlive());
+
+        gate.countDown();
+        writer.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        awaitReceived(5);
+
+        Assert.assertFalse(writer.isAlive());
+        Assert.assertEquals(received.size(), 5);
+    }
+
+    /**
+     * Tests that repeated entities are published when the repository keeps
+     * them.
+     */
+    @Test
+    public final void testAdd_Repeated_Kept_Published()
+            throws InterruptedException {
+        repository.subscribe(getCollector(), 16, OverflowPolicy.DROP);
+
+        repository.add(new TestClass("a", 1));
+        repository.add(new TestClass("a", 1));
+        repository.remove(new TestClass("a", 1));
+        repository.remove(new TestClass("a", 1));
+        repository.remove(new TestClass("a", 1));
+        repository.add(new TestClass("b", 1));
+
+        awaitReceived(5);
+
+        Assert.assertEquals(getTypes(),
+                Arrays.asList(ChangeType.ADD, ChangeType.ADD,
+                        ChangeType.REMOVE, ChangeType.REMOVE,
+                        ChangeType.ADD));
+    }
+
+    /**
+     * Tests that repeated entities are not published when the repository
+     * ignores them.
+     */
+    @Test
+    public final void testAdd_Repeated_Ignored_NotPublished()
+            throws InterruptedException {
+        final CollectionRepository<TestClass> hashed; // Wrapped repository
+
+        hashed = new CollectionRepository<TestClass>(
+                new LinkedHashMap<TestClass, TestClass>());
+        hashed.add(new TestClass("a", 1));
+
+        repository.close();
+        repository = new ChangeFeedRepository<TestClass, Predicate<TestClass>>(
+                hashed);
+        repository.subscribe(getCollector(), 16, OverflowPolicy.DROP);
+
+        repository.add(new TestClass("a", 2));
+        repository.addAll(
+                Arrays.asList(new TestClass("a", 3), new TestClass("b", 1),
+                        new TestClass("b", 2)));
+        repository.remove(new TestClass("a", 1));
+
+        awaitReceived(2);
+
+        Assert.assertEquals(getTypes(),
+                Arrays.asList(ChangeType.ADD, ChangeType.REMOVE));
+        Assert.assertEquals(received.get(0).getEntity().getVersion(),
+                (Integer) 1);
+    }
+
+    /**
+     * Tests that the coalesce policy merges the changes to the same entity.
+     */
+    @Test
+    public final void testCoalesce_Merged() throws InterruptedException {
+        final ChangeSubscription<TestClass> subscription; // Tested
+                                                          // subscription
+        final TestClass entity;                           // Merged entity
+        ChangeEvent<TestClass> last;                      // Last change
+
+        subscription = repository.subscribe(getBlockingCollector(), 2,
+                OverflowPolicy.COALESCE);
+
+        entity = new TestClass("a", 0);
+        repository.add(entity);
+        repository.add(new TestClass("b", 0));
+        for (Integer i = 1; i <= 20; i++) {
+            repository.update(new TestClass("a", i));
+        }
+
+        gate.countDown();
+        awaitReceived(2);
+
+        // Merged changes keep their position, so the batch order may vary
+        last = null;
+        for (final ChangeEvent<TestClass> change : received) {
+            if (change.getEntity().equals(entity)) {
+                last = change;
+            }
+        }
+
+        Assert.assertEquals(subscription.getDropped(), 0);
+        Assert.assertEquals(last.getEntity().getVersion(), (Integer) 20);
+    }
+
+    /**
+     * Tests that the coalesce policy frees the space of changes cancelling
+     * out.
+     */
+    @Test
+    public final void testCoalesce_Cancelled_SpaceFreed()
+            throws InterruptedException {
+        final ChangeSubscription<TestClass> subscription; // Tested
+                                                          // subscription
+        final CountDownLatch entered;                     // Listener waiting
+        final List<ChangeEvent<TestClass>> target;        // Stored changes
+        final CountDownLatch latch;                       // Gate for listener
+        final TestClass cancelled;                        // Cancelled entity
+
+        entered = new CountDownLatch(1);
+        target = received;
+        latch = gate;
+        subscription = repository.subscribe(new ChangeListener<TestClass>() {
+
+            @Override
+            public final void onChanges(
+                    final List<ChangeEvent<TestClass>> events) {
+                entered.countDown();
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                target.addAll(events);
+            }
+
+        }, 2, OverflowPolicy.COALESCE);
+
+        // The listener holds the first change, leaving the buffer empty
+        repository.add(new TestClass("first", 0));
+        entered.await(TIMEOUT, TimeUnit.SECONDS);
+
+        cancelled = new TestClass("a", 0);
+        repository.add(cancelled);
+        repository.add(new TestClass("b", 0));
+        repository.remove(cancelled);
+
+        Assert.assertEquals(subscription.getPending(), 1);
+
+        repository.add(new TestClass("c", 0));
+        // The buffer is full, and there is nothing to merge with
+        repository.add(new TestClass("d", 0));
+
+        gate.countDown();
+        awaitReceived(3);
+
+        Assert.assertEquals(subscription.getDropped(), 1);
+        Assert.assertEquals(received.size(), 3);
+        Assert.assertEquals(received.get(1).getEntity(),
+                new TestClass("b", 0));
+        Assert.assertEquals(received.get(2).getEntity(),
+                new TestClass("c", 0));
+    }
+
+    /**
+     * Tests that writes which change nothing publish nothing.
+     */
+    @Test
+    public final void testNoOp_NotPublished() throws InterruptedException {
+        repository.subscribe(getCollector(), 16, OverflowPolicy.DROP);
+
+        repository.remove(new TestClass("a", 1));
+        repository.update(new TestClass("a", 1));
+        repository.removeAll(Arrays.asList(new TestClass("b", 1)));
+        repository.updateAll(Arrays.asList(new TestClass("b", 1)));
+        repository.add(new TestClass("c", 1));
+
+        awaitReceived(1);
+
+        Assert.assertEquals(getTypes(), Arrays.asList(ChangeType.ADD));
+        Assert.assertEquals(received.get(0).getEntity(),
+                new TestClass("c", 1));
+    }
+
+    /**
+     * Tests that a slow subscriber with the drop policy doesn't block
+     * writers.
+     */
+    @Test
+    public final void testDrop_WriterNotBlocked() {
+        final ChangeSubscription<TestClass> subscription; // Tested
+                                                          // subscription
+
+        subscription = repository.subscribe(getBlockingCollector(), 2,
+                OverflowPolicy.DROP);
+
+        for (Integer i = 0; i < 10; i++) {
+            repository.add(new TestClass("e" + i, 1));
+        }
+
+        // One change can be taken by the listener, and two are buffered
+        Assert.assertTrue(subscription.getDropped() >= 7);
+        Assert.assertEquals(repository.getAll().size(), 10);
+    }
+
+    /**
+     * Tests that errors on a listener don't stop the deliveries.
+     */
+    @Test
+    public final void testListenerError_KeepsDelivering()
+            throws InterruptedException {
+        final List<ChangeEvent<TestClass>> target; // Stored changes
+
+        target = received;
+        repository.subscribe(new ChangeListener<TestClass>() {
+
+            @Override
+            public final void onChanges(
+                    final List<ChangeEvent<TestClass>> events) {
+                target.addAll(events);
+                throw new IllegalStateException("Listener failure");
+            }
+
+        }, 16, OverflowPolicy.DROP);
+
+        repository.add(new TestClass("a", 1));
+        awaitReceived(1);
+        repository.add(new TestClass("b", 1));
+        awaitReceived(2);
+
+        Assert.assertEquals(received.size(), 2);
+    }
+
+    /**
+     * Tests that changes are delivered in order, with growing sequence
+     * numbers.
+     */
+    @Test
+    public final void testMixed_OrderedDelivery() throws InterruptedException {
+        final List<ChangeType> types; // Types received
+
+        repository.subscribe(getCollector(), 16, OverflowPolicy.DROP);
+
+        repository.add(new TestClass("a", 1));
+        repository.update(new TestClass("a", 2));
+        repository.remove(new TestClass("a", 2));
+
+        awaitReceived(3);
+
+        types = getTypes();
+
+        Assert.assertEquals(types, Arrays.asList(ChangeType.ADD,
+                ChangeType.UPDATE, ChangeType.REMOVE));
+        Assert.assertTrue(
+                received.get(0).getSequence() < received.get(1).getSequence());
+        Assert.assertTrue(
+                received.get(1).getSequence() < received.get(2).getSequence());
+    }
+
+    /**
+     * Tests that cancelled subscriptions don't receive new changes.
+     */
+    @Test
+    public final void testUnsubscribe_NoChanges() throws InterruptedException {
+        final ChangeSubscription<TestClass> subscription; // Tested
+                                                          // subscription
+
+        subscription = repository.subscribe(getCollector(), 16,
+                OverflowPolicy.DROP);
+
+        repository.add(new TestClass("a", 1));
+        awaitReceived(1);
+
+        repository.unsubscribe(subscription);
+        repository.add(new TestClass("b", 1));
+
+        Thread.sleep(100);
+
+        Assert.assertEquals(received.size(), 1);
+        Assert.assertFalse(subscription.isActive());
+    }
+
+    /**
+     * Waits until the specified number of changes were received, or the
+     * timeout passes.
+     * 
+     * @param count
+     *            the number of changes to wait for
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    private final void awaitReceived(final Integer count)
+            throws InterruptedException {
+        final Long limit; // Time limit
+
+        limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while ((received.size() < count) && (System.nanoTime() < limit)) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Returns a listener storing the changes, which waits for the gate to be
+     * opened before storing each batch.
+     * 
+     * @return a listener blocked by the gate
+     */
+    private final ChangeListener<TestClass> getBlockingCollector() {
+        final List<ChangeEvent<TestClass>> target; // Stored changes
+        final CountDownLatch latch;                // Gate for the listener
+
+        // Kept apart from later tests, as it may outlive this one
+        target = received;
+        latch = gate;
+
+        return new ChangeListener<TestClass>() {
+
+            @Override
+            public final void onChanges(
+                    final List<ChangeEvent<TestClass>> events) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                target.addAll(events);
+            }
+
+        };
+    }
+
+    /**
+     * Returns a listener storing the changes.
+     * 
+     * @return a listener storing the changes
+     */
+    private final ChangeListener<TestClass> getCollector() {
+        final List<ChangeEvent<TestClass>> target; // Stored changes
+
+        // Kept apart from later tests, as it may outlive this one
+        target = received;
+
+        return new ChangeListener<TestClass>() {
+
+            @Override
+            public final void onChanges(
+                    final List<ChangeEvent<TestClass>> events) {
+                target.addAll(events);
+            }
+
+        };
+    }
+
+    /**
+     * Returns the types of the changes received.
+     * 
+     * @return the types received
+     */
+    private final List<ChangeType> getTypes() {
+        final List<ChangeType> types; // Types received
+
+        types = new ArrayList<ChangeType>();
+        for (final ChangeEvent<TestClass> event : received) {
+            types.add(event.getType());
+        }
+
+        return types;
+    }
+
+}
@@ -0,0 +1,259 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.wandrell.pattern.repository.ColumnarRepository;
+import com.wandrell.pattern.repository.LongAttribute;
+import com.wandrell.pattern.repository.LongColumn;
+
+/**
+ * Unit tests for {@link ColumnarRepository}. For this test the repository will
+ * contain {@code String} entities, with columns for their length and first
+ * character.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Equality predicates on a column return the matching entities</li>
+ * <li>Range predicates on a column return the matching entities</li>
+ * <li>Predicates on several columns return the entities matching all</li>
+ * <li>Empty ranges return no entity</li>
+ * <li>Columns are kept updated when removing entities</li>
+ * <li>Columns are kept updated when updating entities</li>
+ * <li>Columns declared after adding entities are filled</li>
+ * <li>Other predicates are applied to the entities</li>
+ * <li>Column predicates work on other repositories</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ColumnarRepository
+ */
+public final class TestColumnarRepository {
+
+    /**
+     * Column for the first character.
+     */
+    private LongColumn<String>         first;
+    /**
+     * Column for the length.
+     */
+    private LongColumn<String>         length;
+    /**
+     * The repository being tested.
+     */
+    private ColumnarRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestColumnarRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new ColumnarRepository<String>();
+
+        length = repository.addColumn("length", new LongAttribute<String>() {
+
+            @Override
+            public final long getValue(final String entity) {
+                return entity.length();
+            }
+
+        });
+
+        for (final String entity : new String[] { "a", "bb", "ccc", "abc",
+                "dddd", "ab" }) {
+            repository.add(entity);
+        }
+
+        first = repository.addColumn("first", new LongAttribute<String>() {
+
+            @Override
+            public final long getValue(final String entity) {
+                return entity.charAt(0);
+            }
+
+        });
+    }
+
+    /**
+     * Tests that predicates on several columns return the entities matching
+     * all.
+     */
+    @Test
+    public final void testAnd_Filters() {
+        Assert.assertEquals(
+                query(length.greaterThan(1).and(first.equalTo('a'))),
+                ImmutableSet.of("abc", "ab"));
+    }
+
+    /**
+     * Tests that columns declared after adding entities are filled.
+     */
+    @Test
+    public final void testAddColumn_Existing_Filled() {
+        Assert.assertEquals(query(first.equalTo('c')),
+                ImmutableSet.of("ccc"));
+    }
+
+    /**
+     * Tests that range predicates on a column return the matching entities.
+     */
+    @Test
+    public final void testBetween_Filters() {
+        Assert.assertEquals(query(length.between(2, 3)),
+                ImmutableSet.of("bb", "ccc", "abc", "ab"));
+    }
+
+    /**
+     * Tests that empty ranges return no entity.
+     */
+    @Test
+    public final void testEmptyRange_NoEntity() {
+        Assert.assertTrue(query(length.greaterThan(Long.MAX_VALUE)).isEmpty());
+        Assert.assertTrue(query(length.lessThan(Long.MIN_VALUE)).isEmpty());
+        Assert.assertTrue(query(length.between(3, 2)).isEmpty());
+    }
+
+    /**
+     * Tests that equality predicates on a column return the matching
+     * entities.
+     */
+    @Test
+    public final void testEqualTo_Filters() {
+        Assert.assertEquals(query(length.equalTo(3)),
+                ImmutableSet.of("ccc", "abc"));
+        Assert.assertEquals(repository.getEntity(length.equalTo(4)), "dddd");
+    }
+
+    /**
+     * Tests that column predicates work on other repositories.
+     */
+    @Test
+    public final void testOtherRepository_Filters() {
+        final ColumnarRepository<String> other; // Repository without columns
+
+        other = new ColumnarRepository<String>();
+        other.add("a");
+        other.add("bb");
+
+        Assert.assertEquals(other.getCollection(length.equalTo(2)).size(), 1);
+    }
+
+    /**
+     * Tests that other predicates are applied to the entities.
+     */
+    @Test
+    public final void testPredicate_Filters() {
+        Assert.assertEquals(query(new Predicate<String>() {
+
+            @Override
+            public final boolean apply(final String entity) {
+                return entity.contains("b");
+            }
+
+        }), ImmutableSet.of("bb", "abc", "ab"));
+    }
+
+    /**
+     * Tests that columns are kept updated when removing entities.
+     */
+    @Test
+    public final void testRemove_ColumnsUpdated() {
+        repository.remove("bb");
+        repository.remove("a");
+
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertEquals(query(length.lessThan(3)),
+                ImmutableSet.of("ab"));
+        Assert.assertEquals(query(first.equalTo('a')),
+                ImmutableSet.of("abc", "ab"));
+    }
+
+    /**
+     * Tests that columns are kept updated when updating entities.
+     */
+    @Test
+    public final void testUpdate_ColumnsUpdated() {
+        final ColumnarRepository<StringBuilder> builders; // Mutable entities
+        final LongColumn<StringBuilder> size;             // Builder length
+        final StringBuilder entity;                       // Updated entity
+
+        builders = new ColumnarRepository<StringBuilder>();
+        size = builders.addColumn("length",
+                new LongAttribute<StringBuilder>() {
+
+                    @Override
+                    public final long getValue(final StringBuilder value) {
+                        return value.length();
+                    }
+
+                });
+
+        entity = new StringBuilder("a");
+        builders.add(entity);
+        entity.append("bc");
+
+        Assert.assertTrue(builders.getCollection(size.equalTo(3)).isEmpty());
+
+        builders.update(entity);
+
+        Assert.assertEquals(builders.getCollection(size.equalTo(3)).size(),
+                1);
+    }
+
+    /**
+     * Queries the repository and returns the entities found as a set.
+     * 
+     * @param filter
+     *            filter for the query
+     * @return the entities found
+     */
+    private final Set<String> query(final Predicate<String> filter) {
+        final Collection<String> result;
+
+        result = repository.getCollection(filter);
+
+        Assert.assertEquals(repository.getPage(filter, 0, 100).size(),
+                result.size());
+
+        return new HashSet<String>(result);
+    }
+
+}
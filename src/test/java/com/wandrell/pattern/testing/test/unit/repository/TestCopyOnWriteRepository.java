@@ -0,0 +1,231 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CopyOnWriteRepository;
+
+/**
+ * Unit tests for {@link CopyOnWriteRepository}. For this test the repository
+ * will contain {@code String} entities.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are added correctly</li>
+ * <li>Entities are removed correctly</li>
+ * <li>Entities are updated in place</li>
+ * <li>Updating a non existing entity does not add it</li>
+ * <li>The {@code getCollection} method filters the entities correctly</li>
+ * <li>The {@code getAll} method returns the same snapshot while there are no
+ * writes</li>
+ * <li>Snapshots are not modified by later writes</li>
+ * <li>Snapshots can't be modified</li>
+ * <li>Iterators are not affected by later writes</li>
+ * <li>Batches are applied with a single new snapshot</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CopyOnWriteRepository
+ */
+public final class TestCopyOnWriteRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private CopyOnWriteRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestCopyOnWriteRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new CopyOnWriteRepository<String>();
+
+        repository.add("a");
+        repository.add("b");
+        repository.add("c");
+    }
+
+    /**
+     * Tests that entities are added correctly.
+     */
+    @Test
+    public final void testAdd_Adds() {
+        repository.add("d");
+
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertTrue(repository.getAll().contains("d"));
+    }
+
+    /**
+     * Tests that the {@code getAll} method returns the same snapshot while
+     * there are no writes.
+     */
+    @Test
+    public final void testGetAll_NoWrites_SameSnapshot() {
+        Assert.assertSame(repository.getAll(), repository.getAll());
+    }
+
+    /**
+     * Tests that snapshots can't be modified.
+     */
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public final void testGetAll_Remove_Unsupported() {
+        repository.getAll().remove("a");
+    }
+
+    /**
+     * Tests that snapshots are not modified by later writes.
+     */
+    @Test
+    public final void testGetAll_Write_SnapshotNotChanged() {
+        final Collection<String> snapshot; // Snapshot before the write
+
+        snapshot = repository.getAll();
+
+        repository.remove("a");
+
+        Assert.assertEquals(snapshot.size(), 3);
+        Assert.assertTrue(snapshot.contains("a"));
+        Assert.assertEquals(repository.getAll().size(), 2);
+    }
+
+    /**
+     * Test that the {@code getCollection} method filters the entities
+     * correctly.
+     */
+    @Test
+    public final void testGetCollection_Filter_Filters() {
+        final Collection<String> entities; // Filtered entities
+
+        entities = repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return entity.equals("b");
+            }
+
+        });
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(entities.contains("b"));
+    }
+
+    /**
+     * Tests that iterators are not affected by later writes.
+     */
+    @Test
+    public final void testGetIterator_Write_NotChanged() {
+        final Iterator<String> entities; // Filtered entities
+
+        entities = repository.getIterator(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return true;
+            }
+
+        });
+
+        repository.remove("b");
+
+        Assert.assertEquals(entities.next(), "a");
+        Assert.assertEquals(entities.next(), "b");
+        Assert.assertEquals(entities.next(), "c");
+    }
+
+    /**
+     * Tests that entities are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove("b");
+
+        Assert.assertEquals(repository.getAll().size(), 2);
+        Assert.assertFalse(repository.getAll().contains("b"));
+    }
+
+    /**
+     * Tests that entities are updated in place.
+     */
+    @Test
+    public final void testUpdate_Existing_InPlace() {
+        final Iterator<String> entities; // All the entities
+
+        repository.update("a");
+
+        entities = repository.getAll().iterator();
+
+        Assert.assertEquals(entities.next(), "a");
+        Assert.assertEquals(entities.next(), "b");
+        Assert.assertEquals(entities.next(), "c");
+        Assert.assertFalse(entities.hasNext());
+    }
+
+    /**
+     * Tests that updating a non existing entity does not add it.
+     */
+    @Test
+    public final void testUpdate_NotExisting_NoAdd() {
+        repository.update("d");
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertFalse(repository.getAll().contains("d"));
+    }
+
+    /**
+     * Tests that batches are applied with a single new snapshot.
+     */
+    @Test
+    public final void testUpdateAll_Batch_Applied() {
+        final Collection<String> snapshot; // Snapshot before the write
+
+        snapshot = repository.getAll();
+
+        repository.updateAll(Arrays.asList("a", "c", "z"));
+        repository.removeAll(Arrays.asList("b", "z"));
+        repository.addAll(Arrays.asList("d", "e"));
+
+        Assert.assertEquals(snapshot.size(), 3);
+        Assert.assertEquals(repository.getAll(),
+                Arrays.asList("a", "c", "d", "e"));
+    }
+
+}
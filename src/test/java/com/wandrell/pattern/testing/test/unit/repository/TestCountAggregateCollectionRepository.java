@@ -0,0 +1,483 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.wandrell.pattern.repository.Aggregate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.MultiVersionRepository;
+import com.wandrell.pattern.repository.RangeIndex;
+import com.wandrell.pattern.repository.ShardedRepository;
+
+/**
+ * Unit tests for the count, exists and aggregate queries of
+ * {@link CollectionRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Counting returns the number of matching entities</li>
+ * <li>Counting through an index only checks the entities in the range</li>
+ * <li>Exists stops at the first matching entity</li>
+ * <li>Exists returns false when no entity matches</li>
+ * <li>Aggregates return the sum, minimum, maximum and average</li>
+ * <li>Aggregates through an index only check the entities in the range</li>
+ * <li>Aggregates without values are empty</li>
+ * <li>Aggregates ignore null values</li>
+ * <li>Merged aggregates cover both sets of values</li>
+ * <li>Aggregates sum long values beyond double precision exactly</li>
+ * <li>Aggregates sum long values exactly past the long range</li>
+ * <li>Sharded repositories merge the results of all the shards</li>
+ * <li>Multi-version repositories count and aggregate their snapshot</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see Aggregate
+ */
+public final class TestCountAggregateCollectionRepository {
+
+    /**
+     * Function reading the amount of the entities.
+     */
+    private Function<TestClass, Integer>    amount;
+    /**
+     * Counts the times the indexed attribute is read.
+     */
+    private Integer                         calls;
+    /**
+     * The index used by the queries.
+     */
+    private RangeIndex<TestClass, Integer>  index;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and with an amount.
+     */
+    private final class TestClass {
+
+        /**
+         * Amount of the class, which will be aggregated.
+         */
+        private final Integer amount;
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param amount
+         *            the amount
+         */
+        public TestClass(final String name, final Integer amount) {
+            super();
+
+            this.name = name;
+            this.amount = amount;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the amount of the class.
+         * 
+         * @return the amount
+         */
+        public final Integer getAmount() {
+            return amount;
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("amount", amount).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestCountAggregateCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and index being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+
+        amount = new Function<TestClass, Integer>() {
+
+            @Override
+            public final Integer apply(final TestClass input) {
+                return input.getAmount();
+            }
+
+        };
+
+        repository = new CollectionRepository<TestClass>();
+        index = new RangeIndex<TestClass, Integer>("amount",
+                new Function<TestClass, Integer>() {
+
+                    @Override
+                    public final Integer apply(final TestClass input) {
+                        calls++;
+                        return input.getAmount();
+                    }
+
+                });
+
+        repository.addIndex(index);
+
+        repository.addAll(getEntities());
+    }
+
+    /**
+     * Tests that aggregates return the sum, minimum, maximum and average.
+     */
+    @Test
+    public final void testAggregate() {
+        final Aggregate aggregate; // Aggregate of all the amounts
+
+        aggregate = repository.aggregate(Predicates.<TestClass> alwaysTrue(),
+                amount);
+
+        Assert.assertEquals(aggregate.getCount(), 5);
+        Assert.assertEquals(aggregate.getSum(), 150.0);
+        Assert.assertEquals(aggregate.getMinimum(), 10.0);
+        Assert.assertEquals(aggregate.getMaximum(), 50.0);
+        Assert.assertEquals(aggregate.getAverage(), 30.0);
+    }
+
+    /**
+     * Tests that aggregates without values are empty.
+     */
+    @Test
+    public final void testAggregate_Empty() {
+        final Aggregate aggregate; // Aggregate of no amounts
+
+        aggregate = repository.aggregate(index.greaterThan(100), amount);
+
+        Assert.assertEquals(aggregate.getCount(), 0);
+        Assert.assertEquals(aggregate.getSum(), 0.0);
+        Assert.assertNull(aggregate.getMinimum());
+        Assert.assertNull(aggregate.getMaximum());
+        Assert.assertNull(aggregate.getAverage());
+    }
+
+    /**
+     * Tests that aggregates through an index only check the entities in the
+     * range.
+     */
+    @Test
+    public final void testAggregate_Indexed() {
+        final Aggregate aggregate; // Aggregate of the amounts in the range
+
+        calls = 0;
+
+        aggregate = repository.aggregate(index.between(20, 40), amount);
+
+        Assert.assertEquals(calls, (Integer) 3);
+        Assert.assertEquals(aggregate.getCount(), 3);
+        Assert.assertEquals(aggregate.getSum(), 90.0);
+        Assert.assertEquals(aggregate.getMinimum(), 20.0);
+        Assert.assertEquals(aggregate.getMaximum(), 40.0);
+    }
+
+    /**
+     * Tests that aggregates ignore null values.
+     */
+    @Test
+    public final void testAggregate_NullValues() {
+        final CollectionRepository<TestClass> plain; // Without index
+        final Aggregate aggregate;                   // Aggregate of amounts
+
+        plain = new CollectionRepository<TestClass>();
+        plain.add(new TestClass("a", 10));
+        plain.add(new TestClass("b", null));
+        plain.add(new TestClass("c", 30));
+
+        aggregate = plain.aggregate(Predicates.<TestClass> alwaysTrue(),
+                amount);
+
+        Assert.assertEquals(aggregate.getCount(), 2);
+        Assert.assertEquals(aggregate.getAverage(), 20.0);
+    }
+
+    /**
+     * Tests that aggregates sum long values beyond double precision exactly.
+     */
+    @Test
+    public final void testAggregate_LargeLongs_Exact() {
+        final Aggregate aggregate; // Aggregate of the large values
+        final long value;          // Value which a double can't hold
+
+        value = (1L << 53) + 1;
+
+        aggregate = Aggregate.of(ImmutableList.of(value, value, value)
+                .iterator(), Functions.<Long> identity());
+
+        Assert.assertEquals(aggregate.getExactSum(),
+                BigDecimal.valueOf(value * 3));
+        Assert.assertEquals(aggregate.merge(aggregate).getExactSum(),
+                BigDecimal.valueOf(value * 6));
+    }
+
+    /**
+     * Tests that aggregates sum long values exactly past the long range.
+     */
+    @Test
+    public final void testAggregate_Overflow_Exact() {
+        final Aggregate aggregate; // Aggregate of the highest longs
+
+        aggregate = Aggregate.of(
+                ImmutableList.of(Long.MAX_VALUE, Long.MAX_VALUE, 1L)
+                        .iterator(), Functions.<Long> identity());
+
+        Assert.assertEquals(aggregate.getExactSum(),
+                BigDecimal.valueOf(Long.MAX_VALUE).multiply(
+                        BigDecimal.valueOf(2)).add(BigDecimal.ONE));
+    }
+
+    /**
+     * Tests that merged aggregates cover both sets of values.
+     */
+    @Test
+    public final void testAggregate_Merge() {
+        final Aggregate low;    // Aggregate of the low amounts
+        final Aggregate high;   // Aggregate of the high amounts
+        final Aggregate merged; // Merged aggregate
+
+        low = repository.aggregate(index.atMost(20), amount);
+        high = repository.aggregate(index.greaterThan(20), amount);
+
+        merged = low.merge(high);
+
+        Assert.assertEquals(merged.getCount(), 5);
+        Assert.assertEquals(merged.getSum(), 150.0);
+        Assert.assertEquals(merged.getMinimum(), 10.0);
+        Assert.assertEquals(merged.getMaximum(), 50.0);
+        Assert.assertEquals(low.merge(Aggregate.empty()), low);
+    }
+
+    /**
+     * Tests that counting returns the number of matching entities.
+     */
+    @Test
+    public final void testCount() {
+        Assert.assertEquals(repository.count(index.atLeast(30)), 3);
+        Assert.assertEquals(
+                repository.count(Predicates.<TestClass> alwaysTrue()), 5);
+        Assert.assertEquals(
+                repository.count(Predicates.<TestClass> alwaysFalse()), 0);
+    }
+
+    /**
+     * Tests that counting through an index only checks the entities in the
+     * range.
+     */
+    @Test
+    public final void testCount_Indexed() {
+        calls = 0;
+
+        Assert.assertEquals(repository.count(index.between(20, 30)), 2);
+        Assert.assertEquals(calls, (Integer) 2);
+    }
+
+    /**
+     * Tests that exists returns false when no entity matches.
+     */
+    @Test
+    public final void testExists_NoMatch() {
+        Assert.assertFalse(repository.exists(index.lessThan(10)));
+        Assert.assertFalse(
+                repository.exists(Predicates.<TestClass> alwaysFalse()));
+    }
+
+    /**
+     * Tests that exists stops at the first matching entity.
+     */
+    @Test
+    public final void testExists_StopsAtFirst() {
+        final List<String> checked; // Names of the checked entities
+
+        checked = new ArrayList<String>();
+
+        Assert.assertTrue(repository.exists(new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                checked.add(input.getName());
+                return true;
+            }
+
+        }));
+        Assert.assertEquals(checked.size(), 1);
+    }
+
+    /**
+     * Tests that multi-version repositories count and aggregate their
+     * snapshot.
+     */
+    @Test
+    public final void testMultiVersion() {
+        final MultiVersionRepository<TestClass> versioned; // Tested repository
+        final Predicate<TestClass> high;                    // Filter
+
+        versioned = new MultiVersionRepository<TestClass>();
+        versioned.addAll(getEntities());
+        versioned.remove(new TestClass("a", 10));
+
+        high = new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return input.getAmount() > 20;
+            }
+
+        };
+
+        Assert.assertEquals(versioned.count(high), 3);
+        Assert.assertEquals(
+                versioned.count(Predicates.<TestClass> alwaysTrue()), 4);
+        Assert.assertTrue(versioned.exists(high));
+        Assert.assertFalse(
+                versioned.exists(Predicates.<TestClass> alwaysFalse()));
+        Assert.assertEquals(versioned.aggregate(high, amount).getSum(), 120.0);
+    }
+
+    /**
+     * Tests that sharded repositories merge the results of all the shards.
+     */
+    @Test
+    public final void testSharded() {
+        final FilteredRepository<TestClass, Predicate<TestClass>> sharded;
+        final List<CollectionRepository<TestClass>> shards; // Inner shards
+        final Aggregate aggregate;                           // All amounts
+
+        shards = new ArrayList<CollectionRepository<TestClass>>();
+        for (Integer i = 0; i < 3; i++) {
+            shards.add(new CollectionRepository<TestClass>());
+        }
+
+        sharded = new ShardedRepository<TestClass, Predicate<TestClass>>(
+                shards, new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getName();
+                    }
+
+                });
+        sharded.addAll(getEntities());
+
+        aggregate = sharded.aggregate(Predicates.<TestClass> alwaysTrue(),
+                amount);
+
+        Assert.assertEquals(
+                sharded.count(Predicates.<TestClass> alwaysTrue()), 5);
+        Assert.assertTrue(sharded.exists(Predicates.<TestClass> alwaysTrue()));
+        Assert.assertFalse(
+                sharded.exists(Predicates.<TestClass> alwaysFalse()));
+        Assert.assertEquals(aggregate.getCount(), 5);
+        Assert.assertEquals(aggregate.getSum(), 150.0);
+        Assert.assertEquals(aggregate.getMinimum(), 10.0);
+        Assert.assertEquals(aggregate.getMaximum(), 50.0);
+    }
+
+    /**
+     * Returns the entities stored in the repositories.
+     * 
+     * @return the test entities
+     */
+    private final List<TestClass> getEntities() {
+        final List<TestClass> entities; // Test entities
+
+        entities = new ArrayList<TestClass>();
+        entities.add(new TestClass("c", 30));
+        entities.add(new TestClass("a", 10));
+        entities.add(new TestClass("e", 50));
+        entities.add(new TestClass("b", 20));
+        entities.add(new TestClass("d", 40));
+
+        return entities;
+    }
+
+}
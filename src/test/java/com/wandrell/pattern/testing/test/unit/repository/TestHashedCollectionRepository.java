@@ -0,0 +1,227 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.FilteredRepository;
+
+/**
+ * Unit tests for {@link CollectionRepository} when it is backed by an
+ * equality-based hash index.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are added in insertion order</li>
+ * <li>Adding an entity equal to a stored one does not duplicate it</li>
+ * <li>Entities are removed correctly</li>
+ * <li>Updating replaces the stored entity without changing its position</li>
+ * <li>Updating a non existing entity does not add it</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CollectionRepository
+ */
+public final class TestHashedCollectionRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private FilteredRepository<TestClass, Predicate<TestClass>> repository;
+
+    /**
+     * Test class, identified by its name and carrying a value which is not
+     * used for equality.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Value stored in the class.
+         */
+        private final Integer value;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param value
+         *            the value
+         */
+        public TestClass(final String name, final Integer value) {
+            super();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the value stored in the class.
+         * 
+         * @return the value
+         */
+        public final Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("value", value).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestHashedCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new CollectionRepository<TestClass>(
+                new LinkedHashMap<TestClass, TestClass>());
+
+        repository.add(new TestClass("a", 1));
+        repository.add(new TestClass("b", 2));
+        repository.add(new TestClass("c", 3));
+    }
+
+    /**
+     * Tests that entities are added in insertion order.
+     */
+    @Test
+    public final void testAdd_KeepsOrder() {
+        final Iterator<TestClass> entities; // All the entities
+
+        repository.add(new TestClass("d", 4));
+
+        entities = repository.getAll().iterator();
+
+        Assert.assertEquals(entities.next(), new TestClass("a", 0));
+        Assert.assertEquals(entities.next(), new TestClass("b", 0));
+        Assert.assertEquals(entities.next(), new TestClass("c", 0));
+        Assert.assertEquals(entities.next(), new TestClass("d", 0));
+        Assert.assertFalse(entities.hasNext());
+    }
+
+    /**
+     * Tests that adding an entity equal to a stored one does not duplicate it.
+     */
+    @Test
+    public final void testAdd_Repeated_NotDuplicated() {
+        repository.add(new TestClass("a", 10));
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertEquals(repository.getAll().iterator().next().getValue(),
+                (Integer) 1);
+    }
+
+    /**
+     * Tests that entities are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove(new TestClass("b", 0));
+
+        Assert.assertEquals(repository.getAll().size(), 2);
+        Assert.assertFalse(
+                repository.getAll().contains(new TestClass("b", 0)));
+    }
+
+    /**
+     * Tests that updating replaces the stored entity without changing its
+     * position.
+     */
+    @Test
+    public final void testUpdate_Existing_ReplacedInPlace() {
+        final Iterator<TestClass> entities; // All the entities
+
+        repository.update(new TestClass("a", 10));
+
+        entities = repository.getAll().iterator();
+
+        Assert.assertEquals(entities.next().getValue(), (Integer) 10);
+        Assert.assertEquals(entities.next().getValue(), (Integer) 2);
+        Assert.assertEquals(entities.next().getValue(), (Integer) 3);
+        Assert.assertFalse(entities.hasNext());
+    }
+
+    /**
+     * Tests that updating a non existing entity does not add it.
+     */
+    @Test
+    public final void testUpdate_NotExisting_NoAdd() {
+        repository.update(new TestClass("d", 4));
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertFalse(
+                repository.getAll().contains(new TestClass("d", 4)));
+    }
+
+}
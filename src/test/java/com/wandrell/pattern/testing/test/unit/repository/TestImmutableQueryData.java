@@ -0,0 +1,162 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.ImmutableQueryData;
+import com.wandrell.pattern.repository.QueryData;
+
+/**
+ * Unit tests for {@link ImmutableQueryData}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Data with the same parameters in a different order is equal</li>
+ * <li>Data with different parameters is not equal</li>
+ * <li>Changes to the source parameters don't affect the data</li>
+ * <li>Copying immutable data returns the same instance</li>
+ * <li>The parameters can't be modified</li>
+ * <li>Parameters with null values are supported</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ImmutableQueryData
+ */
+public final class TestImmutableQueryData {
+
+    /**
+     * Default constructor.
+     */
+    public TestImmutableQueryData() {
+        super();
+    }
+
+    /**
+     * Tests that the parameters can't be modified.
+     */
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public final void testAddParameter_Unsupported() {
+        new ImmutableQueryData("query").addParameter("key", "value");
+    }
+
+    /**
+     * Tests that changes to the source parameters don't affect the data.
+     */
+    @Test
+    public final void testConstructor_SourceChanged_NotChanged() {
+        final Map<String, Object> params; // Source parameters
+        final QueryData data;             // Tested data
+
+        params = new LinkedHashMap<String, Object>();
+        params.put("a", 1);
+
+        data = new ImmutableQueryData("query", params);
+
+        params.put("b", 2);
+
+        Assert.assertEquals(data.getParameters().size(), 1);
+    }
+
+    /**
+     * Tests that parameters with null values are supported.
+     */
+    @Test
+    public final void testCopyOf_NullValue_Supported() {
+        final Map<String, Object> params; // Parameters with a null value
+        final QueryData first;            // First data
+        final QueryData second;           // Second data
+
+        params = new LinkedHashMap<String, Object>();
+        params.put("a", null);
+
+        first = new DefaultQueryData("query", params);
+        second = new DefaultQueryData("query",
+                new LinkedHashMap<String, Object>(params));
+
+        Assert.assertTrue(ImmutableQueryData.copyOf(first).getParameters()
+                .containsKey("a"));
+        Assert.assertEquals(ImmutableQueryData.copyOf(first),
+                ImmutableQueryData.copyOf(second));
+    }
+
+    /**
+     * Tests that copying immutable data returns the same instance.
+     */
+    @Test
+    public final void testCopyOf_Immutable_Same() {
+        final ImmutableQueryData data; // Tested data
+
+        data = new ImmutableQueryData("query");
+
+        Assert.assertSame(ImmutableQueryData.copyOf(data), data);
+    }
+
+    /**
+     * Tests that data with different parameters is not equal.
+     */
+    @Test
+    public final void testEquals_DifferentParameters_NotEqual() {
+        final QueryData first;  // First data
+        final QueryData second; // Second data
+
+        first = new DefaultQueryData("query");
+        first.addParameter("a", 1);
+
+        second = new DefaultQueryData("query");
+        second.addParameter("a", 2);
+
+        Assert.assertNotEquals(ImmutableQueryData.copyOf(first),
+                ImmutableQueryData.copyOf(second));
+    }
+
+    /**
+     * Tests that data with the same parameters in a different order is equal.
+     */
+    @Test
+    public final void testEquals_ParametersReordered_Equal() {
+        final QueryData first;  // First data
+        final QueryData second; // Second data
+
+        first = new DefaultQueryData("query");
+        first.addParameter("a", 1);
+        first.addParameter("b", 2);
+
+        second = new DefaultQueryData("query");
+        second.addParameter("b", 2);
+        second.addParameter("a", 1);
+
+        Assert.assertEquals(ImmutableQueryData.copyOf(first),
+                ImmutableQueryData.copyOf(second));
+        Assert.assertEquals(ImmutableQueryData.copyOf(first).hashCode(),
+                ImmutableQueryData.copyOf(second).hashCode());
+    }
+
+}
@@ -0,0 +1,454 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Objects;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.repository.LogFileRepository;
+
+/**
+ * Unit tests for {@link LogFileRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Added, updated and removed entities are kept after reopening</li>
+ * <li>Entities are kept after compacting and reopening</li>
+ * <li>Compacting deletes the older files</li>
+ * <li>The log is compacted in the background once it is big enough</li>
+ * <li>An incomplete record at the end of the log is ignored</li>
+ * <li>A zero filled record at the end of the log is ignored</li>
+ * <li>A record not matching its checksum is dropped along with the later
+ * ones</li>
+ * <li>Batches are kept after reopening</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see LogFileRepository
+ */
+public final class TestLogFileRepository {
+
+    /**
+     * Charset used to encode the entities.
+     */
+    private static final Charset         CHARSET = StandardCharsets.UTF_8;
+    /**
+     * Directory for the files.
+     */
+    private Path                         directory;
+    /**
+     * The repository being tested.
+     */
+    private LogFileRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and carrying a value which is not
+     * used for equality.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String name;
+        /**
+         * Value stored in the class.
+         */
+        private final String value;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param value
+         *            the value
+         */
+        public TestClass(final String name, final String value) {
+            super();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the value stored in the class.
+         * 
+         * @return the value
+         */
+        public final String getValue() {
+            return value;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("value", value).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestLogFileRepository() {
+        super();
+    }
+
+    /**
+     * Closes the repository and deletes the files after each test.
+     * 
+     * @throws IOException
+     *             if the files can't be deleted
+     */
+    @AfterMethod
+    public final void finish() throws IOException {
+        repository.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     * 
+     * @throws IOException
+     *             if the directory can't be created
+     */
+    @BeforeMethod
+    public final void initialize() throws IOException {
+        directory = Files.createTempDirectory("log-repository");
+        repository = open(Long.MAX_VALUE);
+
+        repository.add(new TestClass("a", "1"));
+        repository.add(new TestClass("b", "2"));
+        repository.add(new TestClass("c", "3"));
+    }
+
+    /**
+     * Tests that the log is compacted in the background once it is big
+     * enough.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testAdd_BigLog_Compacted() throws IOException {
+        repository.close();
+        repository = open(64);
+
+        for (Integer i = 0; i < 20; i++) {
+            repository.add(new TestClass("entity" + i, "value"));
+        }
+
+        repository.close();
+
+        Assert.assertFalse(list("snapshot-*").isEmpty());
+
+        repository = open(Long.MAX_VALUE);
+
+        Assert.assertEquals(repository.getAll().size(), 23);
+    }
+
+    /**
+     * Tests that compacting deletes the older files.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testCompact_OldFilesDeleted() throws IOException {
+        repository.compact();
+        repository.add(new TestClass("d", "4"));
+        repository.compact();
+
+        Assert.assertEquals(list("*").size(), 2);
+        Assert.assertEquals(list("snapshot-2.dat").size(), 1);
+        Assert.assertEquals(list("log-2.dat").size(), 1);
+    }
+
+    /**
+     * Tests that entities are kept after compacting and reopening.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testCompact_Reopen_Kept() throws IOException {
+        repository.compact();
+        repository.update(new TestClass("a", "10"));
+        repository.compact();
+        repository.remove(new TestClass("b", ""));
+
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "10", "c", "3");
+    }
+
+    /**
+     * Tests that batches are kept after reopening.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testReopen_Batch_Kept() throws IOException {
+        repository.addAll(Arrays.asList(new TestClass("d", "4"),
+                new TestClass("a", "0")));
+        repository.updateAll(Arrays.asList(new TestClass("a", "10"),
+                new TestClass("z", "0")));
+        repository.removeAll(Arrays.asList(new TestClass("b", ""),
+                new TestClass("c", "")));
+
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "10", "d", "4");
+    }
+
+    /**
+     * Tests that an incomplete record at the end of the log is ignored.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testReopen_IncompleteRecord_Ignored()
+            throws IOException {
+        repository.close();
+
+        Files.write(directory.resolve("log-0.dat"), new byte[] { 1, 0, 0 },
+                StandardOpenOption.APPEND);
+
+        repository = open(Long.MAX_VALUE);
+        repository.add(new TestClass("d", "4"));
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "1", "b", "2", "c", "3", "d", "4");
+    }
+
+    /**
+     * Tests that a record not matching its checksum is dropped along with the
+     * later ones.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testReopen_CorruptRecord_LaterDropped()
+            throws IOException {
+        final Path log;     // Log with the records
+        final byte[] bytes; // Contents of the log
+        final int record;   // Size of each record
+
+        repository.close();
+
+        log = directory.resolve("log-0.dat");
+        bytes = Files.readAllBytes(log);
+
+        // Damages the last byte of the second record
+        record = bytes.length / 3;
+        bytes[(record * 2) - 1] ^= 0x7F;
+        Files.write(log, bytes);
+
+        repository = open(Long.MAX_VALUE);
+        assertContents("a", "1");
+
+        repository.add(new TestClass("d", "4"));
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "1", "d", "4");
+    }
+
+    /**
+     * Tests that a zero filled record at the end of the log is ignored.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testReopen_ZeroFilledRecord_Ignored()
+            throws IOException {
+        repository.close();
+
+        Files.write(directory.resolve("log-0.dat"), new byte[32],
+                StandardOpenOption.APPEND);
+
+        repository = open(Long.MAX_VALUE);
+        repository.add(new TestClass("d", "4"));
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "1", "b", "2", "c", "3", "d", "4");
+    }
+
+    /**
+     * Tests that added, updated and removed entities are kept after
+     * reopening.
+     * 
+     * @throws IOException
+     *             if the files can't be read
+     */
+    @Test
+    public final void testReopen_Kept() throws IOException {
+        repository.update(new TestClass("a", "10"));
+        repository.remove(new TestClass("b", ""));
+
+        repository.close();
+        repository = open(Long.MAX_VALUE);
+
+        assertContents("a", "10", "c", "3");
+    }
+
+    /**
+     * Checks that the repository contains the expected entities, in order.
+     * 
+     * @param expected
+     *            pairs of name and value for each entity
+     */
+    private final void assertContents(final String... expected) {
+        final Iterator<TestClass> entities; // All the entities
+        TestClass entity;
+
+        Assert.assertEquals(repository.getAll().size(), expected.length / 2);
+
+        entities = repository.getAll().iterator();
+        for (Integer i = 0; i < expected.length; i += 2) {
+            entity = entities.next();
+            Assert.assertEquals(entity.getName(), expected[i]);
+            Assert.assertEquals(entity.getValue(), expected[i + 1]);
+        }
+    }
+
+    /**
+     * Lists the files in the directory matching the pattern.
+     * 
+     * @param pattern
+     *            glob pattern for the files
+     * @return the matching files
+     * @throws IOException
+     *             if the directory can't be read
+     */
+    private final Collection<Path> list(final String pattern)
+            throws IOException {
+        final Collection<Path> result;
+
+        result = new LinkedList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                pattern)) {
+            for (final Path file : files) {
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Opens a repository in the test directory.
+     * 
+     * @param threshold
+     *            log size before compacting
+     * @return the repository
+     */
+    private final LogFileRepository<TestClass> open(final long threshold) {
+        return new LogFileRepository<TestClass>(directory,
+                new Parser<TestClass, byte[]>() {
+
+                    @Override
+                    public final byte[] parse(final TestClass input) {
+                        return (input.getName() + ":" + input.getValue())
+                                .getBytes(CHARSET);
+                    }
+
+                }, new Parser<ByteBuffer, TestClass>() {
+
+                    @Override
+                    public final TestClass parse(final ByteBuffer input) {
+                        final String[] fields;
+
+                        fields = CHARSET.decode(input).toString().split(":", -1);
+
+                        return new TestClass(fields[0], fields[1]);
+                    }
+
+                }, threshold);
+    }
+
+}
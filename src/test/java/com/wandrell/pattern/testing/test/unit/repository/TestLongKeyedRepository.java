@@ -0,0 +1,191 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.LongKeyExtractor;
+import com.wandrell.pattern.repository.LongKeyedRepository;
+
+/**
+ * Unit tests for {@link LongKeyedRepository}. For this test the repository
+ * will contain {@code String} entities, where the key is a number prefixing
+ * the string.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities can be found by their key</li>
+ * <li>Adding an entity with an existing key does nothing</li>
+ * <li>Updating replaces the entity with the same key</li>
+ * <li>Entities can be removed by their key or by themselves</li>
+ * <li>The {@code getCollection} method filters the entities correctly</li>
+ * <li>Random additions and removals give the same result as a map</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see LongKeyedRepository
+ */
+public final class TestLongKeyedRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private LongKeyedRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestLongKeyedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new LongKeyedRepository<String>(
+                new LongKeyExtractor<String>() {
+
+                    @Override
+                    public final long getKey(final String entity) {
+                        return Long.parseLong(entity.split(":")[0]);
+                    }
+
+                });
+
+        repository.add("1:a");
+        repository.add("2:b");
+        repository.add("-3:c");
+    }
+
+    /**
+     * Tests that adding an entity with an existing key does nothing.
+     */
+    @Test
+    public final void testAdd_ExistingKey_Ignored() {
+        repository.add("1:z");
+
+        Assert.assertEquals(repository.get(1), "1:a");
+        Assert.assertEquals(repository.size(), 3);
+    }
+
+    /**
+     * Tests that entities can be found by their key.
+     */
+    @Test
+    public final void testGet_Found() {
+        Assert.assertEquals(repository.get(2), "2:b");
+        Assert.assertEquals(repository.get(-3), "-3:c");
+        Assert.assertNull(repository.get(4));
+        Assert.assertTrue(repository.contains(1));
+        Assert.assertFalse(repository.contains(0));
+    }
+
+    /**
+     * Test that the {@code getCollection} method filters the entities
+     * correctly.
+     */
+    @Test
+    public final void testGetCollection_Filter_Filters() {
+        Assert.assertEquals(
+                repository.getCollection(new Predicate<String>() {
+
+                    @Override
+                    public final boolean apply(final String entity) {
+                        return entity.endsWith("b");
+                    }
+
+                }).iterator().next(), "2:b");
+    }
+
+    /**
+     * Tests that random additions and removals give the same result as a map.
+     */
+    @Test
+    public final void testRandom_SameAsMap() {
+        final Map<Long, String> expected; // Reference map
+        final Random random;              // Random source
+        long key;
+
+        expected = new HashMap<Long, String>();
+        expected.put(1L, "1:a");
+        expected.put(2L, "2:b");
+        expected.put(-3L, "-3:c");
+
+        random = new Random(42);
+        for (Integer i = 0; i < 20000; i++) {
+            // Small key space, so there are many collisions and removals
+            key = random.nextInt(512) - 256;
+            if (random.nextBoolean()) {
+                repository.add(key + ":" + i);
+                if (!expected.containsKey(key)) {
+                    expected.put(key, key + ":" + i);
+                }
+            } else {
+                Assert.assertEquals(repository.remove(key),
+                        expected.remove(key));
+            }
+        }
+
+        Assert.assertEquals(repository.size(), expected.size());
+        for (long k = -256; k < 256; k++) {
+            Assert.assertEquals(repository.get(k), expected.get(k));
+        }
+    }
+
+    /**
+     * Tests that entities can be removed by their key or by themselves.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        Assert.assertEquals(repository.remove(2), "2:b");
+        repository.remove("-3:x");
+
+        Assert.assertNull(repository.remove(2));
+        Assert.assertEquals(repository.getAll().size(), 1);
+        Assert.assertEquals(repository.get(1), "1:a");
+    }
+
+    /**
+     * Tests that updating replaces the entity with the same key.
+     */
+    @Test
+    public final void testUpdate_Replaces() {
+        repository.update("1:z");
+        repository.update("5:z");
+
+        Assert.assertEquals(repository.get(1), "1:z");
+        Assert.assertFalse(repository.contains(5));
+    }
+
+}
@@ -0,0 +1,328 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.MaterializedView;
+
+/**
+ * Unit tests for {@link CollectionRepository} using a
+ * {@link MaterializedView}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>The view contains the entities validating its filter</li>
+ * <li>Queries with the view filter only check the entities in the view</li>
+ * <li>The view is kept updated when adding entities</li>
+ * <li>Queries with the view filter return all the equal entities stored</li>
+ * <li>The view is kept updated when removing entities</li>
+ * <li>The view is kept updated when updating entities</li>
+ * <li>The view is kept updated when updating entities on a hashed
+ * repository</li>
+ * <li>Entities stored before registering the view are added to it</li>
+ * <li>The view is not used for other filters</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see MaterializedView
+ */
+public final class TestMaterializedViewCollectionRepository {
+
+    /**
+     * Counts the times the view filter is applied.
+     */
+    private Integer                         calls;
+    /**
+     * Filter of the view.
+     */
+    private Predicate<TestClass>            filter;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+    /**
+     * The view being tested.
+     */
+    private MaterializedView<TestClass>     view;
+
+    /**
+     * Test class, identified by its name and with a status.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String name;
+        /**
+         * Status of the class, used by the view.
+         */
+        private final String status;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param status
+         *            the status
+         */
+        public TestClass(final String name, final String status) {
+            super();
+
+            this.name = name;
+            this.status = status;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the status of the class.
+         * 
+         * @return the status
+         */
+        public final String getStatus() {
+            return status;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("status", status).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestMaterializedViewCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and view being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+
+        filter = new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                calls++;
+                return "open".equals(input.getStatus());
+            }
+
+        };
+
+        repository = new CollectionRepository<TestClass>();
+        view = new MaterializedView<TestClass>("open", filter);
+
+        repository.addIndex(view);
+
+        repository.add(new TestClass("a", "open"));
+        repository.add(new TestClass("b", "closed"));
+        repository.add(new TestClass("c", "open"));
+        repository.add(new TestClass("d", "closed"));
+    }
+
+    /**
+     * Tests that the view is kept updated when adding entities.
+     */
+    @Test
+    public final void testAdd_ViewUpdated() {
+        repository.add(new TestClass("e", "open"));
+        repository.add(new TestClass("f", "closed"));
+
+        Assert.assertEquals(view.size(), 3);
+        Assert.assertTrue(view.getEntities().contains(new TestClass("e", "")));
+    }
+
+    /**
+     * Tests that queries with the view filter return all the equal entities
+     * stored.
+     */
+    @Test
+    public final void testAdd_Duplicates_AllReturned() {
+        repository.add(new TestClass("a", "open"));
+
+        Assert.assertEquals(repository.getCollection(filter).size(), 3);
+        Assert.assertEquals(repository.count(filter), 3);
+    }
+
+    /**
+     * Tests that entities stored before registering the view are added to it.
+     */
+    @Test
+    public final void testAddIndex_Existing_Added() {
+        final MaterializedView<TestClass> late; // View added after the data
+
+        late = new MaterializedView<TestClass>("closed",
+                new Predicate<TestClass>() {
+
+                    @Override
+                    public final boolean apply(final TestClass input) {
+                        return "closed".equals(input.getStatus());
+                    }
+
+                });
+
+        repository.addIndex(late);
+
+        Assert.assertEquals(late.size(), 2);
+    }
+
+    /**
+     * Tests that the view contains the entities validating its filter.
+     */
+    @Test
+    public final void testGetEntities_Filtered() {
+        final Collection<TestClass> entities; // Entities in the view
+
+        entities = view.getEntities();
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(entities.contains(new TestClass("a", "open")));
+        Assert.assertTrue(entities.contains(new TestClass("c", "open")));
+    }
+
+    /**
+     * Tests that queries with the view filter only check the entities in the
+     * view.
+     */
+    @Test
+    public final void testGetCollection_OnlyViewChecked() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        calls = 0;
+
+        entities = repository.getCollection(filter);
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertEquals(calls, (Integer) 2);
+    }
+
+    /**
+     * Tests that the view is not used for other filters.
+     */
+    @Test
+    public final void testGetCollection_OtherFilter_Scans() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return "closed".equals(input.getStatus());
+            }
+
+        });
+
+        Assert.assertEquals(entities.size(), 2);
+    }
+
+    /**
+     * Tests that the view is kept updated when removing entities.
+     */
+    @Test
+    public final void testRemove_ViewUpdated() {
+        repository.remove(new TestClass("a", "open"));
+
+        Assert.assertEquals(view.size(), 1);
+        Assert.assertFalse(
+                view.getEntities().contains(new TestClass("a", "open")));
+    }
+
+    /**
+     * Tests that the view is kept updated when updating entities.
+     */
+    @Test
+    public final void testUpdate_ViewUpdated() {
+        repository.update(new TestClass("a", "closed"));
+        repository.update(new TestClass("b", "open"));
+
+        Assert.assertEquals(view.size(), 2);
+        Assert.assertTrue(view.getEntities().contains(new TestClass("b", "")));
+        Assert.assertFalse(view.getEntities().contains(new TestClass("a", "")));
+    }
+
+    /**
+     * Tests that the view is kept updated when updating entities on a hashed
+     * repository.
+     */
+    @Test
+    public final void testUpdate_Hashed_ViewUpdated() {
+        final MaterializedView<TestClass> hashedView; // View for the hashed
+                                                      // repository
+
+        hashedView = new MaterializedView<TestClass>("open", filter);
+
+        repository = new CollectionRepository<TestClass>(
+                new LinkedHashMap<TestClass, TestClass>());
+        repository.addIndex(hashedView);
+        repository.add(new TestClass("e", "open"));
+
+        repository.update(new TestClass("e", "closed"));
+
+        Assert.assertEquals(hashedView.size(), 0);
+        Assert.assertTrue(repository.getCollection(filter).isEmpty());
+    }
+
+}
@@ -0,0 +1,419 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.wandrell.pattern.repository.MultiVersionRepository;
+
+/**
+ * Unit tests for {@link MultiVersionRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Adding an entity already stored does nothing</li>
+ * <li>Removed entities are not returned</li>
+ * <li>Updated entities replace the stored ones</li>
+ * <li>Updating an entity not stored does nothing</li>
+ * <li>Iterators keep the snapshot they were created on</li>
+ * <li>Readers never find an entity missing while it is updated</li>
+ * <li>Batch updates become visible at once</li>
+ * <li>Old versions are kept while a reader uses them</li>
+ * <li>Old versions are dropped once no reader uses them</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see MultiVersionRepository
+ */
+public final class TestMultiVersionRepository {
+
+    /**
+     * Number of entities stored.
+     */
+    private static final int                  ENTITIES = 50;
+
+    /**
+     * The repository being tested.
+     */
+    private MultiVersionRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and with a version.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Version of the class.
+         */
+        private final Integer version;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param version
+         *            the version
+         */
+        public TestClass(final String name, final Integer version) {
+            super();
+
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the version of the class.
+         * 
+         * @return the version
+         */
+        public final Integer getVersion() {
+            return version;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("version", version).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestMultiVersionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new MultiVersionRepository<TestClass>();
+
+        repository.addAll(getEntities(0));
+    }
+
+    /**
+     * Tests that adding an entity already stored does nothing.
+     */
+    @Test
+    public final void testAdd_Existing_Ignored() {
+        repository.add(new TestClass("e0", 99));
+
+        Assert.assertEquals(repository.getAll().size(), ENTITIES);
+        Assert.assertEquals(getVersion("e0"), (Integer) 0);
+    }
+
+    /**
+     * Tests that iterators keep the snapshot they were created on.
+     */
+    @Test
+    public final void testIterator_Snapshot() {
+        final Iterator<TestClass> itr; // Iterator created before the update
+
+        itr = repository.getIterator(Predicates.<TestClass> alwaysTrue());
+
+        repository.updateAll(getEntities(1));
+
+        while (itr.hasNext()) {
+            Assert.assertEquals(itr.next().getVersion(), (Integer) 0);
+        }
+    }
+
+    /**
+     * Tests that removed entities are not returned.
+     */
+    @Test
+    public final void testRemove_NotReturned() {
+        repository.remove(new TestClass("e0", 0));
+
+        Assert.assertEquals(repository.getAll().size(), ENTITIES - 1);
+        Assert.assertNull(getVersion("e0"));
+    }
+
+    /**
+     * Tests that old versions are kept while a reader uses them.
+     */
+    @Test
+    public final void testRead_Active_VersionsKept()
+            throws InterruptedException {
+        final CountDownLatch reading;  // Signals the reader started
+        final CountDownLatch resume;   // Lets the reader finish
+        final Set<Integer> versions;   // Versions seen by the reader
+        final Thread reader;           // Thread reading the repository
+
+        reading = new CountDownLatch(1);
+        resume = new CountDownLatch(1);
+        versions = new HashSet<Integer>();
+
+        reader = new Thread(new Runnable() {
+
+            @Override
+            public final void run() {
+                repository.getCollection(new Predicate<TestClass>() {
+
+                    @Override
+                    public final boolean apply(final TestClass input) {
+                        reading.countDown();
+                        try {
+                            resume.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        versions.add(input.getVersion());
+                        return true;
+                    }
+
+                });
+            }
+
+        });
+        reader.start();
+        reading.await(5, TimeUnit.SECONDS);
+
+        repository.updateAll(getEntities(1));
+        repository.updateAll(getEntities(2));
+
+        Assert.assertTrue(repository.getVersionCount() > ENTITIES);
+
+        resume.countDown();
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+
+        Assert.assertEquals(versions.size(), 1);
+        Assert.assertTrue(versions.contains(0));
+    }
+
+    /**
+     * Tests that old versions are dropped once no reader uses them.
+     */
+    @Test
+    public final void testUpdate_NoReaders_VersionsDropped() {
+        for (int i = 1; i <= 10; i++) {
+            repository.updateAll(getEntities(i));
+        }
+        repository.remove(new TestClass("e0", 0));
+        repository.add(new TestClass("x", 0));
+
+        Assert.assertEquals(repository.getVersionCount(), ENTITIES);
+    }
+
+    /**
+     * Tests that batch updates become visible at once.
+     */
+    @Test
+    public final void testUpdateAll_Concurrent_Atomic()
+            throws InterruptedException {
+        final AtomicBoolean running; // Flag for the writer
+        final Thread writer;         // Thread updating the entities
+        final Set<Integer> versions; // Versions seen on a read
+
+        running = new AtomicBoolean(true);
+        writer = new Thread(new Runnable() {
+
+            @Override
+            public final void run() {
+                int version;
+
+                version = 1;
+                while (running.get()) {
+                    repository.updateAll(getEntities(version));
+                    version++;
+                }
+            }
+
+        });
+        writer.start();
+
+        versions = new HashSet<Integer>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                versions.clear();
+                for (final TestClass entity : repository.getAll()) {
+                    versions.add(entity.getVersion());
+                }
+
+                Assert.assertEquals(versions.size(), 1);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    /**
+     * Tests that readers never find an entity missing while it is updated.
+     */
+    @Test
+    public final void testUpdate_Concurrent_NeverMissing()
+            throws InterruptedException {
+        final AtomicBoolean running; // Flag for the writer
+        final Thread writer;         // Thread updating the entities
+
+        running = new AtomicBoolean(true);
+        writer = new Thread(new Runnable() {
+
+            @Override
+            public final void run() {
+                int version;
+
+                version = 1;
+                while (running.get()) {
+                    repository.update(
+                            new TestClass("e" + (version % ENTITIES), version));
+                    version++;
+                }
+            }
+
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals(repository.getAll().size(), ENTITIES);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    /**
+     * Tests that updating an entity not stored does nothing.
+     */
+    @Test
+    public final void testUpdate_Missing_Ignored() {
+        repository.update(new TestClass("x", 1));
+
+        Assert.assertEquals(repository.getAll().size(), ENTITIES);
+        Assert.assertNull(getVersion("x"));
+    }
+
+    /**
+     * Tests that updated entities replace the stored ones.
+     */
+    @Test
+    public final void testUpdate_Replaced() {
+        repository.update(new TestClass("e0", 5));
+
+        Assert.assertEquals(repository.getAll().size(), ENTITIES);
+        Assert.assertEquals(getVersion("e0"), (Integer) 5);
+    }
+
+    /**
+     * Returns all the entities with the specified version.
+     * 
+     * @param version
+     *            the version for the entities
+     * @return all the entities
+     */
+    private final Collection<TestClass> getEntities(final int version) {
+        final List<TestClass> entities; // Created entities
+
+        entities = new ArrayList<TestClass>();
+        for (int i = 0; i < ENTITIES; i++) {
+            entities.add(new TestClass("e" + i, version));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Returns the version of the stored entity with the specified name.
+     * 
+     * @param name
+     *            the name of the entity
+     * @return the version of the entity, or {@code null} if it is not stored
+     */
+    private final Integer getVersion(final String name) {
+        final TestClass entity; // Stored entity
+        final Integer version;  // Version of the entity
+
+        entity = repository.getEntity(new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return input.equals(new TestClass(name, 0));
+            }
+
+        });
+
+        if (entity == null) {
+            version = null;
+        } else {
+            version = entity.getVersion();
+        }
+
+        return version;
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.repository.OffHeapRepository;
+
+/**
+ * Unit tests for {@link OffHeapRepository}. For this test the repository will
+ * contain {@code String} entities, encoded as UTF-8.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Entities are added correctly</li>
+ * <li>Entities bigger than the segments are stored</li>
+ * <li>Entities are removed correctly</li>
+ * <li>Entities are updated in place</li>
+ * <li>Updating a non existing entity does not add it</li>
+ * <li>The {@code getCollection} method filters the entities correctly</li>
+ * <li>Entities are kept after the segments are compacted</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see OffHeapRepository
+ */
+public final class TestOffHeapRepository {
+
+    /**
+     * Charset used to encode the entities.
+     */
+    private static final Charset      CHARSET = StandardCharsets.UTF_8;
+    /**
+     * Size of the segments.
+     */
+    private static final Integer      SEGMENT = 64;
+    /**
+     * The repository being tested.
+     */
+    private OffHeapRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestOffHeapRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new OffHeapRepository<String>(
+                new Parser<String, byte[]>() {
+
+                    @Override
+                    public final byte[] parse(final String input) {
+                        return input.getBytes(CHARSET);
+                    }
+
+                }, new Parser<ByteBuffer, String>() {
+
+                    @Override
+                    public final String parse(final ByteBuffer input) {
+                        return CHARSET.decode(input).toString();
+                    }
+
+                }, SEGMENT);
+
+        repository.add("a");
+        repository.add("b");
+        repository.add("c");
+    }
+
+    /**
+     * Tests that entities are added correctly.
+     */
+    @Test
+    public final void testAdd_Adds() {
+        repository.add("d");
+
+        Assert.assertEquals(repository.getAll().size(), 4);
+        Assert.assertTrue(repository.getAll().contains("d"));
+    }
+
+    /**
+     * Tests that entities bigger than the segments are stored.
+     */
+    @Test
+    public final void testAdd_BiggerThanSegment_Adds() {
+        final String entity; // Big entity
+
+        entity = Strings.repeat("x", SEGMENT * 3);
+
+        repository.add(entity);
+
+        Assert.assertTrue(repository.getAll().contains(entity));
+    }
+
+    /**
+     * Tests that entities are kept after the segments are compacted.
+     */
+    @Test
+    public final void testCompaction_EntitiesKept() {
+        for (Integer i = 0; i < SEGMENT * 4; i++) {
+            repository.add("entity" + i);
+            repository.remove("entity" + i);
+        }
+
+        repository.update("b");
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertTrue(repository.getAll().contains("a"));
+        Assert.assertTrue(repository.getAll().contains("b"));
+        Assert.assertTrue(repository.getAll().contains("c"));
+    }
+
+    /**
+     * Test that the {@code getCollection} method filters the entities
+     * correctly.
+     */
+    @Test
+    public final void testGetCollection_Filter_Filters() {
+        final Collection<String> entities; // Filtered entities
+
+        entities = repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return entity.equals("b");
+            }
+
+        });
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(entities.contains("b"));
+    }
+
+    /**
+     * Tests that entities are removed correctly.
+     */
+    @Test
+    public final void testRemove_Removes() {
+        repository.remove("b");
+
+        Assert.assertEquals(repository.getAll().size(), 2);
+        Assert.assertFalse(repository.getAll().contains("b"));
+    }
+
+    /**
+     * Tests that entities are updated in place.
+     */
+    @Test
+    public final void testUpdate_Existing_InPlace() {
+        final Iterator<String> entities; // All the entities
+
+        repository.update("b");
+
+        entities = repository.getAll().iterator();
+
+        Assert.assertEquals(entities.next(), "a");
+        Assert.assertEquals(entities.next(), "b");
+        Assert.assertEquals(entities.next(), "c");
+        Assert.assertFalse(entities.hasNext());
+    }
+
+    /**
+     * Tests that updating a non existing entity does not add it.
+     */
+    @Test
+    public final void testUpdate_NotExisting_NoAdd() {
+        repository.update("d");
+
+        Assert.assertEquals(repository.getAll().size(), 3);
+        Assert.assertFalse(repository.getAll().contains("d"));
+    }
+
+}
@@ -0,0 +1,234 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.AttributeIndex;
+import com.wandrell.pattern.repository.CollectionRepository;
+
+/**
+ * Unit tests for {@link CollectionRepository} running parallel scans.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Ordered parallel scans return the same as sequential scans</li>
+ * <li>Unordered parallel scans return the same entities as sequential
+ * scans</li>
+ * <li>Scans smaller than the threshold return the matches</li>
+ * <li>Exceptions thrown by the filter reach the caller</li>
+ * <li>Index lookups without matches return an empty result</li>
+ * <li>Index lookups on hashed repositories return the matches</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see CollectionRepository
+ */
+public final class TestParallelCollectionRepository {
+
+    /**
+     * Number of entities in the repository.
+     */
+    private static final Integer          ENTITIES  = 10000;
+    /**
+     * Maximum entities per parallel task.
+     */
+    private static final Integer          THRESHOLD = 100;
+    /**
+     * Filter accepting even numbers.
+     */
+    private Predicate<Integer>            even;
+    /**
+     * Pool running the scans.
+     */
+    private ForkJoinPool                  pool;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<Integer> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestParallelCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Stops the pool after each test.
+     */
+    @AfterMethod
+    public final void finish() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        pool = new ForkJoinPool(4);
+        even = new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                return (input % 2) == 0;
+            }
+
+        };
+        repository = new CollectionRepository<Integer>();
+
+        for (Integer i = 0; i < ENTITIES; i++) {
+            repository.add(i);
+        }
+    }
+
+    /**
+     * Tests that index lookups without matches return an empty result.
+     */
+    @Test
+    public final void testGetCollection_IndexNoMatch_Empty() {
+        final AttributeIndex<Integer> index; // Index over the entities
+
+        index = new AttributeIndex<Integer>("value",
+                Functions.<Integer> identity());
+        repository.addIndex(index);
+
+        repository.setParallelScan(pool, THRESHOLD, true);
+        Assert.assertTrue(
+                repository.getCollection(index.equalTo(-1)).isEmpty());
+
+        repository.setParallelScan(pool, THRESHOLD, false);
+        Assert.assertTrue(
+                repository.getCollection(index.equalTo(-1)).isEmpty());
+    }
+
+    /**
+     * Tests that index lookups on hashed repositories return the matches.
+     */
+    @Test
+    public final void testGetCollection_IndexHashed_Matches() {
+        final AttributeIndex<Integer> index; // Index over the entities
+
+        repository = new CollectionRepository<Integer>(
+                new LinkedHashMap<Integer, Integer>());
+        for (Integer i = 0; i < ENTITIES; i++) {
+            repository.add(i);
+        }
+
+        index = new AttributeIndex<Integer>("parity",
+                new Function<Integer, Integer>() {
+
+                    @Override
+                    public final Integer apply(final Integer input) {
+                        return input % 2;
+                    }
+
+                });
+        repository.addIndex(index);
+
+        repository.setParallelScan(pool, THRESHOLD, true);
+
+        Assert.assertEquals(repository.getCollection(index.equalTo(0)),
+                new ArrayList<Integer>(repository.getCollection(even)));
+    }
+
+    /**
+     * Tests that ordered parallel scans return the same as sequential scans.
+     */
+    @Test
+    public final void testGetCollection_Ordered_SameAsSequential() {
+        final List<Integer> sequential; // Sequential scan results
+        final List<Integer> parallel; // Parallel scan results
+
+        sequential = new ArrayList<Integer>(repository.getCollection(even));
+
+        repository.setParallelScan(pool, THRESHOLD, true);
+        parallel = new ArrayList<Integer>(repository.getCollection(even));
+
+        Assert.assertEquals(parallel.size(), ENTITIES / 2);
+        Assert.assertEquals(parallel, sequential);
+    }
+
+    /**
+     * Tests that scans smaller than the threshold return the matches.
+     */
+    @Test
+    public final void testGetCollection_SmallerThanThreshold() {
+        repository.setParallelScan(pool, ENTITIES * 2, true);
+
+        Assert.assertEquals(repository.getCollection(even).size(),
+                ENTITIES / 2);
+    }
+
+    /**
+     * Tests that exceptions thrown by the filter reach the caller.
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public final void testGetCollection_Throws_Propagated() {
+        repository.setParallelScan(pool, THRESHOLD, true);
+
+        repository.getCollection(new Predicate<Integer>() {
+
+            @Override
+            public final boolean apply(final Integer input) {
+                throw new IllegalStateException();
+            }
+
+        });
+    }
+
+    /**
+     * Tests that unordered parallel scans return the same entities as
+     * sequential scans.
+     */
+    @Test
+    public final void testGetCollection_Unordered_SameEntities() {
+        final Collection<Integer> sequential; // Sequential scan results
+        final Collection<Integer> parallel; // Parallel scan results
+
+        sequential = new HashSet<Integer>(repository.getCollection(even));
+
+        repository.setParallelScan(pool, THRESHOLD, false);
+        parallel = repository.getCollection(even);
+
+        Assert.assertEquals(parallel.size(), ENTITIES / 2);
+        Assert.assertTrue(new HashSet<Integer>(parallel).equals(sequential));
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.FilteredRepository;
+import com.wandrell.pattern.repository.ImmutableQueryData;
+import com.wandrell.pattern.repository.QueryCachedRepository;
+import com.wandrell.pattern.repository.QueryData;
+
+/**
+ * Unit tests for {@link QueryCachedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Equal queries built separately share the cached result</li>
+ * <li>The wrapped repository receives immutable query data</li>
+ * <li>Updating an entity invalidates the cached results</li>
+ * <li>Results expire after the set time</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see QueryCachedRepository
+ */
+public final class TestQueryCachedRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private QueryCachedRepository<String>         repository;
+    /**
+     * The wrapped repository.
+     */
+    private FilteredRepository<String, QueryData> wrapped;
+
+    /**
+     * Default constructor.
+     */
+    public TestQueryCachedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @SuppressWarnings("unchecked")
+    @BeforeMethod
+    public final void initialize() {
+        final Collection<String> result; // Result for the queries
+
+        wrapped = Mockito.mock(FilteredRepository.class);
+
+        result = Arrays.asList("a", "b");
+        Mockito.when(wrapped.getCollection(Matchers.any(QueryData.class)))
+                .thenReturn(result);
+
+        repository = new QueryCachedRepository<String>(wrapped, 10, 1,
+                TimeUnit.HOURS);
+    }
+
+    /**
+     * Tests that equal queries built separately share the cached result.
+     */
+    @Test
+    public final void testGetCollection_EqualQueries_Cached() {
+        repository.getCollection(query(1, 2));
+        repository.getCollection(query(1, 2));
+
+        Mockito.verify(wrapped, Mockito.times(1))
+                .getCollection(Matchers.any(QueryData.class));
+        Assert.assertEquals(repository.getStats().hitCount(), 1);
+    }
+
+    /**
+     * Tests that results expire after the set time.
+     */
+    @Test
+    public final void testGetCollection_Expired_NotCached() {
+        repository = new QueryCachedRepository<String>(wrapped, 10, 0,
+                TimeUnit.SECONDS);
+
+        repository.getCollection(query(1, 2));
+        repository.getCollection(query(1, 2));
+
+        Mockito.verify(wrapped, Mockito.times(2))
+                .getCollection(Matchers.any(QueryData.class));
+    }
+
+    /**
+     * Tests that the wrapped repository receives immutable query data.
+     */
+    @Test
+    public final void testGetCollection_ReceivesImmutable() {
+        repository.getCollection(query(1, 2));
+
+        Mockito.verify(wrapped)
+                .getCollection(Matchers.isA(ImmutableQueryData.class));
+    }
+
+    /**
+     * Tests that updating an entity invalidates the cached results.
+     */
+    @Test
+    public final void testUpdate_Invalidates() {
+        repository.getCollection(query(1, 2));
+        repository.update("a");
+        repository.getCollection(query(1, 2));
+
+        Mockito.verify(wrapped, Mockito.times(2))
+                .getCollection(Matchers.any(QueryData.class));
+    }
+
+    /**
+     * Creates a query with two parameters, added in order.
+     * 
+     * @param first
+     *            value for the first parameter
+     * @param second
+     *            value for the second parameter
+     * @return the query
+     */
+    private final QueryData query(final int first, final int second) {
+        final QueryData query;
+
+        query = new DefaultQueryData("select");
+        query.addParameter("first", first);
+        query.addParameter("second", second);
+
+        return query;
+    }
+
+}
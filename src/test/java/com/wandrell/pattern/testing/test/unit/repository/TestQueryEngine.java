@@ -0,0 +1,320 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
+import com.wandrell.pattern.parser.Parser;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.DefaultQueryData;
+import com.wandrell.pattern.repository.QueryData;
+import com.wandrell.pattern.repository.query.QueryCompiler;
+import com.wandrell.pattern.repository.query.QueryEngine;
+import com.wandrell.pattern.repository.query.QueryPlan;
+import com.wandrell.pattern.repository.query.QueryRepository;
+
+/**
+ * Unit tests for {@link QueryEngine}. For this test the repository will
+ * contain {@code String} entities, with their length registered as an
+ * attribute.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Parameters are bound into the query</li>
+ * <li>{@code AND} takes precedence over {@code OR}</li>
+ * <li>Parenthesis and {@code NOT} change the conditions</li>
+ * <li>Numbers are compared by their value</li>
+ * <li>String literals can contain escaped quotes</li>
+ * <li>Repeated queries reuse the compiled plan</li>
+ * <li>Concurrent requests for a query compile it only once</li>
+ * <li>Missing parameters cause an exception</li>
+ * <li>Unknown attributes cause an exception</li>
+ * <li>Syntax errors cause an exception</li>
+ * <li>The repository adapter filters through queries</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see QueryEngine
+ */
+public final class TestQueryEngine {
+
+    /**
+     * Compiler for the queries.
+     */
+    private QueryCompiler<String>        compiler;
+    /**
+     * The engine being tested.
+     */
+    private QueryEngine<String>          engine;
+    /**
+     * The repository being queried.
+     */
+    private CollectionRepository<String> repository;
+
+    /**
+     * Default constructor.
+     */
+    public TestQueryEngine() {
+        super();
+    }
+
+    /**
+     * Creates the engine being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        final Map<String, Function<? super String, ?>> attributes;
+
+        attributes = new LinkedHashMap<String, Function<? super String, ?>>();
+        attributes.put("value", new Function<String, String>() {
+
+            @Override
+            public final String apply(final String input) {
+                return input;
+            }
+
+        });
+        attributes.put("length", new Function<String, Integer>() {
+
+            @Override
+            public final Integer apply(final String input) {
+                return input.length();
+            }
+
+        });
+
+        compiler = new QueryCompiler<String>(attributes);
+        engine = new QueryEngine<String>(compiler, 10);
+
+        repository = new CollectionRepository<String>(
+                new LinkedList<String>());
+        repository.add("a");
+        repository.add("bb");
+        repository.add("ccc");
+        repository.add("it's");
+    }
+
+    /**
+     * Tests that {@code AND} takes precedence over {@code OR}.
+     */
+    @Test
+    public final void testExecute_AndOr_Precedence() {
+        Assert.assertEquals(execute(new DefaultQueryData(
+                "value = 'a' OR length > 1 AND length < 3")),
+                ImmutableSet.of("a", "bb"));
+    }
+
+    /**
+     * Tests that numbers are compared by their value.
+     */
+    @Test
+    public final void testExecute_Decimal_ComparedByValue() {
+        Assert.assertEquals(
+                execute(new DefaultQueryData("length >= 2.5 AND length != 4")),
+                ImmutableSet.of("ccc"));
+    }
+
+    /**
+     * Tests that string literals can contain escaped quotes.
+     */
+    @Test
+    public final void testExecute_EscapedQuote() {
+        Assert.assertEquals(execute(new DefaultQueryData("value = 'it''s'")),
+                ImmutableSet.of("it's"));
+    }
+
+    /**
+     * Tests that missing parameters cause an exception.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testExecute_MissingParameter_Exception() {
+        execute(new DefaultQueryData("length = :length"));
+    }
+
+    /**
+     * Tests that parenthesis and {@code NOT} change the conditions.
+     */
+    @Test
+    public final void testExecute_NotParenthesis() {
+        Assert.assertEquals(execute(new DefaultQueryData(
+                "NOT (value = 'a' OR length > 1) OR value = 'bb'")),
+                ImmutableSet.of("bb"));
+    }
+
+    /**
+     * Tests that parameters are bound into the query.
+     */
+    @Test
+    public final void testExecute_Parameter_Bound() {
+        final QueryData query; // Query to execute
+
+        query = new DefaultQueryData("length = :length");
+        query.addParameter("length", 3);
+
+        Assert.assertEquals(execute(query), ImmutableSet.of("ccc"));
+    }
+
+    /**
+     * Tests that syntax errors cause an exception.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetPlan_SyntaxError_Exception() {
+        engine.getPlan("(length = 1");
+    }
+
+    /**
+     * Tests that unknown attributes cause an exception.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public final void testGetPlan_UnknownAttribute_Exception() {
+        engine.getPlan("size = 1");
+    }
+
+    /**
+     * Tests that concurrent requests for a query compile it only once.
+     */
+    @Test
+    public final void testGetPlan_Concurrent_CompiledOnce()
+            throws InterruptedException {
+        final AtomicInteger compilations; // Times the query is compiled
+        final CountDownLatch start;       // Starts all the threads at once
+        final ExecutorService executor;   // Threads asking for the plan
+        final QueryEngine<String> slow;   // Engine with a slow compiler
+        final int threads;                // Number of threads
+
+        threads = 8;
+        compilations = new AtomicInteger();
+        start = new CountDownLatch(1);
+        slow = new QueryEngine<String>(
+                new Parser<String, QueryPlan<String>>() {
+
+                    @Override
+                    public final QueryPlan<String> parse(final String input) {
+                        compilations.incrementAndGet();
+                        try {
+                            Thread.sleep(50);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        return compiler.parse(input);
+                    }
+
+                }, 10);
+
+        executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+
+                @Override
+                public final void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    slow.getPlan("length > 1");
+                }
+
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(compilations.get(), 1);
+    }
+
+    /**
+     * Tests that repeated queries reuse the compiled plan.
+     */
+    @Test
+    public final void testGetPredicate_Repeated_PlanReused() {
+        final QueryData first;  // First query
+        final QueryData second; // Second query
+
+        first = new DefaultQueryData("length = :length");
+        first.addParameter("length", 1);
+        second = new DefaultQueryData("length = :length");
+        second.addParameter("length", 2);
+
+        Assert.assertEquals(execute(first), ImmutableSet.of("a"));
+        Assert.assertEquals(execute(second), ImmutableSet.of("bb"));
+
+        Assert.assertEquals(engine.getStats().missCount(), 1);
+        Assert.assertEquals(engine.getStats().hitCount(), 1);
+    }
+
+    /**
+     * Tests that the repository adapter filters through queries.
+     */
+    @Test
+    public final void testQueryRepository_Filters() {
+        final QueryRepository<String> adapter; // Adapted repository
+
+        adapter = new QueryRepository<String>(repository, engine);
+
+        Assert.assertEquals(
+                adapter.getEntity(new DefaultQueryData("length > 3")),
+                "it's");
+        Assert.assertEquals(
+                adapter.getCollection(new DefaultQueryData("length < 3"))
+                        .size(),
+                2);
+    }
+
+    /**
+     * Executes the query and returns the entities found as a set.
+     * 
+     * @param query
+     *            query to execute
+     * @return the entities found
+     */
+    private final Set<String> execute(final QueryData query) {
+        final Collection<String> result;
+
+        result = engine.execute(repository, query);
+
+        return new HashSet<String>(result);
+    }
+
+}
@@ -0,0 +1,341 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.RangeIndex;
+
+/**
+ * Unit tests for {@link CollectionRepository} using a {@link RangeIndex}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Range lookups return the matching entities in ascending order</li>
+ * <li>Descending lookups return the matching entities in descending
+ * order</li>
+ * <li>Open bounds exclude the limit values</li>
+ * <li>Lookups return all the equal entities stored</li>
+ * <li>Lookups only check the entities in the range</li>
+ * <li>Ordered lookups return all the entities sorted</li>
+ * <li>Iterators return the entities sorted</li>
+ * <li>The index is kept updated when removing entities</li>
+ * <li>The index is kept updated when updating entities</li>
+ * <li>Predicates still work on repositories without the index</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see RangeIndex
+ */
+public final class TestRangeIndexCollectionRepository {
+
+    /**
+     * Counts the times the indexed attribute is read.
+     */
+    private Integer                         calls;
+    /**
+     * The index being tested.
+     */
+    private RangeIndex<TestClass, Integer>  index;
+    /**
+     * The repository being tested.
+     */
+    private CollectionRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and with a timestamp.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Timestamp of the class, which will be indexed.
+         */
+        private final Integer timestamp;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param timestamp
+         *            the timestamp
+         */
+        public TestClass(final String name, final Integer timestamp) {
+            super();
+
+            this.name = name;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the timestamp of the class.
+         * 
+         * @return the timestamp
+         */
+        public final Integer getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("timestamp", timestamp).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestRangeIndexCollectionRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository and index being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+
+        repository = new CollectionRepository<TestClass>();
+        index = new RangeIndex<TestClass, Integer>("timestamp",
+                new Function<TestClass, Integer>() {
+
+                    @Override
+                    public final Integer apply(final TestClass input) {
+                        calls++;
+                        return input.getTimestamp();
+                    }
+
+                });
+
+        repository.addIndex(index);
+
+        repository.add(new TestClass("c", 30));
+        repository.add(new TestClass("a", 10));
+        repository.add(new TestClass("e", 50));
+        repository.add(new TestClass("b", 20));
+        repository.add(new TestClass("d", 40));
+    }
+
+    /**
+     * Tests that range lookups return the matching entities in ascending
+     * order.
+     */
+    @Test
+    public final void testBetween_Ascending() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(index.between(20, 40));
+
+        Assert.assertEquals(getNames(entities), Arrays.asList("b", "c", "d"));
+    }
+
+    /**
+     * Tests that lookups return all the equal entities stored.
+     */
+    @Test
+    public final void testBetween_Duplicates_AllReturned() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        repository.add(new TestClass("c", 30));
+
+        entities = repository.getCollection(index.between(20, 40));
+
+        Assert.assertEquals(getNames(entities),
+                Arrays.asList("b", "c", "c", "d"));
+        Assert.assertEquals(repository.count(index.between(20, 40)), 4);
+    }
+
+    /**
+     * Tests that descending lookups return the matching entities in
+     * descending order.
+     */
+    @Test
+    public final void testBetween_Descending() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository
+                .getCollection(index.between(20, 40).descending());
+
+        Assert.assertEquals(getNames(entities), Arrays.asList("d", "c", "b"));
+    }
+
+    /**
+     * Tests that lookups only check the entities in the range.
+     */
+    @Test
+    public final void testBetween_OnlyCandidatesChecked() {
+        calls = 0;
+
+        repository.getCollection(index.between(20, 30));
+
+        Assert.assertEquals(calls, (Integer) 2);
+    }
+
+    /**
+     * Tests that open bounds exclude the limit values.
+     */
+    @Test
+    public final void testGreaterThan_LessThan_Exclusive() {
+        Assert.assertEquals(
+                getNames(repository.getCollection(index.greaterThan(30))),
+                Arrays.asList("d", "e"));
+        Assert.assertEquals(
+                getNames(repository.getCollection(index.lessThan(30))),
+                Arrays.asList("a", "b"));
+    }
+
+    /**
+     * Tests that iterators return the entities sorted.
+     */
+    @Test
+    public final void testIterator_Descending() {
+        final Iterator<TestClass> itr; // Tested iterator
+
+        itr = repository.getIterator(index.atLeast(40).descending());
+
+        Assert.assertEquals(itr.next().getName(), "e");
+        Assert.assertEquals(itr.next().getName(), "d");
+        Assert.assertFalse(itr.hasNext());
+    }
+
+    /**
+     * Tests that predicates still work on repositories without the index.
+     */
+    @Test
+    public final void testNotRegistered_Filters() {
+        final CollectionRepository<TestClass> other; // Repository without index
+
+        other = new CollectionRepository<TestClass>();
+        other.add(new TestClass("a", 10));
+        other.add(new TestClass("b", 20));
+
+        Assert.assertEquals(other.getCollection(index.atMost(15)).size(), 1);
+    }
+
+    /**
+     * Tests that ordered lookups return all the entities sorted.
+     */
+    @Test
+    public final void testOrdered_AllSorted() {
+        Assert.assertEquals(getNames(repository.getCollection(index.ordered())),
+                Arrays.asList("a", "b", "c", "d", "e"));
+    }
+
+    /**
+     * Tests that the index is kept updated when removing entities.
+     */
+    @Test
+    public final void testRemove_IndexUpdated() {
+        repository.remove(new TestClass("c", 30));
+
+        Assert.assertEquals(
+                getNames(repository.getCollection(index.between(20, 40))),
+                Arrays.asList("b", "d"));
+    }
+
+    /**
+     * Tests that the index is kept updated when updating entities.
+     */
+    @Test
+    public final void testUpdate_IndexUpdated() {
+        repository.update(new TestClass("a", 35));
+
+        Assert.assertEquals(
+                getNames(repository.getCollection(index.between(20, 40))),
+                Arrays.asList("b", "c", "a", "d"));
+    }
+
+    /**
+     * Returns the names of the entities, keeping their order.
+     * 
+     * @param entities
+     *            the entities to read
+     * @return the names of the entities
+     */
+    private final List<String> getNames(final Collection<TestClass> entities) {
+        final List<String> names; // Names of the entities
+
+        names = new LinkedList<String>();
+        for (final TestClass entity : entities) {
+            names.add(entity.getName());
+        }
+
+        return names;
+    }
+
+}
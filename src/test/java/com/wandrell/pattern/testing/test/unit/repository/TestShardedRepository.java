@@ -0,0 +1,470 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.wandrell.pattern.repository.CollectionRepository;
+import com.wandrell.pattern.repository.ShardedRepository;
+
+/**
+ * Unit tests for {@link ShardedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Each entity is stored in a single shard</li>
+ * <li>The entities are spread across the shards</li>
+ * <li>Removing an entity only touches its shard</li>
+ * <li>Updating an entity replaces it in its shard</li>
+ * <li>Queries merge the results of all the shards</li>
+ * <li>Parallel queries return the same entities</li>
+ * <li>Pages span several shards</li>
+ * <li>Pages return the same entities as the merged query</li>
+ * <li>Single entity queries stop at the first match</li>
+ * <li>Limited queries only read the entities needed</li>
+ * <li>Batch operations are routed to the shards</li>
+ * <li>Concurrent writers don't lose entities</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ShardedRepository
+ */
+public final class TestShardedRepository {
+
+    /**
+     * Number of entities stored.
+     */
+    private static final Integer ENTITIES = 200;
+    /**
+     * Number of shards.
+     */
+    private static final Integer SHARDS   = 4;
+
+    /**
+     * Counts the times the counting filter is applied.
+     */
+    private int                                                calls;
+    /**
+     * Executor for the parallel queries.
+     */
+    private ExecutorService                                    executor;
+    /**
+     * The repository being tested.
+     */
+    private ShardedRepository<TestClass, Predicate<TestClass>> repository;
+    /**
+     * The inner repositories.
+     */
+    private List<CollectionRepository<TestClass>>              shards;
+
+    /**
+     * Test class, identified by its name and with a value.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Value of the class.
+         */
+        private final Integer value;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param value
+         *            the value
+         */
+        public TestClass(final String name, final Integer value) {
+            super();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the value of the class.
+         * 
+         * @return the value
+         */
+        public final Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("value", value).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestShardedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        calls = 0;
+        executor = Executors.newFixedThreadPool(SHARDS);
+
+        shards = new ArrayList<CollectionRepository<TestClass>>();
+        for (Integer i = 0; i < SHARDS; i++) {
+            shards.add(new CollectionRepository<TestClass>());
+        }
+
+        repository = new ShardedRepository<TestClass, Predicate<TestClass>>(
+                shards, new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getName();
+                    }
+
+                });
+
+        for (Integer i = 0; i < ENTITIES; i++) {
+            repository.add(new TestClass("e" + i, i));
+        }
+    }
+
+    /**
+     * Shuts down the executor after each test.
+     */
+    @AfterMethod
+    public final void release() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that batch operations are routed to the shards.
+     */
+    @Test
+    public final void testAddAll_RemoveAll_Routed() {
+        final Collection<TestClass> batch; // Entities to add and remove
+
+        batch = Arrays.asList(new TestClass("x", 1), new TestClass("y", 2),
+                new TestClass("z", 3));
+
+        repository.addAll(batch);
+        Assert.assertEquals(repository.getAll().size(), ENTITIES + 3);
+        Assert.assertEquals(getStoredCount(), ENTITIES + 3);
+
+        repository.removeAll(batch);
+        Assert.assertEquals(getStoredCount(), (int) ENTITIES);
+    }
+
+    /**
+     * Tests that concurrent writers don't lose entities.
+     */
+    @Test
+    public final void testAdd_Concurrent_NoneLost()
+            throws InterruptedException {
+        for (Integer i = 0; i < SHARDS; i++) {
+            final Integer writer = i;
+
+            executor.submit(new Runnable() {
+
+                @Override
+                public final void run() {
+                    for (Integer j = 0; j < 500; j++) {
+                        repository.add(
+                                new TestClass("w" + writer + "-" + j, j));
+                    }
+                }
+
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(getStoredCount(), ENTITIES + (SHARDS * 500));
+    }
+
+    /**
+     * Tests that each entity is stored in a single shard.
+     */
+    @Test
+    public final void testAdd_SingleShard() {
+        Assert.assertEquals(getStoredCount(), (int) ENTITIES);
+    }
+
+    /**
+     * Tests that the entities are spread across the shards.
+     */
+    @Test
+    public final void testAdd_Spread() {
+        for (final CollectionRepository<TestClass> shard : shards) {
+            Assert.assertFalse(shard.getAll().isEmpty());
+        }
+    }
+
+    /**
+     * Tests that queries merge the results of all the shards.
+     */
+    @Test
+    public final void testGetCollection_Merged() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(getEvenFilter());
+
+        Assert.assertEquals(entities.size(), ENTITIES / 2);
+    }
+
+    /**
+     * Tests that limited queries only read the entities needed.
+     */
+    @Test
+    public final void testGetCollection_Limit_OnlyNeeded() {
+        final Collection<TestClass> entities; // Filtered entities
+
+        entities = repository.getCollection(getCountingFilter(), 5);
+
+        Assert.assertEquals(entities.size(), 5);
+        Assert.assertEquals(calls, 5);
+    }
+
+    /**
+     * Tests that parallel queries return the same entities.
+     */
+    @Test
+    public final void testGetCollection_Parallel_SameResult() {
+        final ShardedRepository<TestClass, Predicate<TestClass>> parallel;
+
+        parallel = new ShardedRepository<TestClass, Predicate<TestClass>>(
+                shards, new Function<TestClass, String>() {
+
+                    @Override
+                    public final String apply(final TestClass input) {
+                        return input.getName();
+                    }
+
+                }, executor);
+
+        Assert.assertEquals(parallel.getCollection(getEvenFilter()),
+                repository.getCollection(getEvenFilter()));
+    }
+
+    /**
+     * Tests that single entity queries stop at the first match.
+     */
+    @Test
+    public final void testGetEntity_FirstMatch() {
+        Assert.assertNotNull(repository.getEntity(getCountingFilter()));
+        Assert.assertEquals(calls, 1);
+    }
+
+    /**
+     * Tests that pages return the same entities as the merged query.
+     */
+    @Test
+    public final void testGetPage_SameAsMerged() {
+        final List<TestClass> all; // All the entities, merged
+
+        all = new ArrayList<TestClass>(
+                repository.getCollection(getEvenFilter()));
+
+        for (int offset = 0; offset < all.size(); offset += 7) {
+            Assert.assertEquals(
+                    new ArrayList<TestClass>(
+                            repository.getPage(getEvenFilter(), offset, 9)),
+                    all.subList(offset, Math.min(offset + 9, all.size())));
+        }
+    }
+
+    /**
+     * Tests that pages span several shards.
+     */
+    @Test
+    public final void testGetPage_SpansShards() {
+        final Collection<TestClass> page; // Page read
+
+        page = repository.getPage(Predicates.<TestClass> alwaysTrue(),
+                ENTITIES / 2 - 10, 20);
+
+        Assert.assertEquals(page.size(), 20);
+        Assert.assertEquals(new HashSet<TestClass>(page).size(), 20);
+    }
+
+    /**
+     * Tests that removing an entity only touches its shard.
+     */
+    @Test
+    public final void testRemove_OwningShard() {
+        final List<Integer> before; // Shard sizes before removing
+        Integer changed;            // Number of shards changed
+
+        before = new ArrayList<Integer>();
+        for (final CollectionRepository<TestClass> shard : shards) {
+            before.add(shard.getAll().size());
+        }
+
+        repository.remove(new TestClass("e1", 1));
+
+        changed = 0;
+        for (Integer i = 0; i < SHARDS; i++) {
+            if (shards.get(i).getAll().size() != before.get(i)) {
+                changed++;
+            }
+        }
+
+        Assert.assertEquals(changed, (Integer) 1);
+        Assert.assertEquals(getStoredCount(), ENTITIES - 1);
+    }
+
+    /**
+     * Tests that updating an entity replaces it in its shard.
+     */
+    @Test
+    public final void testUpdate_Replaced() {
+        final TestClass entity; // Updated entity
+
+        repository.update(new TestClass("e3", -3));
+
+        entity = repository.getEntity(new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return "e3".equals(input.getName());
+            }
+
+        });
+
+        Assert.assertEquals(entity.getValue(), (Integer) (-3));
+        Assert.assertEquals(getStoredCount(), (int) ENTITIES);
+    }
+
+    /**
+     * Returns a filter accepting all the entities, and counting the times it
+     * is applied.
+     * 
+     * @return a counting filter
+     */
+    private final Predicate<TestClass> getCountingFilter() {
+        return new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                calls++;
+                return true;
+            }
+
+        };
+    }
+
+    /**
+     * Returns a filter accepting the entities with an even value.
+     * 
+     * @return a filter for even values
+     */
+    private final Predicate<TestClass> getEvenFilter() {
+        return new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return (input.getValue() % 2) == 0;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the number of entities stored in all the shards.
+     * 
+     * @return the number of entities in the shards
+     */
+    private final int getStoredCount() {
+        Integer count; // Entities counted
+
+        count = 0;
+        for (final CollectionRepository<TestClass> shard : shards) {
+            count += shard.getAll().size();
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,640 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import com.wandrell.pattern.repository.ConcurrentRepository;
+
+/**
+ * Stress tests for {@link ConcurrentRepository}, checking that operations on
+ * single entities are atomic when several threads use the repository at the
+ * same time.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>Concurrent adds don't lose entities</li>
+ * <li>Concurrent adds of the same entity store it only once</li>
+ * <li>Concurrent adds and removes leave the repository empty</li>
+ * <li>Readers always find exactly one copy of an entity being updated</li>
+ * <li>The recorded histories of writes and reads are linearizable</li>
+ * </ol>
+ * <p>
+ * For the histories each entity has a single writer, while several readers
+ * look for it. Every operation records the clock ticks at its invocation and
+ * response, and the state it left or observed. A read is valid only if it
+ * observed the state of a write which could have taken effect while it ran,
+ * and if it never observes an older write than a previous read by the same
+ * thread.
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see ConcurrentRepository
+ */
+public final class TestStressConcurrentRepository {
+
+    /**
+     * Operation recorded in a history.
+     */
+    private static final class Operation {
+
+        /**
+         * Position of the write in the history of the entity, or the entity
+         * read.
+         */
+        private final int     index;
+        /**
+         * Clock tick when the operation was invoked.
+         */
+        private final long    invoked;
+        /**
+         * Clock tick when the operation returned.
+         */
+        private final long    returned;
+        /**
+         * Value of the entity after the operation, or {@code null} if it is
+         * missing.
+         */
+        private final Integer state;
+
+        /**
+         * Constructs an operation with the specified data.
+         * 
+         * @param index
+         *            the position of the write, or the entity read
+         * @param invoked
+         *            the tick when the operation was invoked
+         * @param returned
+         *            the tick when the operation returned
+         * @param state
+         *            the value of the entity, or {@code null} if missing
+         */
+        public Operation(final int index, final long invoked,
+                final long returned, final Integer state) {
+            super();
+
+            this.index = index;
+            this.invoked = invoked;
+            this.returned = returned;
+            this.state = state;
+        }
+
+    }
+
+    /**
+     * Operations done by each thread.
+     */
+    private static final int                OPERATIONS = 2000;
+    /**
+     * Number of threads used.
+     */
+    private static final int                THREADS    = 8;
+    /**
+     * Clock ordering the operations in the histories.
+     */
+    private AtomicLong                      clock;
+    /**
+     * Executor running the threads.
+     */
+    private ExecutorService                 executor;
+    /**
+     * The repository being tested.
+     */
+    private ConcurrentRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and carrying a value which is not
+     * used for equality.
+     */
+    private final class TestClass {
+
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+        /**
+         * Value stored in the class.
+         */
+        private final Integer value;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param value
+         *            the value
+         */
+        public TestClass(final String name, final Integer value) {
+            super();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the name of the class.
+         * 
+         * @return the name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the value of the class.
+         * 
+         * @return the value
+         */
+        public final Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("value", value).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestStressConcurrentRepository() {
+        super();
+    }
+
+    /**
+     * Stops the threads after each test.
+     */
+    @AfterMethod
+    public final void finish() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new ConcurrentRepository<TestClass>();
+        clock = new AtomicLong();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Tests that concurrent adds don't lose entities.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    @Test
+    public final void testAdd_Concurrent_NoneLost() throws Exception {
+        final Collection<Callable<Void>> tasks; // Tasks to run
+
+        tasks = new LinkedList<Callable<Void>>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        repository.add(new TestClass(thread + "-" + j, j));
+                    }
+                    return null;
+                }
+
+            });
+        }
+
+        run(tasks);
+
+        Assert.assertEquals(repository.getAll().size(),
+                THREADS * OPERATIONS);
+    }
+
+    /**
+     * Tests that concurrent adds of the same entity store it only once.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    @Test
+    public final void testAdd_SameEntity_StoredOnce() throws Exception {
+        final Collection<Callable<Void>> tasks; // Tasks to run
+
+        tasks = new LinkedList<Callable<Void>>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        repository.add(new TestClass(String.valueOf(j % 10),
+                                thread));
+                    }
+                    return null;
+                }
+
+            });
+        }
+
+        run(tasks);
+
+        Assert.assertEquals(repository.getAll().size(), 10);
+    }
+
+    /**
+     * Tests that concurrent adds and removes leave the repository empty.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    @Test
+    public final void testAddRemove_Concurrent_Empty() throws Exception {
+        final Collection<Callable<Void>> tasks; // Tasks to run
+
+        tasks = new LinkedList<Callable<Void>>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    TestClass entity;
+
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        entity = new TestClass(thread + "-" + j, j);
+                        repository.add(entity);
+                        repository.remove(entity);
+                    }
+                    return null;
+                }
+
+            });
+        }
+
+        run(tasks);
+
+        Assert.assertTrue(repository.getAll().isEmpty());
+    }
+
+    /**
+     * Tests that the recorded histories of writes and reads are linearizable.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    @Test
+    public final void testHistories_Linearizable() throws Exception {
+        final Collection<Callable<Void>> tasks; // Tasks to run
+        final List<List<Operation>> writes;     // Writes for each entity
+        final List<List<Operation>> reads;      // Reads by each reader
+        final List<String> errors;              // Invalid observations
+        final int entities;                     // Number of entities
+
+        entities = THREADS / 2;
+
+        writes = new ArrayList<List<Operation>>();
+        reads = new ArrayList<List<Operation>>();
+        tasks = new LinkedList<Callable<Void>>();
+        for (int i = 0; i < entities; i++) {
+            final String name = "entity-" + i;
+            final List<Operation> history = new ArrayList<Operation>();
+            final List<Operation> observed = new ArrayList<Operation>();
+
+            writes.add(history);
+            reads.add(observed);
+
+            // Writer owning the entity
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    Integer state;
+                    long invoked;
+
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        invoked = clock.incrementAndGet();
+                        if (j % 3 == 0) {
+                            repository.add(new TestClass(name, j));
+                            state = j;
+                        } else if (j % 3 == 1) {
+                            repository.update(new TestClass(name, j));
+                            state = j;
+                        } else {
+                            repository.remove(new TestClass(name, j));
+                            state = null;
+                        }
+                        history.add(new Operation(j, invoked,
+                                clock.incrementAndGet(), state));
+
+                        // The writer always reads its own writes
+                        Assert.assertEquals(read(name), state);
+                    }
+                    return null;
+                }
+
+            });
+
+            // Reader looking for all the entities
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    int entity;
+                    Integer state;
+                    long invoked;
+
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        entity = j % entities;
+                        invoked = clock.incrementAndGet();
+                        state = read("entity-" + entity);
+                        observed.add(new Operation(entity, invoked,
+                                clock.incrementAndGet(), state));
+                    }
+                    return null;
+                }
+
+            });
+        }
+
+        run(tasks);
+
+        errors = new LinkedList<String>();
+        for (final List<Operation> observed : reads) {
+            errors.addAll(check(writes, observed));
+        }
+
+        Assert.assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    /**
+     * Tests that readers always find exactly one copy of an entity being
+     * updated.
+     * 
+     * @throws Exception
+     *             if a thread fails
+     */
+    @Test
+    public final void testUpdate_ConcurrentReads_AlwaysOneCopy()
+            throws Exception {
+        final Collection<Callable<Void>> tasks; // Tasks to run
+        final AtomicBoolean failed; // Flags a reader seeing a wrong state
+        final Predicate<TestClass> filter; // Filter for the updated entity
+
+        failed = new AtomicBoolean(false);
+        filter = new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return input.getName().equals("shared");
+            }
+
+        };
+
+        repository.add(new TestClass("shared", 0));
+        for (int i = 0; i < OPERATIONS; i++) {
+            repository.add(new TestClass(String.valueOf(i), i));
+        }
+
+        tasks = new LinkedList<Callable<Void>>();
+        for (int i = 0; i < THREADS / 2; i++) {
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        repository.update(new TestClass("shared", j));
+                    }
+                    return null;
+                }
+
+            });
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public final Void call() {
+                    for (int j = 0; j < OPERATIONS / 10; j++) {
+                        if (repository.getCollection(filter).size() != 1) {
+                            failed.set(true);
+                        }
+                    }
+                    return null;
+                }
+
+            });
+        }
+
+        run(tasks);
+
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(repository.getAll().size(), OPERATIONS + 1);
+    }
+
+    /**
+     * Checks the reads done by a thread against the histories of writes.
+     * <p>
+     * Each read should observe the state left by a write which returned
+     * before the read was invoked, or by one running at the same time. And
+     * it should never observe a write older than the one observed by a
+     * previous read of the same entity.
+     * 
+     * @param writes
+     *            the writes done on each entity
+     * @param reads
+     *            the reads done by a single thread, in order
+     * @return the invalid reads
+     */
+    private final List<String> check(final List<List<Operation>> writes,
+            final List<Operation> reads) {
+        final Map<Integer, Integer> last; // Last write matched per entity
+        final List<String> errors;        // Invalid reads
+        List<Operation> history;          // Writes on the entity read
+        int lowest;                       // Oldest write the read may see
+        int highest;                      // Newest write the read may see
+        Integer matched;                  // Write explaining the read
+        Integer state;                    // State after a write
+
+        last = new HashMap<Integer, Integer>();
+        errors = new LinkedList<String>();
+        for (final Operation read : reads) {
+            history = writes.get(read.index);
+
+            // -1 stands for the initial state, before any write
+            lowest = -1;
+            highest = -1;
+            for (final Operation write : history) {
+                if (write.returned < read.invoked) {
+                    lowest = write.index;
+                }
+                if (write.invoked < read.returned) {
+                    highest = write.index;
+                }
+            }
+            if (last.containsKey(read.index)) {
+                lowest = Math.max(lowest, last.get(read.index));
+            }
+
+            matched = null;
+            for (int i = lowest; (matched == null) && (i <= highest);
+                    i++) {
+                if (i < 0) {
+                    state = null;
+                } else {
+                    state = history.get(i).state;
+                }
+                if (Objects.equals(state, read.state)) {
+                    matched = i;
+                }
+            }
+
+            if (matched == null) {
+                errors.add(String.format(
+                        "Entity %d read as %s between ticks %d and %d",
+                        read.index, read.state, read.invoked,
+                        read.returned));
+            } else {
+                last.put(read.index, matched);
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Reads the value of an entity from the repository.
+     * 
+     * @param name
+     *            the name of the entity
+     * @return the value of the entity, or {@code null} if it is missing
+     */
+    private final Integer read(final String name) {
+        final Predicate<TestClass> filter; // Filter for the entity
+        final TestClass entity;            // Entity read
+        final Integer state;
+
+        filter = new Predicate<TestClass>() {
+
+            @Override
+            public final boolean apply(final TestClass input) {
+                return input.getName().equals(name);
+            }
+
+        };
+
+        entity = repository.getEntity(filter);
+        if (entity == null) {
+            state = null;
+        } else {
+            state = entity.getValue();
+        }
+
+        return state;
+    }
+
+    /**
+     * Runs all the tasks at the same time, and waits for them to finish.
+     * 
+     * @param tasks
+     *            the tasks to run
+     * @throws Exception
+     *             if a task fails
+     */
+    private final void run(final Collection<Callable<Void>> tasks)
+            throws Exception {
+        final CountDownLatch start; // Makes the tasks start together
+        final Collection<Future<Void>> results; // Results of the tasks
+
+        start = new CountDownLatch(1);
+        results = new LinkedList<Future<Void>>();
+        for (final Callable<Void> task : tasks) {
+            results.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public final Void call() throws Exception {
+                    start.await();
+                    return task.call();
+                }
+
+            }));
+        }
+
+        start.countDown();
+
+        for (final Future<Void> result : results) {
+            result.get(1, TimeUnit.MINUTES);
+        }
+    }
+
+}
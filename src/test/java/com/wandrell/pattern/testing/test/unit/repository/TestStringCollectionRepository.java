@@ -25,6 +25,7 @@
 package com.wandrell.pattern.testing.test.unit.repository;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 
 import org.testng.Assert;
@@ -47,7 +48,15 @@ import com.wandrell.pattern.repository.FilteredRepository;
  * <li>Entities are updated correctly</li>
  * <li>Updating a non existing entity does not add it</li>
  * <li>The {@code getCollection} method filters the entities correctly</li>
+ * <li>The {@code getCollection} method with a limit returns only the first
+ * matches</li>
+ * <li>The {@code getCollection} method with a limit stops once it has enough
+ * matches</li>
  * <li>The {@code getEntity} method filters the entities correctly</li>
+ * <li>The {@code getEntity} method stops on the first match</li>
+ * <li>The {@code getIterator} method searches the entities while being
+ * consumed</li>
+ * <li>The {@code getPage} method returns the page of matches</li>
  * <li>The {@code getEntity} method returns {@code null} when the repository is
  * empty</li>
  * <li>Modifying the {@code Collection} returned by {@code getAll} does not
@@ -166,6 +175,49 @@ public final class TestStringCollectionRepository {
         Assert.assertTrue(entities.contains("b"));
     }
 
+    /**
+     * Tests that the {@code getCollection} method with a limit returns only
+     * the first matches.
+     */
+    @Test
+    public final void testGetCollection_Limit_FirstMatches() {
+        final Collection<String> entities; // Filtered entities
+
+        entities = repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return !entity.equals("a");
+            }
+
+        }, 1);
+
+        Assert.assertEquals(entities.size(), 1);
+        Assert.assertTrue(entities.contains("b"));
+    }
+
+    /**
+     * Tests that the {@code getCollection} method with a limit stops once it
+     * has enough matches.
+     */
+    @Test
+    public final void testGetCollection_Limit_ShortCircuits() {
+        final Integer[] calls; // Number of entities checked
+
+        calls = new Integer[] { 0 };
+        repository.getCollection(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                calls[0]++;
+                return true;
+            }
+
+        }, 2);
+
+        Assert.assertEquals(calls[0], (Integer) 2);
+    }
+
     /**
      * Tests that modifying the {@code Collection} returned by
      * {@code getCollection} does not modify the repository's internal
@@ -240,6 +292,77 @@ public final class TestStringCollectionRepository {
         Assert.assertEquals(entity, "b");
     }
 
+    /**
+     * Test that the {@code getEntity} method stops on the first match.
+     */
+    @Test
+    public final void testGetEntity_ShortCircuits() {
+        final Integer[] calls; // Number of entities checked
+
+        calls = new Integer[] { 0 };
+        repository.getEntity(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                calls[0]++;
+                return true;
+            }
+
+        });
+
+        Assert.assertEquals(calls[0], (Integer) 1);
+    }
+
+    /**
+     * Tests that the {@code getIterator} method searches the entities while
+     * being consumed.
+     */
+    @Test
+    public final void testGetIterator_Lazy() {
+        final Integer[] calls; // Number of entities checked
+        final Iterator<String> entities; // Filtered entities
+
+        calls = new Integer[] { 0 };
+        entities = repository.getIterator(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                calls[0]++;
+                return !entity.equals("a");
+            }
+
+        });
+
+        Assert.assertEquals(calls[0], (Integer) 0);
+        Assert.assertEquals(entities.next(), "b");
+        Assert.assertEquals(calls[0], (Integer) 2);
+        Assert.assertEquals(entities.next(), "c");
+        Assert.assertFalse(entities.hasNext());
+    }
+
+    /**
+     * Tests that the {@code getPage} method returns the page of matches.
+     */
+    @Test
+    public final void testGetPage_Page() {
+        final Collection<String> entities; // Filtered entities
+
+        repository.add("d");
+
+        entities = repository.getPage(new Predicate<String>() {
+
+            @Override
+            final public boolean apply(final String entity) {
+                return true;
+            }
+
+        }, 1, 2);
+
+        Assert.assertEquals(entities.size(), 2);
+        Assert.assertTrue(entities.contains("b"));
+        Assert.assertTrue(entities.contains("c"));
+    }
+
     /**
      * Tests that entities are removed correctly.
      */
@@ -0,0 +1,311 @@
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2014-2015 the original author or authors.
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.wandrell.pattern.testing.test.unit.repository;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.MoreObjects;
+import com.wandrell.pattern.repository.Versioned;
+import com.wandrell.pattern.repository.VersionedRepository;
+
+/**
+ * Unit tests for {@link VersionedRepository}.
+ * <p>
+ * Checks the following cases:
+ * <ol>
+ * <li>The first entity starts at version zero</li>
+ * <li>Updates with the expected version succeed and increase it</li>
+ * <li>Updates with a stale version fail and change nothing</li>
+ * <li>Conditional updates of missing entities fail</li>
+ * <li>Unconditional updates increase the version</li>
+ * <li>Removals with a stale version fail</li>
+ * <li>Removals with the expected version succeed</li>
+ * <li>Stale versions fail after the entity is removed and added again</li>
+ * <li>Concurrent writers retrying on conflicts lose no update</li>
+ * </ol>
+ * 
+ * @author Bernardo Martínez Garrido
+ * @see VersionedRepository
+ */
+public final class TestVersionedRepository {
+
+    /**
+     * The repository being tested.
+     */
+    private VersionedRepository<TestClass> repository;
+
+    /**
+     * Test class, identified by its name and with a counter.
+     */
+    private final class TestClass {
+
+        /**
+         * Counter of the class.
+         */
+        private final Integer count;
+        /**
+         * Name of the class, which will identify it.
+         */
+        private final String  name;
+
+        /**
+         * Constructs a test class with the specified data.
+         * 
+         * @param name
+         *            the id
+         * @param count
+         *            the counter
+         */
+        public TestClass(final String name, final Integer count) {
+            super();
+
+            this.name = name;
+            this.count = count;
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null) {
+                return false;
+            }
+
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TestClass other;
+
+            other = (TestClass) obj;
+            return Objects.equals(name, other.name);
+        }
+
+        /**
+         * Returns the counter of the class.
+         * 
+         * @return the counter
+         */
+        public final Integer getCount() {
+            return count;
+        }
+
+        @Override
+        public final int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public final String toString() {
+            return MoreObjects.toStringHelper(this).add("name", name)
+                    .add("count", count).toString();
+        }
+
+    }
+
+    /**
+     * Default constructor.
+     */
+    public TestVersionedRepository() {
+        super();
+    }
+
+    /**
+     * Creates the repository being tested before each test.
+     */
+    @BeforeMethod
+    public final void initialize() {
+        repository = new VersionedRepository<TestClass>();
+
+        repository.add(new TestClass("a", 0));
+    }
+
+    /**
+     * Tests that the first entity starts at version zero.
+     */
+    @Test
+    public final void testAdd_First_VersionZero() {
+        Assert.assertEquals(
+                repository.getVersioned(new TestClass("a", 0)).getVersion(),
+                0);
+    }
+
+    /**
+     * Tests that removals with the expected version succeed.
+     */
+    @Test
+    public final void testCompareAndRemove_Expected_Removed() {
+        Assert.assertTrue(
+                repository.compareAndRemove(new TestClass("a", 0), 0));
+        Assert.assertTrue(repository.getAll().isEmpty());
+    }
+
+    /**
+     * Tests that removals with a stale version fail.
+     */
+    @Test
+    public final void testCompareAndRemove_Stale_Fails() {
+        repository.update(new TestClass("a", 1));
+
+        Assert.assertFalse(
+                repository.compareAndRemove(new TestClass("a", 0), 0));
+        Assert.assertEquals(repository.getAll().size(), 1);
+    }
+
+    /**
+     * Tests that updates with the expected version succeed and increase it.
+     */
+    @Test
+    public final void testCompareAndUpdate_Expected_Updated() {
+        final Versioned<TestClass> stored; // Stored entity
+
+        Assert.assertTrue(
+                repository.compareAndUpdate(new TestClass("a", 5), 0));
+
+        stored = repository.getVersioned(new TestClass("a", 0));
+
+        Assert.assertEquals(stored.getVersion(), 1);
+        Assert.assertEquals(stored.getEntity().getCount(), (Integer) 5);
+    }
+
+    /**
+     * Tests that conditional updates of missing entities fail.
+     */
+    @Test
+    public final void testCompareAndUpdate_Missing_Fails() {
+        Assert.assertFalse(
+                repository.compareAndUpdate(new TestClass("b", 1), 0));
+        Assert.assertNull(repository.getVersioned(new TestClass("b", 0)));
+    }
+
+    /**
+     * Tests that updates with a stale version fail and change nothing.
+     */
+    @Test
+    public final void testCompareAndUpdate_Stale_Fails() {
+        final Versioned<TestClass> stored; // Stored entity
+
+        repository.compareAndUpdate(new TestClass("a", 1), 0);
+
+        Assert.assertFalse(
+                repository.compareAndUpdate(new TestClass("a", 2), 0));
+
+        stored = repository.getVersioned(new TestClass("a", 0));
+
+        Assert.assertEquals(stored.getVersion(), 1);
+        Assert.assertEquals(stored.getEntity().getCount(), (Integer) 1);
+    }
+
+    /**
+     * Tests that stale versions fail after the entity is removed and added
+     * again.
+     */
+    @Test
+    public final void testCompareAndUpdate_Readded_StaleFails() {
+        final Versioned<TestClass> stale;  // Version before removing
+        final Versioned<TestClass> stored; // Stored entity
+
+        stale = repository.getVersioned(new TestClass("a", 0));
+
+        repository.remove(new TestClass("a", 0));
+        repository.add(new TestClass("a", 1));
+
+        Assert.assertFalse(repository.compareAndUpdate(new TestClass("a", 2),
+                stale.getVersion()));
+
+        stored = repository.getVersioned(new TestClass("a", 0));
+
+        Assert.assertTrue(stored.getVersion() > stale.getVersion());
+        Assert.assertEquals(stored.getEntity().getCount(), (Integer) 1);
+    }
+
+    /**
+     * Tests that concurrent writers retrying on conflicts lose no update.
+     */
+    @Test
+    public final void testCompareAndUpdate_Concurrent_NoLostUpdates()
+            throws InterruptedException {
+        final ExecutorService executor; // Executor for the writers
+        final Integer writers;          // Number of writers
+        final Integer increments;       // Increments for each writer
+
+        writers = 4;
+        increments = 1000;
+
+        executor = Executors.newFixedThreadPool(writers);
+        for (Integer i = 0; i < writers; i++) {
+            executor.submit(new Runnable() {
+
+                @Override
+                public final void run() {
+                    Versioned<TestClass> current;
+                    Boolean updated;
+
+                    for (Integer j = 0; j < increments; j++) {
+                        updated = false;
+                        while (!updated) {
+                            current = repository
+                                    .getVersioned(new TestClass("a", 0));
+                            updated = repository.compareAndUpdate(
+                                    new TestClass("a",
+                                            current.getEntity().getCount()
+                                                    + 1),
+                                    current.getVersion());
+                        }
+                    }
+                }
+
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(repository.getVersioned(new TestClass("a", 0))
+                .getEntity().getCount(), (Integer) (writers * increments));
+    }
+
+    /**
+     * Tests that unconditional updates increase the version.
+     */
+    @Test
+    public final void testUpdate_VersionIncreased() {
+        repository.update(new TestClass("a", 1));
+        repository.update(new TestClass("a", 2));
+
+        Assert.assertEquals(
+                repository.getVersioned(new TestClass("a", 0)).getVersion(),
+                2);
+    }
+
+}